@@ -41,6 +41,11 @@ public class NcssExecuter
 
     private static final int ARG_SIZE = 8;
 
+    /**
+     * JavaNCSS keeps parser state in statics, so concurrent modules of a parallel build must not run it at once.
+     */
+    private static final Object JAVANCSS_LOCK = new Object();
+
     // the full path to the directory holding the sources to point JavaNCSS to.
     // Or the location of a file holding the path towards all files. (javancss style *sigh* :)
     private File sourceLocation;
@@ -103,8 +108,12 @@ public class NcssExecuter
     {
         try
         {
-            Javancss javancss = new Javancss( getCommandLineArgument() );
-            Throwable ncssException = javancss.getLastError();
+            Throwable ncssException;
+            synchronized ( JAVANCSS_LOCK )
+            {
+                Javancss javancss = new Javancss( getCommandLineArgument() );
+                ncssException = javancss.getLastError();
+            }
             if ( ncssException != null )
             {
                 if ( ncssException instanceof Exception )
@@ -46,6 +46,7 @@ import org.dom4j.io.SAXReader;
  * Generates a JavaNCSS report based on this module's source code.
  *
  * @goal report
+ * @threadSafe
  * @author <a href="jeanlaurentATgmail.com">Jean-Laurent de Morlhon</a>
  * @version $Id: NcssReportMojo.java 9906 2009-06-02 15:04:27Z jeanlaurent $
  */
@@ -40,6 +40,7 @@ import org.dom4j.io.SAXReader;
  * @version $Id: NcssViolationCheckMojo.java 9906 2009-06-02 15:04:27Z jeanlaurent $
  * @goal check
  * @phase verify
+ * @threadSafe
  * @execute goal="report"
  */
 public class NcssViolationCheckMojo
@@ -24,6 +24,7 @@ import org.apache.maven.plugin.AbstractMojo;
 
 /**
  * @goal uaalManifest
+ * @threadSafe
  */
 public class MavenPlugin extends AbstractMojo {
 	/**
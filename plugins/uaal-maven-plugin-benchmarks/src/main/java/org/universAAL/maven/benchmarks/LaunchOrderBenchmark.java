@@ -0,0 +1,104 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.artifact.resolver.ResolutionNode;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.shared.dependency.tree.DependencyNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.universAAL.maven.IndexingDependencyNodeVisitor;
+import org.universAAL.maven.LaunchOrderDependencyNodeVisitor;
+import org.universAAL.maven.LaunchOrderEngine;
+import org.universAAL.maven.SyntheticTrees;
+
+/**
+ * Compares creation of the execution list by recursive visitors
+ * (IndexingDependencyNodeVisitor and LaunchOrderDependencyNodeVisitor accepted
+ * by the tree) with the iterative LaunchOrderEngine. The root of the tree is a
+ * pom, so no artifacts are resolved and only the ordering is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LaunchOrderBenchmark {
+
+	@Param({ "200", "2000" })
+	private int artifacts;
+
+	@Param({ "4" })
+	private int fanOut;
+
+	private DependencyNode root;
+
+	private final SystemStreamLog log = new SystemStreamLog();
+
+	@Setup
+	public void setUp() {
+		root = SyntheticTrees.create(artifacts, fanOut, 42);
+		List visitorOrder = visitor();
+		List engineOrder = engine();
+		if (!visitorOrder.equals(engineOrder)) {
+			throw new IllegalStateException("LaunchOrderEngine emits different order than the visitor");
+		}
+	}
+
+	@Benchmark
+	public List visitor() {
+		IndexingDependencyNodeVisitor indexingVisitor = new IndexingDependencyNodeVisitor(log);
+		root.accept(indexingVisitor);
+		LaunchOrderDependencyNodeVisitor visitor = createVisitor(indexingVisitor);
+		root.accept(visitor);
+		return visitor.getMvnUrls();
+	}
+
+	@Benchmark
+	public List engine() {
+		IndexingDependencyNodeVisitor indexingVisitor = new IndexingDependencyNodeVisitor(log);
+		indexingVisitor.index(root);
+		LaunchOrderDependencyNodeVisitor visitor = createVisitor(indexingVisitor);
+		new LaunchOrderEngine(visitor, indexingVisitor.getGraph()).emit(root);
+		return visitor.getMvnUrls();
+	}
+
+	private LaunchOrderDependencyNodeVisitor createVisitor(final IndexingDependencyNodeVisitor indexingVisitor) {
+		LaunchOrderDependencyNodeVisitor visitor = new LaunchOrderDependencyNodeVisitor(log,
+				indexingVisitor.getGraph(), false, null, null, root.getArtifact(), null);
+		visitor.setExcludedCoreArtifacts(new ArrayList<ResolutionNode>());
+		return visitor;
+	}
+}
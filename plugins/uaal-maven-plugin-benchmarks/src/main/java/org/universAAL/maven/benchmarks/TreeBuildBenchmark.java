@@ -0,0 +1,210 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.metadata.ArtifactMetadataSource;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.resolver.ResolutionNode;
+import org.apache.maven.project.MavenProject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.universAAL.maven.ArtifactKey;
+import org.universAAL.maven.BundleInspectionPipeline;
+import org.universAAL.maven.IndexingDependencyNodeVisitor;
+import org.universAAL.maven.LaunchOrderDependencyNodeVisitor;
+import org.universAAL.maven.LaunchOrderEngine;
+import org.universAAL.maven.QuietLog;
+import org.universAAL.maven.SyntheticArtifactFactory;
+import org.universAAL.maven.SyntheticArtifactResolver;
+import org.universAAL.maven.SyntheticMetadataSource;
+import org.universAAL.maven.SyntheticProjectBuilder;
+import org.universAAL.maven.SyntheticRepository;
+import org.universAAL.maven.treebuilder.CachingArtifactMetadataSource;
+import org.universAAL.maven.treebuilder.DependencyTreeBuilder;
+import org.universAAL.maven.treebuilder.ExecutionListCreator;
+import org.universAAL.maven.treebuilder.MavenProjectDescriptor;
+import org.universAAL.maven.treebuilder.MetadataCache;
+import org.universAAL.maven.treebuilder.PomModelMemo;
+import org.universAAL.maven.treebuilder.RootNode;
+
+/**
+ * Measures building of the dependency tree (DependencyTreeBuilder), launch
+ * ordering of the built tree (IndexingDependencyNodeVisitor,
+ * LaunchOrderDependencyNodeVisitor and LaunchOrderEngine) and the whole
+ * creation of the execution list by ExecutionListCreator. The root project
+ * and its dependencies are read from a SyntheticRepository generated in a
+ * temporary directory, so no network access is needed. Components of the maven
+ * container are replaced by simple implementations reading the repository.
+ *
+ * If warmCaches is false, a new POM model memo and metadata cache are used in
+ * each invocation, so every POM is parsed again. Otherwise they are shared by
+ * all invocations, as in a reactor build. Manifests of bundles are always
+ * cached, BundleManifestCache is kept per local repository.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TreeBuildBenchmark {
+
+	@Param({ "100", "1000", "10000" })
+	private int artifacts;
+
+	@Param({ "1", "4" })
+	private int resolutionThreads;
+
+	@Param({ "false", "true" })
+	private boolean warmCaches;
+
+	private File basedir;
+
+	private ArtifactRepository localRepository;
+
+	private SyntheticArtifactFactory artifactFactory;
+
+	private SyntheticProjectBuilder projectBuilder;
+
+	private SyntheticMetadataSource metadataSource;
+
+	private SyntheticArtifactResolver artifactResolver;
+
+	private MavenProject rootProject;
+
+	private PomModelMemo pomModelMemo;
+
+	private MetadataCache metadataCache;
+
+	private List<RootNode> rootNodes;
+
+	private final QuietLog log = new QuietLog();
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		basedir = File.createTempFile("uaal-synthetic-repo", "");
+		basedir.delete();
+		localRepository = SyntheticRepository.generate(basedir, artifacts, 4, 42);
+		artifactFactory = new SyntheticArtifactFactory();
+		projectBuilder = new SyntheticProjectBuilder(artifactFactory);
+		metadataSource = new SyntheticMetadataSource(artifactFactory, projectBuilder);
+		artifactResolver = new SyntheticArtifactResolver();
+		Artifact rootArtifact = artifactFactory.createProjectArtifact(SyntheticRepository.ROOT_GROUP_ID,
+				SyntheticRepository.ROOT_ARTIFACT_ID, SyntheticRepository.VERSION);
+		rootProject = projectBuilder.buildFromRepository(rootArtifact, new ArrayList(), localRepository);
+		pomModelMemo = new PomModelMemo();
+		metadataCache = new MetadataCache();
+
+		List sequentialList = createExecutionList(1, new PomModelMemo(), new MetadataCache());
+		if (sequentialList.size() != artifacts) {
+			throw new IllegalStateException("Execution list contains " + sequentialList.size() + " bundles instead of "
+					+ artifacts);
+		}
+		if (!sequentialList.equals(executionList())) {
+			throw new IllegalStateException("Execution list depends on the number of resolution threads");
+		}
+		rootNodes = buildTree();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		SyntheticRepository.delete(basedir);
+	}
+
+	@Benchmark
+	public List<RootNode> buildTree() throws Exception {
+		DependencyTreeBuilder treeBuilder = new DependencyTreeBuilder(artifactFactory, projectBuilder,
+				localRepository, false, false);
+		treeBuilder.setResolutionThreads(resolutionThreads);
+		treeBuilder.setPomModelMemo(warmCaches ? pomModelMemo : new PomModelMemo());
+		ArtifactMetadataSource source = new CachingArtifactMetadataSource(metadataSource,
+				warmCaches ? metadataCache : new MetadataCache());
+		return treeBuilder.buildDependencyTree(localRepository, artifactFactory, source,
+				new MavenProjectDescriptor(rootProject, new ArrayList(), true));
+	}
+
+	@Benchmark
+	public List launchOrder() {
+		IndexingDependencyNodeVisitor indexingVisitor = new IndexingDependencyNodeVisitor(log);
+		for (RootNode rootNode : rootNodes) {
+			indexingVisitor.index(rootNode.rootNode);
+		}
+		LaunchOrderDependencyNodeVisitor visitor = new LaunchOrderDependencyNodeVisitor(log,
+				indexingVisitor.getGraph(), false, localRepository, artifactResolver, rootProject.getArtifact(), null);
+		BundleInspectionPipeline pipeline = new BundleInspectionPipeline(localRepository, artifactResolver,
+				resolutionThreads);
+		try {
+			visitor.setBundleInspectionPipeline(pipeline);
+			Set<ArtifactKey> excludedCoreArtifacts = new HashSet<ArtifactKey>();
+			for (RootNode rootNode : rootNodes) {
+				for (ResolutionNode excludedCoreArtifact : rootNode.excludedCoreArtifacts) {
+					excludedCoreArtifacts.add(ArtifactKey.of(excludedCoreArtifact.getArtifact()));
+				}
+			}
+			visitor.inspectInAdvance(excludedCoreArtifacts);
+			LaunchOrderEngine launchOrderEngine = new LaunchOrderEngine(visitor, indexingVisitor.getGraph());
+			for (RootNode rootNode : rootNodes) {
+				visitor.setExcludedCoreArtifacts(rootNode.excludedCoreArtifacts);
+				launchOrderEngine.emit(rootNode.rootNode);
+			}
+		} finally {
+			pipeline.shutdown();
+		}
+		return visitor.getMvnUrls();
+	}
+
+	@Benchmark
+	public List executionList() throws Exception {
+		if (warmCaches) {
+			return createExecutionList(resolutionThreads, pomModelMemo, metadataCache);
+		}
+		return createExecutionList(resolutionThreads, new PomModelMemo(), new MetadataCache());
+	}
+
+	private List createExecutionList(final int threads, final PomModelMemo memo, final MetadataCache cache)
+			throws Exception {
+		ExecutionListCreator execListCreator = new ExecutionListCreator(log, metadataSource, artifactFactory,
+				projectBuilder, localRepository, new ArrayList(), artifactResolver, "true", null);
+		execListCreator.setResolutionThreads(threads);
+		execListCreator.setPomModelMemo(memo);
+		execListCreator.setMetadataCache(cache);
+		return execListCreator.createArtifactExecutionList(rootProject, new HashSet<String>(), false, false);
+	}
+}
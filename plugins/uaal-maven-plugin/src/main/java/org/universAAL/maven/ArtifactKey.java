@@ -0,0 +1,186 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven;
+
+import org.apache.maven.artifact.Artifact;
+
+/**
+ * Immutable key of an artifact used in place of stringified artifacts in the
+ * dependency tree pipeline. Hash code is computed once and compared before the
+ * fields, so lookups in hash maps rarely compare strings. There are three
+ * kinds of keys:
+ * <ul>
+ * <li>GAV key - groupId:artifactId:version, identifies a node in the tree
+ * <li>GA key - groupId:artifactId, identifies all versions of an artifact
+ * <li>conflict key - groupId:artifactId:type[:classifier], the same as
+ * Artifact.getDependencyConflictId(), used for conflict resolution
+ * </ul>
+ *
+ */
+public final class ArtifactKey {
+
+	private static final int KIND_GAV = 0;
+
+	private static final int KIND_GA = 1;
+
+	private static final int KIND_CONFLICT = 2;
+
+	private final int kind;
+
+	private final String groupId;
+
+	private final String artifactId;
+
+	private final String version;
+
+	private final String type;
+
+	private final String classifier;
+
+	private final int hash;
+
+	/**
+	 * Lazily created string representation.
+	 */
+	private String string;
+
+	private ArtifactKey(final int kind, final String groupId, final String artifactId, final String version,
+			final String type, final String classifier) {
+		this.kind = kind;
+		this.groupId = groupId;
+		this.artifactId = artifactId;
+		this.version = version;
+		this.type = type;
+		this.classifier = classifier;
+		int h = kind;
+		h = 31 * h + hashCode(groupId);
+		h = 31 * h + hashCode(artifactId);
+		h = 31 * h + hashCode(version);
+		h = 31 * h + hashCode(type);
+		h = 31 * h + hashCode(classifier);
+		this.hash = h;
+	}
+
+	/**
+	 * Gets GAV key (groupId:artifactId:version) of given artifact.
+	 *
+	 * @param artifact
+	 *            the artifact
+	 * @return the key
+	 */
+	public static ArtifactKey of(final Artifact artifact) {
+		if (artifact.getVersion() == null) {
+			throw new RuntimeException("Artifact version and version range is null: " + artifact);
+		}
+		return new ArtifactKey(KIND_GAV, artifact.getGroupId(), artifact.getArtifactId(),
+				artifact.getVersion(), null, null);
+	}
+
+	/**
+	 * Gets GA key (groupId:artifactId) of given artifact.
+	 *
+	 * @param artifact
+	 *            the artifact
+	 * @return the key
+	 */
+	public static ArtifactKey ofNoVersion(final Artifact artifact) {
+		if (artifact.getVersion() == null) {
+			throw new RuntimeException("Artifact version and version range is null: " + artifact);
+		}
+		return new ArtifactKey(KIND_GA, artifact.getGroupId(), artifact.getArtifactId(), null, null, null);
+	}
+
+	/**
+	 * Gets conflict key (groupId:artifactId:type[:classifier]) of given
+	 * artifact.
+	 *
+	 * @param artifact
+	 *            the artifact
+	 * @return the key
+	 */
+	public static ArtifactKey ofConflictId(final Artifact artifact) {
+		return new ArtifactKey(KIND_CONFLICT, artifact.getGroupId(), artifact.getArtifactId(), null,
+				artifact.getType(), artifact.getClassifier());
+	}
+
+	private static int hashCode(final String str) {
+		return str == null ? 0 : str.hashCode();
+	}
+
+	private static boolean equals(final String str1, final String str2) {
+		return str1 == null ? str2 == null : str1.equals(str2);
+	}
+
+	public String getGroupId() {
+		return groupId;
+	}
+
+	public String getArtifactId() {
+		return artifactId;
+	}
+
+	public String getVersion() {
+		return version;
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof ArtifactKey)) {
+			return false;
+		}
+		ArtifactKey other = (ArtifactKey) obj;
+		return hash == other.hash && kind == other.kind && equals(groupId, other.groupId)
+				&& equals(artifactId, other.artifactId) && equals(version, other.version)
+				&& equals(type, other.type) && equals(classifier, other.classifier);
+	}
+
+	/**
+	 * Returns the same representation as FilteringVisitorSupport.stringify,
+	 * stringifyNoVersion and Artifact.getDependencyConflictId respectively.
+	 *
+	 * @return stringified key
+	 */
+	@Override
+	public String toString() {
+		if (string == null) {
+			StringBuilder sb = new StringBuilder();
+			sb.append(groupId).append(':').append(artifactId);
+			if (kind == KIND_GAV) {
+				sb.append(':').append(version);
+			} else if (kind == KIND_CONFLICT) {
+				sb.append(':').append(type);
+				if (classifier != null) {
+					sb.append(':').append(classifier);
+				}
+			}
+			string = sb.toString();
+		}
+		return string;
+	}
+}
@@ -0,0 +1,251 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.resolver.ArtifactResolver;
+import org.apache.maven.shared.dependency.tree.DependencyNode;
+import org.universAAL.maven.treebuilder.DaemonThreadFactory;
+import org.universAAL.maven.treebuilder.MyDependencyNode;
+import org.universAAL.maven.treebuilder.RepositoryRouter;
+import org.universAAL.maven.treebuilder.ResolutionProfiler;
+
+/**
+ * Resolves artifacts of dependency nodes and inspects their jars in order to
+ * check if they are OSGi bundles. Nodes can be submitted in advance, as soon
+ * as they are known, and they are then resolved and inspected in the
+ * background. LaunchOrderDependencyNodeVisitor asks for the result of given
+ * node only when the node is added to the execution list, so the order of the
+ * list does not depend on the order in which background inspections finish.
+ *
+ * If only one thread is configured, nothing is done in the background and
+ * each node is resolved and inspected at the moment its result is requested.
+ *
+ */
+public class BundleInspectionPipeline {
+
+	/**
+	 * Maven local repository.
+	 */
+	private ArtifactRepository localRepository;
+
+	/**
+	 * Maven artifact resolver.
+	 */
+	private ArtifactResolver artifactResolver;
+
+	/**
+	 * Cache of manifest facts of jars in the local repository, obtained on
+	 * first inspection.
+	 */
+	private BundleManifestCache manifestCache = null;
+
+	/**
+	 * Executor of background inspections, null if inspections are done
+	 * synchronously.
+	 */
+	private ExecutorService executor = null;
+
+	/**
+	 * Router narrowing remote repositories used for resolving artifacts, null
+	 * if all repositories of nodes are used.
+	 */
+	private RepositoryRouter repositoryRouter = null;
+
+	/**
+	 * Profiler timing resolving of artifacts and reading of manifests.
+	 */
+	private ResolutionProfiler profiler = ResolutionProfiler.DISABLED;
+
+	/**
+	 * Mapping of artifact keys to pending or finished inspections.
+	 */
+	private final Map<ArtifactKey, Future<Boolean>> inspections = new HashMap<ArtifactKey, Future<Boolean>>();
+
+	/**
+	 * Constructor of BundleInspectionPipeline.
+	 *
+	 * @param localRepository
+	 *            maven local repository
+	 * @param artifactResolver
+	 *            maven artifact resolver
+	 * @param threads
+	 *            number of threads used for background inspections, 1 means
+	 *            that nothing is done in the background.
+	 */
+	public BundleInspectionPipeline(final ArtifactRepository localRepository, final ArtifactResolver artifactResolver,
+			final int threads) {
+		this.localRepository = localRepository;
+		this.artifactResolver = artifactResolver;
+		if (threads > 1) {
+			executor = DaemonThreadFactory.newFixedThreadPool(threads, "uaal-bundle-inspection");
+		}
+	}
+
+	/**
+	 * Sets router narrowing remote repositories used for resolving artifacts.
+	 *
+	 * @param repositoryRouter
+	 *            the router or null if all repositories of nodes should be
+	 *            used
+	 */
+	public void setRepositoryRouter(final RepositoryRouter repositoryRouter) {
+		this.repositoryRouter = repositoryRouter;
+	}
+
+	/**
+	 * Sets profiler timing resolving of artifacts, reading of manifests and
+	 * waiting for background inspections.
+	 *
+	 * @param profiler
+	 *            the profiler
+	 */
+	public void setResolutionProfiler(final ResolutionProfiler profiler) {
+		this.profiler = profiler;
+	}
+
+	/**
+	 * Submits node for resolving and inspection in the background. Nodes
+	 * which were already submitted are ignored. Errors are reported only when
+	 * result of the node is requested.
+	 *
+	 * @param node
+	 *            node which artifact should be inspected
+	 */
+	public void submit(final DependencyNode node) {
+		if (executor == null) {
+			return;
+		}
+		ArtifactKey key = ArtifactKey.of(node.getArtifact());
+		if (!inspections.containsKey(key)) {
+			inspections.put(key, executor.submit(new Callable<Boolean>() {
+				public Boolean call() throws Exception {
+					return inspect(node);
+				}
+			}));
+		}
+	}
+
+	/**
+	 * Checks if artifact of given node is an OSGi bundle. If the node was
+	 * submitted before then the method waits for the background inspection,
+	 * otherwise the artifact is resolved and inspected immediately.
+	 *
+	 * @param node
+	 *            node which artifact should be checked
+	 * @return true if artifact is an OSGi bundle, false otherwise
+	 * @throws Exception
+	 *             when artifact cannot be resolved or its jar cannot be read
+	 */
+	public boolean isBundle(final DependencyNode node) throws Exception {
+		Future<Boolean> inspection = inspections.get(ArtifactKey.of(node.getArtifact()));
+		if (inspection == null) {
+			return inspect(node);
+		}
+		/*
+		 * The wait is not attributed to the artifact, its inspection is
+		 * already timed by the thread which does it.
+		 */
+		long start = profiler.start();
+		try {
+			return inspection.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		} finally {
+			profiler.stop(ResolutionProfiler.BUNDLE_WAIT, start);
+		}
+	}
+
+	/**
+	 * Stops background inspections and stores the manifest cache. Inspections
+	 * which were not needed by the visitor are cancelled.
+	 */
+	public void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+		BundleManifestCache usedCache = getManifestCache(false);
+		if (usedCache != null) {
+			try {
+				usedCache.save();
+			} catch (IOException e) {
+				// the cache is only an optimization, facts will be read again
+			}
+		}
+	}
+
+	/**
+	 * Resolves artifact of given node and checks if its jar is an OSGi bundle.
+	 *
+	 * @param node
+	 *            node which artifact should be inspected
+	 * @return true if manifest of the jar contains Bundle-ManifestVersion
+	 *         header, false otherwise
+	 * @throws Exception
+	 *             when artifact cannot be resolved or its jar cannot be read
+	 */
+	private boolean inspect(final DependencyNode node) throws Exception {
+		Artifact artifact = node.getArtifact();
+		MyDependencyNode myNode = (MyDependencyNode) node;
+		List remoteRepositories = myNode.getRemoteRepositories();
+		if (repositoryRouter != null) {
+			remoteRepositories = repositoryRouter.route(artifact, remoteRepositories);
+		}
+		long start = profiler.start();
+		artifactResolver.resolve(artifact, remoteRepositories, localRepository);
+		profiler.stop(ResolutionProfiler.BUNDLE_RESOLVE, artifact, start);
+		File localRepoBaseDir = new File(localRepository.getBasedir());
+		File jarPath = new File(localRepoBaseDir, localRepository.pathOf(artifact));
+		start = profiler.start();
+		boolean bundle = getManifestCache(true).get(jarPath).isBundle();
+		profiler.stop(ResolutionProfiler.MANIFEST_READ, artifact, start);
+		return bundle;
+	}
+
+	/**
+	 * Gets cache of manifest facts of the local repository.
+	 *
+	 * @param create
+	 *            whether the cache should be obtained if it was not used yet
+	 * @return the cache or null
+	 */
+	private synchronized BundleManifestCache getManifestCache(final boolean create) {
+		if (manifestCache == null && create) {
+			manifestCache = BundleManifestCache.forRepository(localRepository);
+		}
+		return manifestCache;
+	}
+
+}
@@ -0,0 +1,347 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.universAAL.maven.treebuilder.SharedPropertiesFile;
+
+/**
+ * Cache of facts read from manifests of jars present in the local repository:
+ * whether the jar is an OSGi bundle, its Bundle-SymbolicName and
+ * Bundle-Version. Facts are indexed by path of the jar and remembered together
+ * with size and modification time of the jar, so that they are read again
+ * when the jar is changed. The cache is stored in a small properties file in
+ * the local repository and it is shared by all builds using the repository.
+ * Builds running in parallel merge their facts into the file.
+ *
+ * On a miss only the central directory of the jar and the manifest entry are
+ * read (ZipFile uses random access), the rest of the archive is not
+ * decompressed. The manifest is recognized the same way as by
+ * JarInputStream, i.e. only if it is the first entry of the jar or the second
+ * one after the META-INF/ directory. Jars with the manifest placed elsewhere
+ * are therefore still wrapped by the launcher.
+ *
+ */
+public class BundleManifestCache {
+
+	/**
+	 * Name of the cache file. The version suffix was added when the manifest
+	 * detection was aligned with JarInputStream, so that facts of the former
+	 * detection are not reused.
+	 */
+	public static final String CACHE_FILE_NAME = ".uaal-manifest-cache-2.properties";
+
+	/**
+	 * Caches of local repositories indexed by their base directories.
+	 */
+	private static final Map<String, BundleManifestCache> CACHES = new ConcurrentHashMap<String, BundleManifestCache>();
+
+	/**
+	 * Facts read from the manifest of a jar.
+	 */
+	public static class ManifestFacts {
+
+		private final long size;
+
+		private final long lastModified;
+
+		private final boolean bundle;
+
+		private final String symbolicName;
+
+		private final String version;
+
+		ManifestFacts(final long size, final long lastModified, final boolean bundle, final String symbolicName,
+				final String version) {
+			this.size = size;
+			this.lastModified = lastModified;
+			this.bundle = bundle;
+			this.symbolicName = symbolicName;
+			this.version = version;
+		}
+
+		/**
+		 * @return true if the manifest contains Bundle-ManifestVersion header.
+		 */
+		public boolean isBundle() {
+			return bundle;
+		}
+
+		/**
+		 * @return Bundle-SymbolicName without directives or empty string.
+		 */
+		public String getSymbolicName() {
+			return symbolicName;
+		}
+
+		/**
+		 * @return Bundle-Version or empty string.
+		 */
+		public String getVersion() {
+			return version;
+		}
+	}
+
+	/**
+	 * File in which the cache is stored.
+	 */
+	private File cacheFile;
+
+	/**
+	 * Facts indexed by absolute paths of jars.
+	 */
+	private final Map<String, ManifestFacts> factsByPath = new ConcurrentHashMap<String, ManifestFacts>();
+
+	/**
+	 * Whether the cache file was already loaded.
+	 */
+	private boolean loaded = false;
+
+	/**
+	 * Whether there are facts which are not stored in the cache file yet.
+	 */
+	private volatile boolean dirty = false;
+
+	/**
+	 * Number of facts served from the cache.
+	 */
+	private final AtomicLong hits = new AtomicLong();
+
+	/**
+	 * Number of facts read from jars.
+	 */
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Constructor of BundleManifestCache.
+	 *
+	 * @param cacheFile
+	 *            file in which the cache is stored
+	 */
+	BundleManifestCache(final File cacheFile) {
+		this.cacheFile = cacheFile;
+	}
+
+	/**
+	 * Gets cache of given local repository. All callers using the same local
+	 * repository share the same cache.
+	 *
+	 * @param localRepository
+	 *            maven local repository
+	 * @return the cache
+	 */
+	public static BundleManifestCache forRepository(final ArtifactRepository localRepository) {
+		String basedir = localRepository.getBasedir();
+		BundleManifestCache cache = CACHES.get(basedir);
+		if (cache == null) {
+			synchronized (CACHES) {
+				cache = CACHES.get(basedir);
+				if (cache == null) {
+					cache = new BundleManifestCache(new File(basedir, CACHE_FILE_NAME));
+					CACHES.put(basedir, cache);
+				}
+			}
+		}
+		return cache;
+	}
+
+	/**
+	 * Gets facts of given jar. Facts are read from the jar only if they are not
+	 * cached or the jar was changed since they were cached.
+	 *
+	 * @param jar
+	 *            the jar file
+	 * @return facts read from the manifest of the jar
+	 * @throws IOException
+	 *             when the jar cannot be read
+	 */
+	public ManifestFacts get(final File jar) throws IOException {
+		load();
+		String path = jar.getAbsolutePath();
+		long size = jar.length();
+		long lastModified = jar.lastModified();
+		ManifestFacts facts = factsByPath.get(path);
+		if (facts == null || facts.size != size || facts.lastModified != lastModified) {
+			misses.incrementAndGet();
+			facts = readFacts(jar, size, lastModified);
+			factsByPath.put(path, facts);
+			dirty = true;
+		} else {
+			hits.incrementAndGet();
+		}
+		return facts;
+	}
+
+	/**
+	 * Gets number of facts served from the cache.
+	 *
+	 * @return number of hits.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Gets number of facts read from jars.
+	 *
+	 * @return number of misses.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Stores the cache in the cache file if any facts were added since it was
+	 * loaded. Facts stored in the file by other builds in the meantime are
+	 * kept, facts of this cache win for jars known to both.
+	 *
+	 * @throws IOException
+	 *             when the cache file cannot be written
+	 */
+	public synchronized void save() throws IOException {
+		if (!dirty) {
+			return;
+		}
+		dirty = false;
+		try {
+			SharedPropertiesFile.update(cacheFile, new SharedPropertiesFile.Update() {
+				public void apply(final Properties props) {
+					for (Map.Entry<String, ManifestFacts> entry : factsByPath.entrySet()) {
+						ManifestFacts facts = entry.getValue();
+						props.setProperty(entry.getKey(), facts.size + "," + facts.lastModified + ","
+								+ facts.bundle + "," + facts.symbolicName + "," + facts.version);
+					}
+				}
+			}, "uAAL bundle manifest cache");
+		} catch (IOException e) {
+			dirty = true;
+			throw e;
+		}
+	}
+
+	/**
+	 * Loads the cache file if it was not loaded yet. Unreadable or corrupted
+	 * entries are ignored, they will be simply read again from the jars.
+	 */
+	private synchronized void load() {
+		if (loaded) {
+			return;
+		}
+		loaded = true;
+		Properties props = SharedPropertiesFile.load(cacheFile);
+		for (Map.Entry<Object, Object> entry : props.entrySet()) {
+			String[] values = ((String) entry.getValue()).split(",", 5);
+			if (values.length != 5) {
+				continue;
+			}
+			try {
+				factsByPath.put((String) entry.getKey(), new ManifestFacts(Long.parseLong(values[0]),
+						Long.parseLong(values[1]), Boolean.valueOf(values[2]).booleanValue(), values[3], values[4]));
+			} catch (NumberFormatException e) {
+				continue;
+			}
+		}
+	}
+
+	/**
+	 * Reads facts from the manifest of given jar.
+	 *
+	 * @param jar
+	 *            the jar file
+	 * @param size
+	 *            size of the jar
+	 * @param lastModified
+	 *            modification time of the jar
+	 * @return read facts
+	 * @throws IOException
+	 *             when the jar cannot be read
+	 */
+	private static ManifestFacts readFacts(final File jar, final long size, final long lastModified)
+			throws IOException {
+		Manifest manifest = readManifest(jar);
+		String bundleManifestVersion = null;
+		String symbolicName = null;
+		String version = null;
+		if (manifest != null) {
+			Attributes attribs = manifest.getMainAttributes();
+			bundleManifestVersion = attribs.getValue("Bundle-ManifestVersion");
+			symbolicName = attribs.getValue("Bundle-SymbolicName");
+			version = attribs.getValue("Bundle-Version");
+		}
+		if (symbolicName != null && symbolicName.indexOf(';') != -1) {
+			symbolicName = symbolicName.substring(0, symbolicName.indexOf(';'));
+		}
+		return new ManifestFacts(size, lastModified, bundleManifestVersion != null, trim(symbolicName), trim(version));
+	}
+
+	/**
+	 * Reads manifest of given jar using random access to its entries. Like
+	 * JarInputStream, only the first entry or the second one following the
+	 * META-INF/ directory is taken as the manifest. Entries are enumerated in
+	 * the order of the central directory, which is the order in which they
+	 * were written to the archive.
+	 *
+	 * @param jar
+	 *            the jar file
+	 * @return the manifest or null if the jar does not contain it
+	 * @throws IOException
+	 *             when the jar cannot be read
+	 */
+	static Manifest readManifest(final File jar) throws IOException {
+		ZipFile zip = new ZipFile(jar);
+		try {
+			Enumeration<? extends ZipEntry> entries = zip.entries();
+			ZipEntry manifestEntry = entries.hasMoreElements() ? entries.nextElement() : null;
+			if (manifestEntry != null && "META-INF/".equalsIgnoreCase(manifestEntry.getName())) {
+				manifestEntry = entries.hasMoreElements() ? entries.nextElement() : null;
+			}
+			if (manifestEntry == null || !JarFile.MANIFEST_NAME.equalsIgnoreCase(manifestEntry.getName())) {
+				return null;
+			}
+			InputStream in = zip.getInputStream(manifestEntry);
+			try {
+				return new Manifest(in);
+			} finally {
+				in.close();
+			}
+		} finally {
+			zip.close();
+		}
+	}
+
+	private static String trim(final String str) {
+		return str == null ? "" : str.trim();
+	}
+}
@@ -0,0 +1,301 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.factory.ArtifactFactory;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.resolver.ArtifactNotFoundException;
+import org.apache.maven.artifact.resolver.ArtifactResolutionException;
+import org.apache.maven.artifact.resolver.ArtifactResolver;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Stages bundles of an execution list in a directory, so that the container
+ * can install them from file: urls without resolving mvn: urls in the local
+ * repository. Bundles are hard linked to the local repository if it is
+ * possible (Java 7 or newer and the same file system), otherwise they are
+ * copied. Bundles which did not change since the last staging are left as
+ * they are and files which are not part of the execution list anymore are
+ * removed.
+ *
+ */
+class BundleStager {
+
+	/**
+	 * File.toPath method or null if it is not available (before Java 7).
+	 */
+	private static final Method TO_PATH;
+
+	/**
+	 * Files.createLink method or null if it is not available (before Java 7).
+	 */
+	private static final Method CREATE_LINK;
+
+	static {
+		Method toPath = null;
+		Method createLink = null;
+		try {
+			Class<?> pathClass = Class.forName("java.nio.file.Path");
+			toPath = File.class.getMethod("toPath");
+			createLink = Class.forName("java.nio.file.Files").getMethod("createLink", pathClass, pathClass);
+		} catch (ClassNotFoundException e) {
+			// bundles are always copied
+		} catch (NoSuchMethodException e) {
+			// bundles are always copied
+		}
+		TO_PATH = toPath;
+		CREATE_LINK = createLink;
+	}
+
+	private File stagingDirectory;
+
+	private ArtifactFactory artifactFactory;
+
+	private ArtifactResolver artifactResolver;
+
+	private ArtifactRepository localRepository;
+
+	private List remoteRepositories;
+
+	private boolean hardLinks = true;
+
+	private int linked = 0;
+
+	private int copied = 0;
+
+	private int upToDate = 0;
+
+	private int removed = 0;
+
+	/**
+	 * Creates stager of bundles.
+	 *
+	 * @param stagingDirectory
+	 *            directory in which bundles are staged
+	 * @param artifactFactory
+	 *            ArtifactFactory object provided by maven
+	 * @param artifactResolver
+	 *            ArtifactResolver object provided by maven
+	 * @param localRepository
+	 *            the maven's local repository
+	 * @param remoteRepositories
+	 *            remote repositories used for resolving bundles
+	 */
+	BundleStager(final File stagingDirectory, final ArtifactFactory artifactFactory,
+			final ArtifactResolver artifactResolver, final ArtifactRepository localRepository,
+			final List remoteRepositories) {
+		this.stagingDirectory = stagingDirectory;
+		this.artifactFactory = artifactFactory;
+		this.artifactResolver = artifactResolver;
+		this.localRepository = localRepository;
+		this.remoteRepositories = remoteRepositories;
+	}
+
+	/**
+	 * Sets whether bundles should be hard linked if possible. By default they
+	 * are.
+	 *
+	 * @param hardLinks
+	 *            false if bundles should be always copied
+	 */
+	void setHardLinks(final boolean hardLinks) {
+		this.hardLinks = hardLinks;
+	}
+
+	/**
+	 * Stages bundles of given execution list. Returned urls keep the order,
+	 * the wrap: prefix and start options of the execution list. Composites
+	 * cannot be staged, their urls are returned unchanged.
+	 *
+	 * @param mvnUrls
+	 *            the execution list
+	 * @param project
+	 *            project for which the list was created, its packaged
+	 *            artifact is staged if it is a part of the list
+	 * @return file: urls of staged bundles
+	 * @throws ArtifactResolutionException
+	 *             when a bundle cannot be resolved
+	 * @throws ArtifactNotFoundException
+	 *             when a bundle cannot be found
+	 * @throws IOException
+	 *             when a bundle cannot be staged
+	 */
+	List<String> stage(final List<String> mvnUrls, final MavenProject project) throws ArtifactResolutionException,
+			ArtifactNotFoundException, IOException {
+		stagingDirectory.mkdirs();
+		List<String> fileUrls = new ArrayList<String>();
+		Set<String> stagedNames = new HashSet<String>();
+		for (String mvnUrl : mvnUrls) {
+			String url = mvnUrl;
+			String prefix = "";
+			if (url.startsWith("wrap:")) {
+				prefix = "wrap:";
+				url = url.substring("wrap:".length());
+			}
+			String options = "";
+			if (url.indexOf('@') != -1) {
+				options = url.substring(url.indexOf('@'));
+				url = url.substring(0, url.indexOf('@'));
+			}
+			if (!url.startsWith("mvn:")) {
+				throw new IllegalArgumentException("The URL " + mvnUrl + " cannot be staged");
+			}
+			String[] elems = url.substring("mvn:".length()).split("/");
+			if (elems.length < 3) {
+				throw new IllegalArgumentException("Bad mvnUrl: " + mvnUrl);
+			}
+			String type = elems.length > 3 ? elems[3] : "jar";
+			if ("composite".equals(type)) {
+				fileUrls.add(mvnUrl);
+				continue;
+			}
+			String classifier = elems.length > 4 ? elems[4] : null;
+			File source = resolve(elems[0], elems[1], elems[2], type, classifier, project);
+			String name = elems[0] + "_" + source.getName();
+			File staged = new File(stagingDirectory, name);
+			if (stagedNames.add(name)) {
+				stageFile(source, staged);
+			}
+			fileUrls.add(prefix + staged.toURI().toString() + options);
+		}
+		File[] files = stagingDirectory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.isFile() && !stagedNames.contains(file.getName()) && file.delete()) {
+					removed++;
+				}
+			}
+		}
+		return fileUrls;
+	}
+
+	/**
+	 * Resolves file of given artifact. The artifact of the project is taken
+	 * from the build if it was already packaged.
+	 */
+	private File resolve(final String groupId, final String artifactId, final String version, final String type,
+			final String classifier, final MavenProject project) throws ArtifactResolutionException,
+			ArtifactNotFoundException {
+		Artifact projectArtifact = project.getArtifact();
+		if (projectArtifact != null && projectArtifact.getFile() != null && projectArtifact.getFile().isFile()
+				&& classifier == null && groupId.equals(projectArtifact.getGroupId())
+				&& artifactId.equals(projectArtifact.getArtifactId())
+				&& version.equals(projectArtifact.getVersion())) {
+			return projectArtifact.getFile();
+		}
+		Artifact artifact = artifactFactory.createArtifactWithClassifier(groupId, artifactId, version, type,
+				classifier);
+		artifactResolver.resolve(artifact, remoteRepositories, localRepository);
+		return artifact.getFile();
+	}
+
+	/**
+	 * Stages given file unless it is already staged.
+	 *
+	 * @param source
+	 *            the file in the local repository
+	 * @param staged
+	 *            the file in the staging directory
+	 * @throws IOException
+	 *             when the file cannot be copied
+	 */
+	private void stageFile(final File source, final File staged) throws IOException {
+		if (staged.isFile() && staged.length() == source.length() && staged.lastModified() == source.lastModified()) {
+			upToDate++;
+			return;
+		}
+		staged.delete();
+		if (hardLinks && link(source, staged)) {
+			linked++;
+			return;
+		}
+		copy(source, staged);
+		staged.setLastModified(source.lastModified());
+		copied++;
+	}
+
+	/**
+	 * Creates hard link to given file.
+	 *
+	 * @return false if the link cannot be created, e.g. because the staging
+	 *         directory is placed on another file system
+	 */
+	private static boolean link(final File source, final File staged) {
+		if (CREATE_LINK == null) {
+			return false;
+		}
+		try {
+			CREATE_LINK.invoke(null, TO_PATH.invoke(staged), TO_PATH.invoke(source));
+			return true;
+		} catch (InvocationTargetException e) {
+			return false;
+		} catch (IllegalAccessException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Copies given file with channel transfer.
+	 */
+	private static void copy(final File source, final File staged) throws IOException {
+		FileInputStream in = new FileInputStream(source);
+		try {
+			FileOutputStream out = new FileOutputStream(staged);
+			try {
+				FileChannel inChannel = in.getChannel();
+				FileChannel outChannel = out.getChannel();
+				long size = inChannel.size();
+				long position = 0;
+				while (position < size) {
+					position += inChannel.transferTo(position, size - position, outChannel);
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Returns summary of staging counters.
+	 *
+	 * @return the summary.
+	 */
+	@Override
+	public String toString() {
+		return String.format("Staged bundles in %s: %d linked, %d copied, %d up to date, %d stale files removed",
+				stagingDirectory, linked, copied, upToDate, removed);
+	}
+}
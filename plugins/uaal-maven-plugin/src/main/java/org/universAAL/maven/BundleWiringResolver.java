@@ -0,0 +1,942 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.factory.ArtifactFactory;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.resolver.ArtifactNotFoundException;
+import org.apache.maven.artifact.resolver.ArtifactResolutionException;
+import org.apache.maven.artifact.resolver.ArtifactResolver;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Build-time resolver of the package-level wiring of an execution list. It
+ * reads Export-Package, Import-Package and Require-Bundle headers of all
+ * bundles in the list and wires every import to an exporter, the same way the
+ * container would do it: among exporters matching the version range the one
+ * with the highest version is chosen, exporters with a known version are
+ * preferred to wrapped jars. Then the list is ordered so that every exporter
+ * (and every required bundle) is placed before its importers. Maven
+ * dependencies between bundles of the list are kept as well, so a bundle
+ * placed later because of its imports is still followed by the bundles which
+ * depend on it. The original order is kept wherever neither of them requires
+ * otherwise, bundles which import packages from each other keep their
+ * original order.
+ *
+ * Imports which cannot be satisfied by any bundle in the list, by bundles
+ * provided by a composite (excluded core artifacts) or by the framework itself
+ * are reported, so that missing bundles are detected during the build and not
+ * when the container starts. Optional imports are wired if possible but never
+ * reported. Wrapped jars export all packages which contain classes and import
+ * nothing (pax wrap imports everything optionally).
+ *
+ * Bundles which cannot be inspected (e.g. the artifact of the project which
+ * is not packaged yet) have no wires, so they are ordered only by their
+ * original position. Unsatisfied imports are then only reported as warnings,
+ * because they can be exported by such bundles.
+ *
+ * The computed wiring can be written to a file, one wire per line:
+ * importer, package (or "bundle:" and symbolic name for Require-Bundle) and
+ * exporter separated by tabs, where bundles are identified by their mvn urls
+ * without start options.
+ *
+ */
+public class BundleWiringResolver {
+
+	/**
+	 * Packages provided by the framework, names ending with ".*" are
+	 * prefixes. JRE packages are exported by the system bundle of both Felix
+	 * and Equinox.
+	 */
+	private static final String[] DEFAULT_SYSTEM_PACKAGES = { "java.*", "javax.*", "org.w3c.*", "org.xml.*",
+			"org.ietf.*", "org.omg.*", "sun.*", "com.sun.*", "org.osgi.framework", "org.osgi.framework.*",
+			"org.osgi.service.packageadmin", "org.osgi.service.startlevel", "org.osgi.service.url",
+			"org.osgi.service.permissionadmin", "org.osgi.service.condpermadmin", "org.osgi.util.tracker" };
+
+	/**
+	 * Prefix of the requirement name in the wiring file for Require-Bundle
+	 * wires.
+	 */
+	private static final String BUNDLE_REQUIREMENT = "bundle:";
+
+	/**
+	 * Bundle of the execution list or bundle provided by a composite.
+	 */
+	private static final class BundleEntry {
+
+		private final int index;
+
+		private final String mvnUrl;
+
+		private final String location;
+
+		private String symbolicName = null;
+
+		private Version version = Version.EMPTY;
+
+		/**
+		 * Exported packages with their versions, null version means that it
+		 * is not known (wrapped jar).
+		 */
+		private final Map<String, Version> exports = new HashMap<String, Version>();
+
+		private final List<Requirement> imports = new ArrayList<Requirement>();
+
+		private final List<Requirement> requiredBundles = new ArrayList<Requirement>();
+
+		private BundleEntry(final int index, final String mvnUrl, final String location) {
+			this.index = index;
+			this.mvnUrl = mvnUrl;
+			this.location = location;
+		}
+	}
+
+	/**
+	 * Imported package or required bundle.
+	 */
+	private static final class Requirement {
+
+		private final String name;
+
+		private final VersionRange range;
+
+		private final boolean optional;
+
+		private Requirement(final String name, final VersionRange range, final boolean optional) {
+			this.name = name;
+			this.range = range;
+			this.optional = optional;
+		}
+	}
+
+	/**
+	 * OSGi version: major.minor.micro.qualifier.
+	 */
+	private static final class Version implements Comparable<Version> {
+
+		private static final Version EMPTY = new Version(0, 0, 0, "");
+
+		private final int major;
+
+		private final int minor;
+
+		private final int micro;
+
+		private final String qualifier;
+
+		private Version(final int major, final int minor, final int micro, final String qualifier) {
+			this.major = major;
+			this.minor = minor;
+			this.micro = micro;
+			this.qualifier = qualifier;
+		}
+
+		/**
+		 * Parses version leniently, unparsable parts are treated as zeros.
+		 */
+		private static Version parse(final String str) {
+			if (str == null || str.trim().length() == 0) {
+				return EMPTY;
+			}
+			String[] parts = str.trim().split("\\.", 4);
+			return new Version(parsePart(parts, 0), parsePart(parts, 1), parsePart(parts, 2),
+					parts.length > 3 ? parts[3] : "");
+		}
+
+		private static int parsePart(final String[] parts, final int i) {
+			if (i >= parts.length) {
+				return 0;
+			}
+			try {
+				return Integer.parseInt(parts[i].trim());
+			} catch (NumberFormatException e) {
+				return 0;
+			}
+		}
+
+		public int compareTo(final Version other) {
+			if (major != other.major) {
+				return major < other.major ? -1 : 1;
+			}
+			if (minor != other.minor) {
+				return minor < other.minor ? -1 : 1;
+			}
+			if (micro != other.micro) {
+				return micro < other.micro ? -1 : 1;
+			}
+			return qualifier.compareTo(other.qualifier);
+		}
+
+		@Override
+		public String toString() {
+			return major + "." + minor + "." + micro + (qualifier.length() == 0 ? "" : "." + qualifier);
+		}
+	}
+
+	/**
+	 * OSGi version range, a single version means "at least".
+	 */
+	private static final class VersionRange {
+
+		private static final VersionRange ANY = new VersionRange(Version.EMPTY, true, null, false);
+
+		private final Version floor;
+
+		private final boolean floorInclusive;
+
+		private final Version ceiling;
+
+		private final boolean ceilingInclusive;
+
+		private VersionRange(final Version floor, final boolean floorInclusive, final Version ceiling,
+				final boolean ceilingInclusive) {
+			this.floor = floor;
+			this.floorInclusive = floorInclusive;
+			this.ceiling = ceiling;
+			this.ceilingInclusive = ceilingInclusive;
+		}
+
+		private static VersionRange parse(final String str) {
+			if (str == null || str.trim().length() == 0) {
+				return ANY;
+			}
+			String range = str.trim();
+			int comma = range.indexOf(',');
+			if ((range.startsWith("[") || range.startsWith("(")) && comma != -1) {
+				return new VersionRange(Version.parse(range.substring(1, comma)), range.startsWith("["),
+						Version.parse(range.substring(comma + 1, range.length() - 1)), range.endsWith("]"));
+			}
+			return new VersionRange(Version.parse(range), true, null, false);
+		}
+
+		/**
+		 * Checks if given version is in the range, unknown version is always
+		 * in the range.
+		 */
+		private boolean includes(final Version version) {
+			if (version == null) {
+				return true;
+			}
+			int c = version.compareTo(floor);
+			if (c < 0 || (c == 0 && !floorInclusive)) {
+				return false;
+			}
+			if (ceiling == null) {
+				return true;
+			}
+			c = version.compareTo(ceiling);
+			return c < 0 || (c == 0 && ceilingInclusive);
+		}
+
+		@Override
+		public String toString() {
+			if (ceiling == null) {
+				return floor.toString();
+			}
+			return (floorInclusive ? "[" : "(") + floor + "," + ceiling + (ceilingInclusive ? "]" : ")");
+		}
+	}
+
+	private Log log;
+
+	private ArtifactFactory artifactFactory;
+
+	private ArtifactResolver artifactResolver;
+
+	private ArtifactRepository localRepository;
+
+	/**
+	 * Whether unsatisfied imports fail the build.
+	 */
+	private boolean failOnUnsatisfied = false;
+
+	/**
+	 * Packages provided by the framework.
+	 */
+	private final List<String> systemPackages = new ArrayList<String>();
+
+	/**
+	 * File to which the wiring is written, null if it is not written.
+	 */
+	private File wiringFile = null;
+
+	private int inspectedCount = 0;
+
+	private int uninspectedCount = 0;
+
+	private int wireCount = 0;
+
+	private int movedCount = 0;
+
+	/**
+	 * Descriptions of unsatisfied imports found by the last resolution.
+	 */
+	private final List<String> unsatisfied = new ArrayList<String>();
+
+	/**
+	 * Constructor of BundleWiringResolver.
+	 *
+	 * @param log
+	 *            object for logging
+	 * @param artifactFactory
+	 *            ArtifactFactory object provided by maven
+	 * @param artifactResolver
+	 *            ArtifactResolver object provided by maven
+	 * @param localRepository
+	 *            maven local repository
+	 */
+	public BundleWiringResolver(final Log log, final ArtifactFactory artifactFactory,
+			final ArtifactResolver artifactResolver, final ArtifactRepository localRepository) {
+		this.log = log;
+		this.artifactFactory = artifactFactory;
+		this.artifactResolver = artifactResolver;
+		this.localRepository = localRepository;
+		for (String pkg : DEFAULT_SYSTEM_PACKAGES) {
+			systemPackages.add(pkg);
+		}
+	}
+
+	/**
+	 * Sets whether unsatisfied imports fail the build. By default they are
+	 * only reported as warnings. The build never fails if some bundles could
+	 * not be inspected.
+	 *
+	 * @param failOnUnsatisfied
+	 *            true if the build should fail
+	 */
+	public void setFailOnUnsatisfied(final boolean failOnUnsatisfied) {
+		this.failOnUnsatisfied = failOnUnsatisfied;
+	}
+
+	/**
+	 * Adds packages provided by the framework in addition to JRE packages and
+	 * the OSGi core packages.
+	 *
+	 * @param packages
+	 *            comma separated package names, names ending with ".*" are
+	 *            prefixes
+	 */
+	public void addSystemPackages(final String packages) {
+		if (packages == null) {
+			return;
+		}
+		for (String pkg : packages.split(",")) {
+			if (pkg.trim().length() != 0) {
+				systemPackages.add(pkg.trim());
+			}
+		}
+	}
+
+	/**
+	 * Sets file to which the computed wiring is written.
+	 *
+	 * @param wiringFile
+	 *            the file or null if the wiring should not be written
+	 */
+	public void setWiringFile(final File wiringFile) {
+		this.wiringFile = wiringFile;
+	}
+
+	/**
+	 * Gets descriptions of imports which could not be satisfied by the last
+	 * resolution.
+	 *
+	 * @return the descriptions
+	 */
+	public List<String> getUnsatisfied() {
+		return unsatisfied;
+	}
+
+	/**
+	 * Resolves wiring of given execution list and orders it so that exporters
+	 * are placed before importers.
+	 *
+	 * @param mvnUrls
+	 *            the execution list
+	 * @param projectArtifact
+	 *            artifact of the project which is taken from the build instead
+	 *            of the local repository, can be null
+	 * @param providedArtifacts
+	 *            artifacts installed by a composite before the execution
+	 *            list, their exports satisfy imports but they are not ordered
+	 * @param remoteRepositories
+	 *            remote repositories used for resolving provided artifacts
+	 * @param graph
+	 *            graph of maven dependencies of the execution list, its
+	 *            dependencies are kept by the ordering, can be null
+	 * @return the ordered execution list
+	 * @throws IOException
+	 *             when a jar or the wiring file cannot be read or written
+	 * @throws IllegalStateException
+	 *             when there are unsatisfied imports and the resolver is set
+	 *             to fail on them
+	 */
+	public List<String> resolve(final List<String> mvnUrls, final Artifact projectArtifact,
+			final List<Artifact> providedArtifacts, final List remoteRepositories, final DependencyGraph graph)
+			throws IOException {
+		inspectedCount = 0;
+		uninspectedCount = 0;
+		wireCount = 0;
+		movedCount = 0;
+		unsatisfied.clear();
+		List<BundleEntry> entries = new ArrayList<BundleEntry>();
+		for (String mvnUrl : mvnUrls) {
+			BundleEntry entry = new BundleEntry(entries.size(), mvnUrl, stripOptions(mvnUrl));
+			inspect(entry, findFile(entry.location, projectArtifact), mvnUrl.startsWith("wrap:"));
+			entries.add(entry);
+		}
+		List<BundleEntry> provided = new ArrayList<BundleEntry>();
+		for (Artifact artifact : providedArtifacts) {
+			if ("pom".equals(artifact.getType()) || artifact.getArtifactId().endsWith("composite")) {
+				continue;
+			}
+			BundleEntry entry = new BundleEntry(-1, null, String.format("mvn:%s/%s/%s", artifact.getGroupId(),
+					artifact.getArtifactId(), artifact.getVersion()));
+			inspect(entry, resolveProvided(artifact, remoteRepositories), false);
+			provided.add(entry);
+		}
+
+		Map<String, List<BundleEntry>> exporters = new HashMap<String, List<BundleEntry>>();
+		Map<String, List<BundleEntry>> bundlesByName = new HashMap<String, List<BundleEntry>>();
+		List<BundleEntry> all = new ArrayList<BundleEntry>(provided);
+		all.addAll(entries);
+		for (BundleEntry entry : all) {
+			for (String pkg : entry.exports.keySet()) {
+				add(exporters, pkg, entry);
+			}
+			if (entry.symbolicName != null) {
+				add(bundlesByName, entry.symbolicName, entry);
+			}
+		}
+
+		List<List<Integer>> dependents = new ArrayList<List<Integer>>();
+		int[] dependencyCounts = new int[entries.size()];
+		for (int i = 0; i < entries.size(); i++) {
+			dependents.add(new ArrayList<Integer>());
+		}
+		List<String[]> wires = new ArrayList<String[]>();
+		for (BundleEntry importer : entries) {
+			for (Requirement req : importer.imports) {
+				BundleEntry exporter = null;
+				Version best = null;
+				List<BundleEntry> candidates = exporters.get(req.name);
+				if (candidates != null) {
+					for (BundleEntry candidate : candidates) {
+						Version version = candidate.exports.get(req.name);
+						if (!req.range.includes(version)) {
+							continue;
+						}
+						if (exporter == null || isHigher(version, best)) {
+							exporter = candidate;
+							best = version;
+						}
+					}
+				}
+				if (exporter == null && isSystemPackage(req.name)) {
+					continue;
+				}
+				wire(importer, req, exporter, req.name, dependents, dependencyCounts, wires);
+			}
+			for (Requirement req : importer.requiredBundles) {
+				BundleEntry required = null;
+				List<BundleEntry> candidates = bundlesByName.get(req.name);
+				if (candidates != null) {
+					for (BundleEntry candidate : candidates) {
+						if (req.range.includes(candidate.version)
+								&& (required == null || candidate.version.compareTo(required.version) > 0)) {
+							required = candidate;
+						}
+					}
+				}
+				wire(importer, req, required, BUNDLE_REQUIREMENT + req.name, dependents, dependencyCounts, wires);
+			}
+		}
+
+		if (graph != null) {
+			addMavenDependencies(entries, graph, dependents, dependencyCounts);
+		}
+		List<String> ordered = order(entries, dependents, dependencyCounts);
+		for (int i = 0; i < ordered.size(); i++) {
+			if (!ordered.get(i).equals(mvnUrls.get(i))) {
+				movedCount++;
+			}
+		}
+		if (wiringFile != null) {
+			writeWiring(wires);
+		}
+		reportUnsatisfied();
+		return ordered;
+	}
+
+	/**
+	 * Records wire of given requirement or unsatisfied requirement if there is
+	 * no provider.
+	 */
+	private void wire(final BundleEntry importer, final Requirement req, final BundleEntry provider,
+			final String name, final List<List<Integer>> dependents, final int[] dependencyCounts,
+			final List<String[]> wires) {
+		if (provider == null) {
+			if (!req.optional) {
+				unsatisfied.add(importer.location + " requires " + name + " " + req.range);
+			}
+			return;
+		}
+		wireCount++;
+		wires.add(new String[] { importer.location, name, provider.location });
+		if (provider.index >= 0 && provider != importer) {
+			addEdge(provider.index, importer.index, dependents, dependencyCounts);
+		}
+	}
+
+	/**
+	 * Checks if version of a candidate exporter is higher than the best version
+	 * found so far. Known version is higher than unknown one (null).
+	 */
+	private static boolean isHigher(final Version version, final Version best) {
+		if (version == null) {
+			return false;
+		}
+		return best == null || version.compareTo(best) > 0;
+	}
+
+	/**
+	 * Adds edge of the ordering: the dependency has to be placed before the
+	 * dependent.
+	 */
+	private static void addEdge(final int dependency, final int dependent, final List<List<Integer>> dependents,
+			final int[] dependencyCounts) {
+		if (!dependents.get(dependency).contains(dependent)) {
+			dependents.get(dependency).add(dependent);
+			dependencyCounts[dependent]++;
+		}
+	}
+
+	/**
+	 * Adds maven dependencies between bundles of the execution list to the
+	 * edges of the ordering. Dependencies through nodes which are not in the
+	 * list (e.g. POM artifacts) are followed transitively. Only dependencies
+	 * which agree with the original order are added, because cycles of maven
+	 * dependencies were already broken by the launch order.
+	 */
+	private static void addMavenDependencies(final List<BundleEntry> entries, final DependencyGraph graph,
+			final List<List<Integer>> dependents, final int[] dependencyCounts) {
+		Map<String, BundleEntry> entriesByLocation = new HashMap<String, BundleEntry>();
+		for (BundleEntry entry : entries) {
+			entriesByLocation.put(entry.location, entry);
+		}
+		BundleEntry[] entriesById = new BundleEntry[graph.size()];
+		for (int id = 0; id < graph.size(); id++) {
+			Artifact artifact = graph.getNode(id).getArtifact();
+			entriesById[id] = entriesByLocation.get(String.format("mvn:%s/%s/%s", artifact.getGroupId(),
+					artifact.getArtifactId(), artifact.getVersion()));
+		}
+		int[] visitedFrom = new int[graph.size()];
+		Arrays.fill(visitedFrom, DependencyGraph.NO_NODE);
+		List<Integer> pending = new ArrayList<Integer>();
+		for (int id = 0; id < graph.size(); id++) {
+			BundleEntry dependent = entriesById[id];
+			if (dependent == null) {
+				continue;
+			}
+			visitedFrom[id] = id;
+			pending.add(Integer.valueOf(id));
+			while (!pending.isEmpty()) {
+				for (int child : graph.getChildren(pending.remove(pending.size() - 1).intValue())) {
+					if (child == DependencyGraph.NO_NODE || visitedFrom[child] == id) {
+						continue;
+					}
+					visitedFrom[child] = id;
+					BundleEntry dependency = entriesById[child];
+					if (dependency == null) {
+						pending.add(Integer.valueOf(child));
+					} else if (dependency.index < dependent.index) {
+						addEdge(dependency.index, dependent.index, dependents, dependencyCounts);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Orders bundles topologically, among bundles which can be placed next the
+	 * one which is earliest in the original list is chosen. If none of the
+	 * remaining bundles can be placed, the earliest bundle of a cycle is placed
+	 * first, bundles which only depend on the cycle wait until it is placed.
+	 */
+	private static List<String> order(final List<BundleEntry> entries, final List<List<Integer>> dependents,
+			final int[] dependencyCounts) {
+		List<String> ordered = new ArrayList<String>(entries.size());
+		boolean[] placed = new boolean[entries.size()];
+		PriorityQueue<Integer> ready = new PriorityQueue<Integer>();
+		List<List<Integer>> dependencies = new ArrayList<List<Integer>>();
+		for (int i = 0; i < entries.size(); i++) {
+			if (dependencyCounts[i] == 0) {
+				ready.add(Integer.valueOf(i));
+			}
+			dependencies.add(new ArrayList<Integer>());
+		}
+		for (int i = 0; i < entries.size(); i++) {
+			for (Integer dependent : dependents.get(i)) {
+				dependencies.get(dependent.intValue()).add(Integer.valueOf(i));
+			}
+		}
+		while (ordered.size() < entries.size()) {
+			Integer next = ready.poll();
+			if (next == null) {
+				// cycle - packages are resolved together, keep maven order
+				next = Integer.valueOf(firstOfCycle(placed, dependencies));
+			} else if (placed[next.intValue()]) {
+				continue;
+			}
+			placed[next.intValue()] = true;
+			ordered.add(entries.get(next.intValue()).mvnUrl);
+			for (Integer dependent : dependents.get(next.intValue())) {
+				if (--dependencyCounts[dependent.intValue()] == 0 && !placed[dependent.intValue()]) {
+					ready.add(dependent);
+				}
+			}
+		}
+		return ordered;
+	}
+
+	/**
+	 * Finds the earliest bundle of a cycle of bundles which are not placed
+	 * yet. It is called only when every such bundle waits for another one, so
+	 * following the earliest unplaced dependency always ends in a cycle.
+	 */
+	private static int firstOfCycle(final boolean[] placed, final List<List<Integer>> dependencies) {
+		int[] step = new int[placed.length];
+		Arrays.fill(step, -1);
+		List<Integer> path = new ArrayList<Integer>();
+		int current = 0;
+		while (placed[current]) {
+			current++;
+		}
+		while (step[current] == -1) {
+			step[current] = path.size();
+			path.add(Integer.valueOf(current));
+			int next = -1;
+			for (Integer dependency : dependencies.get(current)) {
+				if (!placed[dependency.intValue()] && (next == -1 || dependency.intValue() < next)) {
+					next = dependency.intValue();
+				}
+			}
+			current = next;
+		}
+		int first = current;
+		for (int i = step[current]; i < path.size(); i++) {
+			first = Math.min(first, path.get(i).intValue());
+		}
+		return first;
+	}
+
+	/**
+	 * Reports unsatisfied imports as warnings or fails.
+	 */
+	private void reportUnsatisfied() {
+		if (unsatisfied.isEmpty()) {
+			return;
+		}
+		StringBuilder msg = new StringBuilder("Unsatisfied requirements of bundles:");
+		for (String description : unsatisfied) {
+			msg.append(System.getProperty("line.separator")).append("    ").append(description);
+		}
+		if (uninspectedCount > 0) {
+			msg.append(System.getProperty("line.separator")).append(uninspectedCount)
+					.append(" bundles could not be inspected, they may satisfy some of the requirements");
+		}
+		if (failOnUnsatisfied && uninspectedCount == 0) {
+			throw new IllegalStateException(msg.toString());
+		}
+		log.warn(msg.toString());
+	}
+
+	/**
+	 * Writes wires to the wiring file.
+	 */
+	private void writeWiring(final List<String[]> wires) throws IOException {
+		wiringFile.getParentFile().mkdirs();
+		BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(wiringFile),
+				"UTF-8"));
+		try {
+			for (String[] wire : wires) {
+				writer.write(wire[0] + "\t" + wire[1] + "\t" + wire[2]);
+				writer.newLine();
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Finds jar of given bundle in the local repository or in the build of
+	 * the project.
+	 *
+	 * @return the jar or null if it is not available
+	 */
+	private File findFile(final String location, final Artifact projectArtifact) {
+		String[] elems = location.substring(location.indexOf("mvn:") + "mvn:".length()).split("/");
+		if (elems.length < 3) {
+			return null;
+		}
+		if (projectArtifact != null && elems[0].equals(projectArtifact.getGroupId())
+				&& elems[1].equals(projectArtifact.getArtifactId())
+				&& elems[2].equals(projectArtifact.getVersion())) {
+			return projectArtifact.getFile();
+		}
+		Artifact artifact = artifactFactory.createArtifact(elems[0], elems[1], elems[2], "", "jar");
+		return new File(localRepository.getBasedir(), localRepository.pathOf(artifact));
+	}
+
+	/**
+	 * Resolves jar of an artifact provided by a composite.
+	 *
+	 * @return the jar or null if it cannot be resolved
+	 */
+	private File resolveProvided(final Artifact providedArtifact, final List remoteRepositories) {
+		Artifact artifact = artifactFactory.createArtifact(providedArtifact.getGroupId(),
+				providedArtifact.getArtifactId(), providedArtifact.getVersion(), "", "jar");
+		try {
+			artifactResolver.resolve(artifact, remoteRepositories, localRepository);
+			return artifact.getFile();
+		} catch (ArtifactResolutionException e) {
+			return null;
+		} catch (ArtifactNotFoundException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Reads headers of given jar into the entry.
+	 *
+	 * @param entry
+	 *            the entry
+	 * @param jar
+	 *            the jar or null if it is not available
+	 * @param wrapped
+	 *            whether the jar is wrapped if it is not a bundle
+	 * @throws IOException
+	 *             when the jar cannot be read
+	 */
+	private void inspect(final BundleEntry entry, final File jar, final boolean wrapped) throws IOException {
+		if (jar == null || !jar.isFile()) {
+			uninspectedCount++;
+			log.debug("Bundle " + entry.location + " cannot be inspected, its jar is not available");
+			return;
+		}
+		inspectedCount++;
+		Manifest manifest = BundleManifestCache.readManifest(jar);
+		if (manifest == null || manifest.getMainAttributes().getValue("Bundle-ManifestVersion") == null) {
+			if (wrapped) {
+				readPackages(jar, entry.exports);
+			}
+			return;
+		}
+		Attributes attribs = manifest.getMainAttributes();
+		for (Map<String, String> clause : parseHeader(attribs.getValue("Bundle-SymbolicName"))) {
+			entry.symbolicName = clause.keySet().iterator().next();
+		}
+		entry.version = Version.parse(attribs.getValue("Bundle-Version"));
+		for (Map<String, String> clause : parseHeader(attribs.getValue("Export-Package"))) {
+			String version = clause.get("version");
+			if (version == null) {
+				version = clause.get("specification-version");
+			}
+			for (String pkg : names(clause)) {
+				entry.exports.put(pkg, Version.parse(version));
+			}
+		}
+		for (Map<String, String> clause : parseHeader(attribs.getValue("Import-Package"))) {
+			String version = clause.get("version");
+			if (version == null) {
+				version = clause.get("specification-version");
+			}
+			boolean optional = "optional".equals(clause.get("resolution:"));
+			for (String pkg : names(clause)) {
+				entry.imports.add(new Requirement(pkg, VersionRange.parse(version), optional));
+			}
+		}
+		for (Map<String, String> clause : parseHeader(attribs.getValue("Require-Bundle"))) {
+			boolean optional = "optional".equals(clause.get("resolution:"));
+			for (String name : names(clause)) {
+				entry.requiredBundles.add(new Requirement(name, VersionRange.parse(clause.get("bundle-version")),
+						optional));
+			}
+		}
+	}
+
+	/**
+	 * Reads names of packages which contain classes in given jar, they are
+	 * exported when the jar is wrapped.
+	 */
+	private static void readPackages(final File jar, final Map<String, Version> exports) throws IOException {
+		ZipFile zip = new ZipFile(jar);
+		try {
+			Enumeration<? extends ZipEntry> zipEntries = zip.entries();
+			while (zipEntries.hasMoreElements()) {
+				String name = zipEntries.nextElement().getName();
+				int slash = name.lastIndexOf('/');
+				if (name.endsWith(".class") && slash > 0 && !name.startsWith("META-INF/")) {
+					exports.put(name.substring(0, slash).replace('/', '.'), null);
+				}
+			}
+		} finally {
+			zip.close();
+		}
+	}
+
+	/**
+	 * Parses manifest header into clauses. Each clause is a map in which
+	 * names (packages or bundles) are mapped to empty strings, attributes to
+	 * their values and directives (with keys ending with ':') to their
+	 * values. Names are placed before attributes and directives.
+	 *
+	 * @param header
+	 *            value of the header, can be null
+	 * @return the clauses
+	 */
+	static List<Map<String, String>> parseHeader(final String header) {
+		List<Map<String, String>> clauses = new ArrayList<Map<String, String>>();
+		if (header == null) {
+			return clauses;
+		}
+		for (String clauseStr : split(header, ',')) {
+			Map<String, String> clause = new LinkedHashMap<String, String>();
+			for (String part : split(clauseStr, ';')) {
+				int eq = part.indexOf('=');
+				if (eq == -1) {
+					if (part.trim().length() != 0) {
+						clause.put(part.trim(), "");
+					}
+					continue;
+				}
+				String value = part.substring(eq + 1).trim();
+				if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+					value = value.substring(1, value.length() - 1);
+				}
+				clause.put(part.substring(0, eq).trim(), value);
+			}
+			if (!clause.isEmpty()) {
+				clauses.add(clause);
+			}
+		}
+		return clauses;
+	}
+
+	/**
+	 * Gets names (packages or bundles) of given clause.
+	 *
+	 * @param clause
+	 *            clause returned by parseHeader
+	 * @return the names
+	 */
+	static List<String> names(final Map<String, String> clause) {
+		List<String> names = new ArrayList<String>();
+		for (Map.Entry<String, String> entry : clause.entrySet()) {
+			if (entry.getValue().length() != 0 || entry.getKey().endsWith(":")) {
+				break;
+			}
+			names.add(entry.getKey());
+		}
+		return names;
+	}
+
+	/**
+	 * Splits given string by given separator which is not quoted.
+	 */
+	private static List<String> split(final String str, final char separator) {
+		List<String> parts = new ArrayList<String>();
+		boolean quoted = false;
+		int start = 0;
+		for (int i = 0; i < str.length(); i++) {
+			char c = str.charAt(i);
+			if (c == '"') {
+				quoted = !quoted;
+			} else if (c == separator && !quoted) {
+				parts.add(str.substring(start, i));
+				start = i + 1;
+			}
+		}
+		parts.add(str.substring(start));
+		return parts;
+	}
+
+	/**
+	 * Checks if given package is provided by the framework.
+	 */
+	private boolean isSystemPackage(final String pkg) {
+		for (String systemPackage : systemPackages) {
+			if (systemPackage.endsWith(".*")) {
+				if (pkg.startsWith(systemPackage.substring(0, systemPackage.length() - 1))) {
+					return true;
+				}
+			} else if (pkg.equals(systemPackage)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String stripOptions(final String mvnUrl) {
+		String location = mvnUrl.startsWith("wrap:") ? mvnUrl.substring("wrap:".length()) : mvnUrl;
+		return location.indexOf('@') == -1 ? location : location.substring(0, location.indexOf('@'));
+	}
+
+	private static <T> void add(final Map<String, List<T>> map, final String key, final T value) {
+		List<T> values = map.get(key);
+		if (values == null) {
+			values = new ArrayList<T>();
+			map.put(key, values);
+		}
+		values.add(value);
+	}
+
+	/**
+	 * Returns summary of the last resolution.
+	 *
+	 * @return the summary.
+	 */
+	@Override
+	public String toString() {
+		return String.format("Bundle wiring: %d bundles inspected, %d not inspected, %d wires, %d bundles moved,"
+				+ " %d unsatisfied requirements", inspectedCount, uninspectedCount, wireCount, movedCount,
+				unsatisfied.size());
+	}
+}
@@ -0,0 +1,248 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Writes the main composite (artifact.composite), the composite of
+ * dependencies only (artifact.deps) and the versions of artifacts
+ * (artifacts.versions) to the target directory of a project. It is shared by
+ * the composite goal and the reactor-composite goal so that both produce the
+ * same files.
+ *
+ */
+class CompositeWriter {
+
+	/**
+	 * Default path to main composite.
+	 */
+	static final String MAIN_COMPOSITE = "target/artifact.composite";
+
+	/**
+	 * Default path to deps composite.
+	 */
+	static final String MAIN_DEPS = "target/artifact.deps";
+
+	/**
+	 * Default path to the properties file to which the mapping between artifact
+	 * id and artifact version will be written.
+	 */
+	static final String MAIN_VERSION = "target/artifacts.versions";
+
+	/**
+	 * Default path to the composite of staged bundles.
+	 */
+	static final String STAGED_COMPOSITE = "target/bundles.composite";
+
+	private File baseDirectory;
+
+	private Log log;
+
+	/**
+	 * Creates writer for given project base directory.
+	 *
+	 * @param baseDirectory
+	 *            base directory of the project
+	 * @param log
+	 *            log
+	 */
+	CompositeWriter(final File baseDirectory, final Log log) {
+		this.baseDirectory = baseDirectory;
+		this.log = log;
+	}
+
+	/**
+	 * Checks if all files written by the write method exist.
+	 *
+	 * @return true if all files exist
+	 */
+	boolean outputsExist() {
+		return new File(baseDirectory, MAIN_COMPOSITE).isFile() && new File(baseDirectory, MAIN_VERSION).isFile()
+				&& new File(baseDirectory, MAIN_DEPS).isFile();
+	}
+
+	/**
+	 * Copies artifact.composite from the base directory to the main composite
+	 * if it exists there.
+	 *
+	 * @return true if the composite was provided manually and was copied
+	 * @throws IOException
+	 *             IOException
+	 */
+	boolean copyManualComposite() throws IOException {
+		File manualArtifactComposite = new File(baseDirectory, "artifact.composite");
+		if (!manualArtifactComposite.exists()) {
+			return false;
+		}
+		String msg = System.getProperty("line.separator") + System.getProperty("line.separator")
+				+ "Since artifact.composite exists in" + "the base directory composite generation is abandoned."
+				+ System.getProperty("line.separator") + "Instead artifact.composite from basedir"
+				+ " is simply copied to " + MAIN_COMPOSITE + System.getProperty("line.separator")
+				+ System.getProperty("line.separator");
+		log.info(msg);
+		BufferedReader compositeReader = new BufferedReader(
+				new InputStreamReader(new FileInputStream(manualArtifactComposite)));
+		BufferedWriter compositeWriter = createOutputWriter(MAIN_COMPOSITE);
+		String line = null;
+		while ((line = compositeReader.readLine()) != null) {
+			compositeWriter.write(line + System.getProperty("line.separator"));
+		}
+		compositeWriter.close();
+		compositeReader.close();
+		return true;
+	}
+
+	/**
+	 * Writes the main composite, the deps composite and artifacts versions for
+	 * given execution list.
+	 *
+	 * @param mvnUrls
+	 *            execution list, the last element is the project itself
+	 * @throws IOException
+	 *             IOException
+	 */
+	void write(final List<String> mvnUrls) throws IOException {
+		writeListToFile(mvnUrls, MAIN_COMPOSITE);
+		writeArtifactsVersions(mvnUrls, MAIN_VERSION);
+
+		List<String> mvnUrlsOnlyDeps = new ArrayList<String>(mvnUrls);
+		if (!mvnUrlsOnlyDeps.isEmpty()) {
+			mvnUrlsOnlyDeps.remove(mvnUrlsOnlyDeps.size() - 1);
+		}
+		writeListToFile(mvnUrlsOnlyDeps, MAIN_DEPS);
+
+		log.debug("");
+		log.debug(MAIN_COMPOSITE + ":");
+		log.debug("");
+		int x = 1;
+		for (String mvnUrl : mvnUrls) {
+			log.debug(String.format("%2d. %s", x++, mvnUrl));
+		}
+
+		log.debug("");
+		log.debug("");
+		log.debug(MAIN_DEPS + ":");
+		log.debug("");
+		x = 1;
+		for (String mvnUrl : mvnUrlsOnlyDeps) {
+			log.debug(String.format("%2d. %s", x++, mvnUrl));
+		}
+	}
+
+	/**
+	 * Writes the composite of staged bundles.
+	 *
+	 * @param fileUrls
+	 *            file: urls of staged bundles in the launch order
+	 * @throws IOException
+	 *             IOException
+	 */
+	void writeStaged(final List<String> fileUrls) throws IOException {
+		writeListToFile(fileUrls, STAGED_COMPOSITE);
+		log.debug("");
+		log.debug(STAGED_COMPOSITE + ":");
+		log.debug("");
+		int x = 1;
+		for (String fileUrl : fileUrls) {
+			log.debug(String.format("%2d. %s", x++, fileUrl));
+		}
+	}
+
+	/**
+	 * Creates output writer for given file name.
+	 *
+	 * @param fileName
+	 *            for which writer will be created
+	 * @return output writer.
+	 * @throws FileNotFoundException
+	 *             when file does not exist
+	 */
+	private BufferedWriter createOutputWriter(final String fileName) throws FileNotFoundException {
+		File targetDir = new File(baseDirectory, "target");
+		targetDir.mkdirs();
+		File generatedCompositeFile = new File(baseDirectory, fileName);
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(generatedCompositeFile, false)));
+	}
+
+	/**
+	 * Writes given list of mvn urls to given file.
+	 *
+	 * @param mvnUrls
+	 *            mvn urls
+	 * @param fileName
+	 *            file name
+	 * @throws IOException
+	 *             IOException
+	 */
+	private void writeListToFile(final List mvnUrls, final String fileName) throws IOException {
+		BufferedWriter compositeWriter = createOutputWriter(fileName);
+		boolean hasWrittenSth = false;
+		for (Object mvnUrl : mvnUrls) {
+			hasWrittenSth = true;
+			String mvnUrlStr = (String) mvnUrl;
+			if (mvnUrlStr.endsWith("/composite")) {
+				compositeWriter.write("scan-composite:" + mvnUrlStr + System.getProperty("line.separator"));
+			} else {
+				compositeWriter.write("scan-bundle:" + mvnUrlStr + System.getProperty("line.separator"));
+			}
+		}
+		if (!hasWrittenSth) {
+			compositeWriter.write("This is an empty dummy line in order to make" + "this file possible to deploy."
+					+ "Don't use this file at any time.");
+		}
+		compositeWriter.close();
+	}
+
+	private void writeArtifactsVersions(final List mvnUrls, final String fileName) throws IOException {
+		BufferedWriter compositeWriter = createOutputWriter(fileName);
+		for (Object mvnUrl : mvnUrls) {
+			String mvnUrlStr = (String) mvnUrl;
+			String[] mvnUrlElems = mvnUrlStr.split("/");
+			if (mvnUrlElems.length < 3) {
+				throw new RuntimeException("Bad mvnUrl: " + mvnUrlStr);
+			}
+			compositeWriter.write(mvnUrlElems[1]);
+			compositeWriter.write(".version");
+			compositeWriter.write("=");
+			String version = mvnUrlElems[2];
+			if (version.indexOf('@') != -1) {
+				// start level and nostart options are not part of the version
+				version = version.substring(0, version.indexOf('@'));
+			}
+			compositeWriter.write(version);
+			compositeWriter.write(System.getProperty("line.separator"));
+		}
+		compositeWriter.close();
+	}
+}
@@ -0,0 +1,213 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.shared.dependency.tree.DependencyNode;
+
+/**
+ * Compact model of the resolved dependency tree. Each node which was not
+ * omitted gets an int id, ids are assigned in the order in which nodes are
+ * added. Nodes are indexed by their GAV keys and GA keys, so that kept node of
+ * any omitted node can be found. After the graph is complete, children of
+ * each node are available as an adjacency array of ids, where omitted children
+ * are already replaced by their kept nodes.
+ *
+ * The thing is that the indexed dependency tree should have resolved before
+ * all duplicates and conflicts. Therefore it can be assumed that artifact with
+ * given groupId and artifactId has only one, chosen version. Other versions can
+ * be spotted only in duplicated and conflicted nodes.
+ *
+ */
+public class DependencyGraph {
+
+	/**
+	 * Value used in adjacency arrays for children which kept node cannot be
+	 * found.
+	 */
+	public static final int NO_NODE = -1;
+
+	/**
+	 * Nodes indexed by ids.
+	 */
+	private final List<DependencyNode> nodes = new ArrayList<DependencyNode>();
+
+	/**
+	 * GAV keys of nodes indexed by ids.
+	 */
+	private final List<ArtifactKey> keys = new ArrayList<ArtifactKey>();
+
+	/**
+	 * Mapping of GAV keys to ids.
+	 */
+	private final Map<ArtifactKey, Integer> idsByKey = new HashMap<ArtifactKey, Integer>();
+
+	/**
+	 * Mapping of GA keys to ids.
+	 */
+	private final Map<ArtifactKey, Integer> idsByVersionlessKey = new HashMap<ArtifactKey, Integer>();
+
+	/**
+	 * Adjacency arrays indexed by ids, created on first request.
+	 */
+	private int[][] children = null;
+
+	/**
+	 * Adds node which was not omitted to the graph.
+	 *
+	 * @param node
+	 *            the node
+	 * @return id of the node
+	 * @throws IllegalStateException
+	 *             if other version of the same artifact was already added
+	 */
+	public int addNode(final DependencyNode node) {
+		ArtifactKey key = ArtifactKey.of(node.getArtifact());
+		ArtifactKey versionlessKey = ArtifactKey.ofNoVersion(node.getArtifact());
+		Integer previousId = idsByVersionlessKey.get(versionlessKey);
+		if (previousId != null) {
+			throw new IllegalStateException(String.format(
+					"versionsByArtifactId already contains artifact %s"
+							+ "with the following version %s and now version" + " %s is supposed to be added",
+					versionlessKey, keys.get(previousId.intValue()), key));
+		}
+		int id = nodes.size();
+		nodes.add(node);
+		keys.add(key);
+		idsByKey.put(key, Integer.valueOf(id));
+		idsByVersionlessKey.put(versionlessKey, Integer.valueOf(id));
+		children = null;
+		return id;
+	}
+
+	/**
+	 * @return number of nodes in the graph.
+	 */
+	public int size() {
+		return nodes.size();
+	}
+
+	/**
+	 * @param id
+	 *            id of the node
+	 * @return node with given id
+	 */
+	public DependencyNode getNode(final int id) {
+		return nodes.get(id);
+	}
+
+	/**
+	 * @param id
+	 *            id of the node
+	 * @return GAV key of node with given id
+	 */
+	public ArtifactKey getKey(final int id) {
+		return keys.get(id);
+	}
+
+	/**
+	 * @return all nodes in the order of their ids.
+	 */
+	public List<DependencyNode> getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Gets id of node with given GAV key.
+	 *
+	 * @param key
+	 *            GAV key
+	 * @return id of the node or NO_NODE if there is no such node
+	 */
+	public int getId(final ArtifactKey key) {
+		Integer id = idsByKey.get(key);
+		return id == null ? NO_NODE : id.intValue();
+	}
+
+	/**
+	 * Finds kept node for given artifact of omitted node. Kept node is looked
+	 * up by GAV key and if it is not found, by GA key. The latter is needed
+	 * if a conflicting dependency was overridden with other conflicting
+	 * dependency e.g. having mw.data.representation in versions 0.3.1, 0.3.2,
+	 * 1.0.0 (resolved version) can impose that 0.3.1 is conflicted with 0.3.2.
+	 *
+	 * @param keptArtifact
+	 *            related artifact of omitted node
+	 * @return id of the kept node or NO_NODE if it cannot be found
+	 */
+	public int findKeptNode(final Artifact keptArtifact) {
+		Integer id = idsByKey.get(ArtifactKey.of(keptArtifact));
+		if (id == null) {
+			id = idsByVersionlessKey.get(ArtifactKey.ofNoVersion(keptArtifact));
+		}
+		return id == null ? NO_NODE : id.intValue();
+	}
+
+	/**
+	 * Gets ids of children of given node, in the order of children of the
+	 * DependencyNode. Omitted children are represented by ids of their kept
+	 * nodes (or NO_NODE if kept node cannot be found), the rest by their own
+	 * ids.
+	 *
+	 * @param id
+	 *            id of the node
+	 * @return adjacency array of the node
+	 */
+	public int[] getChildren(final int id) {
+		if (children == null) {
+			children = buildAdjacency();
+		}
+		return children[id];
+	}
+
+	/**
+	 * Builds adjacency arrays of all nodes.
+	 *
+	 * @return adjacency arrays indexed by ids
+	 */
+	private int[][] buildAdjacency() {
+		int[][] adjacency = new int[nodes.size()][];
+		for (int i = 0; i < adjacency.length; i++) {
+			List nodeChildren = nodes.get(i).getChildren();
+			int[] ids = new int[nodeChildren.size()];
+			int j = 0;
+			for (Object childObj : nodeChildren) {
+				DependencyNode child = (DependencyNode) childObj;
+				switch (child.getState()) {
+				case DependencyNode.OMITTED_FOR_DUPLICATE:
+				case DependencyNode.OMITTED_FOR_CONFLICT:
+					ids[j] = child.getRelatedArtifact() == null ? NO_NODE : findKeptNode(child.getRelatedArtifact());
+					break;
+				default:
+					ids[j] = getId(ArtifactKey.of(child.getArtifact()));
+				}
+				j++;
+			}
+			adjacency[i] = ids;
+		}
+		return adjacency;
+	}
+}
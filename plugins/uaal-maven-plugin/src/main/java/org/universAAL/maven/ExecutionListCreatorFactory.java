@@ -0,0 +1,198 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven;
+
+import java.io.File;
+import java.util.List;
+
+import org.apache.maven.artifact.factory.ArtifactFactory;
+import org.apache.maven.artifact.metadata.ArtifactMetadataSource;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.resolver.ArtifactResolver;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProjectBuilder;
+import org.universAAL.maven.treebuilder.ExecutionListCreator;
+import org.universAAL.maven.treebuilder.MetadataCache;
+import org.universAAL.maven.treebuilder.PomModelMemo;
+import org.universAAL.maven.treebuilder.RepositoryRouter;
+import org.universAAL.maven.treebuilder.RuntimeProfileCache;
+
+/**
+ * Creates ExecutionListCreators configured by the parameters shared by the
+ * goals which create execution lists (metadataCacheTtl, repositoryRoutes,
+ * treeCache, autoStartLevels, bundleWiring, ...). The POM model memo and the
+ * metadata cache of the maven session are used. Repository router and cache
+ * of runtime profiles are created once, so all creators of one factory (e.g.
+ * of all projects of the reactor) share them.
+ *
+ */
+final class ExecutionListCreatorFactory {
+
+	private final Log log;
+
+	private final MavenSession session;
+
+	private final ArtifactMetadataSource artifactMetadataSource;
+
+	private final ArtifactFactory artifactFactory;
+
+	private final MavenProjectBuilder mavenProjectBuilder;
+
+	private final ArtifactRepository localRepository;
+
+	private final ArtifactResolver artifactResolver;
+
+	private final String throwExceptionOnConflictStr;
+
+	private final StartSpec[] startSpecs;
+
+	private final int resolutionThreads;
+
+	private final MetadataCache metadataCache;
+
+	private RepositoryRouter repositoryRouter = null;
+
+	private RuntimeProfileCache runtimeProfileCache = null;
+
+	private boolean autoStartLevels = false;
+
+	private int autoStartLevelBase = 0;
+
+	/**
+	 * Mode of the bundle wiring: off, warn or fail.
+	 */
+	private String bundleWiring = "off";
+
+	private String systemPackages = null;
+
+	/**
+	 * Creates factory of ExecutionListCreators for a goal executed in given
+	 * session, the rest of the arguments is passed to the creators.
+	 */
+	ExecutionListCreatorFactory(final Log log, final MavenSession session,
+			final ArtifactMetadataSource artifactMetadataSource, final ArtifactFactory artifactFactory,
+			final MavenProjectBuilder mavenProjectBuilder, final ArtifactRepository localRepository,
+			final ArtifactResolver artifactResolver, final String throwExceptionOnConflictStr,
+			final StartSpec[] startSpecs, final int resolutionThreads) {
+		this.log = log;
+		this.session = session;
+		this.artifactMetadataSource = artifactMetadataSource;
+		this.artifactFactory = artifactFactory;
+		this.mavenProjectBuilder = mavenProjectBuilder;
+		this.localRepository = localRepository;
+		this.artifactResolver = artifactResolver;
+		this.throwExceptionOnConflictStr = throwExceptionOnConflictStr;
+		this.startSpecs = startSpecs;
+		this.resolutionThreads = resolutionThreads;
+		this.metadataCache = MetadataCache.forSession(session);
+	}
+
+	/**
+	 * Persists the metadata cache of the session in the local repository.
+	 *
+	 * @param metadataCacheTtl
+	 *            time to live of persisted entries in minutes, 0 or less if
+	 *            the cache should not be persisted
+	 */
+	void setMetadataCacheTtl(final int metadataCacheTtl) {
+		if (metadataCacheTtl > 0) {
+			metadataCache.persistIn(new File(localRepository.getBasedir(), MetadataCache.CACHE_FILE_NAME),
+					metadataCacheTtl * 60000L);
+		}
+	}
+
+	/**
+	 * Sets rules of the repository router.
+	 *
+	 * @param repositoryRoutes
+	 *            the rules, if null or blank lookups are not routed
+	 */
+	void setRepositoryRoutes(final String repositoryRoutes) {
+		if (repositoryRoutes != null && repositoryRoutes.trim().length() != 0) {
+			repositoryRouter = new RepositoryRouter(repositoryRoutes, localRepository, log);
+		}
+	}
+
+	/**
+	 * Turns on cache of runtime profiles.
+	 *
+	 * @param treeCache
+	 *            true if the runtime profiles should be cached
+	 */
+	void setTreeCache(final boolean treeCache) {
+		runtimeProfileCache = treeCache ? new RuntimeProfileCache(localRepository, session, log) : null;
+	}
+
+	/**
+	 * Sets assignment of start levels, see
+	 * ExecutionListCreator.setAutoStartLevels.
+	 */
+	void setAutoStartLevels(final boolean autoStartLevels, final int autoStartLevelBase) {
+		this.autoStartLevels = autoStartLevels;
+		this.autoStartLevelBase = autoStartLevelBase;
+	}
+
+	/**
+	 * Sets resolution of the package-level wiring of bundles.
+	 *
+	 * @param bundleWiring
+	 *            off, warn or fail
+	 * @param systemPackages
+	 *            comma separated packages provided by the framework, can be
+	 *            null
+	 */
+	void setBundleWiring(final String bundleWiring, final String systemPackages) {
+		this.bundleWiring = bundleWiring;
+		this.systemPackages = systemPackages;
+	}
+
+	/**
+	 * Creates configured ExecutionListCreator.
+	 *
+	 * @param remoteRepositories
+	 *            remote repositories of the resolution
+	 * @param wiringFile
+	 *            file to which the bundle wiring is written, used only if the
+	 *            wiring is resolved
+	 * @return the creator
+	 */
+	ExecutionListCreator create(final List remoteRepositories, final File wiringFile) {
+		ExecutionListCreator execListCreator = new ExecutionListCreator(log, artifactMetadataSource,
+				artifactFactory, mavenProjectBuilder, localRepository, remoteRepositories, artifactResolver,
+				throwExceptionOnConflictStr, startSpecs);
+		execListCreator.setResolutionThreads(resolutionThreads);
+		execListCreator.setPomModelMemo(PomModelMemo.forSession(session));
+		execListCreator.setMetadataCache(metadataCache);
+		execListCreator.setRepositoryRouter(repositoryRouter);
+		execListCreator.setRuntimeProfileCache(runtimeProfileCache);
+		execListCreator.setAutoStartLevels(autoStartLevels, autoStartLevelBase);
+		if (!"off".equals(bundleWiring)) {
+			BundleWiringResolver wiringResolver = new BundleWiringResolver(log, artifactFactory, artifactResolver,
+					localRepository);
+			wiringResolver.setFailOnUnsatisfied("fail".equals(bundleWiring));
+			wiringResolver.addSystemPackages(systemPackages);
+			wiringResolver.setWiringFile(wiringFile);
+			execListCreator.setBundleWiringResolver(wiringResolver);
+		}
+		return execListCreator;
+	}
+}
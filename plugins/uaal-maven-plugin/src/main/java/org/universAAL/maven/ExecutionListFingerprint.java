@@ -0,0 +1,464 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Fingerprint of inputs of an execution list: the project POM and its parent
+ * chain, provisions, StartSpecs, flags and timestamps of SNAPSHOT artifacts
+ * in the local repository. The fingerprint is stored in the target directory
+ * together with the created execution lists. If the fingerprint of the next
+ * build is the same, stored lists can be reused without resolving anything.
+ *
+ * Remote repositories are not checked, so SNAPSHOTs deployed remotely since
+ * the last build are not noticed until they get to the local repository.
+ *
+ */
+public class ExecutionListFingerprint {
+
+	/**
+	 * Version of the format of fingerprint files.
+	 */
+	private static final String FORMAT = "1";
+
+	private static final String FINGERPRINT_KEY = "fingerprint";
+
+	private static final String SNAPSHOT_PREFIX = "snapshot.";
+
+	private static final String LIST_PREFIX = "list.";
+
+	/**
+	 * File in which the fingerprint is stored.
+	 */
+	private final File file;
+
+	/**
+	 * Maven local repository.
+	 */
+	private final ArtifactRepository localRepository;
+
+	/**
+	 * Digest of all inputs added so far.
+	 */
+	private final MessageDigest digest;
+
+	/**
+	 * Directories of watched SNAPSHOT artifacts relative to the local
+	 * repository.
+	 */
+	private final List<String> watchedSnapshots = new ArrayList<String>();
+
+	/**
+	 * Lists which will be stored with the fingerprint.
+	 */
+	private final Map<String, List<String>> lists = new LinkedHashMap<String, List<String>>();
+
+	/**
+	 * Fingerprint loaded from the file, null if it was not loaded yet.
+	 */
+	private Properties stored = null;
+
+	/**
+	 * Constructor of ExecutionListFingerprint. Version of the plugin is always
+	 * included in the fingerprint.
+	 *
+	 * @param file
+	 *            file in which the fingerprint is stored
+	 * @param localRepository
+	 *            maven local repository
+	 */
+	public ExecutionListFingerprint(final File file, final ArtifactRepository localRepository) {
+		this.file = file;
+		this.localRepository = localRepository;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		addValue("format", FORMAT);
+		CodeSource codeSource = getClass().getProtectionDomain().getCodeSource();
+		if (codeSource != null && codeSource.getLocation() != null) {
+			URL location = codeSource.getLocation();
+			addValue("plugin", location + ":" + new File(location.getPath()).lastModified());
+		}
+	}
+
+	/**
+	 * Adds named value to the fingerprint.
+	 *
+	 * @param name
+	 *            name of the value
+	 * @param value
+	 *            the value, can be null
+	 */
+	public void addValue(final String name, final Object value) {
+		update(name + "=" + value + "\n");
+	}
+
+	/**
+	 * Adds named array of values to the fingerprint.
+	 *
+	 * @param name
+	 *            name of the values
+	 * @param values
+	 *            the values, can be null
+	 */
+	public void addValues(final String name, final Object[] values) {
+		if (values == null) {
+			addValue(name, null);
+			return;
+		}
+		addValue(name, Integer.valueOf(values.length));
+		for (int i = 0; i < values.length; i++) {
+			addValue(name + "." + i, values[i]);
+		}
+	}
+
+	/**
+	 * Adds ids and urls of given repositories to the fingerprint.
+	 *
+	 * @param name
+	 *            name of the repositories
+	 * @param repositories
+	 *            the repositories, can be null
+	 */
+	public void addRepositories(final String name, final List repositories) {
+		if (repositories == null) {
+			addValue(name, null);
+			return;
+		}
+		addValue(name, Integer.valueOf(repositories.size()));
+		int i = 0;
+		for (Object repoObj : repositories) {
+			ArtifactRepository repo = (ArtifactRepository) repoObj;
+			addValue(name + "." + i++, repo.getId() + "=" + repo.getUrl());
+		}
+	}
+
+	/**
+	 * Adds content of given file to the fingerprint.
+	 *
+	 * @param name
+	 *            name of the file in the fingerprint
+	 * @param contentFile
+	 *            the file, can be null
+	 * @throws IOException
+	 *             when the file cannot be read
+	 */
+	public void addFile(final String name, final File contentFile) throws IOException {
+		if (contentFile == null || !contentFile.isFile()) {
+			addValue(name, null);
+			return;
+		}
+		addValue(name, Long.valueOf(contentFile.length()));
+		InputStream in = new FileInputStream(contentFile);
+		try {
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Adds POM of given project and POMs of all its parents to the
+	 * fingerprint. SNAPSHOT dependencies declared by the project are watched.
+	 *
+	 * @param project
+	 *            the project
+	 * @throws IOException
+	 *             when a POM cannot be read
+	 */
+	public void addProject(final MavenProject project) throws IOException {
+		MavenProject current = project;
+		int depth = 0;
+		while (current != null) {
+			addValue("project." + depth, current.getId());
+			addFile("pom." + depth, current.getFile());
+			current = current.getParent();
+			depth++;
+		}
+		if (project.getDependencies() != null) {
+			for (Object depObj : project.getDependencies()) {
+				Dependency dep = (Dependency) depObj;
+				watchSnapshot(dep.getGroupId(), dep.getArtifactId(), dep.getVersion());
+			}
+		}
+	}
+
+	/**
+	 * Watches SNAPSHOT artifacts of given mvn urls. Timestamps of watched
+	 * artifacts in the local repository are stored with the fingerprint and
+	 * the fingerprint is not up to date anymore if any of them changes.
+	 *
+	 * @param mvnUrls
+	 *            mvn urls, possibly with wrap: prefix and start options
+	 * @param excluded
+	 *            artifact which should not be watched (e.g. the artifact of
+	 *            the project itself which is installed by the build), can be
+	 *            null
+	 */
+	public void watchSnapshots(final List<String> mvnUrls, final Artifact excluded) {
+		for (String mvnUrl : mvnUrls) {
+			String url = mvnUrl;
+			if (url.startsWith("wrap:")) {
+				url = url.substring("wrap:".length());
+			}
+			if (!url.startsWith("mvn:")) {
+				continue;
+			}
+			url = url.substring("mvn:".length());
+			if (url.indexOf('@') != -1) {
+				url = url.substring(0, url.indexOf('@'));
+			}
+			String[] elems = url.split("/");
+			if (elems.length < 3) {
+				continue;
+			}
+			if (excluded != null && elems[0].equals(excluded.getGroupId())
+					&& elems[1].equals(excluded.getArtifactId())) {
+				continue;
+			}
+			watchSnapshot(elems[0], elems[1], elems[2]);
+		}
+	}
+
+	/**
+	 * Sets list which will be stored with the fingerprint.
+	 *
+	 * @param name
+	 *            name of the list
+	 * @param list
+	 *            the list
+	 */
+	public void putList(final String name, final List<String> list) {
+		lists.put(name, new ArrayList<String>(list));
+	}
+
+	/**
+	 * Gets list stored with the fingerprint of the previous build.
+	 *
+	 * @param name
+	 *            name of the list
+	 * @return the list or null if there is no such list
+	 */
+	public List<String> getStoredList(final String name) {
+		Properties props = load();
+		String sizeStr = props.getProperty(LIST_PREFIX + name);
+		if (sizeStr == null) {
+			return null;
+		}
+		List<String> list = new ArrayList<String>();
+		try {
+			int size = Integer.parseInt(sizeStr);
+			for (int i = 0; i < size; i++) {
+				String element = props.getProperty(LIST_PREFIX + name + "." + i);
+				if (element == null) {
+					return null;
+				}
+				list.add(element);
+			}
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		return list;
+	}
+
+	/**
+	 * Checks if the fingerprint is the same as the fingerprint stored by the
+	 * previous build and SNAPSHOT artifacts watched by the previous build did
+	 * not change.
+	 *
+	 * @return true if the stored execution lists can be reused
+	 */
+	public boolean isUpToDate() {
+		Properties props = load();
+		if (!getFingerprint().equals(props.getProperty(FINGERPRINT_KEY))) {
+			return false;
+		}
+		for (Map.Entry<Object, Object> entry : props.entrySet()) {
+			String key = (String) entry.getKey();
+			if (key.startsWith(SNAPSHOT_PREFIX)) {
+				String dir = key.substring(SNAPSHOT_PREFIX.length());
+				if (!getSnapshotStamp(dir).equals(entry.getValue())) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Stores the fingerprint, timestamps of watched SNAPSHOT artifacts and
+	 * lists in the fingerprint file.
+	 *
+	 * @throws IOException
+	 *             when the file cannot be written
+	 */
+	public void store() throws IOException {
+		Properties props = new Properties();
+		props.setProperty(FINGERPRINT_KEY, getFingerprint());
+		for (String dir : watchedSnapshots) {
+			props.setProperty(SNAPSHOT_PREFIX + dir, getSnapshotStamp(dir));
+		}
+		for (Map.Entry<String, List<String>> list : lists.entrySet()) {
+			props.setProperty(LIST_PREFIX + list.getKey(), String.valueOf(list.getValue().size()));
+			int i = 0;
+			for (String element : list.getValue()) {
+				props.setProperty(LIST_PREFIX + list.getKey() + "." + i++, element);
+			}
+		}
+		file.getParentFile().mkdirs();
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+		try {
+			props.store(out, "uAAL execution list fingerprint");
+		} finally {
+			out.close();
+		}
+		stored = props;
+	}
+
+	/**
+	 * Removes the fingerprint file, so that the next build creates execution
+	 * lists again.
+	 */
+	public void invalidate() {
+		file.delete();
+		stored = new Properties();
+	}
+
+	private void watchSnapshot(final String groupId, final String artifactId, final String version) {
+		if (version == null || !version.endsWith(Artifact.SNAPSHOT_VERSION)) {
+			return;
+		}
+		String dir = groupId.replace('.', '/') + "/" + artifactId + "/" + version;
+		if (!watchedSnapshots.contains(dir)) {
+			watchedSnapshots.add(dir);
+		}
+	}
+
+	/**
+	 * Calculates stamp of SNAPSHOT artifact directory in the local repository
+	 * from its jars and POMs. Other files (metadata of remote repositories)
+	 * are changed also by update checks, so they are not taken into account.
+	 *
+	 * @param dir
+	 *            directory relative to the local repository
+	 * @return the stamp
+	 */
+	private String getSnapshotStamp(final String dir) {
+		File[] files = new File(localRepository.getBasedir(), dir).listFiles();
+		if (files == null) {
+			return "missing";
+		}
+		long lastModified = 0;
+		long size = 0;
+		int count = 0;
+		for (File artifactFile : files) {
+			String name = artifactFile.getName();
+			if (name.endsWith(".jar") || name.endsWith(".pom")) {
+				lastModified = Math.max(lastModified, artifactFile.lastModified());
+				size += artifactFile.length();
+				count++;
+			}
+		}
+		return lastModified + ":" + size + ":" + count;
+	}
+
+	/**
+	 * Gets hex encoded digest of everything added to the fingerprint so far.
+	 * Timestamps of watched SNAPSHOT artifacts are not included.
+	 *
+	 * @return the digest
+	 */
+	public String getFingerprint() {
+		MessageDigest copy;
+		try {
+			copy = (MessageDigest) digest.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+		StringBuilder hex = new StringBuilder();
+		for (byte b : copy.digest()) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+
+	private void update(final String str) {
+		try {
+			digest.update(str.getBytes("UTF-8"));
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Loads the fingerprint stored by the previous build. Missing or
+	 * unreadable file is treated as an empty one.
+	 *
+	 * @return stored properties
+	 */
+	private Properties load() {
+		if (stored != null) {
+			return stored;
+		}
+		stored = new Properties();
+		if (file.isFile()) {
+			try {
+				InputStream in = new BufferedInputStream(new FileInputStream(file));
+				try {
+					stored.load(in);
+				} finally {
+					in.close();
+				}
+			} catch (IOException e) {
+				stored = new Properties();
+			}
+		}
+		return stored;
+	}
+}
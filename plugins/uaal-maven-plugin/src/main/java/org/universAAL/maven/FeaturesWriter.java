@@ -0,0 +1,372 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.artifact.Artifact;
+
+/**
+ * Writes Karaf features file of an execution list. Bundles are partitioned
+ * into features by rules mapping names of prerequisite features to groupId
+ * prefixes, e.g.:
+ *
+ * <pre>
+ * mw=org.universAAL.middleware;ont=org.universAAL.ontology
+ * </pre>
+ *
+ * Bundle matched by rules goes to the prerequisite feature of the rule with
+ * the longest groupId prefix matching its groupId. The groupIds only seed the
+ * features: if the dependency graph of the execution list is given, each
+ * prerequisite feature (in the order of the rules) also takes all not yet
+ * partitioned bundles which its bundles depend on, directly or through
+ * artifacts which are not in the list, so that e.g. third party libraries of
+ * the middleware are installed with the middleware. Walk through the graph
+ * stops at bundles of other prerequisite features, which become prerequisites
+ * of the feature, unless that would make features depend on each other.
+ * Remaining bundles go to the main feature.
+ *
+ * Prerequisite features are named by the main feature and the name of the
+ * rule (e.g. myproject-mw) and the main feature depends on all of them, so
+ * that shared subtrees like the middleware are installed as separate features
+ * before the bundles of the module. Prerequisite features which would be
+ * empty are not written.
+ *
+ * Bundles keep the launch order of the execution list within each feature.
+ * Start levels and the nostart option of the execution list are written as
+ * start-level and start attributes, wrap: prefix of jars which are not OSGi
+ * bundles is kept.
+ *
+ */
+class FeaturesWriter {
+
+	/**
+	 * Namespace of the features file, the same as used by the karaf feature
+	 * archetype.
+	 */
+	static final String NAMESPACE = "http://karaf.apache.org/xmlns/features/v1.0.0";
+
+	private File featuresFile;
+
+	/**
+	 * GroupId prefixes indexed by names of prerequisite features, in the
+	 * order of the rules.
+	 */
+	private final Map<String, List<String>> rules = new LinkedHashMap<String, List<String>>();
+
+	private final List<String> repositories = new ArrayList<String>();
+
+	private int bundles = 0;
+
+	private int features = 0;
+
+	/**
+	 * Creates writer of the features file.
+	 *
+	 * @param featuresFile
+	 *            the features file
+	 * @param rules
+	 *            rules in the form feature=groupIdPrefix,groupIdPrefix;feature=groupIdPrefix,
+	 *            can be null
+	 * @throws IllegalArgumentException
+	 *             when the rules are malformed
+	 */
+	FeaturesWriter(final File featuresFile, final String rules) {
+		this.featuresFile = featuresFile;
+		if (rules == null) {
+			return;
+		}
+		for (String rule : rules.split(";")) {
+			rule = rule.trim();
+			if (rule.length() == 0) {
+				continue;
+			}
+			int eq = rule.indexOf('=');
+			if (eq <= 0 || eq == rule.length() - 1) {
+				throw new IllegalArgumentException("Malformed feature rule \"" + rule
+						+ "\", expected feature=groupIdPrefix[,groupIdPrefix...]");
+			}
+			String feature = rule.substring(0, eq).trim();
+			List<String> prefixes = this.rules.get(feature);
+			if (prefixes == null) {
+				prefixes = new ArrayList<String>();
+				this.rules.put(feature, prefixes);
+			}
+			for (String prefix : rule.substring(eq + 1).split(",")) {
+				if (prefix.trim().length() != 0) {
+					prefixes.add(prefix.trim());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds feature repositories referenced by the features file, e.g. the
+	 * repository of the uAAL karaf feature.
+	 *
+	 * @param urls
+	 *            comma separated urls of repositories, can be null
+	 */
+	void addRepositories(final String urls) {
+		if (urls == null) {
+			return;
+		}
+		for (String url : urls.split(",")) {
+			if (url.trim().length() != 0) {
+				repositories.add(url.trim());
+			}
+		}
+	}
+
+	/**
+	 * Writes features of given execution list.
+	 *
+	 * @param mvnUrls
+	 *            the execution list
+	 * @param graph
+	 *            graph of the dependency trees of the execution list, if null
+	 *            bundles are partitioned only by their groupIds
+	 * @param name
+	 *            name of the main feature
+	 * @param version
+	 *            version of the features
+	 * @param description
+	 *            description of the main feature, can be null
+	 * @throws IOException
+	 *             when the file cannot be written
+	 */
+	void write(final List<String> mvnUrls, final DependencyGraph graph, final String name, final String version,
+			final String description) throws IOException {
+		String[] owners = new String[mvnUrls.size()];
+		for (int i = 0; i < owners.length; i++) {
+			owners[i] = featureOf(mvnUrls.get(i));
+		}
+		Map<String, Set<String>> requirements = new LinkedHashMap<String, Set<String>>();
+		for (String feature : rules.keySet()) {
+			requirements.put(feature, new LinkedHashSet<String>());
+		}
+		if (graph != null) {
+			claimDependencies(mvnUrls, graph, owners, requirements);
+		}
+		Map<String, List<String>> partitions = new LinkedHashMap<String, List<String>>();
+		for (String feature : rules.keySet()) {
+			partitions.put(feature, new ArrayList<String>());
+		}
+		List<String> mainBundles = new ArrayList<String>();
+		for (int i = 0; i < owners.length; i++) {
+			if (owners[i] == null) {
+				mainBundles.add(mvnUrls.get(i));
+			} else {
+				partitions.get(owners[i]).add(mvnUrls.get(i));
+			}
+		}
+		bundles = mvnUrls.size();
+		features = 1;
+		featuresFile.getAbsoluteFile().getParentFile().mkdirs();
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(featuresFile), "UTF-8"));
+		try {
+			writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+			writer.write("<features name=\"" + ObrIndexWriter.escape(name) + "\" xmlns=\"" + NAMESPACE + "\">\n");
+			for (String repository : repositories) {
+				writer.write("\t<repository>" + ObrIndexWriter.escape(repository) + "</repository>\n");
+			}
+			List<String> prerequisites = new ArrayList<String>();
+			for (Map.Entry<String, List<String>> partition : partitions.entrySet()) {
+				if (partition.getValue().isEmpty()) {
+					continue;
+				}
+				String feature = name + "-" + partition.getKey();
+				// required features are never empty, they own the bundle which was reached
+				List<String> required = new ArrayList<String>();
+				for (String requirement : requirements.get(partition.getKey())) {
+					required.add(name + "-" + requirement);
+				}
+				writeFeature(writer, feature, version, null, required, partition.getValue());
+				prerequisites.add(feature);
+				features++;
+			}
+			writeFeature(writer, name, version, description, prerequisites, mainBundles);
+			writer.write("</features>\n");
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Writes one feature.
+	 */
+	private static void writeFeature(final Writer writer, final String name, final String version,
+			final String description, final List<String> prerequisites, final List<String> mvnUrls)
+			throws IOException {
+		writer.write("\t<feature name=\"" + ObrIndexWriter.escape(name) + "\" version=\""
+				+ ObrIndexWriter.escape(version) + "\"");
+		if (description != null) {
+			writer.write(" description=\"" + ObrIndexWriter.escape(description) + "\"");
+		}
+		writer.write(">\n");
+		for (String prerequisite : prerequisites) {
+			writer.write("\t\t<feature version=\"" + ObrIndexWriter.escape(version) + "\">"
+					+ ObrIndexWriter.escape(prerequisite) + "</feature>\n");
+		}
+		for (String mvnUrl : mvnUrls) {
+			String[] parts = mvnUrl.split("@");
+			StringBuilder bundle = new StringBuilder("\t\t<bundle");
+			for (int i = 1; i < parts.length; i++) {
+				if ("nostart".equals(parts[i])) {
+					bundle.append(" start=\"false\"");
+				} else if (parts[i].length() != 0) {
+					bundle.append(" start-level=\"").append(ObrIndexWriter.escape(parts[i])).append('"');
+				}
+			}
+			bundle.append('>').append(ObrIndexWriter.escape(parts[0])).append("</bundle>\n");
+			writer.write(bundle.toString());
+		}
+		writer.write("\t</feature>\n");
+	}
+
+	/**
+	 * Moves bundles of the main feature which bundles of prerequisite features
+	 * depend on to these features and records requirements between the
+	 * prerequisite features.
+	 *
+	 * @param owners
+	 *            features of the bundles of the list, null for the main
+	 *            feature
+	 * @param requirements
+	 *            prerequisite features required by each prerequisite feature
+	 */
+	private void claimDependencies(final List<String> mvnUrls, final DependencyGraph graph, final String[] owners,
+			final Map<String, Set<String>> requirements) {
+		Map<String, Integer> indexesByLocation = new HashMap<String, Integer>();
+		for (int i = 0; i < mvnUrls.size(); i++) {
+			indexesByLocation.put(locationOf(mvnUrls.get(i)), Integer.valueOf(i));
+		}
+		int[] indexesById = new int[graph.size()];
+		for (int id = 0; id < graph.size(); id++) {
+			Artifact artifact = graph.getNode(id).getArtifact();
+			Integer index = indexesByLocation.get(String.format("mvn:%s/%s/%s", artifact.getGroupId(),
+					artifact.getArtifactId(), artifact.getVersion()));
+			indexesById[id] = index == null ? -1 : index.intValue();
+		}
+		for (String feature : rules.keySet()) {
+			boolean[] visited = new boolean[graph.size()];
+			List<Integer> pending = new ArrayList<Integer>();
+			for (int id = 0; id < graph.size(); id++) {
+				if (indexesById[id] >= 0 && feature.equals(owners[indexesById[id]])) {
+					visited[id] = true;
+					pending.add(Integer.valueOf(id));
+				}
+			}
+			while (!pending.isEmpty()) {
+				for (int child : graph.getChildren(pending.remove(pending.size() - 1).intValue())) {
+					if (child == DependencyGraph.NO_NODE || visited[child]) {
+						continue;
+					}
+					visited[child] = true;
+					int index = indexesById[child];
+					if (index >= 0 && owners[index] == null) {
+						owners[index] = feature;
+					} else if (index >= 0) {
+						if (!requires(owners[index], feature, requirements)) {
+							requirements.get(feature).add(owners[index]);
+						}
+						continue;
+					}
+					pending.add(Integer.valueOf(child));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks if feature requires other feature, directly or through other
+	 * prerequisite features. Every feature requires itself.
+	 */
+	private static boolean requires(final String feature, final String required,
+			final Map<String, Set<String>> requirements) {
+		if (feature.equals(required)) {
+			return true;
+		}
+		for (String prerequisite : requirements.get(feature)) {
+			if (requires(prerequisite, required, requirements)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Strips wrap: prefix and options of given url of the execution list.
+	 */
+	private static String locationOf(final String mvnUrl) {
+		String url = mvnUrl.startsWith("wrap:") ? mvnUrl.substring("wrap:".length()) : mvnUrl;
+		int options = url.indexOf('@');
+		return options < 0 ? url : url.substring(0, options);
+	}
+
+	/**
+	 * Finds prerequisite feature of given bundle.
+	 *
+	 * @return name of the rule with the longest groupId prefix matching
+	 *         groupId of the bundle or null if the bundle belongs to the main
+	 *         feature
+	 */
+	private String featureOf(final String mvnUrl) {
+		String url = locationOf(mvnUrl);
+		if (!url.startsWith("mvn:")) {
+			return null;
+		}
+		String groupId = url.substring("mvn:".length()).split("/")[0];
+		String feature = null;
+		int longest = -1;
+		for (Map.Entry<String, List<String>> rule : rules.entrySet()) {
+			for (String prefix : rule.getValue()) {
+				if (groupId.startsWith(prefix) && prefix.length() > longest) {
+					feature = rule.getKey();
+					longest = prefix.length();
+				}
+			}
+		}
+		return feature;
+	}
+
+	/**
+	 * Returns summary of the last run.
+	 *
+	 * @return the summary.
+	 */
+	@Override
+	public String toString() {
+		return String.format("Features file %s: %d bundles in %d features", featuresFile, bundles, features);
+	}
+}
@@ -55,7 +55,7 @@ public abstract class FilteringVisitorSupport {
 	/**
 	 * Set for remembering visited nodes.
 	 */
-	private final Set<String> visited = new HashSet<String>();
+	private final Set<ArtifactKey> visited = new HashSet<ArtifactKey>();
 
 	/**
 	 * Stringify Artifact to string a in a following way:
@@ -120,7 +120,7 @@ public abstract class FilteringVisitorSupport {
 	 * @return true is node was visited
 	 */
 	protected final boolean wasVisited(final DependencyNode node) {
-		return visited.contains(stringify(node));
+		return visited.contains(ArtifactKey.of(node.getArtifact()));
 	}
 
 	/**
@@ -157,11 +157,11 @@ public abstract class FilteringVisitorSupport {
 	}
 
 	/**
-	 * Gets set of visited nodes. Each node is in stringified representation.
+	 * Gets set of visited nodes. Each node is represented by its GAV key.
 	 *
 	 * @return set of visited nodess
 	 */
-	protected final Set<String> getVisited() {
+	protected final Set<ArtifactKey> getVisited() {
 		return visited;
 	}
 
@@ -0,0 +1,218 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * Storage of the OSGi framework kept between executions of the run goal.
+ * The storage directory is named by the fingerprint of the execution list and
+ * of the pax-runner arguments, so the framework is started from its persisted
+ * state only if it is provisioned with the same bundles. SNAPSHOT bundles
+ * are watched as well, if any of them changes in the local repository the
+ * storage is created again.
+ *
+ * The storage is passed to maven-pax-plugin by an args file which contains
+ * the original arguments extended with workingDirectory and
+ * usePersistedState options of pax-runner. Only the storage of the last
+ * execution list is kept.
+ *
+ */
+class FrameworkCache {
+
+	/**
+	 * Name of the args file created in the storage directory.
+	 */
+	static final String ARGS_FILE = "pax.args";
+
+	/**
+	 * Name of the file in the cache directory to which fingerprint of the
+	 * storage is stored.
+	 */
+	private static final String FINGERPRINT_FILE = "framework.fingerprint";
+
+	/**
+	 * Name of the pax-runner working directory in the storage directory.
+	 */
+	private static final String WORKING_DIRECTORY = "runner";
+
+	/**
+	 * Options of pax-runner which are set by the cache.
+	 */
+	private static final String[] OVERRIDDEN_OPTIONS = { "--workingDirectory", "--usePersistedState" };
+
+	private File cacheDirectory;
+
+	private File baseDirectory;
+
+	private ArtifactRepository localRepository;
+
+	private Log log;
+
+	/**
+	 * Creates cache placed in given directory.
+	 *
+	 * @param cacheDirectory
+	 *            directory in which storages are placed
+	 * @param baseDirectory
+	 *            base directory of the project, relative args files are
+	 *            resolved against it
+	 * @param localRepository
+	 *            maven local repository in which SNAPSHOT bundles are watched
+	 * @param log
+	 *            log
+	 */
+	FrameworkCache(final File cacheDirectory, final File baseDirectory, final ArtifactRepository localRepository,
+			final Log log) {
+		this.cacheDirectory = cacheDirectory;
+		this.baseDirectory = baseDirectory;
+		this.localRepository = localRepository;
+		this.log = log;
+	}
+
+	/**
+	 * Prepares the storage for given execution list and writes args file
+	 * pointing to it. If the storage was created for the same list, arguments
+	 * and SNAPSHOT bundles it is reused, otherwise it is created again.
+	 *
+	 * @param mvnUrls
+	 *            the execution list
+	 * @param args
+	 *            location of the original args file (a path or an url), can
+	 *            be null
+	 * @return location of the args file which should be passed to
+	 *         maven-pax-plugin
+	 * @throws IOException
+	 *             when the storage cannot be prepared
+	 */
+	String prepare(final List<String> mvnUrls, final String args) throws IOException {
+		List<String> argLines = readArgs(args);
+		if (argLines == null) {
+			log.warn("Cannot read args " + args + ", framework storage is not reused");
+			return args;
+		}
+		ExecutionListFingerprint fingerprint = new ExecutionListFingerprint(
+				new File(cacheDirectory, FINGERPRINT_FILE), localRepository);
+		fingerprint.addValues("executionList", mvnUrls.toArray());
+		fingerprint.addValues("args", argLines.toArray());
+		fingerprint.watchSnapshots(mvnUrls, null);
+		File storage = new File(cacheDirectory, fingerprint.getFingerprint());
+		File workingDirectory = new File(storage, WORKING_DIRECTORY);
+		if (fingerprint.isUpToDate() && workingDirectory.isDirectory()) {
+			log.info("Framework storage " + storage + " is reused");
+		} else {
+			fingerprint.invalidate();
+			File[] storages = cacheDirectory.listFiles();
+			if (storages != null) {
+				for (File oldStorage : storages) {
+					if (oldStorage.isDirectory()) {
+						FileUtils.deleteDirectory(oldStorage);
+					}
+				}
+			}
+			workingDirectory.mkdirs();
+			fingerprint.store();
+			log.info("Framework storage is created in " + storage);
+		}
+		File argsFile = new File(storage, ARGS_FILE);
+		BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(argsFile), "UTF-8"));
+		try {
+			for (String line : argLines) {
+				writer.write(line);
+				writer.newLine();
+			}
+			writer.write("--workingDirectory=" + workingDirectory.getAbsolutePath());
+			writer.newLine();
+			writer.write("--usePersistedState=true");
+			writer.newLine();
+		} finally {
+			writer.close();
+		}
+		return argsFile.getAbsolutePath();
+	}
+
+	/**
+	 * Reads lines of the original args file without options set by the
+	 * cache.
+	 *
+	 * @param args
+	 *            location of the args file, can be null
+	 * @return the lines or null if the file cannot be read
+	 */
+	private List<String> readArgs(final String args) {
+		List<String> lines = new ArrayList<String>();
+		if (args == null || args.trim().length() == 0) {
+			return lines;
+		}
+		try {
+			InputStream in;
+			File argsFile = new File(args);
+			if (!argsFile.isAbsolute()) {
+				argsFile = new File(baseDirectory, args);
+			}
+			if (argsFile.isFile()) {
+				in = argsFile.toURI().toURL().openStream();
+			} else {
+				in = new URL(args).openStream();
+			}
+			BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (!isOverridden(line.trim())) {
+						lines.add(line);
+					}
+				}
+			} finally {
+				reader.close();
+			}
+			return lines;
+		} catch (MalformedURLException e) {
+			return null;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private static boolean isOverridden(final String line) {
+		for (String option : OVERRIDDEN_OPTIONS) {
+			if (line.startsWith(option)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,167 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven;
+
+import java.util.Properties;
+
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+
+/**
+ * Configuration of a goal of uaal-maven-plugin in one project, read from the
+ * build plugins of the project. Configuration of the execution of the goal
+ * is merged with configuration of the plugin, as maven does it when the goal
+ * is executed in the project. Parameters which are not configured (or are
+ * configured by an expression) are looked up by their properties in the
+ * execution properties of the session and then in the properties of the
+ * project, otherwise default values are used.
+ *
+ * It lets aggregator goals (see UaalReactorCompositeMojo) use the same
+ * parameters which the goal would get in each project.
+ *
+ */
+final class GoalConfiguration {
+
+	static final String PLUGIN_GROUP_ID = "org.universAAL.support";
+
+	static final String PLUGIN_ARTIFACT_ID = "uaal-maven-plugin";
+
+	/**
+	 * Merged configuration of the execution and the plugin, can be null.
+	 */
+	private final Xpp3Dom configuration;
+
+	private final Properties executionProperties;
+
+	private final Properties projectProperties;
+
+	private GoalConfiguration(final Xpp3Dom configuration, final Properties executionProperties,
+			final Properties projectProperties) {
+		this.configuration = configuration;
+		this.executionProperties = executionProperties;
+		this.projectProperties = projectProperties;
+	}
+
+	/**
+	 * Reads configuration of given goal in given project.
+	 *
+	 * @param project
+	 *            the project
+	 * @param goal
+	 *            the goal, e.g. composite
+	 * @param executionProperties
+	 *            execution properties of the session, can be null
+	 * @return the configuration or null if the plugin has no execution of the
+	 *         goal in the project
+	 */
+	static GoalConfiguration read(final MavenProject project, final String goal,
+			final Properties executionProperties) {
+		for (Object pluginObj : project.getBuildPlugins()) {
+			Plugin plugin = (Plugin) pluginObj;
+			if (!PLUGIN_GROUP_ID.equals(plugin.getGroupId()) || !PLUGIN_ARTIFACT_ID.equals(plugin.getArtifactId())) {
+				continue;
+			}
+			for (Object executionObj : plugin.getExecutions()) {
+				PluginExecution execution = (PluginExecution) executionObj;
+				if (!execution.getGoals().contains(goal)) {
+					continue;
+				}
+				Xpp3Dom configuration = (Xpp3Dom) execution.getConfiguration();
+				Xpp3Dom pluginConfiguration = (Xpp3Dom) plugin.getConfiguration();
+				if (configuration == null) {
+					configuration = pluginConfiguration;
+				} else if (pluginConfiguration != null) {
+					configuration = Xpp3Dom.mergeXpp3Dom(new Xpp3Dom(configuration), pluginConfiguration);
+				}
+				return new GoalConfiguration(configuration, executionProperties, project.getProperties());
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Gets value of a parameter.
+	 *
+	 * @param name
+	 *            name of the parameter
+	 * @param property
+	 *            property in the expression of the parameter, can be null
+	 * @param defaultValue
+	 *            default value of the parameter, can be null
+	 * @return the value
+	 */
+	String getValue(final String name, final String property, final String defaultValue) {
+		String value = null;
+		Xpp3Dom child = configuration == null ? null : configuration.getChild(name);
+		if (child != null && child.getValue() != null) {
+			value = child.getValue().trim();
+			if (value.startsWith("${") && value.endsWith("}")) {
+				value = getProperty(value.substring(2, value.length() - 1));
+			}
+		} else if (property != null) {
+			value = getProperty(property);
+		}
+		return value == null ? defaultValue : value;
+	}
+
+	boolean getBoolean(final String name, final String property, final boolean defaultValue) {
+		return Boolean.valueOf(getValue(name, property, String.valueOf(defaultValue))).booleanValue();
+	}
+
+	int getInt(final String name, final String property, final int defaultValue) {
+		return Integer.parseInt(getValue(name, property, String.valueOf(defaultValue)));
+	}
+
+	/**
+	 * Gets start specs configured by given parameter.
+	 *
+	 * @param name
+	 *            name of the parameter, e.g. startArtifacts
+	 * @return the start specs or null if they are not configured
+	 */
+	StartSpec[] getStartSpecs(final String name) {
+		Xpp3Dom child = configuration == null ? null : configuration.getChild(name);
+		if (child == null) {
+			return null;
+		}
+		StartSpec[] startSpecs = new StartSpec[child.getChildCount()];
+		for (int i = 0; i < startSpecs.length; i++) {
+			Xpp3Dom spec = child.getChild(i);
+			String startlevel = valueOf(spec, "startlevel");
+			startSpecs[i] = new StartSpec(valueOf(spec, "groupId"), valueOf(spec, "artifactId"),
+					startlevel == null ? null : Integer.valueOf(startlevel), Boolean.valueOf(valueOf(spec,
+							"nostart")).booleanValue());
+		}
+		return startSpecs;
+	}
+
+	private static String valueOf(final Xpp3Dom dom, final String name) {
+		Xpp3Dom child = dom.getChild(name);
+		return child == null || child.getValue() == null ? null : child.getValue().trim();
+	}
+
+	private String getProperty(final String name) {
+		String value = executionProperties == null ? null : executionProperties.getProperty(name);
+		return value != null ? value : projectProperties.getProperty(name);
+	}
+}
@@ -20,8 +20,9 @@ limitations under the License.
 */
 package org.universAAL.maven;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.shared.dependency.tree.DependencyNode;
@@ -29,8 +30,9 @@ import org.apache.maven.shared.dependency.tree.traversal.DependencyNodeVisitor;
 
 /**
  * This DepepdencyVistor traverses depedency tree in depth-first manner. All
- * nodes which were not ommited are remembered in two maps: nodesByArtifactId
- * and versionsByArtifactId. Maps are available after search is finished.
+ * nodes which were not ommited are added to DependencyGraph in the order in
+ * which their visits are ended. The graph is available after search is
+ * finished.
  *
  * @author rotgier
  *
@@ -38,22 +40,10 @@ import org.apache.maven.shared.dependency.tree.traversal.DependencyNodeVisitor;
 public class IndexingDependencyNodeVisitor extends FilteringVisitorSupport implements DependencyNodeVisitor {
 
 	/**
-	 * Mapping of stringified artifacts (groupId + artifactId + version) to
-	 * nodes in the dependency tree. Nodes contain information about children.
-	 * Duplicates of nodes are not included in the mapping.
+	 * Graph of nodes in the dependency tree. Duplicates of nodes are not
+	 * included in the graph.
 	 */
-	private Map nodesByArtifactId = new HashMap();
-
-	/**
-	 * Mapping of stringified artifacts without version (groupId + artifactId)
-	 * to stringified artifacts with version.
-	 *
-	 * The thing is that visited depedency tree should have resolved before all
-	 * duplicates and conflicts. Therefore visitor can assume that artifact with
-	 * given groupId and versionId should have only one, chosen version. Other
-	 * versions can be spotted only in duplicated and conflicted nodes.
-	 */
-	private Map versionsByArtifactId = new HashMap();
+	private DependencyGraph graph = new DependencyGraph();
 
 	/**
 	 * Constructor of IndexingDependencyNodeVisitor.
@@ -65,6 +55,41 @@ public class IndexingDependencyNodeVisitor extends FilteringVisitorSupport imple
 		super(log);
 	}
 
+	/**
+	 * Indexes subtree of given node. The result is the same as of
+	 * root.accept(this), but the tree is traversed without recursion, so the
+	 * depth of the tree is not limited by the size of the stack.
+	 *
+	 * @param root
+	 *            root of the subtree
+	 */
+	public final void index(final DependencyNode root) {
+		List<DependencyNode> nodes = new ArrayList<DependencyNode>();
+		List<Iterator> childIterators = new ArrayList<Iterator>();
+		if (!visit(root)) {
+			endVisit(root);
+			return;
+		}
+		nodes.add(root);
+		childIterators.add(root.getChildren().iterator());
+		while (!nodes.isEmpty()) {
+			int top = nodes.size() - 1;
+			Iterator childIterator = childIterators.get(top);
+			if (childIterator.hasNext()) {
+				DependencyNode child = (DependencyNode) childIterator.next();
+				if (visit(child)) {
+					nodes.add(child);
+					childIterators.add(child.getChildren().iterator());
+				} else {
+					endVisit(child);
+				}
+			} else {
+				childIterators.remove(top);
+				endVisit(nodes.remove(top));
+			}
+		}
+	}
+
 	/**
 	 * If this method returns true then it means that nodes children should be
 	 * visited. True is returned only if node is in scope and if it was not
@@ -102,22 +127,13 @@ public class IndexingDependencyNodeVisitor extends FilteringVisitorSupport imple
 	 * @return this method always returns true
 	 */
 	public final boolean endVisit(final DependencyNode node) {
-		String msg = "versionsByArtifactId already contains artifact %s"
-				+ "with the following version %s and now version" + " %s is supposed to be added";
 		if (!wasVisited(node) && isInScope(node)) {
 			switch (node.getState()) {
 			case DependencyNode.OMITTED_FOR_DUPLICATE:
 			case DependencyNode.OMITTED_FOR_CONFLICT:
 				break;
 			default:
-				String artifactStrVersionLess = stringifyNoVersion(node);
-				String artifactStr = stringify(node);
-				nodesByArtifactId.put(artifactStr, node);
-				if (versionsByArtifactId.containsKey(artifactStrVersionLess)) {
-					throw new IllegalStateException(String.format(msg, artifactStrVersionLess,
-							versionsByArtifactId.get(versionsByArtifactId), artifactStr));
-				}
-				versionsByArtifactId.put(artifactStrVersionLess, artifactStr);
+				graph.addNode(node);
 				// indexRuntimeDeps(node);
 			}
 		}
@@ -125,24 +141,13 @@ public class IndexingDependencyNodeVisitor extends FilteringVisitorSupport imple
 	}
 
 	/**
-	 * Gets mapping of stringified artifacts (groupId + artifactId + version) to
-	 * nodes in the dependency tree. Nodes contain information about children.
-	 * Duplicates of nodes are not included in the mapping.
-	 *
-	 * @return the map
-	 */
-	public final Map getNodesByArtifactId() {
-		return nodesByArtifactId;
-	}
-
-	/**
-	 * Gets mapping of stringified artifacts without version (groupId +
-	 * artifactId) to stringified artifacts with version.
+	 * Gets graph of nodes in the dependency tree. Duplicates of nodes are not
+	 * included in the graph.
 	 *
-	 * @return the map
+	 * @return the graph
 	 */
-	public final Map getVersionByArtifactId() {
-		return versionsByArtifactId;
+	public final DependencyGraph getGraph() {
+		return graph;
 	}
 
 }
@@ -20,17 +20,11 @@ limitations under the License.
 */
 package org.universAAL.maven;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.jar.Attributes;
-import java.util.jar.JarInputStream;
-import java.util.jar.Manifest;
 
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.repository.ArtifactRepository;
@@ -39,12 +33,10 @@ import org.apache.maven.artifact.resolver.ResolutionNode;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.shared.dependency.tree.DependencyNode;
 import org.apache.maven.shared.dependency.tree.traversal.DependencyNodeVisitor;
-import org.universAAL.maven.treebuilder.MyDependencyNode;
 
 /**
  * This DepepdencyVistor traverses depedency tree in depth-first manner. Visitor
- * needs two collections: nodesByArtifactId and versionsByArtifactId which map
- * respective stringified artifact representations to DependencyNodes. If
+ * needs DependencyGraph in which kept nodes of omitted nodes are looked up. If
  * visitor encounters node which was omitted, then it checks the reason for
  * omitting. If it was omitted because of duplication then visitor looks up the
  * kept node and continues traversing from it. If it was omitted because of
@@ -73,9 +65,9 @@ public class LaunchOrderDependencyNodeVisitor extends FilteringVisitorSupport im
 	private ArtifactResolver artifactResolver;
 
 	/**
-	 * Stringified representation of artifact which should not be resolved.
+	 * Key of artifact which should not be resolved.
 	 */
-	private String artifactDontResolve;
+	private ArtifactKey artifactDontResolve;
 
 	/**
 	 * If this is true than it means that the execution list is created on
@@ -91,21 +83,15 @@ public class LaunchOrderDependencyNodeVisitor extends FilteringVisitorSupport im
 	private final List mvnUrls = new ArrayList();
 
 	/**
-	 * Mapping of stringified artifacts (groupId:artifactId:version) to nodes in
-	 * the dependency tree. Nodes contain information about children. Duplicates
-	 * of nodes are not included in the mapping.
+	 * Graph of nodes in the dependency tree. Duplicates of nodes are not
+	 * included in the graph.
 	 */
-	private Map nodesByArtifactId = new HashMap();
-
-	/**
-	 * Mapping of stringified artifacts (groupId:artifactId) to its version.
-	 */
-	private Map versionsByArtifactId = new HashMap();
+	private DependencyGraph graph;
 
 	/**
 	 * Core uAAL artifacts which should be excluded from created execution list.
 	 */
-	private Set<String> stringifiedExcludedCoreArtifacts;
+	private Set<ArtifactKey> excludedCoreArtifacts;
 
 	/**
 	 * Whether exception should be thrown in case of conflict in artifact
@@ -119,19 +105,26 @@ public class LaunchOrderDependencyNodeVisitor extends FilteringVisitorSupport im
 	 */
 	private StartSpec[] startSpecs;
 
+	/**
+	 * Pipeline used for resolving artifacts and checking if they are bundles.
+	 */
+	private BundleInspectionPipeline bundleInspectionPipeline;
+
+	/**
+	 * Start levels assigned automatically to artifacts, null if start levels
+	 * are assigned only by startSpecs.
+	 */
+	private Map<ArtifactKey, Integer> autoStartLevels = null;
+
 	/**
 	 * Constructor of LaunchOrderDependencyNodeVisitor.
 	 *
 	 * @param log
 	 *            object for logging
-	 * @param nodesByArtifactId
-	 *            mapping of stringified artifacts (groupId + artifactId +
-	 *            version) to nodes in the dependency tree. Nodes contain
-	 *            information about children. Duplicates of nodes are not
-	 *            included in the mapping.
-	 * @param versionsByArtifactId
-	 *            mapping of stringified artifacts without version (groupId +
-	 *            artifactId) to stringified artifacts with version.
+	 * @param graph
+	 *            graph of nodes in the dependency tree created by
+	 *            IndexingDependencyNodeVisitor. Duplicates of nodes are not
+	 *            included in the graph.
 	 * @param throwExceptionOnConflict
 	 *            flag which turns turning exception on conflict
 	 * @param localRepository
@@ -141,22 +134,69 @@ public class LaunchOrderDependencyNodeVisitor extends FilteringVisitorSupport im
 	 * @param dontResolve
 	 *            artifact which should not be resolved
 	 */
-	public LaunchOrderDependencyNodeVisitor(final Log log, final Map nodesByArtifactId, final Map versionsByArtifactId,
+	public LaunchOrderDependencyNodeVisitor(final Log log, final DependencyGraph graph,
 			final boolean throwExceptionOnConflict, final ArtifactRepository localRepository,
 			final ArtifactResolver artifactResolver, final Artifact dontResolve, final StartSpec[] startSpecs) {
 		super(log);
 		this.localRepository = localRepository;
-		this.nodesByArtifactId = nodesByArtifactId;
-		this.versionsByArtifactId = versionsByArtifactId;
+		this.graph = graph;
 		this.throwExceptionOnConflict = throwExceptionOnConflict;
 		this.artifactResolver = artifactResolver;
 		if (dontResolve != null) {
-			this.artifactDontResolve = FilteringVisitorSupport.stringify(dontResolve);
+			this.artifactDontResolve = ArtifactKey.of(dontResolve);
 			if ("pom".equals(dontResolve.getType())) {
 				visitingOnPomBehalf = true;
 			}
 		}
 		this.startSpecs = startSpecs;
+		this.bundleInspectionPipeline = new BundleInspectionPipeline(localRepository, artifactResolver, 1);
+	}
+
+	/**
+	 * Sets pipeline used for resolving artifacts and checking if they are
+	 * bundles. By default artifacts are resolved one by one while visiting.
+	 *
+	 * @param bundleInspectionPipeline
+	 *            the pipeline
+	 */
+	public final void setBundleInspectionPipeline(final BundleInspectionPipeline bundleInspectionPipeline) {
+		this.bundleInspectionPipeline = bundleInspectionPipeline;
+	}
+
+	/**
+	 * Sets start levels assigned automatically to artifacts (see
+	 * StartLevelAssigner). Start level configured in startSpecs takes
+	 * precedence over automatically assigned one.
+	 *
+	 * @param autoStartLevels
+	 *            start levels by artifact key or null
+	 */
+	public final void setAutoStartLevels(final Map<ArtifactKey, Integer> autoStartLevels) {
+		this.autoStartLevels = autoStartLevels;
+	}
+
+	/**
+	 * Submits all nodes of the graph to the bundle inspection pipeline, so
+	 * that their artifacts are resolved and inspected before the visitor
+	 * reaches them. Nodes which would not be resolved by the visitor are
+	 * skipped.
+	 *
+	 * @param excludedArtifacts
+	 *            artifacts which will be excluded from the execution list
+	 */
+	public final void inspectInAdvance(final Set<ArtifactKey> excludedArtifacts) {
+		if (visitingOnPomBehalf) {
+			return;
+		}
+		for (int id = 0; id < graph.size(); id++) {
+			Artifact artifact = graph.getNode(id).getArtifact();
+			ArtifactKey key = graph.getKey(id);
+			if ("pom".equals(artifact.getType()) || artifact.getArtifactId().endsWith("composite")
+					|| excludedArtifacts.contains(key) || key.equals(artifactDontResolve)) {
+				continue;
+			}
+			bundleInspectionPipeline.submit(graph.getNode(id));
+		}
 	}
 
 	/**
@@ -231,17 +271,17 @@ public class LaunchOrderDependencyNodeVisitor extends FilteringVisitorSupport im
 					 * Here all core artifacts which were detected at each
 					 * RootNode are excluded.
 					 */
-					&& (!stringifiedExcludedCoreArtifacts.contains(stringify(node)))) {
+					&& (!excludedCoreArtifacts.contains(ArtifactKey.of(node.getArtifact())))) {
 				boolean shouldResolve = true;
 				Artifact artifact = node.getArtifact();
-				String nodeStr = stringify(node);
+				ArtifactKey nodeKey = ArtifactKey.of(artifact);
 				if (visitingOnPomBehalf) {
 					shouldResolve = false;
 				}
 				String mvnUrl = String.format("mvn:%s/%s/%s", artifact.getGroupId(), artifact.getArtifactId(),
 						artifact.getVersion());
 				if (artifactDontResolve != null) {
-					if (artifactDontResolve.equals(nodeStr)) {
+					if (artifactDontResolve.equals(nodeKey)) {
 						shouldResolve = false;
 						if ("jar".equals(node.getArtifact().getType())) {
 							mvnUrl = "wrap:" + mvnUrl;
@@ -249,42 +289,40 @@ public class LaunchOrderDependencyNodeVisitor extends FilteringVisitorSupport im
 					}
 				}
 				if (shouldResolve) {
-					MyDependencyNode myNode = (MyDependencyNode) node;
-					artifactResolver.resolve(artifact, myNode.getRemoteRepositories(), localRepository);
-					File localRepoBaseDir = new File(localRepository.getBasedir());
-					File jarPath = new File(localRepoBaseDir, localRepository.pathOf(node.getArtifact()));
-					JarInputStream jio = new JarInputStream(new FileInputStream(jarPath));
-					Manifest manifest = jio.getManifest();
-					Object bundleManifestVersion = null;
-					if (manifest != null) {
-						Attributes attribs = manifest.getMainAttributes();
-						bundleManifestVersion = attribs.getValue("Bundle-ManifestVersion");
-					}
-					if (manifest == null || bundleManifestVersion == null) {
+					if (!bundleInspectionPipeline.isBundle(node)) {
 						// it means that the jar is not a bundle - it has to be
 						// wrapped before installation in OSGi container
 						mvnUrl = "wrap:" + mvnUrl;
 					}
-					jio.close();
 				}
 
 				// customizing starting of bundles configured in pom file
+				String startOptions = "";
+				boolean levelSpecified = false;
 				if (startSpecs != null) {
 					for (StartSpec s : startSpecs) {
 						if (artifact.getGroupId().equals(s.getGroupId())
 								&& artifact.getArtifactId().equals(s.getArtifactId())) {
 							Integer level = s.getStartlevel();
 							if (level != null) {
-								mvnUrl += "@" + level;
+								startOptions += "@" + level;
+								levelSpecified = true;
 							}
 							if (s.isNostart()) {
-								mvnUrl += "@nostart";
+								startOptions += "@nostart";
 							}
 						}
 					}
 				}
+				if (!levelSpecified && autoStartLevels != null) {
+					Integer level = autoStartLevels.get(nodeKey);
+					if (level != null) {
+						mvnUrl += "@" + level;
+					}
+				}
+				mvnUrl += startOptions;
 
-				getVisited().add(stringify(node));
+				getVisited().add(nodeKey);
 				mvnUrls.add(mvnUrl);
 			}
 		} catch (RuntimeException e) {
@@ -294,6 +332,37 @@ public class LaunchOrderDependencyNodeVisitor extends FilteringVisitorSupport im
 		}
 	}
 
+	/**
+	 * Gets node which was kept instead of given omitted node. If the node was
+	 * omitted because of conflict, exception is thrown if
+	 * throwExceptionOnConflict property is true.
+	 *
+	 * @param node
+	 *            omitted node
+	 * @return the kept node
+	 */
+	final DependencyNode getKeptNode(final DependencyNode node) {
+		Artifact keptArtifact = node.getRelatedArtifact();
+		if (keptArtifact == null) {
+			throw new RuntimeException("keptArtifact of ommited artifact is null: " + node.getArtifact());
+		}
+		/*
+		 * keptNode is looked up also by groupId and artifactId, because
+		 * dependency could be conflicted and overridden with other conflicting
+		 * dependency. This can happen in both CONFLICT and DUPLICATE state.
+		 */
+		int keptId = graph.findKeptNode(keptArtifact);
+		if (keptId == DependencyGraph.NO_NODE) {
+			throw new IllegalStateException("Cannot find keptNode\n" + "check: " + stringifyNoVersion(keptArtifact));
+		}
+		DependencyNode keptNode = graph.getNode(keptId);
+		if (node.getState() == DependencyNode.OMITTED_FOR_CONFLICT) {
+			throwConflictException(node, keptNode,
+					"There is a conflict between kept dependency " + "%s and omitted dependency %s");
+		}
+		return keptNode;
+	}
+
 	/**
 	 * If this method returns true then it means that nodes children should be
 	 * visited. True is returned only if node is in scope and if it was not
@@ -317,37 +386,7 @@ public class LaunchOrderDependencyNodeVisitor extends FilteringVisitorSupport im
 			switch (node.getState()) {
 			case DependencyNode.OMITTED_FOR_CONFLICT:
 			case DependencyNode.OMITTED_FOR_DUPLICATE:
-				Artifact keptArtifact = node.getRelatedArtifact();
-				if (keptArtifact == null) {
-					throw new RuntimeException("keptArtifact of ommited artifact is null: " + node.getArtifact());
-				}
-				DependencyNode keptNode = (DependencyNode) nodesByArtifactId
-						.get(FilteringVisitorSupport.stringify(keptArtifact));
-				if (keptNode == null) {
-					/*
-					 * keptNode can be null if dependency was conflicted and was
-					 * overridden with other conflicting dependency e.g. having
-					 * mw.data.representation in versions 0.3.1, 0.3.2,
-					 * 1.0.0(resolved version) can impose that 0.3.1 is
-					 * conflicted with 0.3.2
-					 *
-					 * This can happen in both CONFLICT and DUPLICATE state. So
-					 * to overcome this the versionsByArtifactId mapping is
-					 * used.
-					 */
-					keptNode = (DependencyNode) nodesByArtifactId
-							.get(versionsByArtifactId.get(stringifyNoVersion(keptArtifact)));
-				}
-				if (keptNode == null) {
-					throw new IllegalStateException(
-							"Cannot find keptNode\n" + "check: " + stringifyNoVersion(keptArtifact));
-				}
-				if (node.getState() == DependencyNode.OMITTED_FOR_CONFLICT) {
-					throwConflictException(node, keptNode,
-							"There is a conflict between kept dependency " + "%s and omitted dependency %s");
-				}
-
-				keptNode.accept(this);
+				getKeptNode(node).accept(this);
 				return false;
 			default:
 				break;
@@ -405,9 +444,9 @@ public class LaunchOrderDependencyNodeVisitor extends FilteringVisitorSupport im
 	 *            list of artifacts to be excluded.
 	 */
 	public final void setExcludedCoreArtifacts(final List<ResolutionNode> excludedCoreArtifacts) {
-		stringifiedExcludedCoreArtifacts = new HashSet<String>();
+		this.excludedCoreArtifacts = new HashSet<ArtifactKey>();
 		for (ResolutionNode resolutionNode : excludedCoreArtifacts) {
-			stringifiedExcludedCoreArtifacts.add(stringify(resolutionNode.getArtifact()));
+			this.excludedCoreArtifacts.add(ArtifactKey.of(resolutionNode.getArtifact()));
 		}
 	}
 
@@ -0,0 +1,167 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven;
+
+import java.util.BitSet;
+
+import org.apache.maven.shared.dependency.tree.DependencyNode;
+
+/**
+ * Engine which emits launch order of bundles from DependencyGraph. It produces
+ * exactly the same execution list as traversing the dependency tree with
+ * LaunchOrderDependencyNodeVisitor (rootNode.accept(visitor)), but instead of
+ * recursing into children and into kept nodes of omitted nodes, it performs
+ * iterative depth-first search over adjacency arrays of the graph. Therefore
+ * the depth of the tree is not limited by the size of the stack.
+ *
+ * Emitting of nodes (resolving, wrapping, start levels, excluded artifacts) is
+ * still done by the visitor, the engine only decides when each node is
+ * finished. A node which is still on the DFS stack is never entered again,
+ * which protects the engine against cycles created by redirections from
+ * omitted nodes to kept nodes.
+ *
+ */
+public class LaunchOrderEngine {
+
+	/**
+	 * Value returned by enter method if the node should not be entered.
+	 */
+	private static final int NO_TARGET = DependencyGraph.NO_NODE;
+
+	/**
+	 * Value passed to enter method if id of the target node is not known yet.
+	 */
+	private static final int UNKNOWN_TARGET = -2;
+
+	/**
+	 * Visitor which emits finished nodes to the execution list.
+	 */
+	private final LaunchOrderDependencyNodeVisitor visitor;
+
+	/**
+	 * Graph of the dependency tree.
+	 */
+	private final DependencyGraph graph;
+
+	/**
+	 * Constructor of LaunchOrderEngine.
+	 *
+	 * @param visitor
+	 *            visitor which emits finished nodes to the execution list
+	 * @param graph
+	 *            graph of the dependency tree, the same which is used by the
+	 *            visitor
+	 */
+	public LaunchOrderEngine(final LaunchOrderDependencyNodeVisitor visitor, final DependencyGraph graph) {
+		this.visitor = visitor;
+		this.graph = graph;
+	}
+
+	/**
+	 * Emits launch order of subtree of given root node to the visitor.
+	 *
+	 * @param root
+	 *            root of the subtree
+	 */
+	public void emit(final DependencyNode root) {
+		int rootId = enter(root, UNKNOWN_TARGET);
+		if (rootId == NO_TARGET) {
+			return;
+		}
+		int[] ids = new int[16];
+		int[] nextChildren = new int[16];
+		BitSet onStack = new BitSet(graph.size());
+		int depth = 0;
+		ids[depth] = rootId;
+		nextChildren[depth] = 0;
+		onStack.set(rootId);
+		depth++;
+		while (depth > 0) {
+			int id = ids[depth - 1];
+			int[] children = graph.getChildren(id);
+			int j = nextChildren[depth - 1];
+			if (j < children.length) {
+				nextChildren[depth - 1] = j + 1;
+				DependencyNode child = (DependencyNode) graph.getNode(id).getChildren().get(j);
+				int childId = enter(child, children[j]);
+				if (childId != NO_TARGET && !onStack.get(childId)) {
+					if (depth == ids.length) {
+						ids = grow(ids);
+						nextChildren = grow(nextChildren);
+					}
+					ids[depth] = childId;
+					nextChildren[depth] = 0;
+					onStack.set(childId);
+					depth++;
+				}
+			} else {
+				depth--;
+				onStack.clear(id);
+				visitor.endVisit(graph.getNode(id));
+			}
+		}
+	}
+
+	/**
+	 * Decides whether given node should be entered, the same way as visit
+	 * method of the visitor does. Omitted nodes are redirected to their kept
+	 * nodes, conflicts are reported by the visitor.
+	 *
+	 * @param node
+	 *            node which is reached
+	 * @param knownTargetId
+	 *            id of the node or of its kept node if the node was omitted
+	 *            (taken from the adjacency array), or UNKNOWN_TARGET
+	 * @return id of node which should be entered or NO_TARGET
+	 */
+	private int enter(final DependencyNode node, final int knownTargetId) {
+		if (visitor.wasVisited(node) || !visitor.isInScope(node)) {
+			return NO_TARGET;
+		}
+		DependencyNode targetNode = node;
+		if (isOmitted(node)) {
+			targetNode = visitor.getKeptNode(node);
+			if (visitor.wasVisited(targetNode) || !visitor.isInScope(targetNode)) {
+				return NO_TARGET;
+			}
+		}
+		int targetId = knownTargetId;
+		if (targetId == UNKNOWN_TARGET) {
+			targetId = graph.getId(ArtifactKey.of(targetNode.getArtifact()));
+		}
+		if (targetId == DependencyGraph.NO_NODE) {
+			throw new IllegalStateException("Node is not present in the dependency graph: "
+					+ FilteringVisitorSupport.stringify(node.getArtifact()));
+		}
+		return targetId;
+	}
+
+	private static boolean isOmitted(final DependencyNode node) {
+		return node.getState() == DependencyNode.OMITTED_FOR_CONFLICT
+				|| node.getState() == DependencyNode.OMITTED_FOR_DUPLICATE;
+	}
+
+	private static int[] grow(final int[] array) {
+		int[] grown = new int[array.length * 2];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+}
@@ -23,8 +23,11 @@ package org.universAAL.maven;
 import static org.twdata.maven.mojoexecutor.PlexusConfigurationUtils.toXpp3Dom;
 
 import java.lang.reflect.Method;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.model.Plugin;
@@ -36,6 +39,8 @@ import org.apache.maven.plugin.PluginManager;
 import org.apache.maven.plugin.descriptor.MojoDescriptor;
 import org.apache.maven.plugin.descriptor.PluginDescriptor;
 import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.PlexusContainer;
+import org.codehaus.plexus.component.repository.exception.ComponentLookupException;
 import org.codehaus.plexus.util.xml.Xpp3Dom;
 import org.codehaus.plexus.util.xml.Xpp3DomUtils;
 
@@ -60,6 +65,24 @@ public final class MyMojoExecutorV15 {
 	 */
 	private static final String FAKE_EXECUTION_ID = "virtual-execution";
 
+	/**
+	 * Indication whether the plugin runs in maven 3, null until it is
+	 * detected.
+	 */
+	private static volatile Boolean maven3 = null;
+
+	/**
+	 * Methods of maven 3 API resolved reflectively, indexed by class name and
+	 * method name.
+	 */
+	private static final ConcurrentHashMap<String, Method> METHODS = new ConcurrentHashMap<String, Method>();
+
+	/**
+	 * Descriptors of executed plugins indexed by start time of maven sessions
+	 * (as in PomModelMemo) and coordinates of plugins.
+	 */
+	private static final Map<Date, Map<String, PluginDescriptor>> SESSION_DESCRIPTORS = new WeakHashMap<Date, Map<String, PluginDescriptor>>();
+
 	/**
 	 * Empty private constructor.
 	 */
@@ -86,6 +109,90 @@ public final class MyMojoExecutorV15 {
 		env.executeMojo(plugin, goal, configuration);
 	}
 
+	/**
+	 * Checks if the plugin runs in maven 3. It is detected only once, by the
+	 * presence of repository session in MavenSession.
+	 *
+	 * @return true in maven 3, false in maven 2
+	 */
+	public static boolean isMaven3() {
+		Boolean detected = maven3;
+		if (detected == null) {
+			try {
+				MavenSession.class.getMethod("getRepositorySession");
+				detected = Boolean.TRUE;
+			} catch (NoSuchMethodException e) {
+				detected = Boolean.FALSE;
+			}
+			maven3 = detected;
+		}
+		return detected.booleanValue();
+	}
+
+	/**
+	 * Gets descriptor of given plugin remembered in given session.
+	 *
+	 * @return the descriptor or null if it was not loaded yet
+	 */
+	private static PluginDescriptor getCachedDescriptor(final MavenSession session, final Plugin plugin) {
+		if (session.getStartTime() == null) {
+			return null;
+		}
+		synchronized (SESSION_DESCRIPTORS) {
+			Map<String, PluginDescriptor> descriptors = SESSION_DESCRIPTORS.get(session.getStartTime());
+			return descriptors == null ? null : descriptors.get(plugin.getKey() + ":" + plugin.getVersion());
+		}
+	}
+
+	/**
+	 * Remembers descriptor of given plugin in given session.
+	 */
+	private static void cacheDescriptor(final MavenSession session, final Plugin plugin,
+			final PluginDescriptor pluginDescriptor) {
+		if (session.getStartTime() == null) {
+			return;
+		}
+		synchronized (SESSION_DESCRIPTORS) {
+			Map<String, PluginDescriptor> descriptors = SESSION_DESCRIPTORS.get(session.getStartTime());
+			if (descriptors == null) {
+				descriptors = new ConcurrentHashMap<String, PluginDescriptor>();
+				SESSION_DESCRIPTORS.put(session.getStartTime(), descriptors);
+			}
+			descriptors.put(plugin.getKey() + ":" + plugin.getVersion(), pluginDescriptor);
+		}
+	}
+
+	/**
+	 * Gets public method of given object. Methods are resolved only once per
+	 * class.
+	 *
+	 * @param target
+	 *            the object
+	 * @param name
+	 *            name of the method
+	 * @return the method
+	 * @throws NoSuchMethodException
+	 *             if there is no such method
+	 */
+	private static Method getMethod(final Object target, final String name) throws NoSuchMethodException {
+		String key = target.getClass().getName() + "#" + name;
+		Method method = METHODS.get(key);
+		if (method == null) {
+			for (Method m : target.getClass().getMethods()) {
+				if (name.equals(m.getName())) {
+					method = m;
+					break;
+				}
+			}
+			if (method == null) {
+				throw new NoSuchMethodException(key);
+			}
+			method.setAccessible(true);
+			METHODS.put(key, method);
+		}
+		return method;
+	}
+
 	/**
 	 * Entry point for executing a mojo
 	 *
@@ -137,8 +244,12 @@ public final class MyMojoExecutorV15 {
 				}
 			}
 
-			PluginDescriptor pluginDescriptor = env.getPluginManager().verifyPlugin(plugin, env.getMavenProject(),
-					session.getSettings(), session.getLocalRepository());
+			PluginDescriptor pluginDescriptor = getCachedDescriptor(session, plugin);
+			if (pluginDescriptor == null) {
+				pluginDescriptor = env.getPluginManager().verifyPlugin(plugin, env.getMavenProject(),
+						session.getSettings(), session.getLocalRepository());
+				cacheDescriptor(session, plugin, pluginDescriptor);
+			}
 			MojoDescriptor mojoDescriptor = pluginDescriptor.getMojo(goal);
 			if (mojoDescriptor == null) {
 				throw new MojoExecutionException("Unknown mojo goal: " + goal);
@@ -174,7 +285,7 @@ public final class MyMojoExecutorV15 {
 			throw new NullPointerException("configuration may not be null");
 		}
 		try {
-			String newgoal = null;
+			String newgoal = goal;
 			String executionId = null;
 			if (goal != null && goal.length() > 0 && goal.indexOf('#') > -1) {
 				int pos = goal.indexOf('#');
@@ -195,22 +306,15 @@ public final class MyMojoExecutorV15 {
 			//
 			// However it cannot be compiled like that because compatibility
 			// issues between Maven 2 and Maven 3
-			Object mavenProject = env.getMavenProject();
-			Method[] methods = mavenProject.getClass().getDeclaredMethods();
-			List remotePluginRepositories = null;
-			for (Method m : methods) {
-				if ("getRemotePluginRepositories".equals(m.getName())) {
-					remotePluginRepositories = (List) m.invoke(mavenProject);
-				}
-			}
 			Object pluginManager = env.getBuildPluginManager();
-			methods = pluginManager.getClass().getDeclaredMethods();
-			PluginDescriptor pluginDescriptor = null;
-			for (Method m : methods) {
-				if ("loadPlugin".equals(m.getName())) {
-					pluginDescriptor = (PluginDescriptor) m.invoke(pluginManager, plugin, remotePluginRepositories,
-							session.getRepositorySession());
-				}
+			PluginDescriptor pluginDescriptor = getCachedDescriptor(session, plugin);
+			if (pluginDescriptor == null) {
+				Object mavenProject = env.getMavenProject();
+				List remotePluginRepositories = (List) getMethod(mavenProject, "getRemotePluginRepositories")
+						.invoke(mavenProject);
+				pluginDescriptor = (PluginDescriptor) getMethod(pluginManager, "loadPlugin").invoke(pluginManager,
+						plugin, remotePluginRepositories, session.getRepositorySession());
+				cacheDescriptor(session, plugin, pluginDescriptor);
 			}
 
 			MojoDescriptor mojoDescriptor = pluginDescriptor.getMojo(newgoal);
@@ -226,11 +330,7 @@ public final class MyMojoExecutorV15 {
 			//
 			// However it cannot be compiled like that because compatibility
 			// issues between Maven 2 and Maven 3
-			for (Method m : methods) {
-				if ("executeMojo".equals(m.getName())) {
-					m.invoke(pluginManager, session, exec);
-				}
-			}
+			getMethod(pluginManager, "executeMojo").invoke(pluginManager, session, exec);
 		} catch (Exception e) {
 			throw new MojoExecutionException("Unable to execute mojo", e);
 		}
@@ -323,6 +423,33 @@ public final class MyMojoExecutorV15 {
 		return new ExecutionEnvironmentM3(mavenProject, mavenSession, pluginManager);
 	}
 
+	/**
+	 * Constructs the {@link ExecutionEnvironment} instance for the maven
+	 * version which runs the plugin.
+	 *
+	 * @param mavenProject
+	 *            The current Maven project
+	 * @param mavenSession
+	 *            The current Maven session
+	 * @param pluginManager
+	 *            The Maven 2 plugin manager, used only in maven 2
+	 * @param container
+	 *            The plexus container in which the BuildPluginManager is
+	 *            looked up in maven 3
+	 * @return The execution environment
+	 * @throws ComponentLookupException
+	 *             when the BuildPluginManager cannot be looked up
+	 */
+	public static ExecutionEnvironment executionEnvironment(final MavenProject mavenProject,
+			final MavenSession mavenSession, final PluginManager pluginManager, final PlexusContainer container)
+			throws ComponentLookupException {
+		if (isMaven3()) {
+			return new ExecutionEnvironmentM3(mavenProject, mavenSession,
+					container.lookup("org.apache.maven.plugin.BuildPluginManager"));
+		}
+		return new ExecutionEnvironmentM2(mavenProject, mavenSession, pluginManager);
+	}
+
 	/**
 	 * Builds the configuration for the goal using Elements.
 	 *
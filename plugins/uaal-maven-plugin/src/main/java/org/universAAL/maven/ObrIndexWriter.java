@@ -0,0 +1,514 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.factory.ArtifactFactory;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.resolver.ArtifactResolver;
+import org.apache.maven.project.MavenProject;
+import org.universAAL.maven.treebuilder.DaemonThreadFactory;
+
+/**
+ * Writes OBR repository index (repository.xml) of bundles of an execution
+ * list. Capabilities (bundle and exported packages) and requirements
+ * (imported packages and required bundles) of each resource are taken from
+ * the manifest of the bundle. Jars which are not OSGi bundles (wrapped ones)
+ * and composites cannot be provisioned from OBR, so they are skipped.
+ *
+ * Manifests are read in parallel, but resources are written in the order of
+ * the execution list as soon as they are ready, the index is streamed and
+ * never kept in memory as a whole. XML of each resource is remembered in a
+ * cache file next to the index together with size and modification time of
+ * the jar, so when the index is created again only bundles which changed are
+ * read.
+ *
+ */
+class ObrIndexWriter {
+
+	/**
+	 * Suffix of the cache file placed next to the index.
+	 */
+	static final String CACHE_SUFFIX = ".cache";
+
+	private File indexFile;
+
+	private ArtifactFactory artifactFactory;
+
+	private ArtifactResolver artifactResolver;
+
+	private ArtifactRepository localRepository;
+
+	private List remoteRepositories;
+
+	private int threads = 1;
+
+	private boolean fileUris = false;
+
+	private String name = null;
+
+	private final AtomicInteger read = new AtomicInteger();
+
+	private final AtomicInteger reused = new AtomicInteger();
+
+	private int skipped = 0;
+
+	/**
+	 * Creates writer of the index.
+	 *
+	 * @param indexFile
+	 *            the index file
+	 * @param artifactFactory
+	 *            ArtifactFactory object provided by maven
+	 * @param artifactResolver
+	 *            ArtifactResolver object provided by maven
+	 * @param localRepository
+	 *            the maven's local repository
+	 * @param remoteRepositories
+	 *            remote repositories used for resolving bundles
+	 */
+	ObrIndexWriter(final File indexFile, final ArtifactFactory artifactFactory,
+			final ArtifactResolver artifactResolver, final ArtifactRepository localRepository,
+			final List remoteRepositories) {
+		this.indexFile = indexFile;
+		this.artifactFactory = artifactFactory;
+		this.artifactResolver = artifactResolver;
+		this.localRepository = localRepository;
+		this.remoteRepositories = remoteRepositories;
+	}
+
+	/**
+	 * Sets number of threads reading manifests of bundles. By default they
+	 * are read one by one.
+	 *
+	 * @param threads
+	 *            number of threads
+	 */
+	void setThreads(final int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * Sets whether resources point to jars in the local repository by file:
+	 * urls. By default they point to mvn: urls which are resolved by pax url.
+	 *
+	 * @param fileUris
+	 *            true if file: urls should be used
+	 */
+	void setFileUris(final boolean fileUris) {
+		this.fileUris = fileUris;
+	}
+
+	/**
+	 * Sets name of the repository.
+	 *
+	 * @param name
+	 *            the name or null
+	 */
+	void setName(final String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Writes index of bundles of given execution list.
+	 *
+	 * @param mvnUrls
+	 *            the execution list
+	 * @param project
+	 *            project for which the list was created, its packaged
+	 *            artifact is indexed if it is a part of the list
+	 * @throws Exception
+	 *             when a bundle cannot be resolved or read or the index
+	 *             cannot be written
+	 */
+	void write(final List<String> mvnUrls, final MavenProject project) throws Exception {
+		final Map<String, String> cached = loadCache();
+		final Map<String, String> used = new ConcurrentHashMap<String, String>();
+		ExecutorService executor = null;
+		if (threads > 1) {
+			executor = DaemonThreadFactory.newFixedThreadPool(threads, "uaal-obr-index");
+		}
+		try {
+			List<Future<String>> resources = new ArrayList<Future<String>>();
+			List<Callable<String>> tasks = new ArrayList<Callable<String>>();
+			for (String mvnUrl : mvnUrls) {
+				if (mvnUrl.startsWith("wrap:")) {
+					skipped++;
+					continue;
+				}
+				String url = mvnUrl.indexOf('@') == -1 ? mvnUrl : mvnUrl.substring(0, mvnUrl.indexOf('@'));
+				final String[] elems = url.substring("mvn:".length()).split("/");
+				if (elems.length < 3 || (elems.length > 3 && "composite".equals(elems[3]))) {
+					skipped++;
+					continue;
+				}
+				final String mvnUri = url;
+				Callable<String> task = new Callable<String>() {
+					public String call() throws Exception {
+						File jar = resolve(elems[0], elems[1], elems[2], project);
+						String uri = fileUris ? jar.toURI().toString() : mvnUri;
+						return resourceOf(jar, uri, cached, used);
+					}
+				};
+				if (executor == null) {
+					tasks.add(task);
+				} else {
+					resources.add(executor.submit(task));
+				}
+			}
+			File dir = indexFile.getAbsoluteFile().getParentFile();
+			dir.mkdirs();
+			/*
+			 * The index is written to a temporary file first, so that a bundle
+			 * which cannot be resolved or read never leaves a truncated index.
+			 */
+			File tmpFile = File.createTempFile(indexFile.getName(), ".tmp", dir);
+			try {
+				Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmpFile), "UTF-8"));
+				try {
+					writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+					writer.write("<repository lastmodified=\""
+							+ new SimpleDateFormat("yyyyMMddHHmmss.SSS").format(new Date()) + "\"");
+					if (name != null) {
+						writer.write(" name=\"" + escape(name) + "\"");
+					}
+					writer.write(">\n");
+					for (Callable<String> task : tasks) {
+						writeResource(writer, task.call());
+					}
+					for (Future<String> resource : resources) {
+						writeResource(writer, get(resource));
+					}
+					writer.write("</repository>\n");
+				} finally {
+					writer.close();
+				}
+				indexFile.delete();
+				if (!tmpFile.renameTo(indexFile)) {
+					throw new IOException("Cannot replace " + indexFile + " with " + tmpFile);
+				}
+			} finally {
+				// nothing is left behind if the index was not written
+				tmpFile.delete();
+			}
+		} finally {
+			if (executor != null) {
+				executor.shutdownNow();
+			}
+		}
+		// the cache is saved only with a complete index
+		saveCache(used);
+	}
+
+	private static void writeResource(final Writer writer, final String resource) throws IOException {
+		if (resource != null) {
+			writer.write(resource);
+		}
+	}
+
+	private static String get(final Future<String> resource) throws Exception {
+		try {
+			return resource.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Resolves file of given artifact. The artifact of the project is taken
+	 * from the build if it was already packaged.
+	 */
+	private File resolve(final String groupId, final String artifactId, final String version,
+			final MavenProject project) throws Exception {
+		Artifact projectArtifact = project.getArtifact();
+		if (projectArtifact != null && projectArtifact.getFile() != null && projectArtifact.getFile().isFile()
+				&& groupId.equals(projectArtifact.getGroupId())
+				&& artifactId.equals(projectArtifact.getArtifactId())
+				&& version.equals(projectArtifact.getVersion())) {
+			return projectArtifact.getFile();
+		}
+		Artifact artifact = artifactFactory.createArtifact(groupId, artifactId, version, "", "jar");
+		artifactResolver.resolve(artifact, remoteRepositories, localRepository);
+		return artifact.getFile();
+	}
+
+	/**
+	 * Gets XML of the resource of given jar, from the cache if the jar did not
+	 * change.
+	 *
+	 * @return the XML or null if the jar is not a bundle
+	 */
+	private String resourceOf(final File jar, final String uri, final Map<String, String> cached,
+			final Map<String, String> used) throws IOException {
+		String key = jar.getAbsolutePath() + "|" + uri;
+		String stamp = jar.length() + "," + jar.lastModified() + ",";
+		String entry = cached.get(key);
+		String resource;
+		if (entry != null && entry.startsWith(stamp)) {
+			reused.incrementAndGet();
+			resource = entry.substring(stamp.length());
+		} else {
+			read.incrementAndGet();
+			resource = readResource(jar, uri);
+		}
+		used.put(key, stamp + resource);
+		return resource.length() == 0 ? null : resource;
+	}
+
+	/**
+	 * Reads manifest of given jar and creates XML of its resource.
+	 *
+	 * @return the XML or empty string if the jar is not a bundle
+	 */
+	private static String readResource(final File jar, final String uri) throws IOException {
+		Manifest manifest = BundleManifestCache.readManifest(jar);
+		if (manifest == null || manifest.getMainAttributes().getValue("Bundle-ManifestVersion") == null) {
+			return "";
+		}
+		Attributes attribs = manifest.getMainAttributes();
+		String symbolicName = "";
+		for (Map<String, String> clause : BundleWiringResolver.parseHeader(attribs.getValue("Bundle-SymbolicName"))) {
+			symbolicName = clause.keySet().iterator().next();
+		}
+		String version = value(attribs, "Bundle-Version", "0.0.0");
+		String presentationName = value(attribs, "Bundle-Name", symbolicName);
+		StringBuilder xml = new StringBuilder();
+		xml.append("  <resource id=\"").append(escape(symbolicName + "/" + version)).append("\" symbolicname=\"")
+				.append(escape(symbolicName)).append("\" presentationname=\"").append(escape(presentationName))
+				.append("\" uri=\"").append(escape(uri)).append("\" version=\"").append(escape(version))
+				.append("\">\n");
+		element(xml, "description", attribs.getValue("Bundle-Description"));
+		element(xml, "size", String.valueOf(jar.length()));
+		element(xml, "documentation", attribs.getValue("Bundle-DocURL"));
+		element(xml, "license", attribs.getValue("Bundle-License"));
+		xml.append("    <capability name=\"bundle\">\n");
+		property(xml, "manifestversion", null, attribs.getValue("Bundle-ManifestVersion").trim());
+		property(xml, "presentationname", null, presentationName);
+		property(xml, "symbolicname", null, symbolicName);
+		property(xml, "version", "version", version);
+		xml.append("    </capability>\n");
+		for (Map<String, String> clause : BundleWiringResolver.parseHeader(attribs.getValue("Export-Package"))) {
+			String pkgVersion = clause.get("version");
+			if (pkgVersion == null) {
+				pkgVersion = clause.get("specification-version");
+			}
+			for (String pkg : BundleWiringResolver.names(clause)) {
+				xml.append("    <capability name=\"package\">\n");
+				property(xml, "package", null, pkg);
+				property(xml, "version", "version", pkgVersion == null ? "0.0.0" : pkgVersion);
+				xml.append("    </capability>\n");
+			}
+		}
+		for (Map<String, String> clause : BundleWiringResolver.parseHeader(attribs.getValue("Import-Package"))) {
+			String range = clause.get("version");
+			if (range == null) {
+				range = clause.get("specification-version");
+			}
+			boolean optional = "optional".equals(clause.get("resolution:"));
+			for (String pkg : BundleWiringResolver.names(clause)) {
+				requirement(xml, "package", "package", pkg, range, optional, "Import package " + pkg
+						+ (range == null ? "" : ";version=" + range));
+			}
+		}
+		for (Map<String, String> clause : BundleWiringResolver.parseHeader(attribs.getValue("Require-Bundle"))) {
+			String range = clause.get("bundle-version");
+			boolean optional = "optional".equals(clause.get("resolution:"));
+			for (String bundle : BundleWiringResolver.names(clause)) {
+				requirement(xml, "bundle", "symbolicname", bundle, range, optional, "Require bundle " + bundle
+						+ (range == null ? "" : ";bundle-version=" + range));
+			}
+		}
+		xml.append("  </resource>\n");
+		return xml.toString();
+	}
+
+	/**
+	 * Appends requirement with LDAP filter matching given version range.
+	 */
+	private static void requirement(final StringBuilder xml, final String name, final String attribute,
+			final String value, final String range, final boolean optional, final String text) {
+		StringBuilder filter = new StringBuilder("(&(").append(attribute).append('=').append(value).append(')');
+		if (range != null && range.trim().length() != 0) {
+			String r = range.trim();
+			int comma = r.indexOf(',');
+			if ((r.startsWith("[") || r.startsWith("(")) && comma != -1) {
+				String floor = r.substring(1, comma).trim();
+				String ceiling = r.substring(comma + 1, r.length() - 1).trim();
+				if (r.startsWith("[")) {
+					filter.append("(version>=").append(floor).append(')');
+				} else {
+					filter.append("(!(version<=").append(floor).append("))");
+				}
+				if (r.endsWith("]")) {
+					filter.append("(version<=").append(ceiling).append(')');
+				} else {
+					filter.append("(!(version>=").append(ceiling).append("))");
+				}
+			} else {
+				filter.append("(version>=").append(r).append(')');
+			}
+		}
+		filter.append(')');
+		xml.append("    <require name=\"").append(name).append("\" filter=\"").append(escape(filter.toString()))
+				.append("\" extend=\"false\" multiple=\"false\" optional=\"").append(optional).append("\">")
+				.append(escape(text)).append("</require>\n");
+	}
+
+	private static void property(final StringBuilder xml, final String name, final String type,
+			final String value) {
+		xml.append("      <p n=\"").append(name).append('"');
+		if (type != null) {
+			xml.append(" t=\"").append(type).append('"');
+		}
+		xml.append(" v=\"").append(escape(value)).append("\"/>\n");
+	}
+
+	private static void element(final StringBuilder xml, final String name, final String value) {
+		if (value != null && value.trim().length() != 0) {
+			xml.append("    <").append(name).append('>').append(escape(value.trim())).append("</").append(name)
+					.append(">\n");
+		}
+	}
+
+	private static String value(final Attributes attribs, final String header, final String defaultValue) {
+		String value = attribs.getValue(header);
+		return value == null || value.trim().length() == 0 ? defaultValue : value.trim();
+	}
+
+	/**
+	 * Escapes given string for use in XML text and attributes.
+	 *
+	 * @param str
+	 *            the string
+	 * @return escaped string
+	 */
+	static String escape(final String str) {
+		StringBuilder escaped = new StringBuilder(str.length());
+		for (int i = 0; i < str.length(); i++) {
+			char c = str.charAt(i);
+			switch (c) {
+			case '&':
+				escaped.append("&amp;");
+				break;
+			case '<':
+				escaped.append("&lt;");
+				break;
+			case '>':
+				escaped.append("&gt;");
+				break;
+			case '"':
+				escaped.append("&quot;");
+				break;
+			default:
+				escaped.append(c);
+			}
+		}
+		return escaped.toString();
+	}
+
+	/**
+	 * Loads resources remembered by the last run. Unreadable cache is
+	 * ignored, all bundles are read then.
+	 */
+	private Map<String, String> loadCache() {
+		Map<String, String> cached = new ConcurrentHashMap<String, String>();
+		File cacheFile = new File(indexFile.getPath() + CACHE_SUFFIX);
+		if (!cacheFile.isFile()) {
+			return cached;
+		}
+		Properties props = new Properties();
+		try {
+			InputStream in = new BufferedInputStream(new FileInputStream(cacheFile));
+			try {
+				props.load(in);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			return cached;
+		}
+		for (Map.Entry<Object, Object> entry : props.entrySet()) {
+			cached.put((String) entry.getKey(), (String) entry.getValue());
+		}
+		return cached;
+	}
+
+	/**
+	 * Stores resources of the current index, resources of bundles which are
+	 * not in the index anymore are dropped.
+	 */
+	private void saveCache(final Map<String, String> used) throws IOException {
+		Properties props = new Properties();
+		props.putAll(used);
+		File cacheFile = new File(indexFile.getPath() + CACHE_SUFFIX);
+		File tmpFile = File.createTempFile(cacheFile.getName(), ".tmp", cacheFile.getAbsoluteFile().getParentFile());
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(tmpFile));
+		try {
+			props.store(out, "uAAL OBR index cache");
+		} finally {
+			out.close();
+		}
+		cacheFile.delete();
+		if (!tmpFile.renameTo(cacheFile)) {
+			tmpFile.delete();
+		}
+	}
+
+	/**
+	 * Returns summary of the last run.
+	 *
+	 * @return the summary.
+	 */
+	@Override
+	public String toString() {
+		return String.format("OBR index %s: %d bundles read, %d reused from the last run, %d jars skipped",
+				indexFile, read.get(), reused.get(), skipped);
+	}
+}
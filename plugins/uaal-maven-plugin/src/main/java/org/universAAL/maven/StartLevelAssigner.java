@@ -0,0 +1,239 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.shared.dependency.tree.DependencyNode;
+
+/**
+ * Assigns OSGi start levels to bundles on the basis of their depth in the
+ * DependencyGraph. Bundle which does not depend on any other bundle gets the
+ * base start level, every other bundle gets start level higher by one than the
+ * highest start level of bundles it depends on. Therefore bundles which do not
+ * depend on each other can share the same start level and can be started by
+ * the container concurrently.
+ *
+ * Start levels configured by start specs are fixed: the bundle gets the
+ * configured level and bundles depending on it get levels higher than the
+ * configured one, so that an overridden bundle is never started after its
+ * dependents.
+ *
+ * Poms, composites and excluded core artifacts are not put in the execution
+ * list, so they are transparent - their dependencies are treated as
+ * dependencies of their parents. Graph is traversed iteratively, edges which
+ * would close a cycle are ignored.
+ *
+ */
+public class StartLevelAssigner {
+
+	/**
+	 * Graph of the dependency tree.
+	 */
+	private final DependencyGraph graph;
+
+	/**
+	 * Visitor used for checking scope of dependencies.
+	 */
+	private final FilteringVisitorSupport scopeFilter;
+
+	/**
+	 * Core uAAL artifacts which are excluded from the execution list.
+	 */
+	private final Set<ArtifactKey> excludedArtifacts;
+
+	/**
+	 * Start levels configured by start specs, indexed by groupId:artifactId.
+	 */
+	private final Map<String, Integer> fixedLevels = new HashMap<String, Integer>();
+
+	/**
+	 * Constructor of StartLevelAssigner.
+	 *
+	 * @param graph
+	 *            graph of the dependency tree
+	 * @param scopeFilter
+	 *            visitor used for checking scope of dependencies, the same
+	 *            which emits the execution list
+	 * @param excludedArtifacts
+	 *            artifacts excluded from the execution list
+	 */
+	public StartLevelAssigner(final DependencyGraph graph, final FilteringVisitorSupport scopeFilter,
+			final Set<ArtifactKey> excludedArtifacts) {
+		this.graph = graph;
+		this.scopeFilter = scopeFilter;
+		this.excludedArtifacts = excludedArtifacts;
+	}
+
+	/**
+	 * Sets start specs which start levels are fixed.
+	 *
+	 * @param startSpecs
+	 *            the start specs, can be null
+	 */
+	public void setStartSpecs(final StartSpec[] startSpecs) {
+		fixedLevels.clear();
+		if (startSpecs == null) {
+			return;
+		}
+		for (StartSpec startSpec : startSpecs) {
+			if (startSpec.getStartlevel() != null) {
+				fixedLevels.put(startSpec.getGroupId() + ":" + startSpec.getArtifactId(), startSpec.getStartlevel());
+			}
+		}
+	}
+
+	/**
+	 * Computes start levels of all bundles in the graph.
+	 *
+	 * @param baseLevel
+	 *            start level of bundles which do not depend on other bundles
+	 * @return map of start levels by artifact key, it contains only artifacts
+	 *         which are put in the execution list
+	 */
+	public Map<ArtifactKey, Integer> assign(final int baseLevel) {
+		int[] levels = new int[graph.size()];
+		BitSet done = new BitSet(graph.size());
+		BitSet onStack = new BitSet(graph.size());
+		int[] ids = new int[16];
+		int[] nextChildren = new int[16];
+		for (int rootId = 0; rootId < graph.size(); rootId++) {
+			if (done.get(rootId)) {
+				continue;
+			}
+			int depth = 0;
+			ids[depth] = rootId;
+			nextChildren[depth] = 0;
+			levels[rootId] = baseLevel;
+			onStack.set(rootId);
+			depth++;
+			while (depth > 0) {
+				int id = ids[depth - 1];
+				int[] children = graph.getChildren(id);
+				int j = nextChildren[depth - 1];
+				if (j < children.length) {
+					nextChildren[depth - 1] = j + 1;
+					int childId = children[j];
+					if (childId == DependencyGraph.NO_NODE || onStack.get(childId)) {
+						continue;
+					}
+					DependencyNode child = (DependencyNode) graph.getNode(id).getChildren().get(j);
+					if (!scopeFilter.isInScope(child)) {
+						continue;
+					}
+					if (done.get(childId)) {
+						levels[id] = Math.max(levels[id], heightAbove(childId, levels));
+						continue;
+					}
+					if (depth == ids.length) {
+						ids = grow(ids);
+						nextChildren = grow(nextChildren);
+					}
+					ids[depth] = childId;
+					nextChildren[depth] = 0;
+					levels[childId] = baseLevel;
+					onStack.set(childId);
+					depth++;
+				} else {
+					depth--;
+					onStack.clear(id);
+					done.set(id);
+					Integer fixedLevel = fixedLevelOf(id);
+					if (fixedLevel != null) {
+						levels[id] = fixedLevel.intValue();
+					}
+					if (depth > 0) {
+						int parentId = ids[depth - 1];
+						levels[parentId] = Math.max(levels[parentId], heightAbove(id, levels));
+					}
+				}
+			}
+		}
+		Map<ArtifactKey, Integer> startLevels = new HashMap<ArtifactKey, Integer>();
+		for (int id = 0; id < graph.size(); id++) {
+			if (isListed(id)) {
+				startLevels.put(graph.getKey(id), Integer.valueOf(levels[id]));
+			}
+		}
+		return startLevels;
+	}
+
+	/**
+	 * Returns minimal start level which dependency with given id imposes on
+	 * bundles depending on it.
+	 *
+	 * @param id
+	 *            id of the dependency
+	 * @param levels
+	 *            start levels computed so far
+	 * @return start level of the dependency increased by one if it is put in
+	 *         the execution list
+	 */
+	private int heightAbove(final int id, final int[] levels) {
+		if (isListed(id)) {
+			return levels[id] + 1;
+		}
+		return levels[id];
+	}
+
+	/**
+	 * Gets start level configured for bundle with given id.
+	 *
+	 * @param id
+	 *            id of the node
+	 * @return the level or null if it is not configured or the node is not
+	 *         put in the execution list
+	 */
+	private Integer fixedLevelOf(final int id) {
+		if (fixedLevels.isEmpty() || !isListed(id)) {
+			return null;
+		}
+		ArtifactKey key = graph.getKey(id);
+		return fixedLevels.get(key.getGroupId() + ":" + key.getArtifactId());
+	}
+
+	/**
+	 * Checks if node with given id is put in the execution list.
+	 *
+	 * @param id
+	 *            id of the node
+	 * @return true if the node is neither pom, composite nor excluded artifact
+	 */
+	private boolean isListed(final int id) {
+		DependencyNode node = graph.getNode(id);
+		if ("pom".equals(node.getArtifact().getType())) {
+			return false;
+		}
+		if (node.getArtifact().getArtifactId().endsWith("composite")) {
+			return false;
+		}
+		return !excludedArtifacts.contains(graph.getKey(id));
+	}
+
+	private static int[] grow(final int[] array) {
+		int[] grown = new int[array.length * 2];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+}
@@ -52,6 +52,23 @@ public class StartSpec {
 	 */
 	private boolean nostart;
 
+	/**
+	 * Creates empty start spec, its fields are set by maven.
+	 */
+	public StartSpec() {
+	}
+
+	/**
+	 * Creates start spec read from configuration of a project (see
+	 * GoalConfiguration).
+	 */
+	StartSpec(final String groupId, final String artifactId, final Integer startlevel, final boolean nostart) {
+		this.groupId = groupId;
+		this.artifactId = artifactId;
+		this.startlevel = startlevel;
+		this.nostart = nostart;
+	}
+
 	public String getGroupId() {
 		return groupId;
 	}
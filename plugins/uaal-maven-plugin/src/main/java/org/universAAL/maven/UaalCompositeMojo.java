@@ -20,16 +20,8 @@ limitations under the License.
  */
 package org.universAAL.maven;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 
@@ -37,18 +29,22 @@ import org.apache.maven.artifact.factory.ArtifactFactory;
 import org.apache.maven.artifact.metadata.ArtifactMetadataSource;
 import org.apache.maven.artifact.repository.ArtifactRepository;
 import org.apache.maven.artifact.resolver.ArtifactResolver;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.project.MavenProjectBuilder;
 import org.universAAL.maven.treebuilder.ExecutionListCreator;
+import org.universAAL.maven.treebuilder.ResolutionProfiler;
+import org.universAAL.maven.treebuilder.SharedResolutions;
 
 /**
  * This mojo creates composite file (artifact.composite) for project in which it
  * is executed.
  *
  * @goal composite
+ * @threadSafe
  */
 public class UaalCompositeMojo extends AbstractMojo {
 
@@ -80,6 +76,15 @@ public class UaalCompositeMojo extends AbstractMojo {
 	 */
 	private MavenProject project;
 
+	/**
+	 * The Maven Session Object.
+	 *
+	 * @parameter expression="${session}"
+	 * @required
+	 * @readonly
+	 */
+	private MavenSession session;
+
 	/**
 	 * @parameter default-value="${ignore.dep.conflict}"
 	 * @readonly
@@ -136,83 +141,186 @@ public class UaalCompositeMojo extends AbstractMojo {
 	private StartSpec[] startArtifacts;
 
 	/**
-	 * Default path to main composite.
+	 * Number of threads used for fetching POMs of dependencies in parallel
+	 * during the resolution of the dependency tree and for resolving bundles
+	 * and inspecting their manifests. The generated list does not depend on
+	 * this value. By default everything is resolved sequentially, on maven 2
+	 * always.
+	 *
+	 * @parameter expression="${uaal.resolutionThreads}" default-value="1"
+	 */
+	private int resolutionThreads;
+
+	/**
+	 * Set this to "true" to turn on the persistent cache of runtime profiles
+	 * placed next to the local repository (uaal-tree-cache directory).
+	 *
+	 * @parameter expression="${uaal.treeCache}" default-value="false"
+	 */
+	private boolean treeCache;
+
+	/**
+	 * Time in minutes for which available versions of artifacts and failed
+	 * lookups of repository metadata are remembered in a cache stored in the
+	 * local repository. Within one maven session they are always remembered.
+	 * By default the cache is not stored.
+	 *
+	 * @parameter expression="${uaal.metadataCacheTtl}" default-value="0"
+	 */
+	private int metadataCacheTtl;
+
+	/**
+	 * Rules routing lookups of artifacts only to repositories which can serve
+	 * them, in the form groupIdPrefix=repoId,repoId;groupIdPrefix=repoId (e.g.
+	 * "org.universAAL=uaal,uaal-thirdparty;org.ops4j=ops4j-releases,paxrunner").
+	 * Artifacts not matched by any rule are routed by the "*" rule if present,
+	 * otherwise to repositories not named in any rule. By default every
+	 * repository is queried for every artifact.
+	 *
+	 * @parameter expression="${uaal.repositoryRoutes}"
+	 */
+	private String repositoryRoutes;
+
+	/**
+	 * Set this to "true" to assign start levels to bundles automatically on
+	 * the basis of their depth in the dependency graph. Bundles which do not
+	 * depend on each other get the same start level and can be started
+	 * concurrently. Start levels configured in startArtifacts take precedence.
+	 * Bundles depending on them get higher start levels.
+	 *
+	 * @parameter expression="${uaal.autoStartLevels}" default-value="false"
+	 */
+	private boolean autoStartLevels;
+
+	/**
+	 * Start level assigned to bundles which do not depend on other bundles
+	 * when autoStartLevels is turned on.
+	 *
+	 * @parameter expression="${uaal.autoStartLevelBase}" default-value="5"
 	 */
-	private static final String MAIN_COMPOSITE = "target/artifact.composite";
+	private int autoStartLevelBase;
 
 	/**
-	 * Default path to deps composite.
+	 * Set this to "warn" or "fail" to resolve package-level wiring of bundles
+	 * during the build. The execution list is then ordered so that exporters
+	 * of packages are placed before their importers, imports which cannot be
+	 * satisfied are reported as warnings or fail the build and the wiring is
+	 * written to target/uaal-bundle-wiring.txt. By default the list is ordered
+	 * only by maven dependencies.
+	 *
+	 * @parameter expression="${uaal.bundleWiring}" default-value="off"
 	 */
-	private static final String MAIN_DEPS = "target/artifact.deps";
+	private String bundleWiring;
 
 	/**
-	 * Default path to the properties file to which the mapping between artifact
-	 * id and artifact version will be written.
+	 * Comma separated packages provided by the framework in addition to JRE
+	 * and OSGi core packages, they are not reported as unsatisfied when
+	 * bundleWiring is turned on. Names ending with ".*" are prefixes.
+	 *
+	 * @parameter expression="${uaal.systemPackages}"
 	 */
-	private static final String MAIN_VERSION = "target/artifacts.versions";
+	private String systemPackages;
+
+	/**
+	 * Set this to "true" to skip creating the composite if nothing changed
+	 * since the last build: the project POM and its parents, configuration of
+	 * the plugin and SNAPSHOT artifacts in the local repository. Files in
+	 * target directory created by the last build are reused then.
+	 *
+	 * @parameter expression="${uaal.incremental}" default-value="false"
+	 */
+	private boolean incremental;
+
+	/**
+	 * Set this to "true" to share the dependency tree with the itests goal
+	 * executed later in the same build. If the tree is shared, the itests goal
+	 * resolves only dependencies from the uAAL-Test-Runtime profile on top of
+	 * it. The tree is shared only if the project has itests dependency and the
+	 * mw composite is not used. The shared tree is kept in memory until the
+	 * itests goal takes it or until it is displaced by trees of other
+	 * projects.
+	 *
+	 * @parameter expression="${uaal.shareResolution}" default-value="false"
+	 */
+	private boolean shareResolution;
+
+	/**
+	 * Set this to "true" to time phases of the resolution (building POMs,
+	 * retrieving metadata, resolving bundles, reading manifests, walking the
+	 * tree) and write a JSON report with the slowest artifacts and hit rates
+	 * of caches to target/uaal-resolution-profile.json.
+	 *
+	 * @parameter expression="${uaal.profileResolution}" default-value="false"
+	 */
+	private boolean profileResolution;
+
+	/**
+	 * Set this to "true" to stream events of the dependency tree resolution
+	 * (included artifacts, artifacts omitted for nearer ones or cycles, scope
+	 * updates, version ranges) as JSON lines to target/uaal-resolution-events.jsonl.
+	 *
+	 * @parameter expression="${uaal.resolutionEventLog}" default-value="false"
+	 */
+	private boolean resolutionEventLog;
+
+	/**
+	 * Default path to the fingerprint of inputs of the main composite.
+	 */
+	private static final String MAIN_FINGERPRINT = "target/uaal-composite.fingerprint";
+
+	/**
+	 * Default path to the resolution profile of the main composite.
+	 */
+	static final String MAIN_PROFILE = "target/uaal-resolution-profile.json";
+
+	/**
+	 * Default path to the log of resolution events of the main composite.
+	 */
+	static final String MAIN_EVENT_LOG = "target/uaal-resolution-events.jsonl";
+
+	/**
+	 * Default path to the wiring of bundles of the main composite.
+	 */
+	static final String MAIN_WIRING = "target/uaal-bundle-wiring.txt";
 
 	public static final String MW_GROUP_ID = "org.universAAL.middleware";
 
 	/**
-	 * Creates output writer for given file name.
+	 * Checks if mw composite should be used for given project. It is never
+	 * used for middleware projects themselves.
 	 *
-	 * @param fileName
-	 *            for which writer will be created
-	 * @return output writer.
-	 * @throws FileNotFoundException
-	 *             when file does not exist
+	 * @param project
+	 *            the project
+	 * @param useMwComposite
+	 *            configured value
+	 * @return true if mw composite should be used
 	 */
-	private BufferedWriter createOutputWriter(final String fileName) throws FileNotFoundException {
-		File targetDir = new File(baseDirectory, "target");
-		targetDir.mkdirs();
-		File generatedCompositeFile = new File(baseDirectory, fileName);
-		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(generatedCompositeFile, false)));
+	static boolean useMwComposite(final MavenProject project, final boolean useMwComposite) {
+		return useMwComposite && !MW_GROUP_ID.equals(project.getGroupId());
 	}
 
 	/**
-	 * Writes given list of mvn urls to given file.
+	 * Creates fingerprint of everything what the main composite depends on.
 	 *
-	 * @param mvnUrls
-	 *            mvn urls
-	 * @param fileName
-	 *            file name
+	 * @param mwcomp
+	 *            whether mw composite is used
+	 * @return the fingerprint
 	 * @throws IOException
-	 *             IOException
+	 *             when the project POM cannot be read
 	 */
-	private void writeListToFile(final List mvnUrls, final String fileName) throws IOException {
-		BufferedWriter compositeWriter = createOutputWriter(fileName);
-		boolean hasWrittenSth = false;
-		for (Object mvnUrl : mvnUrls) {
-			hasWrittenSth = true;
-			String mvnUrlStr = (String) mvnUrl;
-			if (mvnUrlStr.endsWith("/composite")) {
-				compositeWriter.write("scan-composite:" + mvnUrlStr + System.getProperty("line.separator"));
-			} else {
-				compositeWriter.write("scan-bundle:" + mvnUrlStr + System.getProperty("line.separator"));
-			}
-		}
-		if (!hasWrittenSth) {
-			compositeWriter.write("This is an empty dummy line in order to make" + "this file possible to deploy."
-					+ "Don't use this file at any time.");
-		}
-		compositeWriter.close();
-	}
-
-	private void writeArtifactsVersions(final List mvnUrls, final String fileName) throws IOException {
-		BufferedWriter compositeWriter = createOutputWriter(fileName);
-		for (Object mvnUrl : mvnUrls) {
-			String mvnUrlStr = (String) mvnUrl;
-			String[] mvnUrlElems = mvnUrlStr.split("/");
-			if (mvnUrlElems.length < 3) {
-				throw new RuntimeException("Bad mvnUrl: " + mvnUrlStr);
-			}
-			compositeWriter.write(mvnUrlElems[1]);
-			compositeWriter.write(".version");
-			compositeWriter.write("=");
-			compositeWriter.write(mvnUrlElems[2]);
-			compositeWriter.write(System.getProperty("line.separator"));
-		}
-		compositeWriter.close();
+	private ExecutionListFingerprint createFingerprint(final boolean mwcomp) throws IOException {
+		ExecutionListFingerprint fingerprint = new ExecutionListFingerprint(
+				new File(baseDirectory, MAIN_FINGERPRINT), localRepository);
+		fingerprint.addValue("goal", "composite");
+		fingerprint.addProject(project);
+		fingerprint.addRepositories("remoteRepositories", remoteRepositories);
+		fingerprint.addValue("useMwComposite", Boolean.valueOf(mwcomp));
+		fingerprint.addValue("ignoreDepConflict", throwExceptionOnConflictStr);
+		fingerprint.addValues("startArtifacts", startArtifacts);
+		fingerprint.addValue("autoStartLevels", autoStartLevels + ":" + autoStartLevelBase);
+		fingerprint.addValue("repositoryRoutes", repositoryRoutes);
+		fingerprint.addValue("bundleWiring", bundleWiring + ":" + systemPackages);
+		return fingerprint;
 	}
 
 	/**
@@ -225,64 +333,51 @@ public class UaalCompositeMojo extends AbstractMojo {
 	 */
 	public final void execute() throws MojoExecutionException, MojoFailureException {
 		try {
-			File manualArtifactComposite = new File(baseDirectory, "artifact.composite");
-			String msg = System.getProperty("line.separator") + System.getProperty("line.separator")
-					+ "Since artifact.composite exists in" + "the base directory composite generation is abandoned."
-					+ System.getProperty("line.separator") + "Instead artifact.composite from basedir"
-					+ " is simply copied to " + MAIN_COMPOSITE + System.getProperty("line.separator")
-					+ System.getProperty("line.separator");
-			if (manualArtifactComposite.exists()) {
-				getLog().info(msg);
-				BufferedReader compositeReader = new BufferedReader(
-						new InputStreamReader(new FileInputStream(manualArtifactComposite)));
-				BufferedWriter compositeWriter = createOutputWriter(MAIN_COMPOSITE);
-				String line = null;
-				while ((line = compositeReader.readLine()) != null) {
-					compositeWriter.write(line + System.getProperty("line.separator"));
+			CompositeWriter compositeWriter = new CompositeWriter(baseDirectory, getLog());
+			if (!compositeWriter.copyManualComposite()) {
+				boolean mwcomp = useMwComposite(project, useMwComposite);
+				ExecutionListFingerprint fingerprint = null;
+				if (incremental) {
+					fingerprint = createFingerprint(mwcomp);
+					if (fingerprint.isUpToDate() && compositeWriter.outputsExist()) {
+						getLog().info("Nothing changed since the last build, " + CompositeWriter.MAIN_COMPOSITE
+								+ " and " + CompositeWriter.MAIN_DEPS + " are up to date");
+						return;
+					}
+					fingerprint.invalidate();
 				}
-				compositeWriter.close();
-				compositeReader.close();
-			} else {
 				String msg2 = System.getProperty("line.separator") + System.getProperty("line.separator")
-						+ "Creating MAIN composite file - output generated in " + MAIN_COMPOSITE + " and " + MAIN_DEPS
-						+ System.getProperty("line.separator") + System.getProperty("line.separator");
+						+ "Creating MAIN composite file - output generated in " + CompositeWriter.MAIN_COMPOSITE
+						+ " and " + CompositeWriter.MAIN_DEPS + System.getProperty("line.separator")
+						+ System.getProperty("line.separator");
 				getLog().info(msg2);
-				ExecutionListCreator execListCreator = new ExecutionListCreator(getLog(), artifactMetadataSource,
-						artifactFactory, mavenProjectBuilder, localRepository, remoteRepositories, artifactResolver,
-						throwExceptionOnConflictStr, startArtifacts);
-				boolean mwcomp = useMwComposite;
-				// System.out.println(" -- useMwComposite: " + mwcomp);
-				if (MW_GROUP_ID.equals(project.getGroupId()))
-					mwcomp = false;
-				// System.out.println(" -- useMwComposite: " + mwcomp);
-				List<String> mvnUrls = execListCreator.createArtifactExecutionList(project, new HashSet<String>(),
-						false, mwcomp);
-				writeListToFile(mvnUrls, MAIN_COMPOSITE);
-				writeArtifactsVersions(mvnUrls, MAIN_VERSION);
-
-				List<String> mvnUrlsOnlyDeps = new ArrayList<String>(mvnUrls);
-				if (!mvnUrlsOnlyDeps.isEmpty()) {
-					mvnUrlsOnlyDeps.remove(mvnUrlsOnlyDeps.size() - 1);
+				ExecutionListCreatorFactory factory = new ExecutionListCreatorFactory(getLog(), session,
+						artifactMetadataSource, artifactFactory, mavenProjectBuilder, localRepository, artifactResolver,
+						throwExceptionOnConflictStr, startArtifacts, resolutionThreads);
+				factory.setMetadataCacheTtl(metadataCacheTtl);
+				factory.setRepositoryRoutes(repositoryRoutes);
+				factory.setTreeCache(treeCache);
+				factory.setAutoStartLevels(autoStartLevels, autoStartLevelBase);
+				factory.setBundleWiring(bundleWiring, systemPackages);
+				ExecutionListCreator execListCreator = factory.create(remoteRepositories,
+						new File(baseDirectory, MAIN_WIRING));
+				if (shareResolution && !mwcomp && UaalTestMojo.hasItestsDependency(project)) {
+					execListCreator.setSharedResolutions(SharedResolutions.forSession(session));
 				}
-				writeListToFile(mvnUrlsOnlyDeps, MAIN_DEPS);
-
-				getLog().debug("");
-				getLog().debug(MAIN_COMPOSITE + ":");
-				getLog().debug("");
-				int x = 1;
-				for (String mvnUrl : mvnUrls) {
-					getLog().debug(String.format("%2d. %s", x++, mvnUrl));
+				ResolutionProfiler profiler = profileResolution ? new ResolutionProfiler()
+						: ResolutionProfiler.DISABLED;
+				execListCreator.setResolutionProfiler(profiler);
+				if (resolutionEventLog) {
+					execListCreator.setEventLogFile(new File(baseDirectory, MAIN_EVENT_LOG));
 				}
-
-				getLog().debug("");
-				getLog().debug("");
-				getLog().debug(MAIN_DEPS + ":");
-				getLog().debug("");
-				x = 1;
-				for (String mvnUrl : mvnUrlsOnlyDeps) {
-					getLog().debug(String.format("%2d. %s", x++, mvnUrl));
+				List<String> mvnUrls = execListCreator.createArtifactExecutionList(project, new HashSet<String>(),
+						false, mwcomp);
+				compositeWriter.write(mvnUrls);
+				profiler.write(new File(baseDirectory, MAIN_PROFILE), project.getId());
+				if (fingerprint != null) {
+					fingerprint.watchSnapshots(mvnUrls, project.getArtifact());
+					fingerprint.store();
 				}
-
 			}
 		} catch (Exception e) {
 			getLog().error(e);
@@ -0,0 +1,244 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.List;
+
+import org.apache.maven.artifact.factory.ArtifactFactory;
+import org.apache.maven.artifact.metadata.ArtifactMetadataSource;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.resolver.ArtifactResolver;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.MavenProjectBuilder;
+import org.universAAL.maven.treebuilder.ExecutionListCreator;
+
+/**
+ * This mojo generates OBR repository index (target/repository.xml by default)
+ * of all bundles of the project execution list. Capabilities and requirements
+ * of resources are taken from manifests of the bundles, so the runtime
+ * resolver reads one precomputed index instead of scanning jars. Jars which
+ * are not OSGi bundles are not indexed. The mw composite is never used,
+ * middleware bundles are indexed as well.
+ *
+ * @goal obr-index
+ * @threadSafe
+ */
+public class UaalObrIndexMojo extends AbstractMojo {
+
+	/**
+	 * @component
+	 * @required
+	 * @readonly
+	 */
+	private ArtifactFactory artifactFactory;
+
+	/**
+	 * @component
+	 * @required
+	 * @readonly
+	 */
+	private ArtifactResolver artifactResolver;
+
+	/**
+	 * @component
+	 * @required
+	 * @readonly
+	 */
+	private ArtifactMetadataSource artifactMetadataSource;
+
+	/**
+	 * @parameter default-value="${project}"
+	 * @required
+	 * @readonly
+	 */
+	private MavenProject project;
+
+	/**
+	 * The Maven Session Object.
+	 *
+	 * @parameter expression="${session}"
+	 * @required
+	 * @readonly
+	 */
+	private MavenSession session;
+
+	/**
+	 * @parameter default-value="${ignore.dep.conflict}"
+	 * @readonly
+	 */
+	private String throwExceptionOnConflictStr;
+
+	/**
+	 * @component
+	 * @required
+	 * @readonly
+	 */
+	private MavenProjectBuilder mavenProjectBuilder;
+
+	/**
+	 * List of Remote Repositories used by the resolver.
+	 *
+	 * @parameter expression="${project.remoteArtifactRepositories}"
+	 * @readonly
+	 * @required
+	 */
+	private List remoteRepositories;
+
+	/**
+	 * Location of the local repository.
+	 *
+	 * @parameter expression="${localRepository}"
+	 * @readonly
+	 * @required
+	 */
+	private ArtifactRepository localRepository;
+
+	/**
+	 * The generated OBR index. Resources of bundles which did not change since
+	 * the last run are taken from a cache file placed next to it.
+	 *
+	 * @parameter expression="${uaal.obrIndex}"
+	 *            default-value="${project.build.directory}/repository.xml"
+	 */
+	private File obrIndex;
+
+	/**
+	 * Number of threads reading manifests of bundles for the OBR index.
+	 *
+	 * @parameter expression="${uaal.obrThreads}" default-value="4"
+	 */
+	private int obrThreads;
+
+	/**
+	 * Set this to "true" to point resources of the OBR index to jars in the
+	 * local repository by file: urls. By default they point to mvn: urls.
+	 *
+	 * @parameter expression="${uaal.obrFileUris}" default-value="false"
+	 */
+	private boolean obrFileUris;
+
+	/**
+	 * Directives configured via <configuration> in pom file, setting the
+	 * startlevel and/or nostart parameters to specified artifacts
+	 *
+	 * @parameter
+	 */
+	private StartSpec[] startArtifacts;
+
+	/**
+	 * Number of threads used for fetching POMs of dependencies in parallel
+	 * during the resolution of the dependency tree and for resolving bundles
+	 * and inspecting their manifests. The generated list does not depend on
+	 * this value. By default everything is resolved sequentially, on maven 2
+	 * always.
+	 *
+	 * @parameter expression="${uaal.resolutionThreads}" default-value="1"
+	 */
+	private int resolutionThreads;
+
+	/**
+	 * Set this to "true" to turn on the persistent cache of runtime profiles
+	 * placed next to the local repository (uaal-tree-cache directory).
+	 *
+	 * @parameter expression="${uaal.treeCache}" default-value="false"
+	 */
+	private boolean treeCache;
+
+	/**
+	 * Time in minutes for which available versions of artifacts and failed
+	 * lookups of repository metadata are remembered in a cache stored in the
+	 * local repository. Within one maven session they are always remembered.
+	 * By default the cache is not stored.
+	 *
+	 * @parameter expression="${uaal.metadataCacheTtl}" default-value="0"
+	 */
+	private int metadataCacheTtl;
+
+	/**
+	 * Rules routing lookups of artifacts only to repositories which can serve
+	 * them, in the form groupIdPrefix=repoId,repoId;groupIdPrefix=repoId (e.g.
+	 * "org.universAAL=uaal,uaal-thirdparty;org.ops4j=ops4j-releases,paxrunner").
+	 * Artifacts not matched by any rule are routed by the "*" rule if present,
+	 * otherwise to repositories not named in any rule. By default every
+	 * repository is queried for every artifact.
+	 *
+	 * @parameter expression="${uaal.repositoryRoutes}"
+	 */
+	private String repositoryRoutes;
+
+	/**
+	 * Set this to "true" to assign start levels to bundles automatically on
+	 * the basis of their depth in the dependency graph. Start levels
+	 * configured in startArtifacts take precedence.
+	 * Bundles depending on them get higher start levels.
+	 *
+	 * @parameter expression="${uaal.autoStartLevels}" default-value="false"
+	 */
+	private boolean autoStartLevels;
+
+	/**
+	 * Start level assigned to bundles which do not depend on other bundles
+	 * when autoStartLevels is turned on.
+	 *
+	 * @parameter expression="${uaal.autoStartLevelBase}" default-value="5"
+	 */
+	private int autoStartLevelBase;
+
+	/**
+	 * Execute.
+	 *
+	 * @throws MojoExecutionException
+	 *             MojoExecutionException
+	 * @throws MojoFailureException
+	 *             MojoFailureException
+	 */
+	public final void execute() throws MojoExecutionException, MojoFailureException {
+		try {
+			getLog().info("Creating OBR index " + obrIndex);
+			ExecutionListCreatorFactory factory = new ExecutionListCreatorFactory(getLog(), session,
+					artifactMetadataSource, artifactFactory, mavenProjectBuilder, localRepository, artifactResolver,
+					throwExceptionOnConflictStr, startArtifacts, resolutionThreads);
+			factory.setMetadataCacheTtl(metadataCacheTtl);
+			factory.setRepositoryRoutes(repositoryRoutes);
+			factory.setTreeCache(treeCache);
+			factory.setAutoStartLevels(autoStartLevels, autoStartLevelBase);
+			ExecutionListCreator execListCreator = factory.create(remoteRepositories, null);
+			List<String> mvnUrls = execListCreator.createArtifactExecutionList(project, new HashSet<String>(),
+					false, false);
+			ObrIndexWriter indexWriter = new ObrIndexWriter(obrIndex, artifactFactory, artifactResolver,
+					localRepository, remoteRepositories);
+			indexWriter.setThreads(obrThreads);
+			indexWriter.setFileUris(obrFileUris);
+			indexWriter.setName(project.getName() != null ? project.getName() : project.getArtifactId());
+			indexWriter.write(mvnUrls, project);
+			getLog().info(indexWriter.toString());
+		} catch (Exception e) {
+			getLog().error(e);
+			throw new RuntimeException(e);
+		}
+	}
+}
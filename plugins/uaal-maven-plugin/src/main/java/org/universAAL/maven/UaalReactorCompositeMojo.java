@@ -0,0 +1,285 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.maven.artifact.factory.ArtifactFactory;
+import org.apache.maven.artifact.metadata.ArtifactMetadataSource;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.resolver.ArtifactResolver;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.MavenProjectBuilder;
+import org.universAAL.maven.treebuilder.ExecutionListCreator;
+import org.universAAL.maven.treebuilder.ResolutionProfiler;
+import org.universAAL.maven.treebuilder.SharedResolutions;
+
+/**
+ * This mojo creates composite files (artifact.composite, artifact.deps and
+ * artifacts.versions) for all projects of the reactor at once. The files are
+ * the same as created by the composite goal executed in each project, but
+ * projects are resolved in parallel and share caches of POMs, runtime
+ * profiles and repository metadata, so subtrees common to many projects (e.g.
+ * middleware bundles) are read from the repository only once.
+ *
+ * Only projects which execute the composite goal are processed, each of them
+ * with the configuration of that execution in its POM (startArtifacts,
+ * useMwComposite, uaal.* parameters), see GoalConfiguration.
+ *
+ * @aggregator
+ *
+ * @goal reactor-composite
+ * @threadSafe
+ */
+public class UaalReactorCompositeMojo extends AbstractMojo {
+
+	/**
+	 * Goal which configuration is used for each project.
+	 */
+	private static final String COMPOSITE_GOAL = "composite";
+
+	/**
+	 * @component
+	 * @required
+	 * @readonly
+	 */
+	private ArtifactFactory artifactFactory;
+
+	/**
+	 * @component
+	 * @required
+	 * @readonly
+	 */
+	private ArtifactResolver artifactResolver;
+
+	/**
+	 * @component
+	 * @required
+	 * @readonly
+	 */
+	private ArtifactMetadataSource artifactMetadataSource;
+
+	/**
+	 * @component
+	 * @required
+	 * @readonly
+	 */
+	private MavenProjectBuilder mavenProjectBuilder;
+
+	/**
+	 * The projects in the reactor.
+	 *
+	 * @parameter expression="${reactorProjects}"
+	 * @required
+	 * @readonly
+	 */
+	private List<MavenProject> reactorProjects;
+
+	/**
+	 * The Maven Session Object.
+	 *
+	 * @parameter expression="${session}"
+	 * @required
+	 * @readonly
+	 */
+	private MavenSession session;
+
+	/**
+	 * Location of the local repository.
+	 *
+	 * @parameter expression="${localRepository}"
+	 * @readonly
+	 * @required
+	 */
+	private ArtifactRepository localRepository;
+
+	/**
+	 * Number of projects resolved in parallel. If it is 0 then the number of
+	 * available processors is used. On maven 2 projects are always resolved
+	 * one by one.
+	 *
+	 * @parameter expression="${uaal.reactorThreads}" default-value="0"
+	 */
+	private int reactorThreads;
+
+	/**
+	 * Factories of the creators of execution lists indexed by the
+	 * configuration they are created with, so that projects configured in the
+	 * same way share the repository router and the cache of runtime profiles.
+	 */
+	private final Map<String, ExecutionListCreatorFactory> executionListCreatorFactories =
+			new HashMap<String, ExecutionListCreatorFactory>();
+
+	/**
+	 * Gets factory of creators of execution lists configured by the composite
+	 * goal configuration of a project.
+	 *
+	 * @param configuration
+	 *            configuration of the composite goal in the project
+	 * @return the factory
+	 */
+	private synchronized ExecutionListCreatorFactory getExecutionListCreatorFactory(
+			final GoalConfiguration configuration) {
+		String throwExceptionOnConflictStr = configuration.getValue("throwExceptionOnConflictStr",
+				"ignore.dep.conflict", null);
+		StartSpec[] startArtifacts = configuration.getStartSpecs("startArtifacts");
+		int resolutionThreads = configuration.getInt("resolutionThreads", "uaal.resolutionThreads", 1);
+		int metadataCacheTtl = configuration.getInt("metadataCacheTtl", "uaal.metadataCacheTtl", 0);
+		String repositoryRoutes = configuration.getValue("repositoryRoutes", "uaal.repositoryRoutes", null);
+		boolean treeCache = configuration.getBoolean("treeCache", "uaal.treeCache", false);
+		boolean autoStartLevels = configuration.getBoolean("autoStartLevels", "uaal.autoStartLevels", false);
+		int autoStartLevelBase = configuration.getInt("autoStartLevelBase", "uaal.autoStartLevelBase", 5);
+		String bundleWiring = configuration.getValue("bundleWiring", "uaal.bundleWiring", "off");
+		String systemPackages = configuration.getValue("systemPackages", "uaal.systemPackages", null);
+		String key = throwExceptionOnConflictStr + "|" + Arrays.toString(startArtifacts) + "|" + resolutionThreads
+				+ "|" + metadataCacheTtl + "|" + repositoryRoutes + "|" + treeCache + "|" + autoStartLevels + ":"
+				+ autoStartLevelBase + "|" + bundleWiring + ":" + systemPackages;
+		ExecutionListCreatorFactory factory = executionListCreatorFactories.get(key);
+		if (factory == null) {
+			factory = new ExecutionListCreatorFactory(getLog(), session, artifactMetadataSource, artifactFactory,
+					mavenProjectBuilder, localRepository, artifactResolver, throwExceptionOnConflictStr,
+					startArtifacts, resolutionThreads);
+			factory.setMetadataCacheTtl(metadataCacheTtl);
+			factory.setRepositoryRoutes(repositoryRoutes);
+			factory.setTreeCache(treeCache);
+			factory.setAutoStartLevels(autoStartLevels, autoStartLevelBase);
+			factory.setBundleWiring(bundleWiring, systemPackages);
+			executionListCreatorFactories.put(key, factory);
+		}
+		return factory;
+	}
+
+	/**
+	 * Creates composite files for given project.
+	 *
+	 * @param project
+	 *            the project
+	 * @param configuration
+	 *            configuration of the composite goal in the project
+	 * @throws Exception
+	 *             when the project cannot be resolved or files cannot be
+	 *             written
+	 */
+	private void createComposite(final MavenProject project, final GoalConfiguration configuration)
+			throws Exception {
+		CompositeWriter compositeWriter = new CompositeWriter(project.getBasedir(), getLog());
+		if (compositeWriter.copyManualComposite()) {
+			return;
+		}
+		boolean mwcomp = UaalCompositeMojo.useMwComposite(project,
+				configuration.getBoolean("useMwComposite", "useMwComposite", true));
+		getLog().info("Creating MAIN composite file of " + project.getId());
+		ExecutionListCreator execListCreator = getExecutionListCreatorFactory(configuration).create(
+				project.getRemoteArtifactRepositories(), new File(project.getBasedir(), UaalCompositeMojo.MAIN_WIRING));
+		if (configuration.getBoolean("shareResolution", "uaal.shareResolution", false) && !mwcomp
+				&& UaalTestMojo.hasItestsDependency(project)) {
+			execListCreator.setSharedResolutions(SharedResolutions.forSession(session));
+		}
+		ResolutionProfiler profiler = configuration.getBoolean("profileResolution", "uaal.profileResolution", false)
+				? new ResolutionProfiler() : ResolutionProfiler.DISABLED;
+		execListCreator.setResolutionProfiler(profiler);
+		if (configuration.getBoolean("resolutionEventLog", "uaal.resolutionEventLog", false)) {
+			execListCreator.setEventLogFile(new File(project.getBasedir(), UaalCompositeMojo.MAIN_EVENT_LOG));
+		}
+		List<String> mvnUrls = execListCreator.createArtifactExecutionList(project, new HashSet<String>(), false,
+				mwcomp);
+		compositeWriter.write(mvnUrls);
+		profiler.write(new File(project.getBasedir(), UaalCompositeMojo.MAIN_PROFILE), project.getId());
+	}
+
+	/**
+	 * Execute.
+	 *
+	 * @throws MojoExecutionException
+	 *             MojoExecutionException
+	 * @throws MojoFailureException
+	 *             MojoFailureException
+	 */
+	public final void execute() throws MojoExecutionException, MojoFailureException {
+		final List<MavenProject> projects = new ArrayList<MavenProject>();
+		final List<GoalConfiguration> configurations = new ArrayList<GoalConfiguration>();
+		for (MavenProject project : reactorProjects) {
+			GoalConfiguration configuration = GoalConfiguration.read(project, COMPOSITE_GOAL,
+					session.getExecutionProperties());
+			if (configuration == null) {
+				getLog().info("Skipping " + project.getId() + ", it has no execution of the composite goal");
+				continue;
+			}
+			projects.add(project);
+			configurations.add(configuration);
+		}
+		if (projects.isEmpty()) {
+			return;
+		}
+		int threads = reactorThreads > 0 ? reactorThreads : Runtime.getRuntime().availableProcessors();
+		threads = Math.max(1, Math.min(threads, projects.size()));
+		if (!MyMojoExecutorV15.isMaven3()) {
+			threads = 1;
+		}
+		getLog().info("Creating composite files of " + projects.size() + " projects using " + threads + " threads");
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<String> failedProjects = new ArrayList<String>();
+		try {
+			List<Future<Object>> results = new ArrayList<Future<Object>>();
+			for (int i = 0; i < projects.size(); i++) {
+				final MavenProject project = projects.get(i);
+				final GoalConfiguration configuration = configurations.get(i);
+				results.add(executor.submit(new Callable<Object>() {
+					public Object call() throws Exception {
+						createComposite(project, configuration);
+						return null;
+					}
+				}));
+			}
+			for (int i = 0; i < results.size(); i++) {
+				MavenProject project = projects.get(i);
+				try {
+					results.get(i).get();
+				} catch (ExecutionException e) {
+					getLog().error("Creating composite of " + project.getId() + " failed", e.getCause());
+					failedProjects.add(project.getId());
+				}
+			}
+		} catch (InterruptedException e) {
+			throw new MojoExecutionException("Interrupted while creating composites", e);
+		} finally {
+			executor.shutdownNow();
+		}
+		if (!failedProjects.isEmpty()) {
+			throw new MojoExecutionException("Creating composite failed for projects: " + failedProjects);
+		}
+	}
+}
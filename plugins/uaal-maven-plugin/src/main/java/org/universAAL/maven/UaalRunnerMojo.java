@@ -23,10 +23,14 @@ package org.universAAL.maven;
 import static org.universAAL.maven.MyMojoExecutorV15.configuration;
 import static org.universAAL.maven.MyMojoExecutorV15.element;
 import static org.universAAL.maven.MyMojoExecutorV15.executeMojo;
+import static org.universAAL.maven.MyMojoExecutorV15.executionEnvironment;
 import static org.universAAL.maven.MyMojoExecutorV15.goal;
 import static org.universAAL.maven.MyMojoExecutorV15.name;
 import static org.universAAL.maven.MyMojoExecutorV15.plugin;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 
 import org.apache.maven.artifact.factory.ArtifactFactory;
@@ -47,6 +51,7 @@ import org.codehaus.plexus.context.ContextException;
 import org.codehaus.plexus.personality.plexus.lifecycle.phase.Contextualizable;
 import org.universAAL.maven.MyMojoExecutorV15.Element;
 import org.universAAL.maven.treebuilder.ExecutionListCreator;
+import org.universAAL.maven.treebuilder.PomModelMemo;
 
 /**
  * This mojo creates composite file (artifact.composite) for project in which it
@@ -167,6 +172,126 @@ public class UaalRunnerMojo extends AbstractMojo implements Contextualizable {
 	 */
 	private StartSpec[] startArtifacts;
 
+	/**
+	 * Number of threads used for fetching POMs of dependencies in parallel
+	 * during the resolution of the dependency tree and for resolving bundles
+	 * and inspecting their manifests. The generated list does not depend on
+	 * this value. By default everything is resolved sequentially, on maven 2
+	 * always.
+	 *
+	 * @parameter expression="${uaal.resolutionThreads}" default-value="1"
+	 */
+	private int resolutionThreads;
+
+	/**
+	 * Set this to "true" to turn on the persistent cache of runtime profiles
+	 * placed next to the local repository (uaal-tree-cache directory).
+	 *
+	 * @parameter expression="${uaal.treeCache}" default-value="false"
+	 */
+	private boolean treeCache;
+
+	/**
+	 * Time in minutes for which available versions of artifacts and failed
+	 * lookups of repository metadata are remembered in a cache stored in the
+	 * local repository. Within one maven session they are always remembered.
+	 * By default the cache is not stored.
+	 *
+	 * @parameter expression="${uaal.metadataCacheTtl}" default-value="0"
+	 */
+	private int metadataCacheTtl;
+
+	/**
+	 * Rules routing lookups of artifacts only to repositories which can serve
+	 * them, in the form groupIdPrefix=repoId,repoId;groupIdPrefix=repoId (e.g.
+	 * "org.universAAL=uaal,uaal-thirdparty;org.ops4j=ops4j-releases,paxrunner").
+	 * Artifacts not matched by any rule are routed by the "*" rule if present,
+	 * otherwise to repositories not named in any rule. By default every
+	 * repository is queried for every artifact.
+	 *
+	 * @parameter expression="${uaal.repositoryRoutes}"
+	 */
+	private String repositoryRoutes;
+
+	/**
+	 * Set this to "true" to reuse the execution list created by the last run
+	 * if nothing changed since then: the project POM and its parents,
+	 * provisions, configuration of the plugin and SNAPSHOT artifacts in the
+	 * local repository.
+	 *
+	 * @parameter expression="${uaal.incremental}" default-value="false"
+	 */
+	private boolean incremental;
+
+	/**
+	 * Set this to "true" to keep dependency trees of provisions in a compact
+	 * form (coordinates and state of artifacts only) after they are resolved
+	 * and to release POMs built for the resolution. It lowers memory held by
+	 * several hundred provisions while the execution list is created, the peak
+	 * reached during the resolution itself stays the same.
+	 *
+	 * @parameter expression="${uaal.compactTree}" default-value="false"
+	 */
+	private boolean compactTree;
+
+	/**
+	 * Set this to "warn" or "fail" to resolve package-level wiring of bundles
+	 * during the build. The execution list is then ordered so that exporters
+	 * of packages are placed before their importers, imports which cannot be
+	 * satisfied are reported as warnings or fail the build and the wiring is
+	 * written to uaal-run-bundle-wiring.txt in the build directory. By default the list is ordered
+	 * only by maven dependencies.
+	 *
+	 * @parameter expression="${uaal.bundleWiring}" default-value="off"
+	 */
+	private String bundleWiring;
+
+	/**
+	 * Comma separated packages provided by the framework in addition to JRE
+	 * and OSGi core packages, they are not reported as unsatisfied when
+	 * bundleWiring is turned on. Names ending with ".*" are prefixes.
+	 *
+	 * @parameter expression="${uaal.systemPackages}"
+	 */
+	private String systemPackages;
+
+	/**
+	 * Set this to "true" to keep storage of the OSGi framework between runs.
+	 * The storage is bound to the execution list, pax-runner arguments and
+	 * SNAPSHOT bundles in the local repository. If none of them changed since
+	 * the last run, the framework is started from its persisted state instead
+	 * of installing all bundles again.
+	 *
+	 * @parameter expression="${uaal.frameworkCache}" default-value="false"
+	 */
+	private boolean frameworkCache;
+
+	/**
+	 * Directory in which storage of the OSGi framework is kept if
+	 * frameworkCache is turned on.
+	 *
+	 * @parameter expression="${uaal.frameworkCacheDirectory}"
+	 *            default-value="${project.build.directory}/uaal-framework"
+	 */
+	private File frameworkCacheDirectory;
+
+	/**
+	 * Name of the file in the build directory to which fingerprint of inputs
+	 * of the execution list is stored.
+	 */
+	private static final String RUN_FINGERPRINT = "uaal-run.fingerprint";
+
+	/**
+	 * Name of the execution list stored with the fingerprint.
+	 */
+	private static final String EXECUTION_LIST = "executionList";
+
+	/**
+	 * Name of the file in the build directory to which wiring of bundles is
+	 * written.
+	 */
+	private static final String RUN_WIRING = "uaal-run-bundle-wiring.txt";
+
 	/**
 	 * Plexus container.
 	 */
@@ -194,15 +319,36 @@ public class UaalRunnerMojo extends AbstractMojo implements Contextualizable {
 	 */
 	public final void execute() throws MojoExecutionException, MojoFailureException {
 		try {
-			ExecutionListCreator execListCreator = new ExecutionListCreator(getLog(), artifactMetadataSource,
-					artifactFactory, mavenProjectBuilder, localRepository, remoteRepositories, artifactResolver,
-					throwExceptionOnConflictStr, startArtifacts);
+			List mvnUrls = null;
+			ExecutionListFingerprint fingerprint = null;
+			if (incremental) {
+				fingerprint = createFingerprint();
+				if (fingerprint.isUpToDate()) {
+					mvnUrls = fingerprint.getStoredList(EXECUTION_LIST);
+				}
+				if (mvnUrls != null) {
+					getLog().info("Nothing changed since the last run, execution list is reused");
+				} else {
+					fingerprint.invalidate();
+				}
+			}
+			if (mvnUrls == null) {
+				mvnUrls = createExecutionList();
+				if (fingerprint != null) {
+					fingerprint.watchSnapshots(mvnUrls, null);
+					if (provision != null) {
+						fingerprint.watchSnapshots(Arrays.asList(provision), null);
+					}
+					fingerprint.putList(EXECUTION_LIST, mvnUrls);
+					fingerprint.store();
+				}
+			}
 
-			boolean defaultTransitive = true;
-			if ("false".equals(transitive)) {
-				defaultTransitive = false;
+			String runArgs = args;
+			if (frameworkCache) {
+				runArgs = new FrameworkCache(frameworkCacheDirectory, project.getBasedir(), localRepository,
+						getLog()).prepare(mvnUrls, args);
 			}
-			List mvnUrls = execListCreator.createArtifactExecutionList(provision, defaultTransitive, false);
 
 			Element[] mvnUrlElems = new Element[mvnUrls.size()];
 			int i = 0;
@@ -210,22 +356,65 @@ public class UaalRunnerMojo extends AbstractMojo implements Contextualizable {
 				String mvnUrl = (String) mvnUrlObj;
 				mvnUrlElems[i++] = new Element(name("provision"), mvnUrl);
 			}
-			try {
-				executeMojo(plugin("org.ops4j", "maven-pax-plugin", "1.4"), goal("run"),
-						configuration(element(name("args"), args), element(name("provision"), mvnUrlElems)),
-						new MyMojoExecutorV15.ExecutionEnvironmentM2(project, session, pluginManager));
-			} catch (Exception e) {
-				Object buildPluginManager = container.lookup("org.apache.maven.plugin.BuildPluginManager");
-				if (e.getCause() instanceof UnsupportedOperationException) {
-					executeMojo(plugin("org.ops4j", "maven-pax-plugin", "1.4"), goal("run"),
-							configuration(element(name("args"), args), element(name("provision"), mvnUrlElems)),
-							new MyMojoExecutorV15.ExecutionEnvironmentM3(project, session, buildPluginManager));
-				}
-			}
+			executeMojo(plugin("org.ops4j", "maven-pax-plugin", "1.4"), goal("run"),
+					configuration(element(name("args"), runArgs), element(name("provision"), mvnUrlElems)),
+					executionEnvironment(project, session, pluginManager, container));
 		} catch (Exception e) {
 			getLog().error(e);
 			throw new RuntimeException(e);
 		}
 	}
 
+	/**
+	 * Creates execution list of provisions.
+	 *
+	 * @return list of mvn urls in launch order
+	 * @throws Exception
+	 *             when the list cannot be created
+	 */
+	private List<String> createExecutionList() throws Exception {
+		ExecutionListCreatorFactory factory = new ExecutionListCreatorFactory(getLog(), session,
+				artifactMetadataSource, artifactFactory, mavenProjectBuilder, localRepository, artifactResolver,
+				throwExceptionOnConflictStr, startArtifacts, resolutionThreads);
+		factory.setMetadataCacheTtl(metadataCacheTtl);
+		factory.setRepositoryRoutes(repositoryRoutes);
+		factory.setTreeCache(treeCache);
+		factory.setBundleWiring(bundleWiring, systemPackages);
+		ExecutionListCreator execListCreator = factory.create(remoteRepositories,
+				new File(project.getBuild().getDirectory(), RUN_WIRING));
+		if (compactTree) {
+			// projects built for the resolution are not kept for the session
+			execListCreator.setPomModelMemo(new PomModelMemo());
+		}
+		execListCreator.setCompactTree(compactTree);
+
+		boolean defaultTransitive = true;
+		if ("false".equals(transitive)) {
+			defaultTransitive = false;
+		}
+		return execListCreator.createArtifactExecutionList(provision, defaultTransitive, false);
+	}
+
+	/**
+	 * Creates fingerprint of everything what the execution list depends on.
+	 *
+	 * @return the fingerprint
+	 * @throws IOException
+	 *             when the project POM cannot be read
+	 */
+	private ExecutionListFingerprint createFingerprint() throws IOException {
+		ExecutionListFingerprint fingerprint = new ExecutionListFingerprint(
+				new File(project.getBuild().getDirectory(), RUN_FINGERPRINT), localRepository);
+		fingerprint.addValue("goal", "run");
+		fingerprint.addProject(project);
+		fingerprint.addRepositories("remoteRepositories", remoteRepositories);
+		fingerprint.addValues("provision", provision);
+		fingerprint.addValue("transitive", transitive);
+		fingerprint.addValue("ignoreDepConflict", throwExceptionOnConflictStr);
+		fingerprint.addValues("startArtifacts", startArtifacts);
+		fingerprint.addValue("repositoryRoutes", repositoryRoutes);
+		fingerprint.addValue("bundleWiring", bundleWiring + ":" + systemPackages);
+		return fingerprint;
+	}
+
 }
@@ -26,8 +26,10 @@ package org.universAAL.maven;
 
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.IOException;
 import java.io.FileOutputStream;
 import java.io.OutputStreamWriter;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -38,6 +40,7 @@ import org.apache.maven.artifact.factory.ArtifactFactory;
 import org.apache.maven.artifact.metadata.ArtifactMetadataSource;
 import org.apache.maven.artifact.repository.ArtifactRepository;
 import org.apache.maven.artifact.resolver.ArtifactResolver;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.model.Dependency;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -46,6 +49,8 @@ import org.apache.maven.project.MavenProject;
 import org.apache.maven.project.MavenProjectBuilder;
 import org.universAAL.itests.conf.IntegrationTestConsts;
 import org.universAAL.maven.treebuilder.ExecutionListCreator;
+import org.universAAL.maven.treebuilder.ResolutionProfiler;
+import org.universAAL.maven.treebuilder.SharedResolutions;
 
 /**
  * This mojo creates composite file (artifact-test.composite) for project in
@@ -53,6 +58,7 @@ import org.universAAL.maven.treebuilder.ExecutionListCreator;
  * IntegrationTest.RUN_DIR_MVN_URL which is needed by integration tests.
  *
  * @goal test
+ * @threadSafe
  * @author <a href="mailto:stefano.lenzi@isti.cnr.it">Stefano Lenzi</a>
  * @author <a href="marek.psiuk@agh.edu.pl">Marek Psiuk</a>
  * @version $LastChangedRevision$ ( $LastChangedDate$ )
@@ -87,6 +93,15 @@ public class UaalTestMojo extends AbstractMojo {
 	 */
 	private MavenProject project;
 
+	/**
+	 * The Maven Session Object.
+	 *
+	 * @parameter expression="${session}"
+	 * @required
+	 * @readonly
+	 */
+	private MavenSession session;
+
 	/**
 	 * @parameter default-value="${ignore.dep.conflict}"
 	 * @readonly
@@ -151,6 +166,154 @@ public class UaalTestMojo extends AbstractMojo {
 	 */
 	private StartSpec[] startArtifacts;
 
+	/**
+	 * Number of threads used for fetching POMs of dependencies in parallel
+	 * during the resolution of the dependency tree and for resolving bundles
+	 * and inspecting their manifests. The generated list does not depend on
+	 * this value. By default everything is resolved sequentially, on maven 2
+	 * always.
+	 *
+	 * @parameter expression="${uaal.resolutionThreads}" default-value="1"
+	 */
+	private int resolutionThreads;
+
+	/**
+	 * Set this to "true" to turn on the persistent cache of runtime profiles
+	 * placed next to the local repository (uaal-tree-cache directory).
+	 *
+	 * @parameter expression="${uaal.treeCache}" default-value="false"
+	 */
+	private boolean treeCache;
+
+	/**
+	 * Time in minutes for which available versions of artifacts and failed
+	 * lookups of repository metadata are remembered in a cache stored in the
+	 * local repository. Within one maven session they are always remembered.
+	 * By default the cache is not stored.
+	 *
+	 * @parameter expression="${uaal.metadataCacheTtl}" default-value="0"
+	 */
+	private int metadataCacheTtl;
+
+	/**
+	 * Rules routing lookups of artifacts only to repositories which can serve
+	 * them, in the form groupIdPrefix=repoId,repoId;groupIdPrefix=repoId (e.g.
+	 * "org.universAAL=uaal,uaal-thirdparty;org.ops4j=ops4j-releases,paxrunner").
+	 * Artifacts not matched by any rule are routed by the "*" rule if present,
+	 * otherwise to repositories not named in any rule. By default every
+	 * repository is queried for every artifact.
+	 *
+	 * @parameter expression="${uaal.repositoryRoutes}"
+	 */
+	private String repositoryRoutes;
+
+	/**
+	 * Set this to "true" to assign start levels to bundles automatically on
+	 * the basis of their depth in the dependency graph. Bundles which do not
+	 * depend on each other get the same start level and can be started
+	 * concurrently. Start levels configured in startArtifacts take precedence.
+	 * Bundles depending on them get higher start levels.
+	 *
+	 * @parameter expression="${uaal.autoStartLevels}" default-value="false"
+	 */
+	private boolean autoStartLevels;
+
+	/**
+	 * Start level assigned to bundles which do not depend on other bundles
+	 * when autoStartLevels is turned on.
+	 *
+	 * @parameter expression="${uaal.autoStartLevelBase}" default-value="5"
+	 */
+	private int autoStartLevelBase;
+
+	/**
+	 * Set this to "warn" or "fail" to resolve package-level wiring of bundles
+	 * during the build. The execution list is then ordered so that exporters
+	 * of packages are placed before their importers, imports which cannot be
+	 * satisfied are reported as warnings or fail the build and the wiring is
+	 * written to target/uaal-itests-bundle-wiring.txt. By default the list is ordered
+	 * only by maven dependencies.
+	 *
+	 * @parameter expression="${uaal.bundleWiring}" default-value="off"
+	 */
+	private String bundleWiring;
+
+	/**
+	 * Comma separated packages provided by the framework in addition to JRE
+	 * and OSGi core packages, they are not reported as unsatisfied when
+	 * bundleWiring is turned on. Names ending with ".*" are prefixes.
+	 *
+	 * @parameter expression="${uaal.systemPackages}"
+	 */
+	private String systemPackages;
+
+	/**
+	 * Set this to "true" to skip creating the composite for itests if nothing
+	 * changed since the last build: the project POM and its parents,
+	 * configuration of the plugin and SNAPSHOT artifacts in the local
+	 * repository. Files in target directory created by the last build are
+	 * reused then.
+	 *
+	 * @parameter expression="${uaal.incremental}" default-value="false"
+	 */
+	private boolean incremental;
+
+	/**
+	 * Set this to "true" to reuse the dependency tree shared by the composite
+	 * goal executed earlier in the same build with shareResolution turned on.
+	 * Only dependencies from the uAAL-Test-Runtime profile are resolved on top
+	 * of it then. Otherwise the composite for itests is resolved from scratch.
+	 *
+	 * @parameter expression="${uaal.shareResolution}" default-value="false"
+	 */
+	private boolean shareResolution;
+
+	/**
+	 * Set this to "true" to time phases of the resolution (building POMs,
+	 * retrieving metadata, resolving bundles, reading manifests, walking the
+	 * tree) and write a JSON report with the slowest artifacts and hit rates
+	 * of caches to target/uaal-itests-resolution-profile.json.
+	 *
+	 * @parameter expression="${uaal.profileResolution}" default-value="false"
+	 */
+	private boolean profileResolution;
+
+	/**
+	 * Set this to "true" to stream events of the dependency tree resolution
+	 * (included artifacts, artifacts omitted for nearer ones or cycles, scope
+	 * updates, version ranges) as JSON lines to target/uaal-itests-resolution-events.jsonl.
+	 *
+	 * @parameter expression="${uaal.resolutionEventLog}" default-value="false"
+	 */
+	private boolean resolutionEventLog;
+
+	/**
+	 * Default path to the fingerprint of inputs of the composite for itests.
+	 */
+	private static final String TEST_FINGERPRINT = "target/uaal-itests.fingerprint";
+
+	/**
+	 * Default path to the resolution profile of the composite for itests.
+	 */
+	private static final String TEST_PROFILE = "target/uaal-itests-resolution-profile.json";
+
+	/**
+	 * Default path to the log of resolution events of the composite for
+	 * itests.
+	 */
+	private static final String TEST_EVENT_LOG = "target/uaal-itests-resolution-events.jsonl";
+
+	/**
+	 * Default path to the wiring of bundles of the composite for itests.
+	 */
+	private static final String TEST_WIRING = "target/uaal-itests-bundle-wiring.txt";
+
+	/**
+	 * Name of the list of separated artifact dependencies stored with the
+	 * fingerprint.
+	 */
+	private static final String SEPARATED_DEPS_LIST = "separatedArtifactDeps";
+
 	/**
 	 * Execute.
 	 *
@@ -165,7 +328,7 @@ public class UaalTestMojo extends AbstractMojo {
 				getLog().info("Creation of composite file for itests skipped");
 				return;
 			}
-			if (!projectHasItestsDependency()) {
+			if (!hasItestsDependency(project)) {
 				getLog().info("Creation of composite file for itests skipped.\n"
 						+ "There is no itests dependency detected, thus no need to generate test composite.");
 				return;
@@ -180,9 +343,35 @@ public class UaalTestMojo extends AbstractMojo {
 						+ IntegrationTestConsts.TEST_COMPOSITE + System.getProperty("line.separator")
 						+ System.getProperty("line.separator"));
 
-				ExecutionListCreator execListCreator = new ExecutionListCreator(getLog(), artifactMetadataSource,
-						artifactFactory, mavenProjectBuilder, localRepository, remoteRepositories, artifactResolver,
-						throwExceptionOnConflictStr, startArtifacts);
+				ExecutionListFingerprint fingerprint = null;
+				if (incremental) {
+					fingerprint = createFingerprint();
+					if (isUpToDate(fingerprint)) {
+						getLog().info("Nothing changed since the last build, " + IntegrationTestConsts.TEST_COMPOSITE
+								+ " is up to date");
+						return;
+					}
+					fingerprint.invalidate();
+				}
+				ExecutionListCreatorFactory factory = new ExecutionListCreatorFactory(getLog(), session,
+						artifactMetadataSource, artifactFactory, mavenProjectBuilder, localRepository, artifactResolver,
+						throwExceptionOnConflictStr, startArtifacts, resolutionThreads);
+				factory.setMetadataCacheTtl(metadataCacheTtl);
+				factory.setRepositoryRoutes(repositoryRoutes);
+				factory.setTreeCache(treeCache);
+				factory.setAutoStartLevels(autoStartLevels, autoStartLevelBase);
+				factory.setBundleWiring(bundleWiring, systemPackages);
+				ExecutionListCreator execListCreator = factory.create(remoteRepositories,
+						new File(baseDirectory, TEST_WIRING));
+				if (shareResolution) {
+					execListCreator.setSharedResolutions(SharedResolutions.forSession(session));
+				}
+				ResolutionProfiler profiler = profileResolution ? new ResolutionProfiler()
+						: ResolutionProfiler.DISABLED;
+				execListCreator.setResolutionProfiler(profiler);
+				if (resolutionEventLog) {
+					execListCreator.setEventLogFile(new File(baseDirectory, TEST_EVENT_LOG));
+				}
 				Set<String> separatedArtifactDepsOfRoot = new HashSet<String>();
 				List<String> mvnUrls = execListCreator.createArtifactExecutionList(project, separatedArtifactDepsOfRoot,
 						true, false);
@@ -203,6 +392,7 @@ public class UaalTestMojo extends AbstractMojo {
 					compositeWriter.write("scan-bundle:" + mvnUrlStr + System.getProperty("line.separator"));
 				}
 				compositeWriter.close();
+				profiler.write(new File(baseDirectory, TEST_PROFILE), project.getId());
 
 				if (!separatedArtifactDepsOfRoot.isEmpty()) {
 					File separatedArtifactDepsFile = new File(baseDirectory,
@@ -215,6 +405,11 @@ public class UaalTestMojo extends AbstractMojo {
 					}
 					separatedArtifactDepsWriter.close();
 				}
+				if (fingerprint != null) {
+					fingerprint.watchSnapshots(mvnUrls, project.getArtifact());
+					fingerprint.putList(SEPARATED_DEPS_LIST, new ArrayList<String>(separatedArtifactDepsOfRoot));
+					fingerprint.store();
+				}
 
 				try {
 					Artifact runDirArtifact = execListCreator
@@ -230,6 +425,48 @@ public class UaalTestMojo extends AbstractMojo {
 		}
 	}
 
+	/**
+	 * Creates fingerprint of everything what the composite for itests depends
+	 * on.
+	 *
+	 * @return the fingerprint
+	 * @throws IOException
+	 *             when the project POM cannot be read
+	 */
+	private ExecutionListFingerprint createFingerprint() throws IOException {
+		ExecutionListFingerprint fingerprint = new ExecutionListFingerprint(
+				new File(baseDirectory, TEST_FINGERPRINT), localRepository);
+		fingerprint.addValue("goal", "itests");
+		fingerprint.addProject(project);
+		fingerprint.addRepositories("remoteRepositories", remoteRepositories);
+		fingerprint.addValue("ignoreDepConflict", throwExceptionOnConflictStr);
+		fingerprint.addValues("startArtifacts", startArtifacts);
+		fingerprint.addValue("autoStartLevels", autoStartLevels + ":" + autoStartLevelBase);
+		fingerprint.addValue("repositoryRoutes", repositoryRoutes);
+		fingerprint.addValue("bundleWiring", bundleWiring + ":" + systemPackages);
+		return fingerprint;
+	}
+
+	/**
+	 * Checks if files created by the last build can be reused.
+	 *
+	 * @param fingerprint
+	 *            fingerprint of the current build
+	 * @return true if the fingerprint did not change and all files created by
+	 *         the last build exist
+	 */
+	private boolean isUpToDate(final ExecutionListFingerprint fingerprint) {
+		if (!fingerprint.isUpToDate() || !new File(baseDirectory, IntegrationTestConsts.TEST_COMPOSITE).isFile()) {
+			return false;
+		}
+		List<String> separatedArtifactDeps = fingerprint.getStoredList(SEPARATED_DEPS_LIST);
+		if (separatedArtifactDeps == null) {
+			return false;
+		}
+		return separatedArtifactDeps.isEmpty()
+				|| new File(baseDirectory, IntegrationTestConsts.SEPARATED_ARTIFACT_DEPS).isFile();
+	}
+
 	/**
 	 *
 	 * @return true if either test has to be skipped
@@ -238,7 +475,15 @@ public class UaalTestMojo extends AbstractMojo {
 		return skip || skipTests;
 	}
 
-	private boolean projectHasItestsDependency() {
+	/**
+	 * Checks if given project depends on itests, i.e. if the composite for
+	 * itests is created for it.
+	 *
+	 * @param project
+	 *            the project
+	 * @return true if the project has itests dependency
+	 */
+	static boolean hasItestsDependency(final MavenProject project) {
 		/*
 		 * Check the Itest dependency
 		 */
@@ -0,0 +1,167 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven.treebuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.metadata.ArtifactMetadataRetrievalException;
+import org.apache.maven.artifact.metadata.ArtifactMetadataSource;
+import org.apache.maven.artifact.metadata.ResolutionGroup;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.versioning.ArtifactVersion;
+
+/**
+ * ArtifactMetadataSource which remembers results of the decorated source in
+ * MetadataCache. Available versions are cached together with failures of
+ * their lookup. Retrieved ResolutionGroups are not cached because their
+ * artifacts are modified during building of the tree, only failed retrievals
+ * are remembered. Callers get their own copies of version lists, so they can
+ * sort them.
+ *
+ */
+public class CachingArtifactMetadataSource implements ArtifactMetadataSource {
+
+	/**
+	 * Decorated source.
+	 */
+	private final ArtifactMetadataSource source;
+
+	/**
+	 * Cache of results.
+	 */
+	private final MetadataCache cache;
+
+	/**
+	 * Profiler timing the lookups.
+	 */
+	private ResolutionProfiler profiler = ResolutionProfiler.DISABLED;
+
+	/**
+	 * Constructor of CachingArtifactMetadataSource.
+	 *
+	 * @param source
+	 *            decorated source
+	 * @param cache
+	 *            cache of results
+	 */
+	public CachingArtifactMetadataSource(final ArtifactMetadataSource source, final MetadataCache cache) {
+		this.source = source;
+		this.cache = cache;
+	}
+
+	/**
+	 * Sets profiler timing the lookups, including the ones served from the
+	 * cache.
+	 *
+	 * @param profiler
+	 *            the profiler
+	 */
+	public void setResolutionProfiler(final ResolutionProfiler profiler) {
+		this.profiler = profiler;
+	}
+
+	public ResolutionGroup retrieve(final Artifact artifact, final ArtifactRepository localRepository,
+			final List remoteRepositories) throws ArtifactMetadataRetrievalException {
+		long start = profiler.start();
+		try {
+			return retrieveCached(artifact, localRepository, remoteRepositories);
+		} finally {
+			profiler.stop(ResolutionProfiler.METADATA, artifact, start);
+		}
+	}
+
+	private ResolutionGroup retrieveCached(final Artifact artifact, final ArtifactRepository localRepository,
+			final List remoteRepositories) throws ArtifactMetadataRetrievalException {
+		String key = artifact.getGroupId() + ":" + artifact.getArtifactId() + ":" + artifact.getType() + ":"
+				+ artifact.getClassifier() + ":" + artifact.getVersion() + repositoriesKey(remoteRepositories);
+		MetadataCache.Entry failure = cache.getFailedRetrieval(key);
+		if (failure != null) {
+			throw new ArtifactMetadataRetrievalException(failure.failure, null, artifact);
+		}
+		cache.countMiss();
+		try {
+			return source.retrieve(artifact, localRepository, remoteRepositories);
+		} catch (ArtifactMetadataRetrievalException e) {
+			cache.putFailedRetrieval(key, String.valueOf(e.getMessage()));
+			throw e;
+		}
+	}
+
+	public Artifact retrieveRelocatedArtifact(final Artifact artifact, final ArtifactRepository localRepository,
+			final List remoteRepositories) throws ArtifactMetadataRetrievalException {
+		return source.retrieveRelocatedArtifact(artifact, localRepository, remoteRepositories);
+	}
+
+	public List retrieveAvailableVersions(final Artifact artifact, final ArtifactRepository localRepository,
+			final List remoteRepositories) throws ArtifactMetadataRetrievalException {
+		long start = profiler.start();
+		try {
+			return retrieveAvailableVersionsCached(artifact, localRepository, remoteRepositories);
+		} finally {
+			profiler.stop(ResolutionProfiler.METADATA, artifact, start);
+		}
+	}
+
+	private List retrieveAvailableVersionsCached(final Artifact artifact, final ArtifactRepository localRepository,
+			final List remoteRepositories) throws ArtifactMetadataRetrievalException {
+		String key = artifact.getGroupId() + ":" + artifact.getArtifactId() + repositoriesKey(remoteRepositories);
+		MetadataCache.Entry entry = cache.getAvailableVersions(key);
+		if (entry != null) {
+			if (entry.failure != null) {
+				throw new ArtifactMetadataRetrievalException(entry.failure, null, artifact);
+			}
+			return new ArrayList<ArtifactVersion>(entry.versions);
+		}
+		cache.countMiss();
+		List versions;
+		try {
+			versions = source.retrieveAvailableVersions(artifact, localRepository, remoteRepositories);
+		} catch (ArtifactMetadataRetrievalException e) {
+			cache.putAvailableVersions(key, null, String.valueOf(e.getMessage()));
+			throw e;
+		}
+		if (versions != null) {
+			cache.putAvailableVersions(key, versions, null);
+		}
+		return versions;
+	}
+
+	/**
+	 * Creates part of cache key identifying remote repositories, because the
+	 * same artifact can be found in one set of repositories and missing in
+	 * another.
+	 *
+	 * @param remoteRepositories
+	 *            remote repositories
+	 * @return ids of the repositories
+	 */
+	private static String repositoriesKey(final List remoteRepositories) {
+		StringBuilder key = new StringBuilder("@");
+		if (remoteRepositories != null) {
+			for (Object repo : remoteRepositories) {
+				key.append(((ArtifactRepository) repo).getId()).append(',');
+			}
+		}
+		return key.toString();
+	}
+}
@@ -0,0 +1,70 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven.treebuilder;
+
+import java.util.List;
+
+import org.apache.maven.artifact.Artifact;
+
+/**
+ * Dependency node created by TreeCompactor. Instead of its own list of remote
+ * repositories the node keeps only an index into a table of distinct
+ * repository lists shared by all nodes of compacted trees.
+ */
+public class CompactDependencyNode extends MyDependencyNode {
+
+	/**
+	 * Table of distinct repository lists shared by nodes.
+	 */
+	private final List<List> repositoryLists;
+
+	/**
+	 * Index of repository list of this node in the table.
+	 */
+	private final int repositoryListIndex;
+
+	/**
+	 * Constructor of CompactDependencyNode.
+	 *
+	 * @param artifact
+	 *            artifact of the node
+	 * @param state
+	 *            state of the node (one of DependencyNode constants)
+	 * @param relatedArtifact
+	 *            kept artifact if the node is omitted for conflict or
+	 *            duplicate, otherwise null
+	 * @param repositoryLists
+	 *            table of distinct repository lists
+	 * @param repositoryListIndex
+	 *            index of repository list of this node in the table
+	 */
+	public CompactDependencyNode(final Artifact artifact, final int state, final Artifact relatedArtifact,
+			final List<List> repositoryLists, final int repositoryListIndex) {
+		super(artifact, state, relatedArtifact, null);
+		this.repositoryLists = repositoryLists;
+		this.repositoryListIndex = repositoryListIndex;
+	}
+
+	@Override
+	public List getRemoteRepositories() {
+		return repositoryLists.get(repositoryListIndex);
+	}
+}
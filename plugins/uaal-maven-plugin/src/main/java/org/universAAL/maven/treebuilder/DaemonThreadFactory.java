@@ -0,0 +1,84 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven.treebuilder;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ThreadFactory creating named daemon threads for the background work done
+ * during resolution (fetching of POMs, jars, etc.). Daemon threads ensure that
+ * a pending background task never prevents the maven JVM from exiting.
+ *
+ * Threads have to be created from the mojo thread (which is the case when
+ * tasks are submitted from it), because maven 3 keeps the current session in
+ * an inheritable thread local which is needed by the project builder.
+ */
+public class DaemonThreadFactory implements ThreadFactory {
+
+	/**
+	 * Prefix of names of created threads.
+	 */
+	private final String namePrefix;
+
+	/**
+	 * Counter of created threads.
+	 */
+	private final AtomicInteger threadCounter = new AtomicInteger();
+
+	/**
+	 * Constructor of DaemonThreadFactory.
+	 *
+	 * @param namePrefix
+	 *            prefix of names of created threads
+	 */
+	public DaemonThreadFactory(final String namePrefix) {
+		this.namePrefix = namePrefix;
+	}
+
+	/**
+	 * Creates new daemon thread.
+	 *
+	 * @param runnable
+	 *            task executed by the thread
+	 * @return created thread
+	 */
+	public Thread newThread(final Runnable runnable) {
+		Thread thread = new Thread(runnable, namePrefix + "-" + threadCounter.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	}
+
+	/**
+	 * Creates fixed thread pool which uses daemon threads.
+	 *
+	 * @param threads
+	 *            number of threads in the pool
+	 * @param namePrefix
+	 *            prefix of names of created threads
+	 * @return created pool
+	 */
+	public static ExecutorService newFixedThreadPool(final int threads, final String namePrefix) {
+		return Executors.newFixedThreadPool(threads, new DaemonThreadFactory(namePrefix));
+	}
+}
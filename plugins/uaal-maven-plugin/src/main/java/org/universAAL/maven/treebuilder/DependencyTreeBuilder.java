@@ -30,6 +30,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.factory.ArtifactFactory;
@@ -58,7 +59,9 @@ import org.apache.maven.project.MavenProjectBuilder;
 import org.apache.maven.project.ProjectBuildingException;
 import org.apache.maven.shared.dependency.tree.DependencyNode;
 import org.apache.maven.shared.dependency.tree.DependencyTreeBuilderException;
+import org.universAAL.maven.ArtifactKey;
 import org.universAAL.maven.FilteringVisitorSupport;
+import org.universAAL.maven.MyMojoExecutorV15;
 import org.universAAL.maven.UaalCompositeMojo;
 
 /**
@@ -99,20 +102,173 @@ public class DependencyTreeBuilder {
 
 	private ArtifactRepository localRepository;
 
-	private boolean includeTestRuntimes = false;
+	private final boolean includeTestRuntimes;
 
-	private boolean useMwComposite = false;
+	private final boolean useMwComposite;
 
-	public String mwVersion = null;
+	/**
+	 * State of the last finished buildDependencyTree call. Results of the
+	 * call (separatedArtifactDepsOfRoot, mwVersion) are read from it.
+	 */
+	private volatile ResolutionState lastState = new ResolutionState(false);
+
+	/**
+	 * Mutable state of a single buildDependencyTree call. It is passed through
+	 * the recursion instead of being kept in fields of the builder, so
+	 * concurrent calls on the same builder do not interfere.
+	 */
+	private static class ResolutionState {
+
+		/**
+		 * Whether dependencies from uAAL-Test-Runtime profile of the root are
+		 * included.
+		 */
+		private boolean includeTestRuntimes;
+
+		private ArtifactKey rootKey = null;
+
+		/**
+		 * If the root artifact has one of separatedGroupIds then this list
+		 * will contain its .core dependencies. For now It will be only one
+		 * .core dependency.
+		 */
+		private final List<ResolutionNode> separatedArtifactDepsOfRoot = new ArrayList<ResolutionNode>();
+
+		/**
+		 * Version of middleware bundles replaced by the mw composite.
+		 */
+		private String mwVersion = null;
+
+		/**
+		 * Executor of background fetches, null if POMs are not fetched in the
+		 * background.
+		 */
+		private ExecutorService prefetchExecutor = null;
+
+		/**
+		 * POM artifacts which were already submitted for background fetching.
+		 */
+		private final Set<ArtifactKey> prefetchedPoms = new HashSet<ArtifactKey>();
+
+		/**
+		 * State of the resolution of the last built root, kept so that test
+		 * runtime dependencies of the root can be resolved later on top of the
+		 * already built tree. Null if more than one root was built.
+		 */
+		private RootResolution rootResolution = null;
+
+		private ResolutionState(final boolean includeTestRuntimes) {
+			this.includeTestRuntimes = includeTestRuntimes;
+		}
+	}
+
+	/**
+	 * State of the resolution of a root which is needed for resuming
+	 * processing of its children.
+	 */
+	private static class RootResolution {
+
+		private Artifact originatingArtifact;
+
+		private ResolutionNode root;
+
+		private Map resolvedArtifacts;
+
+		private ManagedVersionMap managedVersions;
+
+		private List remoteRepositories;
+
+		private ArtifactMetadataSource source;
+
+		private ArtifactFilter filter;
+
+		private DependencyTreeResolutionListener listener;
+
+		private Set<String> separatedGroupIds;
+	}
+
+	/**
+	 * Number of threads used for fetching POMs of child nodes in parallel,
+	 * ahead of the recursion which consumes them. Recursion itself (conflict
+	 * resolution and firing events) is always sequential so the resulting tree
+	 * does not depend on this value. Value of 1 means that nothing is fetched
+	 * in the background.
+	 */
+	private int resolutionThreads = 1;
+
+	/**
+	 * Memo of maven projects built from the repository. Runtime profiles,
+	 * separatedGroupIds and dependency management of the same POM are read
+	 * from a single built project.
+	 */
+	private PomModelMemo pomModelMemo = new PomModelMemo();
+
+	/**
+	 * Persistent cache of runtime profiles and separatedGroupIds. If null then
+	 * they are always extracted from built maven projects.
+	 */
+	private RuntimeProfileCache runtimeProfileCache = null;
+
+	/**
+	 * Streaming reader of runtime profiles and separatedGroupIds used before
+	 * building the maven project. If null then the project is always built.
+	 */
+	private PomProfileReader pomProfileReader;
 
 	/**
-	 * If the root artifact has one of separatedGroupIds then this list will
-	 * contain its .core dependencies. For now It will be only one .core
-	 * dependency.
+	 * Router narrowing remote repositories used for looking up artifacts. If
+	 * null then all remote repositories are used for each artifact.
 	 */
-	private List<ResolutionNode> separatedArtifactDepsOfRoot = new ArrayList<ResolutionNode>();
+	private RepositoryRouter repositoryRouter = null;
 
-	private String stringifiedRoot = null;
+	/**
+	 * Profiler timing building of POMs.
+	 */
+	private ResolutionProfiler profiler = ResolutionProfiler.DISABLED;
+
+	/**
+	 * Listener which ignores all events, used if there is no additional
+	 * listener.
+	 */
+	private static final ResolutionListener NO_EVENT_LISTENER = new ResolutionListener() {
+		public void testArtifact(final Artifact node) {
+		}
+
+		public void startProcessChildren(final Artifact artifact) {
+		}
+
+		public void endProcessChildren(final Artifact artifact) {
+		}
+
+		public void includeArtifact(final Artifact artifact) {
+		}
+
+		public void omitForNearer(final Artifact omitted, final Artifact kept) {
+		}
+
+		public void updateScope(final Artifact artifact, final String scope) {
+		}
+
+		public void manageArtifact(final Artifact artifact, final Artifact replacement) {
+		}
+
+		public void omitForCycle(final Artifact artifact) {
+		}
+
+		public void updateScopeCurrentPom(final Artifact artifact, final String ignoredScope) {
+		}
+
+		public void selectVersionFromRange(final Artifact artifact) {
+		}
+
+		public void restrictRange(final Artifact artifact, final Artifact replacement, final VersionRange newRange) {
+		}
+	};
+
+	/**
+	 * Additional listener notified about resolution events.
+	 */
+	private ResolutionListener eventListener = NO_EVENT_LISTENER;
 
 	/**
 	 * Creates instance of DependencyTreeBuilder with needed parameters.
@@ -134,6 +290,126 @@ public class DependencyTreeBuilder {
 		this.localRepository = localRepository;
 		this.includeTestRuntimes = includeTestRuntimes;
 		this.useMwComposite = useMwComposite;
+		this.pomProfileReader = new PomProfileReader(localRepository);
+	}
+
+	/**
+	 * Sets number of threads used for fetching POMs of child nodes in
+	 * parallel. Value of 1 (default) turns off background fetching. POMs are
+	 * never fetched in the background on maven 2, because its project builder
+	 * is not thread-safe.
+	 *
+	 * @param resolutionThreads
+	 *            number of threads.
+	 */
+	public void setResolutionThreads(final int resolutionThreads) {
+		this.resolutionThreads = resolutionThreads;
+	}
+
+	/**
+	 * Sets memo of maven projects built from the repository. By default each
+	 * builder has its own memo.
+	 *
+	 * @param pomModelMemo
+	 *            the memo, typically shared by the whole maven session.
+	 */
+	public void setPomModelMemo(final PomModelMemo pomModelMemo) {
+		this.pomModelMemo = pomModelMemo;
+	}
+
+	/**
+	 * Sets persistent cache of runtime profiles and separatedGroupIds.
+	 *
+	 * @param runtimeProfileCache
+	 *            the cache or null if no cache should be used.
+	 */
+	public void setRuntimeProfileCache(final RuntimeProfileCache runtimeProfileCache) {
+		this.runtimeProfileCache = runtimeProfileCache;
+	}
+
+	/**
+	 * Sets streaming reader of runtime profiles and separatedGroupIds. By
+	 * default each builder has its own reader.
+	 *
+	 * @param pomProfileReader
+	 *            the reader or null if the maven project should be always
+	 *            built for them.
+	 */
+	public void setPomProfileReader(final PomProfileReader pomProfileReader) {
+		this.pomProfileReader = pomProfileReader;
+	}
+
+	/**
+	 * Sets router narrowing remote repositories used for looking up metadata
+	 * and POMs of artifacts. Repository lists of nodes are not modified, they
+	 * are routed each time they are used for given artifact.
+	 *
+	 * @param repositoryRouter
+	 *            the router or null if all repositories should be used.
+	 */
+	public void setRepositoryRouter(final RepositoryRouter repositoryRouter) {
+		this.repositoryRouter = repositoryRouter;
+	}
+
+	/**
+	 * Sets profiler timing building of POMs, including the ones fetched in
+	 * the background.
+	 *
+	 * @param profiler
+	 *            the profiler.
+	 */
+	public void setResolutionProfiler(final ResolutionProfiler profiler) {
+		this.profiler = profiler;
+	}
+
+	/**
+	 * Sets additional listener notified about the same resolution events as
+	 * the listener building the tree, e.g. ResolutionEventLog.
+	 *
+	 * @param eventListener
+	 *            the listener or null.
+	 */
+	public void setEventListener(final ResolutionListener eventListener) {
+		this.eventListener = eventListener == null ? NO_EVENT_LISTENER : eventListener;
+	}
+
+	/**
+	 * Returns remote repositories which should be used for looking up given
+	 * artifact.
+	 *
+	 * @param artifact
+	 *            the artifact.
+	 * @param remoteRepositories
+	 *            all remote repositories available for the artifact.
+	 * @return repositories chosen by the repository router or all passed
+	 *         repositories if there is no router.
+	 */
+	private List routeRepositories(final Artifact artifact, final List remoteRepositories) {
+		if (repositoryRouter == null) {
+			return remoteRepositories;
+		}
+		return repositoryRouter.route(artifact, remoteRepositories);
+	}
+
+	/**
+	 * Returns remote repositories which should be used for retrieving POM of
+	 * given artifact. The router is given the POM artifact, so that it can tell
+	 * whether the POM has to be downloaded.
+	 *
+	 * @param artifact
+	 *            the artifact.
+	 * @param remoteRepositories
+	 *            all remote repositories available for the artifact.
+	 * @return repositories chosen by the repository router or all passed
+	 *         repositories if there is no router.
+	 */
+	private List routePomRepositories(final Artifact artifact, final List remoteRepositories) {
+		if (repositoryRouter == null) {
+			return remoteRepositories;
+		}
+		Artifact pomArtifact = artifactFactory.createProjectArtifact(artifact.getGroupId(), artifact.getArtifactId(),
+				artifact.getVersion());
+		return repositoryRouter.route(pomArtifact, remoteRepositories);
 	}
 
 	/**
@@ -193,27 +469,35 @@ public class DependencyTreeBuilder {
 		switch (event) {
 		case ResolutionListener.TEST_ARTIFACT:
 			listener.testArtifact(node.getArtifact());
+			eventListener.testArtifact(node.getArtifact());
 			break;
 		case ResolutionListener.PROCESS_CHILDREN:
 			listener.startProcessChildren(node.getArtifact());
+			eventListener.startProcessChildren(node.getArtifact());
 			break;
 		case ResolutionListener.FINISH_PROCESSING_CHILDREN:
 			listener.endProcessChildren(node.getArtifact());
+			eventListener.endProcessChildren(node.getArtifact());
 			break;
 		case ResolutionListener.INCLUDE_ARTIFACT:
 			listener.includeArtifact(node);
+			eventListener.includeArtifact(node.getArtifact());
 			break;
 		case ResolutionListener.OMIT_FOR_NEARER:
 			listener.omitForNearer(node, replacement);
+			eventListener.omitForNearer(node.getArtifact(), replacement.getArtifact());
 			break;
 		case ResolutionListener.OMIT_FOR_CYCLE:
 			listener.omitForCycle(node);
+			eventListener.omitForCycle(node.getArtifact());
 			break;
 		case ResolutionListener.UPDATE_SCOPE:
 			listener.updateScope(node, replacement.getArtifact().getScope());
+			eventListener.updateScope(node.getArtifact(), replacement.getArtifact().getScope());
 			break;
 		case ResolutionListener.UPDATE_SCOPE_CURRENT_POM:
 			listener.updateScopeCurrentPom(node, replacement.getArtifact().getScope());
+			eventListener.updateScopeCurrentPom(node.getArtifact(), replacement.getArtifact().getScope());
 			break;
 		case ResolutionListener.MANAGE_ARTIFACT_VERSION:
 			if (listener instanceof ResolutionListenerForDepMgmt) {
@@ -222,6 +506,12 @@ public class DependencyTreeBuilder {
 			} else {
 				listener.manageArtifact(node.getArtifact(), replacement.getArtifact());
 			}
+			if (eventListener instanceof ResolutionListenerForDepMgmt) {
+				((ResolutionListenerForDepMgmt) eventListener).manageArtifactVersion(node.getArtifact(),
+						replacement.getArtifact());
+			} else {
+				eventListener.manageArtifact(node.getArtifact(), replacement.getArtifact());
+			}
 			break;
 		case ResolutionListener.MANAGE_ARTIFACT_SCOPE:
 			if (listener instanceof ResolutionListenerForDepMgmt) {
@@ -230,14 +520,22 @@ public class DependencyTreeBuilder {
 			} else {
 				listener.manageArtifact(node.getArtifact(), replacement.getArtifact());
 			}
+			if (eventListener instanceof ResolutionListenerForDepMgmt) {
+				((ResolutionListenerForDepMgmt) eventListener).manageArtifactScope(node.getArtifact(),
+						replacement.getArtifact());
+			} else {
+				eventListener.manageArtifact(node.getArtifact(), replacement.getArtifact());
+			}
 			break;
 		case ResolutionListener.SELECT_VERSION_FROM_RANGE:
 			listener.selectVersionFromRange(node.getArtifact());
+			eventListener.selectVersionFromRange(node.getArtifact());
 			break;
 		case ResolutionListener.RESTRICT_RANGE:
 			if (node.getArtifact().getVersionRange().hasRestrictions()
 					|| replacement.getArtifact().getVersionRange().hasRestrictions()) {
 				listener.restrictRange(node.getArtifact(), replacement.getArtifact(), newRange);
+				eventListener.restrictRange(node.getArtifact(), replacement.getArtifact(), newRange);
 			}
 			break;
 		default:
@@ -479,7 +777,7 @@ public class DependencyTreeBuilder {
 							List versions = artifact.getAvailableVersions();
 							if (versions == null) {
 								versions = source.retrieveAvailableVersions(artifact, localRepository,
-										childRemoteRepositories);
+										routeRepositories(artifact, childRemoteRepositories));
 								artifact.setAvailableVersions(versions);
 							}
 
@@ -538,7 +836,8 @@ public class DependencyTreeBuilder {
 					return true;
 				}
 
-				ResolutionGroup rGroup = source.retrieve(artifact, localRepository, childRemoteRepositories);
+				ResolutionGroup rGroup = source.retrieve(artifact, localRepository,
+						routePomRepositories(artifact, childRemoteRepositories));
 
 				// TODO might be better to have source.retrieve() throw
 				// a specific exception for this situation
@@ -600,9 +899,12 @@ public class DependencyTreeBuilder {
 	 * @param listener
 	 *            Listener to be notified about events related to resolution
 	 *            process.
+	 * @param state
+	 *            State of the buildDependencyTree call.
 	 */
 	private void changeArtifactCoreToOsgi(final ResolutionNode parentNode, final ResolutionNode childNode,
-			final Set<String> separatedGroupIds, final DependencyTreeResolutionListener listener) {
+			final Set<String> separatedGroupIds, final DependencyTreeResolutionListener listener,
+			final ResolutionState state) {
 		Artifact parent = parentNode.getArtifact();
 		Artifact child = childNode.getArtifact();
 		if (separatedGroupIds.contains(child.getGroupId())) {
@@ -626,8 +928,8 @@ public class DependencyTreeBuilder {
 							} else {
 								throw new IllegalStateException("Child version is not present");
 							}
-							if (this.stringifiedRoot.equals(FilteringVisitorSupport.stringify(parent))) {
-								this.separatedArtifactDepsOfRoot.add(childNode);
+							if (state.rootKey.equals(ArtifactKey.of(parent))) {
+								state.separatedArtifactDepsOfRoot.add(childNode);
 							}
 							listener.addExcludedCoreArtifact(childNode);
 							return;
@@ -652,6 +954,103 @@ public class DependencyTreeBuilder {
 		}
 	}
 
+	/**
+	 * Submits POMs of given artifacts for fetching in the background. Thanks to
+	 * that, when the recursion reaches given artifacts, their projects are
+	 * already built and present in the POM model memo, or their POMs are
+	 * already read by the POM profile reader. Artifacts
+	 * without a version (ranges) are skipped because their version is selected
+	 * only during the recursion. Errors are ignored here, they will be reported
+	 * by the recursion itself.
+	 *
+	 * @param artifacts
+	 *            Artifacts which POMs should be fetched.
+	 * @param remoteRepositories
+	 *            Remote repositories used for fetching.
+	 * @param state
+	 *            State of the buildDependencyTree call.
+	 */
+	private void prefetchPoms(final List<Artifact> artifacts, final List remoteRepositories,
+			final ResolutionState state) {
+		if (state.prefetchExecutor == null) {
+			return;
+		}
+		for (Artifact artifact : artifacts) {
+			if (artifact.getVersion() == null) {
+				continue;
+			}
+			final Artifact pomArtifact = artifactFactory.createArtifact(artifact.getGroupId(),
+					artifact.getArtifactId(), artifact.getVersion(), "", "pom");
+			if (!state.prefetchedPoms.add(ArtifactKey.of(pomArtifact))) {
+				continue;
+			}
+			final List pomRemoteRepositories = routeRepositories(pomArtifact, remoteRepositories);
+			state.prefetchExecutor.submit(new Runnable() {
+				public void run() {
+					long start = profiler.start();
+					if (pomProfileReader != null) {
+						boolean read = pomProfileReader.read(pomArtifact) != null;
+						profiler.stop(ResolutionProfiler.POM_READ, pomArtifact, start);
+						if (read) {
+							return;
+						}
+						start = profiler.start();
+					}
+					try {
+						pomModelMemo.getProject(mavenProjectBuilder, pomArtifact, pomRemoteRepositories,
+								localRepository);
+						profiler.stop(ResolutionProfiler.POM_BUILD, pomArtifact, start);
+					} catch (Exception e) {
+						// reported by the recursion
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Predicts artifacts which will be recursed for given child nodes. It
+	 * applies the same dependency management and .core to .osgi substitution
+	 * as the recursion but without modifying the nodes. The prediction is used
+	 * only for background fetching so it does not have to be exact.
+	 *
+	 * @param children
+	 *            Child nodes.
+	 * @param managedVersions
+	 *            Map of managed versions.
+	 * @param separatedGroupIds
+	 *            List of groupIds which artifacts are separated to .core and
+	 *            .osgi branches.
+	 * @return List of predicted artifacts.
+	 */
+	private List<Artifact> predictChildArtifacts(final List<ResolutionNode> children,
+			final ManagedVersionMap managedVersions, final Set<String> separatedGroupIds) {
+		List<Artifact> predicted = new ArrayList<Artifact>();
+		for (ResolutionNode child : children) {
+			Artifact artifact = child.getArtifact();
+			String version = artifact.getVersion();
+			Artifact managed = (Artifact) managedVersions.get(child.getKey());
+			if (managed != null && managed.getVersion() != null
+					&& (child.isChildOfRootNode() ? version == null : true)) {
+				version = managed.getVersion();
+			}
+			if (version == null) {
+				continue;
+			}
+			if (useMwComposite && UaalCompositeMojo.MW_GROUP_ID.equals(artifact.getGroupId())) {
+				// middleware bundles are not recursed, mw.composite is used
+				continue;
+			}
+			String artifactId = artifact.getArtifactId();
+			if (separatedGroupIds.contains(artifact.getGroupId()) && artifactId.endsWith(".core")) {
+				artifactId = changeCoreSuffixToOsgi(artifactId);
+			}
+			predicted.add(artifactFactory.createArtifact(artifact.getGroupId(), artifactId, version,
+					artifact.getScope(), artifact.getType()));
+		}
+		return predicted;
+	}
+
 	/**
 	 * The heart of the tree builder. Recursively resolves provided artifact.
 	 * Output is passed to listeners, passed as argument, which are notified
@@ -664,10 +1063,9 @@ public class DependencyTreeBuilder {
 	 *            Current node which is resolved.
 	 * @param resolvedArtifacts
 	 *            Map which is used for remembering already resolved artifacts.
-	 *            Artifacts are indexed by a key which calculation algorithm is
-	 *            the same as the one present in calculateDepKey method. Thanks
-	 *            to this map, duplicates and conflicts are detected and
-	 *            resolved.
+	 *            Artifacts are indexed by their conflict keys
+	 *            (ArtifactKey.ofConflictId). Thanks to this map, duplicates
+	 *            and conflicts are detected and resolved.
 	 * @param managedVersions
 	 *            Information about dependency management extracted from the
 	 *            subtree rootnode - a maven project.
@@ -685,6 +1083,10 @@ public class DependencyTreeBuilder {
 	 * @param transitive
 	 *            If this parameter is false than the children of current node
 	 *            are not resolved.
+	 * @param separatedGroupIds
+	 *            GroupIds of separated artifacts.
+	 * @param state
+	 *            State of the buildDependencyTree call.
 	 *
 	 * @throws CyclicDependencyException
 	 *             Exception thrown when cyclic dependency detected.
@@ -714,9 +1116,9 @@ public class DependencyTreeBuilder {
 			final ManagedVersionMap managedVersions, final ArtifactRepository localRepository,
 			final List remoteRepositories, final ArtifactMetadataSource source, final ArtifactFilter filter,
 			final DependencyTreeResolutionListener listener, final boolean transitive,
-			final Set<String> separatedGroupIds) throws CyclicDependencyException, ArtifactResolutionException,
-			OverConstrainedVersionException, ArtifactMetadataRetrievalException, SecurityException,
-			NoSuchFieldException, IllegalArgumentException, IllegalAccessException {
+			final Set<String> separatedGroupIds, final ResolutionState state) throws CyclicDependencyException,
+			ArtifactResolutionException, OverConstrainedVersionException, ArtifactMetadataRetrievalException,
+			SecurityException, NoSuchFieldException, IllegalArgumentException, IllegalAccessException {
 		// check for MW bundle; return if a mw bundle
 		boolean out = false;
 		// System.out.println(" --oa " + originatingArtifact.getArtifactId());
@@ -726,12 +1128,12 @@ public class DependencyTreeBuilder {
 		if (useMwComposite && UaalCompositeMojo.MW_GROUP_ID.equals(node.getArtifact().getGroupId())) {
 			if (!node.getArtifact().getArtifactId().contains("karaf.feature")) {
 				String thisVersion = node.getArtifact().getVersion();
-				if (mwVersion == null) {
-					mwVersion = thisVersion;
+				if (state.mwVersion == null) {
+					state.mwVersion = thisVersion;
 				} else {
-					if (!mwVersion.equals(thisVersion))
+					if (!state.mwVersion.equals(thisVersion))
 						throw new IllegalStateException(
-								"The dependencies have two different version of middleware bundles: " + mwVersion
+								"The dependencies have two different version of middleware bundles: " + state.mwVersion
 										+ " and " + thisVersion);
 				}
 				if (out)
@@ -760,7 +1162,8 @@ public class DependencyTreeBuilder {
 				manageArtifact(node, managedVersions);
 			}
 
-			List previousNodes = (List) resolvedArtifacts.get(key);
+			ArtifactKey conflictKey = ArtifactKey.ofConflictId(node.getArtifact());
+			List previousNodes = (List) resolvedArtifacts.get(conflictKey);
 			if (previousNodes != null) {
 				for (Iterator i = previousNodes.iterator(); i.hasNext();) {
 					ResolutionNode previous = (ResolutionNode) i.next();
@@ -816,7 +1219,7 @@ public class DependencyTreeBuilder {
 									if (versions == null) {
 										try {
 											versions = source.retrieveAvailableVersions(resetArtifact, localRepository,
-													remoteRepositories);
+													routeRepositories(resetArtifact, remoteRepositories));
 											resetArtifact.setAvailableVersions(versions);
 										} catch (ArtifactMetadataRetrievalException e) {
 											resetArtifact.setDependencyTrail(node.getDependencyTrail());
@@ -872,7 +1275,7 @@ public class DependencyTreeBuilder {
 				}
 			} else {
 				previousNodes = new ArrayList();
-				resolvedArtifacts.put(key, previousNodes);
+				resolvedArtifacts.put(conflictKey, previousNodes);
 			}
 			previousNodes.add(node);
 
@@ -885,6 +1288,23 @@ public class DependencyTreeBuilder {
 				fireEvent(ResolutionListener.PROCESS_CHILDREN, listener, node);
 				if (transitive) {
 					Artifact parentArtifact = node.getArtifact();
+					List runtimeDeps = getRuntimeDeps(node.getArtifact(), managedVersions, remoteRepositories, state);
+					if (state.prefetchExecutor != null) {
+						List<ResolutionNode> toPrefetch = new ArrayList<ResolutionNode>();
+						for (Iterator i = node.getChildrenIterator(); i.hasNext();) {
+							ResolutionNode child = (ResolutionNode) i.next();
+							if (filter.include(child.getArtifact())
+									&& !Artifact.SCOPE_PROVIDED.equals(child.getArtifact().getScope())) {
+								toPrefetch.add(child);
+							}
+						}
+						for (Object runtimeDepObj : runtimeDeps) {
+							toPrefetch.add(new ResolutionNode(((DependencyNode) runtimeDepObj).getArtifact(),
+									node.getRemoteRepositories(), node));
+						}
+						prefetchPoms(predictChildArtifacts(toPrefetch, managedVersions, separatedGroupIds),
+								remoteRepositories, state);
+					}
 					for (Iterator i = node.getChildrenIterator(); i.hasNext();) {
 						ResolutionNode child = (ResolutionNode) i.next();
 						if (!filter.include(child.getArtifact())) {
@@ -898,7 +1318,7 @@ public class DependencyTreeBuilder {
 						if (Artifact.SCOPE_PROVIDED.equals(child.getArtifact().getScope())) {
 							continue;
 						}
-						changeArtifactCoreToOsgi(node, child, separatedGroupIds, listener);
+						changeArtifactCoreToOsgi(node, child, separatedGroupIds, listener, state);
 						boolean isContinue = resolveChildNode(node, child, filter, managedVersions, listener, source,
 								parentArtifact);
 						if (isContinue) {
@@ -910,56 +1330,10 @@ public class DependencyTreeBuilder {
 						combinedSeparatedGroupIds.addAll(extractedSeparatedGroupIds);
 						recurse(originatingArtifact, child, resolvedArtifacts, managedVersions, localRepository,
 								child.getRemoteRepositories(), source, filter, listener, true,
-								combinedSeparatedGroupIds);
-					}
-					List runtimeDeps = getRuntimeDeps(node.getArtifact(), managedVersions, remoteRepositories);
-					Field childrenField = node.getClass().getDeclaredField("children");
-					childrenField.setAccessible(true);
-					List nodesChildren = (List) childrenField.get(node);
-					/*
-					 * nodesChildren can be empty when dealing with parent POMs
-					 */
-					if (nodesChildren == Collections.EMPTY_LIST) {
-						nodesChildren = new ArrayList();
-						childrenField.set(node, nodesChildren);
-					}
-					for (Object runtimeDepObj : runtimeDeps) {
-						DependencyNode runtimeDep = (DependencyNode) runtimeDepObj;
-						Artifact artifact = runtimeDep.getArtifact();
-						ResolutionNode childRuntime = new ResolutionNode(artifact, node.getRemoteRepositories(), node);
-						/*
-						 * rotgier: In case of runtime dependencies provided
-						 * scope should be allowed
-						 */
-						if (!filter.include(childRuntime.getArtifact())) {
-
-							if (!Artifact.SCOPE_PROVIDED.equals(artifact.getScope())) {
-								continue;
-							}
-						}
-						changeArtifactCoreToOsgi(node, childRuntime, separatedGroupIds, listener);
-						boolean isContinue = resolveChildNode(node, childRuntime, filter, managedVersions, listener,
-								source, parentArtifact);
-						if (isContinue) {
-							continue;
-						}
-						List<String> extractedSeparatedGroupIds = extractSeparatedGroupIds(childRuntime.getArtifact(),
-								remoteRepositories);
-						Set<String> combinedSeparatedGroupIds = new HashSet<String>(separatedGroupIds);
-						combinedSeparatedGroupIds.addAll(extractedSeparatedGroupIds);
-						recurse(originatingArtifact, childRuntime, resolvedArtifacts, managedVersions, localRepository,
-								childRuntime.getRemoteRepositories(), source, filter, listener, true,
-								combinedSeparatedGroupIds);
-						try {
-							nodesChildren.add(childRuntime);
-						} catch (UnsupportedOperationException e) {
-							// nodesChildren is unmodifiable
-							ArrayList nNodesChildren = new ArrayList(nodesChildren);
-							nNodesChildren.add(childRuntime);
-							nodesChildren = nNodesChildren;
-							childrenField.set(node, nodesChildren);
-						}
+								combinedSeparatedGroupIds, state);
 					}
+					recurseIntoRuntimeDeps(originatingArtifact, node, runtimeDeps, resolvedArtifacts, managedVersions,
+							localRepository, remoteRepositories, source, filter, listener, separatedGroupIds, state);
 				}
 				fireEvent(ResolutionListener.FINISH_PROCESSING_CHILDREN, listener, node);
 			}
@@ -1097,12 +1471,67 @@ public class DependencyTreeBuilder {
 	 * @return List of separatedGroupIds.
 	 */
 	private List<String> extractSeparatedGroupIds(final Artifact artifact, final List remoteRepositories) {
+		return getRuntimeProfileFacts(artifact, remoteRepositories).separatedGroupIds;
+	}
+
+	/**
+	 * Gets facts about runtime profiles and separatedGroupIds of given
+	 * artifact. Facts are taken from the persistent cache if possible,
+	 * otherwise they are read by the POM profile reader or, if it is not
+	 * possible, extracted from maven project built for the artifact.
+	 *
+	 * @param artifact
+	 *            Artifact which facts should be returned.
+	 * @param remoteRepositories
+	 *            Remote maven repositories used for resolving of passed
+	 *            artifact.
+	 * @return the facts.
+	 */
+	private RuntimeProfileFacts getRuntimeProfileFacts(final Artifact artifact, final List remoteRepositories) {
 		try {
 			Artifact pomArtifact = artifactFactory.createArtifact(artifact.getGroupId(), artifact.getArtifactId(),
 					artifact.getVersion(), "", "pom");
-			MavenProject pomProject = mavenProjectBuilder.buildFromRepository(pomArtifact, remoteRepositories,
-					localRepository);
-			return extractSeparatedGroupIds(pomProject);
+			RuntimeProfileFacts facts = null;
+			if (runtimeProfileCache != null) {
+				facts = runtimeProfileCache.get(pomArtifact);
+			}
+			if (facts == null && pomProfileReader != null) {
+				long start = profiler.start();
+				facts = pomProfileReader.read(pomArtifact);
+				profiler.stop(ResolutionProfiler.POM_READ, pomArtifact, start);
+				if (facts != null && runtimeProfileCache != null) {
+					runtimeProfileCache.put(pomArtifact, facts);
+				}
+			}
+			if (facts == null) {
+				long start = profiler.start();
+				MavenProject pomProject = pomModelMemo.getProject(mavenProjectBuilder, pomArtifact,
+						routeRepositories(pomArtifact, remoteRepositories), localRepository);
+				profiler.stop(ResolutionProfiler.POM_BUILD, pomArtifact, start);
+				Map<String, List<Dependency>> profileDependencies = new LinkedHashMap<String, List<Dependency>>();
+				List profiles = pomProject.getModel().getProfiles();
+				if (profiles != null) {
+					for (Object profileObj : profiles) {
+						Profile profile = (Profile) profileObj;
+						if (UAAL_RUNTIME_PROFILE.equals(profile.getId())
+								|| UAAL_TEST_RUNTIME_PROFILE.equals(profile.getId())) {
+							List<Dependency> deps = profileDependencies.get(profile.getId());
+							if (deps == null) {
+								deps = new ArrayList<Dependency>();
+								profileDependencies.put(profile.getId(), deps);
+							}
+							if (profile.getDependencies() != null) {
+								deps.addAll(profile.getDependencies());
+							}
+						}
+					}
+				}
+				facts = new RuntimeProfileFacts(profileDependencies, extractSeparatedGroupIds(pomProject));
+				if (runtimeProfileCache != null) {
+					runtimeProfileCache.put(pomArtifact, facts);
+				}
+			}
+			return facts;
 		} catch (ProjectBuildingException e) {
 			throw new RuntimeException(e);
 		}
@@ -1165,40 +1594,177 @@ public class DependencyTreeBuilder {
 	 *
 	 * @param nodeArtifact
 	 * @param managedVersions
+	 * @param state
 	 * @return
 	 */
 	private List getRuntimeDeps(final Artifact nodeArtifact, final ManagedVersionMap managedVersions,
-			final List remoteRepositories) {
-		try {
-			List runtimeDeps = new ArrayList();
-			Artifact pomArtifact = artifactFactory.createArtifact(nodeArtifact.getGroupId(),
-					nodeArtifact.getArtifactId(), nodeArtifact.getVersion(), "", "pom");
-			MavenProject pomProject = mavenProjectBuilder.buildFromRepository(pomArtifact, remoteRepositories,
-					localRepository);
-			List profiles = pomProject.getModel().getProfiles();
-			if (profiles != null) {
-				for (Object profileObj : profiles) {
-					Profile profile = (Profile) profileObj;
-					if (UAAL_RUNTIME_PROFILE.equals(profile.getId())) {
-						List deps = profile.getDependencies();
-						extractDepsFromProfile(deps, runtimeDeps, managedVersions);
-					}
-					if (this.includeTestRuntimes) {
-						if (this.stringifiedRoot.equals(FilteringVisitorSupport.stringify(nodeArtifact))) {
-							if (UAAL_TEST_RUNTIME_PROFILE.equals(profile.getId())) {
-								List deps = profile.getDependencies();
-								extractDepsFromProfile(deps, runtimeDeps, managedVersions);
-							}
-						}
+			final List remoteRepositories, final ResolutionState state) {
+		List runtimeDeps = new ArrayList();
+		RuntimeProfileFacts facts = getRuntimeProfileFacts(nodeArtifact, remoteRepositories);
+		for (Map.Entry<String, List<Dependency>> entry : facts.profileDependencies.entrySet()) {
+			if (UAAL_RUNTIME_PROFILE.equals(entry.getKey())) {
+				extractDepsFromProfile(entry.getValue(), runtimeDeps, managedVersions);
+			}
+			if (state.includeTestRuntimes) {
+				if (state.rootKey.equals(ArtifactKey.of(nodeArtifact))) {
+					if (UAAL_TEST_RUNTIME_PROFILE.equals(entry.getKey())) {
+						extractDepsFromProfile(entry.getValue(), runtimeDeps, managedVersions);
 					}
 				}
 			}
-			return runtimeDeps;
-		} catch (ProjectBuildingException e) {
-			throw new RuntimeException(e);
+		}
+		return runtimeDeps;
+	}
+
+	/**
+	 * Resolves runtime dependencies of given node and recurses into them. The
+	 * dependencies are added as children of the node.
+	 *
+	 * @param originatingArtifact
+	 *            Artifact of the root.
+	 * @param node
+	 *            The node which runtime dependencies are resolved.
+	 * @param runtimeDeps
+	 *            Runtime dependencies of the node (DependencyNodes).
+	 * @param resolvedArtifacts
+	 *            Map which is used for remembering already resolved artifacts.
+	 * @param managedVersions
+	 *            Map of managed versions.
+	 * @param localRepository
+	 *            The maven's local repository.
+	 * @param remoteRepositories
+	 *            Remote repositories of the node.
+	 * @param source
+	 *            ArtifactMetadataSource provided by maven.
+	 * @param filter
+	 *            Filter used for unfiltering artifacts which should not be
+	 *            included in the dependency tree.
+	 * @param listener
+	 *            Listener used for providing the output of the resolve process.
+	 * @param separatedGroupIds
+	 *            GroupIds of separated artifacts.
+	 * @param state
+	 *            State of the buildDependencyTree call.
+	 */
+	private void recurseIntoRuntimeDeps(final Artifact originatingArtifact, final ResolutionNode node,
+			final List runtimeDeps, final Map resolvedArtifacts, final ManagedVersionMap managedVersions,
+			final ArtifactRepository localRepository, final List remoteRepositories,
+			final ArtifactMetadataSource source, final ArtifactFilter filter,
+			final DependencyTreeResolutionListener listener, final Set<String> separatedGroupIds,
+			final ResolutionState state) throws CyclicDependencyException, ArtifactResolutionException,
+			OverConstrainedVersionException, ArtifactMetadataRetrievalException, SecurityException,
+			NoSuchFieldException, IllegalArgumentException, IllegalAccessException {
+		Artifact parentArtifact = node.getArtifact();
+		Field childrenField = node.getClass().getDeclaredField("children");
+		childrenField.setAccessible(true);
+		List nodesChildren = (List) childrenField.get(node);
+		/*
+		 * nodesChildren can be empty when dealing with parent POMs
+		 */
+		if (nodesChildren == Collections.EMPTY_LIST) {
+			nodesChildren = new ArrayList();
+			childrenField.set(node, nodesChildren);
+		}
+		for (Object runtimeDepObj : runtimeDeps) {
+			DependencyNode runtimeDep = (DependencyNode) runtimeDepObj;
+			Artifact artifact = runtimeDep.getArtifact();
+			ResolutionNode childRuntime = new ResolutionNode(artifact, node.getRemoteRepositories(), node);
+			/*
+			 * rotgier: In case of runtime dependencies provided scope should
+			 * be allowed
+			 */
+			if (!filter.include(childRuntime.getArtifact())) {
+
+				if (!Artifact.SCOPE_PROVIDED.equals(artifact.getScope())) {
+					continue;
+				}
+			}
+			changeArtifactCoreToOsgi(node, childRuntime, separatedGroupIds, listener, state);
+			boolean isContinue = resolveChildNode(node, childRuntime, filter, managedVersions, listener, source,
+					parentArtifact);
+			if (isContinue) {
+				continue;
+			}
+			List<String> extractedSeparatedGroupIds = extractSeparatedGroupIds(childRuntime.getArtifact(),
+					remoteRepositories);
+			Set<String> combinedSeparatedGroupIds = new HashSet<String>(separatedGroupIds);
+			combinedSeparatedGroupIds.addAll(extractedSeparatedGroupIds);
+			recurse(originatingArtifact, childRuntime, resolvedArtifacts, managedVersions, localRepository,
+					childRuntime.getRemoteRepositories(), source, filter, listener, true, combinedSeparatedGroupIds,
+					state);
+			try {
+				nodesChildren.add(childRuntime);
+			} catch (UnsupportedOperationException e) {
+				// nodesChildren is unmodifiable
+				ArrayList nNodesChildren = new ArrayList(nodesChildren);
+				nNodesChildren.add(childRuntime);
+				nodesChildren = nNodesChildren;
+				childrenField.set(node, nodesChildren);
+			}
 		}
 	}
 
+	/**
+	 * Checks if test runtime dependencies of the root can be resolved on top
+	 * of the tree built without them (see resolveTestRuntimes). It is possible
+	 * only if exactly one root was built without mw composite and if the
+	 * uAAL-Test-Runtime profile of the root is not followed by the
+	 * uAAL-Runtime profile, because then its dependencies would be processed
+	 * as the last children of the root anyway.
+	 *
+	 * @return true if test runtime dependencies can be resolved incrementally
+	 */
+	public boolean canResolveTestRuntimes() {
+		ResolutionState state = lastState;
+		if (state.rootResolution == null || state.includeTestRuntimes || useMwComposite) {
+			return false;
+		}
+		RuntimeProfileFacts facts = getRuntimeProfileFacts(state.rootResolution.originatingArtifact,
+				state.rootResolution.remoteRepositories);
+		String lastProfile = null;
+		for (String profile : facts.profileDependencies.keySet()) {
+			lastProfile = profile;
+		}
+		return !UAAL_RUNTIME_PROFILE.equals(lastProfile) || !facts.profileDependencies
+				.containsKey(UAAL_TEST_RUNTIME_PROFILE);
+	}
+
+	/**
+	 * Resolves dependencies from uAAL-Test-Runtime profile of the root on top
+	 * of the tree built by the last buildDependencyTree call, as if the tree
+	 * was built with includeTestRuntimes set. The already built tree is
+	 * modified. It can be called only if canResolveTestRuntimes returns true.
+	 *
+	 * @return the dependency tree including test runtime dependencies.
+	 */
+	public List<RootNode> resolveTestRuntimes() throws DependencyTreeBuilderException {
+		if (!canResolveTestRuntimes()) {
+			throw new IllegalStateException("Test runtime dependencies cannot be resolved incrementally");
+		}
+		ResolutionState state = lastState;
+		state.includeTestRuntimes = true;
+		RootResolution resumed = state.rootResolution;
+		RuntimeProfileFacts facts = getRuntimeProfileFacts(resumed.originatingArtifact, resumed.remoteRepositories);
+		List<Dependency> testDeps = facts.profileDependencies.get(UAAL_TEST_RUNTIME_PROFILE);
+		List<RootNode> rootNodes = resumed.listener.getRootNodes();
+		if (testDeps == null || testDeps.isEmpty() || rootNodes.size() != 1) {
+			return rootNodes;
+		}
+		List runtimeDeps = new ArrayList();
+		extractDepsFromProfile(testDeps, runtimeDeps, resumed.managedVersions);
+		try {
+			resumed.listener.resumeAt(rootNodes.get(0).rootNode);
+			fireEvent(ResolutionListener.PROCESS_CHILDREN, resumed.listener, resumed.root);
+			recurseIntoRuntimeDeps(resumed.originatingArtifact, resumed.root, runtimeDeps, resumed.resolvedArtifacts,
+					resumed.managedVersions, localRepository, resumed.remoteRepositories, resumed.source,
+					resumed.filter, resumed.listener, resumed.separatedGroupIds, state);
+			fireEvent(ResolutionListener.FINISH_PROCESSING_CHILDREN, resumed.listener, resumed.root);
+		} catch (Exception e) {
+			throw new DependencyTreeBuilderException("Cannot resolve test runtime dependencies", e);
+		}
+		return rootNodes;
+	}
+
 	/**
 	 * Method builds dependency tree for a list of maven projects. All artifacts
 	 * in the tree are crosschecked against duplications and conflicts. In each
@@ -1246,6 +1812,86 @@ public class DependencyTreeBuilder {
 		ArtifactFilter filter = new ScopeArtifactFilter();
 		DependencyTreeResolutionListener listener = new DependencyTreeResolutionListener(filter);
 		Map resolvedArtifacts = new LinkedHashMap();
+		ResolutionState state = new ResolutionState(includeTestRuntimes);
+		if (resolutionThreads > 1 && MyMojoExecutorV15.isMaven3()) {
+			state.prefetchExecutor = DaemonThreadFactory.newFixedThreadPool(resolutionThreads, "uaal-pom-prefetch");
+		}
+		try {
+			prefetchDirectDependencies(state, projectDescs);
+			buildDependencyTree(state, factory, metadataSource, filter, listener, resolvedArtifacts, projectDescs);
+		} finally {
+			if (state.prefetchExecutor != null) {
+				/*
+				 * Pending fetches are not interrupted, they only fill the local
+				 * repository and the POM model memo.
+				 */
+				state.prefetchExecutor.shutdown();
+				state.prefetchExecutor = null;
+			}
+		}
+		lastState = state;
+		return listener.getRootNodes();
+	}
+
+	/**
+	 * Submits POMs of direct dependencies of all passed projects for fetching
+	 * in the background, so that fetching for subsequent projects overlaps
+	 * with the resolution of the first ones.
+	 *
+	 * @param state
+	 *            State of the buildDependencyTree call.
+	 * @param projectDescs
+	 *            list of maven project descriptors.
+	 */
+	private void prefetchDirectDependencies(final ResolutionState state,
+			final MavenProjectDescriptor... projectDescs) {
+		if (state.prefetchExecutor == null) {
+			return;
+		}
+		for (MavenProjectDescriptor projectDesc : projectDescs) {
+			if (!projectDesc.transitive) {
+				continue;
+			}
+			List<Artifact> artifacts = new ArrayList<Artifact>();
+			for (Object depObj : projectDesc.project.getDependencies()) {
+				Dependency dep = (Dependency) depObj;
+				if (!dep.isOptional() && dep.getVersion() != null && !dep.getVersion().startsWith("[")
+						&& !dep.getVersion().startsWith("(")) {
+					artifacts.add(artifactFactory.createArtifact(dep.getGroupId(), dep.getArtifactId(),
+							dep.getVersion(), dep.getScope(), dep.getType()));
+				}
+			}
+			prefetchPoms(artifacts, projectDesc.remoteRepositories, state);
+		}
+	}
+
+	/**
+	 * Builds dependency tree for passed projects, one after another. All
+	 * projects share the same map of resolved artifacts and the same
+	 * listener.
+	 *
+	 * @param state
+	 *            State of the buildDependencyTree call.
+	 * @param factory
+	 *            Factory used for creating artifacts.
+	 * @param metadataSource
+	 *            ArtifactMetadataSource provided by maven.
+	 * @param filter
+	 *            Filter used for unfiltering artifacts which should not be
+	 *            included in the dependency tree.
+	 * @param listener
+	 *            Listener used for providing the output of the resolve process.
+	 * @param resolvedArtifacts
+	 *            Map which is used for remembering already resolved artifacts.
+	 * @param projectDescs
+	 *            list of maven project descriptors.
+	 */
+	private void buildDependencyTree(final ResolutionState state, final ArtifactFactory factory,
+			final ArtifactMetadataSource metadataSource, final ArtifactFilter filter,
+			final DependencyTreeResolutionListener listener, final Map resolvedArtifacts,
+			final MavenProjectDescriptor... projectDescs) throws DependencyTreeBuilderException,
+			ArtifactMetadataRetrievalException, InvalidVersionSpecificationException, SecurityException,
+			NoSuchFieldException, IllegalArgumentException, IllegalAccessException {
 		for (MavenProjectDescriptor projectDesc : projectDescs) {
 			MavenProject project = projectDesc.project;
 			try {
@@ -1260,7 +1906,7 @@ public class DependencyTreeBuilder {
 				// specified as a dependency, because in the
 				// dependency there is only jar type specified.
 				Artifact originatingArtifact = project.getArtifact();
-				this.stringifiedRoot = FilteringVisitorSupport.stringify(originatingArtifact);
+				state.rootKey = ArtifactKey.of(originatingArtifact);
 				if ("bundle".equals(originatingArtifact.getType())) {
 					Artifact changeArtifact = artifactFactory.createArtifact(originatingArtifact.getGroupId(),
 							originatingArtifact.getArtifactId(), originatingArtifact.getVersion(),
@@ -1333,12 +1979,26 @@ public class DependencyTreeBuilder {
 
 				recurse(originatingArtifact, root, resolvedArtifacts, versionMap, localRepository, remoteRepositories,
 						metadataSource, filter, listener, projectDesc.transitive,
-						new HashSet<String>(separatedGroupId));
+						new HashSet<String>(separatedGroupId), state);
+				if (projectDescs.length == 1 && projectDesc.transitive && root.isActive()) {
+					RootResolution rootResolution = new RootResolution();
+					rootResolution.originatingArtifact = originatingArtifact;
+					rootResolution.root = root;
+					rootResolution.resolvedArtifacts = resolvedArtifacts;
+					rootResolution.managedVersions = versionMap;
+					rootResolution.remoteRepositories = remoteRepositories;
+					rootResolution.source = metadataSource;
+					rootResolution.filter = filter;
+					rootResolution.listener = listener;
+					rootResolution.separatedGroupIds = new HashSet<String>(separatedGroupId);
+					state.rootResolution = rootResolution;
+				} else {
+					state.rootResolution = null;
+				}
 			} catch (ArtifactResolutionException exception) {
 				throw new DependencyTreeBuilderException("Cannot build project dependency tree", exception);
 			}
 		}
-		return listener.getRootNodes();
 	}
 
 	/**
@@ -1347,7 +2007,32 @@ public class DependencyTreeBuilder {
 	 * @return Returns list of separatedArtifactDepsOfRoot.
 	 */
 	public List<ResolutionNode> getSeparatedArtifactDepsOfRoot() {
-		return separatedArtifactDepsOfRoot;
+		return lastState.separatedArtifactDepsOfRoot;
+	}
+
+	/**
+	 * Getter method to the version of middleware bundles which were replaced
+	 * by the mw composite in the last built tree.
+	 *
+	 * @return Returns the version or null if no middleware bundle was found.
+	 */
+	public String getMwVersion() {
+		return lastState.mwVersion;
+	}
+
+	/**
+	 * Releases the resolution kept after the last built tree: the root
+	 * resolution node with the whole graph of resolution nodes, the map of
+	 * resolved artifacts and the listener. Built trees are not affected, but
+	 * afterwards test runtimes cannot be resolved and separated dependencies
+	 * of the root are not available.
+	 */
+	public void releaseResolution() {
+		if (lastState != null) {
+			lastState.rootResolution = null;
+			lastState.separatedArtifactDepsOfRoot.clear();
+			lastState.prefetchedPoms.clear();
+		}
 	}
 
 }
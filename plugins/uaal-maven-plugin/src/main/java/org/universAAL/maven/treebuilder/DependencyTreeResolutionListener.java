@@ -427,6 +427,17 @@ public class DependencyTreeResolutionListener implements ResolutionListenerForDe
 		return rootNodes;
 	}
 
+	/**
+	 * Makes given node the current node again, so that processing of its
+	 * children can be resumed after the resolution was finished.
+	 *
+	 * @param node
+	 *            node which children will be processed
+	 */
+	void resumeAt(final DependencyNode node) {
+		currentNode = node;
+	}
+
 	// private methods --------------------------------------------------------
 
 	/**
@@ -20,10 +20,17 @@ limitations under the License.
 */
 package org.universAAL.maven.treebuilder;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.factory.ArtifactFactory;
@@ -39,8 +46,16 @@ import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.project.MavenProjectBuilder;
+import org.universAAL.maven.ArtifactKey;
+import org.universAAL.maven.BundleInspectionPipeline;
+import org.universAAL.maven.BundleManifestCache;
+import org.universAAL.maven.BundleWiringResolver;
+import org.universAAL.maven.DependencyGraph;
 import org.universAAL.maven.IndexingDependencyNodeVisitor;
 import org.universAAL.maven.LaunchOrderDependencyNodeVisitor;
+import org.universAAL.maven.LaunchOrderEngine;
+import org.universAAL.maven.MyMojoExecutorV15;
+import org.universAAL.maven.StartLevelAssigner;
 import org.universAAL.maven.StartSpec;
 
 /**
@@ -83,6 +98,83 @@ public class ExecutionListCreator {
 	 */
 	private StartSpec[] startSpecs;
 
+	/**
+	 * Number of threads used for fetching POMs and bundles in parallel during
+	 * the resolution. Value of 1 means sequential resolution.
+	 */
+	private int resolutionThreads = 1;
+
+	/**
+	 * Memo of maven projects built from the repository.
+	 */
+	private PomModelMemo pomModelMemo = new PomModelMemo();
+
+	/**
+	 * Persistent cache of runtime profiles, null if not used.
+	 */
+	private RuntimeProfileCache runtimeProfileCache = null;
+
+	/**
+	 * Streaming reader of runtime profiles shared by all tree builders, null
+	 * if maven projects are always built for them.
+	 */
+	private PomProfileReader pomProfileReader;
+
+	/**
+	 * Cache of repository metadata used by the tree builder.
+	 */
+	private MetadataCache metadataCache = new MetadataCache();
+
+	/**
+	 * Router narrowing remote repositories used for looking up artifacts, null
+	 * if all repositories are used for each artifact.
+	 */
+	private RepositoryRouter repositoryRouter = null;
+
+	/**
+	 * Dependency trees shared between goals, null if trees are not shared.
+	 */
+	private SharedResolutions sharedResolutions = null;
+
+	/**
+	 * Whether start levels should be assigned to bundles automatically on the
+	 * basis of their depth in the dependency graph.
+	 */
+	private boolean autoStartLevels = false;
+
+	/**
+	 * Start level of bundles which do not depend on other bundles, used when
+	 * autoStartLevels is true.
+	 */
+	private int autoStartLevelBase = 5;
+
+	/**
+	 * Profiler of the resolution.
+	 */
+	private ResolutionProfiler profiler = ResolutionProfiler.DISABLED;
+
+	/**
+	 * File to which resolution events are streamed, null if they are not.
+	 */
+	private File eventLogFile = null;
+
+	/**
+	 * Indication whether built dependency trees are converted to compact trees
+	 * before creating the execution list.
+	 */
+	private boolean compactTree = false;
+
+	/**
+	 * Resolver ordering the execution list by package-level wiring of bundles,
+	 * null if the list is ordered only by maven dependencies.
+	 */
+	private BundleWiringResolver bundleWiringResolver = null;
+
+	/**
+	 * Graph of the dependency trees of the last created execution list.
+	 */
+	private DependencyGraph dependencyGraph = null;
+
 	public ExecutionListCreator(final Log log, final ArtifactMetadataSource artifactMetadataSource,
 			final ArtifactFactory artifactFactory, final MavenProjectBuilder mavenProjectBuilder,
 			final ArtifactRepository localRepository, final List remoteRepositories,
@@ -98,6 +190,410 @@ public class ExecutionListCreator {
 		this.artifactResolver = artifactResolver;
 		this.throwExceptionOnConflict = !("true".equals(throwExceptionOnConflictStr));
 		this.startSpecs = startSpecs;
+		this.pomProfileReader = new PomProfileReader(localRepository);
+	}
+
+	/**
+	 * Sets number of threads used for fetching POMs in parallel during the
+	 * resolution. The execution list does not depend on this value. Project
+	 * builder and artifact resolver of maven 2 are not thread-safe, so the
+	 * resolution is always sequential there.
+	 *
+	 * @param resolutionThreads
+	 *            number of threads, 1 means sequential resolution.
+	 */
+	public void setResolutionThreads(final int resolutionThreads) {
+		if (resolutionThreads > 1 && !MyMojoExecutorV15.isMaven3()) {
+			log.warn("Parallel resolution requires maven 3, resolving with one thread");
+			this.resolutionThreads = 1;
+		} else {
+			this.resolutionThreads = resolutionThreads;
+		}
+	}
+
+	/**
+	 * Sets memo of maven projects built from the repository. Passing a memo
+	 * shared by the whole maven session (see PomModelMemo.forSession) avoids
+	 * building the same POMs again for each module and each goal.
+	 *
+	 * @param pomModelMemo
+	 *            the memo.
+	 */
+	public void setPomModelMemo(final PomModelMemo pomModelMemo) {
+		this.pomModelMemo = pomModelMemo;
+	}
+
+	/**
+	 * Sets persistent cache of runtime profiles and separatedGroupIds used by
+	 * the tree builder.
+	 *
+	 * @param runtimeProfileCache
+	 *            the cache or null if no cache should be used.
+	 */
+	public void setRuntimeProfileCache(final RuntimeProfileCache runtimeProfileCache) {
+		this.runtimeProfileCache = runtimeProfileCache;
+	}
+
+	/**
+	 * Sets cache of repository metadata (available versions and failed
+	 * lookups) used by the tree builder. Passing a cache shared by the whole
+	 * maven session (see MetadataCache.forSession) avoids repeating the same
+	 * remote lookups for each module and each goal.
+	 *
+	 * @param metadataCache
+	 *            the cache.
+	 */
+	public void setMetadataCache(final MetadataCache metadataCache) {
+		this.metadataCache = metadataCache;
+	}
+
+	/**
+	 * Sets streaming reader of runtime profiles and separatedGroupIds used
+	 * before building maven projects. By default a reader of the local
+	 * repository is used.
+	 *
+	 * @param pomProfileReader
+	 *            the reader or null if maven projects should be always built.
+	 */
+	public void setPomProfileReader(final PomProfileReader pomProfileReader) {
+		this.pomProfileReader = pomProfileReader;
+	}
+
+	/**
+	 * Sets router narrowing remote repositories used for looking up artifacts.
+	 * It is used by the tree builder and for resolving bundles.
+	 *
+	 * @param repositoryRouter
+	 *            the router or null if all repositories should be used for
+	 *            each artifact.
+	 */
+	public void setRepositoryRouter(final RepositoryRouter repositoryRouter) {
+		this.repositoryRouter = repositoryRouter;
+	}
+
+	/**
+	 * Sets store of dependency trees shared between goals. Trees resolved
+	 * without test runtimes are published to the store and execution lists
+	 * including test runtimes are created by extending a published tree
+	 * instead of resolving the project again.
+	 *
+	 * @param sharedResolutions
+	 *            the store or null if trees should not be shared.
+	 */
+	public void setSharedResolutions(final SharedResolutions sharedResolutions) {
+		this.sharedResolutions = sharedResolutions;
+	}
+
+	/**
+	 * Turns on automatic assignment of start levels. Each bundle gets start
+	 * level higher than start levels of all bundles it depends on, so bundles
+	 * which do not depend on each other share the same start level. Start
+	 * levels configured in startSpecs take precedence.
+	 * Bundles depending on them get higher start levels.
+	 *
+	 * @param autoStartLevels
+	 *            true if start levels should be assigned automatically
+	 * @param autoStartLevelBase
+	 *            start level of bundles which do not depend on other bundles
+	 */
+	public void setAutoStartLevels(final boolean autoStartLevels, final int autoStartLevelBase) {
+		this.autoStartLevels = autoStartLevels;
+		this.autoStartLevelBase = autoStartLevelBase;
+	}
+
+	/**
+	 * Sets profiler of the resolution. The profiler is passed to the tree
+	 * builder, the metadata source and the bundle inspection, and it gets
+	 * counters of all caches used for creating an execution list.
+	 *
+	 * @param profiler
+	 *            the profiler
+	 */
+	public void setResolutionProfiler(final ResolutionProfiler profiler) {
+		this.profiler = profiler;
+	}
+
+	/**
+	 * Sets file to which events of the dependency tree resolution (included,
+	 * omitted artifacts, etc.) are streamed as JSON lines, see
+	 * ResolutionEventLog.
+	 *
+	 * @param eventLogFile
+	 *            the file or null if events should not be streamed
+	 */
+	public void setEventLogFile(final File eventLogFile) {
+		this.eventLogFile = eventLogFile;
+	}
+
+	/**
+	 * Sets whether built dependency trees are converted by TreeCompactor
+	 * before creating the execution list. The resolution kept by the tree
+	 * builder is released then, so the tree is not shared with the itests
+	 * goal. It reduces memory held by huge provision lists while the execution
+	 * list is created, the peak reached during the resolution is not affected
+	 * (see TreeCompactor).
+	 *
+	 * @param compactTree
+	 *            true if trees should be compacted
+	 */
+	public void setCompactTree(final boolean compactTree) {
+		this.compactTree = compactTree;
+	}
+
+	/**
+	 * Sets resolver which orders the execution list by package-level wiring of
+	 * bundles and reports unsatisfied imports. By default the wiring is not
+	 * resolved.
+	 *
+	 * @param bundleWiringResolver
+	 *            the resolver or null
+	 */
+	public void setBundleWiringResolver(final BundleWiringResolver bundleWiringResolver) {
+		this.bundleWiringResolver = bundleWiringResolver;
+	}
+
+	/**
+	 * Gets graph of the dependency trees from which the last execution list
+	 * was created, e.g. to partition bundles of the list by their maven
+	 * dependencies.
+	 *
+	 * @return the graph or null if no execution list was created yet
+	 */
+	public DependencyGraph getDependencyGraph() {
+		return dependencyGraph;
+	}
+
+	/**
+	 * Opens log of resolution events.
+	 *
+	 * @return the log or null if events are not streamed
+	 * @throws IOException
+	 *             when the log cannot be opened
+	 */
+	private ResolutionEventLog openEventLog() throws IOException {
+		if (eventLogFile == null) {
+			return null;
+		}
+		return new ResolutionEventLog(eventLogFile);
+	}
+
+	/**
+	 * Detaches log of resolution events from the tree builder and closes it.
+	 * Failures of the log are only reported, they do not affect the
+	 * resolution.
+	 *
+	 * @param eventLog
+	 *            the log or null
+	 * @param treeBuilder
+	 *            tree builder to which the log was attached or null
+	 */
+	private void closeEventLog(final ResolutionEventLog eventLog, final DependencyTreeBuilder treeBuilder) {
+		if (eventLog == null) {
+			return;
+		}
+		if (treeBuilder != null) {
+			treeBuilder.setEventListener(null);
+		}
+		try {
+			eventLog.close();
+			if (eventLog.getDropped() > 0) {
+				log.warn(eventLog.getDropped() + " resolution events were dropped from " + eventLogFile);
+			}
+		} catch (IOException e) {
+			log.warn("Cannot write resolution events to " + eventLogFile + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Creates DependencyTreeBuilder configured with resolution threads and POM
+	 * model memo of this ExecutionListCreator.
+	 *
+	 * @param includeTestRuntimes
+	 *            Indication whether artifacts for test runtime profile should
+	 *            be also generated.
+	 * @param useMwComposite
+	 *            Indication whether middleware composite is used instead of
+	 *            middleware bundles.
+	 * @return the tree builder.
+	 */
+	private DependencyTreeBuilder createTreeBuilder(final boolean includeTestRuntimes, final boolean useMwComposite) {
+		DependencyTreeBuilder treeBuilder = new DependencyTreeBuilder(artifactFactory, mavenProjectBuilder,
+				localRepository, includeTestRuntimes, useMwComposite);
+		treeBuilder.setResolutionThreads(resolutionThreads);
+		treeBuilder.setPomModelMemo(pomModelMemo);
+		treeBuilder.setRuntimeProfileCache(runtimeProfileCache);
+		treeBuilder.setPomProfileReader(pomProfileReader);
+		treeBuilder.setRepositoryRouter(repositoryRouter);
+		treeBuilder.setResolutionProfiler(profiler);
+		return treeBuilder;
+	}
+
+	/**
+	 * Converts given trees to compact trees if it is requested and releases the
+	 * resolution kept by the tree builder. It is done after the resolution of
+	 * all trees has finished, because the resolution of each tree can still
+	 * change trees built before.
+	 *
+	 * @param rootNodes
+	 *            built trees, they are converted in place
+	 * @param treeBuilder
+	 *            tree builder which built the trees
+	 */
+	private void compactTrees(final List<RootNode> rootNodes, final DependencyTreeBuilder treeBuilder) {
+		if (!compactTree) {
+			return;
+		}
+		treeBuilder.releaseResolution();
+		TreeCompactor compactor = new TreeCompactor();
+		compactor.compact(rootNodes);
+		log.info(compactor.toString());
+	}
+
+	/**
+	 * Creates metadata source remembering results in the metadata cache.
+	 *
+	 * @return the metadata source.
+	 */
+	private ArtifactMetadataSource createMetadataSource() {
+		CachingArtifactMetadataSource source = new CachingArtifactMetadataSource(artifactMetadataSource,
+				metadataCache);
+		source.setResolutionProfiler(profiler);
+		return source;
+	}
+
+	/**
+	 * Builds maven projects for given POM artifacts. If more than one
+	 * resolution thread is configured, projects are built in parallel. The
+	 * order of returned list corresponds to the order of passed artifacts.
+	 *
+	 * @param pomArtifacts
+	 *            POM artifacts for which maven projects should be built.
+	 * @return list of built maven projects.
+	 */
+	private List<MavenProject> buildProjects(final List<Artifact> pomArtifacts) throws Exception {
+		List<MavenProject> projects = new ArrayList<MavenProject>();
+		if (resolutionThreads <= 1 || pomArtifacts.size() <= 1) {
+			for (Artifact pomArtifact : pomArtifacts) {
+				long start = profiler.start();
+				projects.add(pomModelMemo.getProject(mavenProjectBuilder, pomArtifact,
+						routeRepositories(pomArtifact), localRepository));
+				profiler.stop(ResolutionProfiler.POM_BUILD, pomArtifact, start);
+			}
+			return projects;
+		}
+		ExecutorService executor = DaemonThreadFactory.newFixedThreadPool(resolutionThreads, "uaal-provision");
+		try {
+			List<Future<MavenProject>> futures = new ArrayList<Future<MavenProject>>();
+			for (final Artifact pomArtifact : pomArtifacts) {
+				final List pomRemoteRepositories = routeRepositories(pomArtifact);
+				futures.add(executor.submit(new Callable<MavenProject>() {
+					public MavenProject call() throws Exception {
+						long start = profiler.start();
+						MavenProject pomProject = pomModelMemo.getProject(mavenProjectBuilder, pomArtifact,
+								pomRemoteRepositories, localRepository);
+						profiler.stop(ResolutionProfiler.POM_BUILD, pomArtifact, start);
+						return pomProject;
+					}
+				}));
+			}
+			for (Future<MavenProject> future : futures) {
+				try {
+					projects.add(future.get());
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof Exception) {
+						throw (Exception) e.getCause();
+					}
+					throw e;
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return projects;
+	}
+
+	/**
+	 * Returns remote repositories of this ExecutionListCreator which should be
+	 * used for looking up given artifact.
+	 *
+	 * @param artifact
+	 *            the artifact.
+	 * @return repositories chosen by the repository router or all remote
+	 *         repositories if there is no router.
+	 */
+	private List routeRepositories(final Artifact artifact) {
+		if (repositoryRouter == null) {
+			return remoteRepositories;
+		}
+		return repositoryRouter.route(artifact, remoteRepositories);
+	}
+
+	/**
+	 * Passes counters of caches to the profiler. Counters are taken at the
+	 * beginning and at the end of creating an execution list, because the
+	 * caches are usually shared by the whole session.
+	 *
+	 * @param start
+	 *            true at the beginning, false at the end
+	 */
+	private void profileCaches(final boolean start) {
+		if (!profiler.isEnabled()) {
+			return;
+		}
+		BundleManifestCache manifestCache = BundleManifestCache.forRepository(localRepository);
+		if (start) {
+			profiler.startCache("pomModelMemo", pomModelMemo.getHits(), pomModelMemo.getMisses());
+			profiler.startCache("metadataCache", metadataCache.getHits(), metadataCache.getMisses());
+			if (runtimeProfileCache != null) {
+				profiler.startCache("runtimeProfileCache", runtimeProfileCache.getHits(),
+						runtimeProfileCache.getMisses());
+			}
+			if (pomProfileReader != null) {
+				profiler.startCache("pomProfileReader", pomProfileReader.getHits(), pomProfileReader.getMisses());
+			}
+			profiler.startCache("bundleManifestCache", manifestCache.getHits(), manifestCache.getMisses());
+		} else {
+			profiler.stopCache("pomModelMemo", pomModelMemo.getHits(), pomModelMemo.getMisses());
+			profiler.stopCache("metadataCache", metadataCache.getHits(), metadataCache.getMisses());
+			if (runtimeProfileCache != null) {
+				profiler.stopCache("runtimeProfileCache", runtimeProfileCache.getHits(),
+						runtimeProfileCache.getMisses());
+			}
+			if (pomProfileReader != null) {
+				profiler.stopCache("pomProfileReader", pomProfileReader.getHits(), pomProfileReader.getMisses());
+			}
+			profiler.stopCache("bundleManifestCache", manifestCache.getHits(), manifestCache.getMisses());
+		}
+	}
+
+	/**
+	 * Logs counters of the POM model memo, the runtime profile cache, the POM
+	 * profile reader and the metadata cache. Counters are logged at info level
+	 * only when the resolution is profiled, otherwise at debug level. The
+	 * metadata cache is also stored if it is persistent.
+	 */
+	private void logCacheStatistics() {
+		logStatistics(pomModelMemo);
+		if (runtimeProfileCache != null) {
+			logStatistics(runtimeProfileCache);
+		}
+		if (pomProfileReader != null) {
+			logStatistics(pomProfileReader);
+		}
+		logStatistics(metadataCache);
+		try {
+			metadataCache.save();
+		} catch (IOException e) {
+			log.warn("Cannot store metadata cache: " + e.getMessage());
+		}
+	}
+
+	private void logStatistics(final Object cache) {
+		if (profiler.isEnabled()) {
+			log.info(cache.toString());
+		} else if (log.isDebugEnabled()) {
+			log.debug(cache.toString());
+		}
 	}
 
 	/**
@@ -149,8 +645,9 @@ public class ExecutionListCreator {
 	private List<RootNode> parseProvisionsAndBuiltTree(final String[] provisions, final boolean transitive,
 			final DependencyTreeBuilder treeBuilder) throws Exception {
 		MavenProjectDescriptor[] projectDescs = new MavenProjectDescriptor[provisions.length];
+		boolean[] transitives = new boolean[provisions.length];
+		List<Artifact> pomArtifacts = new ArrayList<Artifact>();
 		int i = 0;
-		List<List> listOfRemoteRepositories = new ArrayList<List>();
 		for (String provision : provisions) {
 			boolean localtransitive = transitive;
 			String provisionNoHeader = provision;
@@ -161,17 +658,23 @@ public class ExecutionListCreator {
 				provisionNoHeader = provision.substring("nontransitive:".length());
 				localtransitive = false;
 			}
-			Artifact pomArtifact = parseMvnUrl(provisionNoHeader);
-			MavenProject pomProject = mavenProjectBuilder.buildFromRepository(pomArtifact, remoteRepositories,
-					localRepository);
+			pomArtifacts.add(parseMvnUrl(provisionNoHeader));
+			transitives[i] = localtransitive;
+			i++;
+		}
+		i = 0;
+		List<List> listOfRemoteRepositories = new ArrayList<List>();
+		for (MavenProject pomProject : buildProjects(pomArtifacts)) {
 			List<ArtifactRepository> finalRemoteRepositories = addMissingRepositories(
 					pomProject.getRemoteArtifactRepositories());
-			projectDescs[i] = new MavenProjectDescriptor(pomProject, finalRemoteRepositories, localtransitive);
+			projectDescs[i] = new MavenProjectDescriptor(pomProject, finalRemoteRepositories, transitives[i]);
 			listOfRemoteRepositories.add(finalRemoteRepositories);
 			i++;
 		}
+		long start = profiler.start();
 		List<RootNode> rootNodesOnly = treeBuilder.buildDependencyTree(localRepository, artifactFactory,
-				artifactMetadataSource, projectDescs);
+				createMetadataSource(), projectDescs);
+		profiler.stop(ResolutionProfiler.TREE_BUILD, start);
 		Iterator<List> listOfRemoteRepositoriesIter = listOfRemoteRepositories.iterator();
 		if (listOfRemoteRepositories.size() != rootNodesOnly.size()) {
 			throw new IllegalStateException("listOfRemoteRepositories.size() != rootNodesWithRepositories.size()");
@@ -186,13 +689,16 @@ public class ExecutionListCreator {
 
 	/**
 	 * Method flattens provided dependency tree and creates on its basis an
-	 * execution list. To do this, method walks the tree twice. At first all
-	 * artifacts are indexed. In second walk artifacts are processed in a
-	 * deep-first manner. When an omitted artifact is encountered, walk is
-	 * continued at related kept artifact. After finishing processing of all
-	 * childs of given artifact, the artifact is added to the execution list.
+	 * execution list. To do this, method walks the tree only once and indexes
+	 * all artifacts into a deduplicated DependencyGraph. Then the graph is
+	 * processed by LaunchOrderEngine in a deep-first manner, without recursion.
+	 * When an omitted artifact is encountered, walk is continued at related
+	 * kept artifact. After finishing processing of all childs of given
+	 * artifact, the artifact is added to the execution list.
 	 * Thanks to that it is ensured that before bundle will be started, all
-	 * dependency bundles will be started earlier.
+	 * dependency bundles will be started earlier. Optionally start levels are
+	 * assigned to bundles by StartLevelAssigner and the list is ordered by
+	 * package-level wiring of bundles by BundleWiringResolver.
 	 *
 	 * @param rootNodes
 	 *            a dependency tree as a list of rootnodes (instances of
@@ -202,33 +708,85 @@ public class ExecutionListCreator {
 	 *            artifact which should not be resolved
 	 * @return execution list - list of strings representing mvnUrls of bundles
 	 *         which should be launched
+	 * @throws IOException
+	 *             when jars cannot be read while resolving the wiring
 	 */
-	private List<String> processTreeIntoFlatList(final List<RootNode> rootNodes, final Artifact dontResolve) {
-		Iterator<RootNode> rootNodesIterator = rootNodes.iterator();
-		while (rootNodesIterator.hasNext()) {
-			RootNode rootNode = rootNodesIterator.next();
-			log.debug("Dependency tree for artifact: " + rootNode.rootNode.getArtifact()
-					+ System.getProperty("line.separator") + rootNode.rootNode.toString());
+	private List<String> processTreeIntoFlatList(final List<RootNode> rootNodes, final Artifact dontResolve)
+			throws IOException {
+		Iterator<RootNode> rootNodesIterator;
+		if (log.isDebugEnabled()) {
+			// stringifying whole trees is expensive
+			rootNodesIterator = rootNodes.iterator();
+			while (rootNodesIterator.hasNext()) {
+				RootNode rootNode = rootNodesIterator.next();
+				log.debug("Dependency tree for artifact: " + rootNode.rootNode.getArtifact()
+						+ System.getProperty("line.separator") + rootNode.rootNode.toString());
+			}
 		}
 
+		long start = profiler.start();
 		IndexingDependencyNodeVisitor filteringVisitor = new IndexingDependencyNodeVisitor(log);
 		rootNodesIterator = rootNodes.iterator();
 		while (rootNodesIterator.hasNext()) {
 			RootNode rootNode = rootNodesIterator.next();
-			rootNode.rootNode.accept(filteringVisitor);
+			filteringVisitor.index(rootNode.rootNode);
 		}
+		profiler.stop(ResolutionProfiler.GRAPH_INDEX, start);
+		dependencyGraph = filteringVisitor.getGraph();
 
 		LaunchOrderDependencyNodeVisitor visitor = new LaunchOrderDependencyNodeVisitor(log,
-				filteringVisitor.getNodesByArtifactId(), filteringVisitor.getVersionByArtifactId(),
-				throwExceptionOnConflict, localRepository, artifactResolver, dontResolve, startSpecs);
-		rootNodesIterator = rootNodes.iterator();
-		while (rootNodesIterator.hasNext()) {
-			RootNode rootNode = rootNodesIterator.next();
-			visitor.setExcludedCoreArtifacts(rootNode.excludedCoreArtifacts);
-			rootNode.rootNode.accept(visitor);
+				filteringVisitor.getGraph(), throwExceptionOnConflict, localRepository, artifactResolver, dontResolve,
+				startSpecs);
+		BundleInspectionPipeline bundleInspectionPipeline = new BundleInspectionPipeline(localRepository,
+				artifactResolver, resolutionThreads);
+		try {
+			bundleInspectionPipeline.setRepositoryRouter(repositoryRouter);
+			bundleInspectionPipeline.setResolutionProfiler(profiler);
+			visitor.setBundleInspectionPipeline(bundleInspectionPipeline);
+			Set<ArtifactKey> excludedCoreArtifacts = new HashSet<ArtifactKey>();
+			for (RootNode rootNode : rootNodes) {
+				for (ResolutionNode excludedCoreArtifact : rootNode.excludedCoreArtifacts) {
+					excludedCoreArtifacts.add(ArtifactKey.of(excludedCoreArtifact.getArtifact()));
+				}
+			}
+			visitor.inspectInAdvance(excludedCoreArtifacts);
+			if (autoStartLevels) {
+				StartLevelAssigner startLevelAssigner = new StartLevelAssigner(filteringVisitor.getGraph(), visitor,
+						excludedCoreArtifacts);
+				startLevelAssigner.setStartSpecs(startSpecs);
+				visitor.setAutoStartLevels(startLevelAssigner.assign(autoStartLevelBase));
+			}
+			start = profiler.start();
+			LaunchOrderEngine launchOrderEngine = new LaunchOrderEngine(visitor, filteringVisitor.getGraph());
+			rootNodesIterator = rootNodes.iterator();
+			while (rootNodesIterator.hasNext()) {
+				RootNode rootNode = rootNodesIterator.next();
+				visitor.setExcludedCoreArtifacts(rootNode.excludedCoreArtifacts);
+				launchOrderEngine.emit(rootNode.rootNode);
+			}
+			profiler.stop(ResolutionProfiler.LAUNCH_ORDER, start);
+		} finally {
+			bundleInspectionPipeline.shutdown();
+		}
+		if (repositoryRouter != null) {
+			// bundles are resolved also through the router
+			log.info(repositoryRouter.toString());
 		}
 
 		List<String> mvnUrls = visitor.getMvnUrls();
+		if (bundleWiringResolver != null) {
+			start = profiler.start();
+			List<Artifact> providedArtifacts = new ArrayList<Artifact>();
+			for (RootNode rootNode : rootNodes) {
+				for (ResolutionNode excludedCoreArtifact : rootNode.excludedCoreArtifacts) {
+					providedArtifacts.add(excludedCoreArtifact.getArtifact());
+				}
+			}
+			mvnUrls = bundleWiringResolver.resolve(mvnUrls, dontResolve, providedArtifacts, remoteRepositories,
+					filteringVisitor.getGraph());
+			profiler.stop(ResolutionProfiler.BUNDLE_WIRING, start);
+			log.info(bundleWiringResolver.toString());
+		}
 		return mvnUrls;
 	}
 
@@ -294,12 +852,42 @@ public class ExecutionListCreator {
 	public List createArtifactExecutionList(final MavenProject mavenProject,
 			final Set<String> separatedArtifactDepsOfRootMvnUrls, final boolean includeTestRuntimes,
 			boolean useMwComposite) throws Exception {
-		DependencyTreeBuilder treeBuilder = new DependencyTreeBuilder(artifactFactory, mavenProjectBuilder,
-				localRepository, includeTestRuntimes, useMwComposite);
-		List<ArtifactRepository> finalRemoteRpositories = addMissingRepositories(
-				mavenProject.getRemoteArtifactRepositories());
-		List<RootNode> rootNodes = treeBuilder.buildDependencyTree(localRepository, artifactFactory,
-				artifactMetadataSource, new MavenProjectDescriptor(mavenProject, finalRemoteRpositories, true));
+		DependencyTreeBuilder treeBuilder = null;
+		List<ArtifactRepository> finalRemoteRpositories = null;
+		List<RootNode> rootNodes = null;
+		profileCaches(true);
+		long start = profiler.start();
+		ResolutionEventLog eventLog = openEventLog();
+		try {
+			if (sharedResolutions != null && includeTestRuntimes && !useMwComposite) {
+				SharedResolutions.Resolution shared = sharedResolutions.take(mavenProject);
+				if (shared != null && shared.treeBuilder.canResolveTestRuntimes()) {
+					log.info("Reusing dependency tree of " + mavenProject.getId()
+							+ " resolved by the composite goal, resolving test runtimes only");
+					treeBuilder = shared.treeBuilder;
+					treeBuilder.setResolutionProfiler(profiler);
+					treeBuilder.setEventListener(eventLog);
+					finalRemoteRpositories = shared.remoteRepositories;
+					rootNodes = treeBuilder.resolveTestRuntimes();
+				}
+			}
+			if (rootNodes == null) {
+				treeBuilder = createTreeBuilder(includeTestRuntimes, useMwComposite);
+				treeBuilder.setEventListener(eventLog);
+				finalRemoteRpositories = addMissingRepositories(mavenProject.getRemoteArtifactRepositories());
+				rootNodes = treeBuilder.buildDependencyTree(localRepository, artifactFactory, createMetadataSource(),
+						new MavenProjectDescriptor(mavenProject, finalRemoteRpositories, true));
+				if (sharedResolutions != null && !compactTree && !includeTestRuntimes
+						&& treeBuilder.canResolveTestRuntimes()) {
+					sharedResolutions.publish(mavenProject,
+							new SharedResolutions.Resolution(treeBuilder, finalRemoteRpositories));
+				}
+			}
+		} finally {
+			closeEventLog(eventLog, treeBuilder);
+		}
+		profiler.stop(ResolutionProfiler.TREE_BUILD, start);
+		logCacheStatistics();
 		List<ResolutionNode> separatedArtifactDepsOfRoot = treeBuilder.getSeparatedArtifactDepsOfRoot();
 		for (ResolutionNode separatedRootDep : separatedArtifactDepsOfRoot) {
 			Artifact artifact = separatedRootDep.getArtifact();
@@ -314,16 +902,19 @@ public class ExecutionListCreator {
 		RootNode theRootNode = rootNodes.get(0);
 		theRootNode.remoteRepositories = finalRemoteRpositories;
 		realRootNodes.add(theRootNode);
+		compactTrees(realRootNodes, treeBuilder);
 		List<String> mvnUrls = processTreeIntoFlatList(realRootNodes, mavenProject.getArtifact());
 
 		// add the mw composite (to the beginning)
 		if (useMwComposite) {
-			if (treeBuilder.mwVersion == null) {
+			if (treeBuilder.getMwVersion() == null) {
 				log.warn("A middleware composite should be used, but no middleware bundle was found.");
 			} else {
-				mvnUrls.add(0, "mvn:org.universAAL.middleware/mw.composite/" + treeBuilder.mwVersion + "/composite");
+				mvnUrls.add(0,
+						"mvn:org.universAAL.middleware/mw.composite/" + treeBuilder.getMwVersion() + "/composite");
 			}
 		}
+		profileCaches(false);
 
 		return mvnUrls;
 	}
@@ -355,10 +946,21 @@ public class ExecutionListCreator {
 	 */
 	public List createArtifactExecutionList(final String[] provisions, final boolean defaultTransitive,
 			final boolean includeTestRuntimes) throws Exception {
-		DependencyTreeBuilder treeBuilder = new DependencyTreeBuilder(artifactFactory, mavenProjectBuilder,
-				localRepository, includeTestRuntimes, false);
-		List<RootNode> rootNodes = parseProvisionsAndBuiltTree(provisions, defaultTransitive, treeBuilder);
-		return processTreeIntoFlatList(rootNodes, null);
+		profileCaches(true);
+		DependencyTreeBuilder treeBuilder = createTreeBuilder(includeTestRuntimes, false);
+		List<RootNode> rootNodes;
+		ResolutionEventLog eventLog = openEventLog();
+		try {
+			treeBuilder.setEventListener(eventLog);
+			rootNodes = parseProvisionsAndBuiltTree(provisions, defaultTransitive, treeBuilder);
+		} finally {
+			closeEventLog(eventLog, treeBuilder);
+		}
+		logCacheStatistics();
+		compactTrees(rootNodes, treeBuilder);
+		List<String> mvnUrls = processTreeIntoFlatList(rootNodes, null);
+		profileCaches(false);
+		return mvnUrls;
 	}
 
 }
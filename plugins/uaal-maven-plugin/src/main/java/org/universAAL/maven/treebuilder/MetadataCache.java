@@ -0,0 +1,384 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven.treebuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.maven.artifact.versioning.ArtifactVersion;
+import org.apache.maven.artifact.versioning.DefaultArtifactVersion;
+import org.apache.maven.execution.MavenSession;
+
+/**
+ * Cache of repository metadata queried during building of dependency trees:
+ * available versions of artifacts (needed for version ranges) and artifacts
+ * which could not be retrieved at all. Results are remembered for the whole
+ * maven session (see forSession method). Optionally the cache can be stored
+ * in a file in the local repository, then results younger than given time to
+ * live are reused also by the following builds. Builds running in parallel
+ * merge their results into the file.
+ *
+ * Failed lookups are remembered as well (negative caching), because the same
+ * missing artifacts (e.g. .osgi variants) are probed many times in one tree.
+ *
+ */
+public class MetadataCache {
+
+	public static final String CACHE_FILE_NAME = ".uaal-metadata-cache.properties";
+
+	private static final String VERSIONS_PREFIX = "versions.";
+
+	private static final String MISSING_VERSIONS_PREFIX = "missing-versions.";
+
+	private static final String MISSING_PREFIX = "missing.";
+
+	/**
+	 * Caches of maven sessions. Sessions are identified by their start time,
+	 * the same way as in PomModelMemo.
+	 */
+	private static final Map<Date, MetadataCache> SESSION_CACHES = new WeakHashMap<Date, MetadataCache>();
+
+	/**
+	 * Result of a lookup: either list of versions (possibly empty) or message
+	 * of the failure.
+	 */
+	static class Entry {
+
+		final long fetched;
+
+		final List<ArtifactVersion> versions;
+
+		final String failure;
+
+		Entry(final long fetched, final List<ArtifactVersion> versions, final String failure) {
+			this.fetched = fetched;
+			this.versions = versions;
+			this.failure = failure;
+		}
+	}
+
+	/**
+	 * Available versions indexed by groupId:artifactId and ids of repositories.
+	 */
+	private final Map<String, Entry> availableVersions = new ConcurrentHashMap<String, Entry>();
+
+	/**
+	 * Failed retrievals of artifact metadata indexed by stringified artifacts
+	 * and ids of repositories.
+	 */
+	private final Map<String, Entry> failedRetrievals = new ConcurrentHashMap<String, Entry>();
+
+	/**
+	 * Number of lookups served from the cache.
+	 */
+	private final AtomicLong hits = new AtomicLong();
+
+	/**
+	 * Number of lookups served from the cache with a failure.
+	 */
+	private final AtomicLong negativeHits = new AtomicLong();
+
+	/**
+	 * Number of lookups passed to the repositories.
+	 */
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * File in which the cache is stored, null if the cache is not persistent.
+	 */
+	private File cacheFile = null;
+
+	/**
+	 * Time to live of entries loaded from the cache file in milliseconds.
+	 */
+	private long timeToLive = 0;
+
+	/**
+	 * Whether there are entries which are not stored in the cache file yet.
+	 */
+	private volatile boolean dirty = false;
+
+	/**
+	 * Gets cache shared by the whole maven session.
+	 *
+	 * @param session
+	 *            maven session, if null then a new cache is returned.
+	 * @return the cache.
+	 */
+	public static MetadataCache forSession(final MavenSession session) {
+		if (session == null || session.getStartTime() == null) {
+			return new MetadataCache();
+		}
+		synchronized (SESSION_CACHES) {
+			MetadataCache cache = SESSION_CACHES.get(session.getStartTime());
+			if (cache == null) {
+				cache = new MetadataCache();
+				SESSION_CACHES.put(session.getStartTime(), cache);
+			}
+			return cache;
+		}
+	}
+
+	/**
+	 * Makes the cache persistent. Entries stored in given file which are
+	 * younger than timeToLive are loaded into the cache. Calling the method
+	 * again with the same file has no effect.
+	 *
+	 * @param file
+	 *            file in which the cache is stored
+	 * @param timeToLiveMillis
+	 *            time to live of stored entries in milliseconds
+	 */
+	public synchronized void persistIn(final File file, final long timeToLiveMillis) {
+		if (file.equals(cacheFile)) {
+			return;
+		}
+		cacheFile = file;
+		timeToLive = timeToLiveMillis;
+		Properties props = SharedPropertiesFile.load(file);
+		long now = System.currentTimeMillis();
+		for (Map.Entry<Object, Object> prop : props.entrySet()) {
+			String key = (String) prop.getKey();
+			String[] values = ((String) prop.getValue()).split(",", 2);
+			if (values.length != 2 || !isFresh(values[0], now)) {
+				continue;
+			}
+			long fetched = Long.parseLong(values[0]);
+			if (key.startsWith(VERSIONS_PREFIX)) {
+				List<ArtifactVersion> versions = new ArrayList<ArtifactVersion>();
+				if (values[1].length() != 0) {
+					for (String version : values[1].split(";")) {
+						versions.add(new DefaultArtifactVersion(version));
+					}
+				}
+				putIfAbsent(availableVersions, key.substring(VERSIONS_PREFIX.length()), new Entry(fetched,
+						Collections.unmodifiableList(versions), null));
+			} else if (key.startsWith(MISSING_VERSIONS_PREFIX)) {
+				putIfAbsent(availableVersions, key.substring(MISSING_VERSIONS_PREFIX.length()), new Entry(fetched,
+						null, values[1]));
+			} else if (key.startsWith(MISSING_PREFIX)) {
+				putIfAbsent(failedRetrievals, key.substring(MISSING_PREFIX.length()), new Entry(fetched, null,
+						values[1]));
+			}
+		}
+	}
+
+	/**
+	 * Checks whether stored entry is younger than the time to live.
+	 *
+	 * @param fetched
+	 *            stored time of the lookup
+	 * @param now
+	 *            current time
+	 * @return false if the entry expired or the time is malformed
+	 */
+	private boolean isFresh(final String fetched, final long now) {
+		try {
+			long time = Long.parseLong(fetched);
+			return now - time <= timeToLive && time <= now;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Stores the cache in the cache file if the cache is persistent and
+	 * anything was added to it since it was loaded. Entries stored in the file
+	 * by other builds in the meantime are kept unless they expired, entries of
+	 * this cache win for keys known to both.
+	 *
+	 * @throws IOException
+	 *             when the cache file cannot be written
+	 */
+	public synchronized void save() throws IOException {
+		if (cacheFile == null || !dirty) {
+			return;
+		}
+		dirty = false;
+		try {
+			SharedPropertiesFile.update(cacheFile, new SharedPropertiesFile.Update() {
+				public void apply(final Properties props) {
+					merge(props);
+				}
+			}, "uAAL repository metadata cache");
+		} catch (IOException e) {
+			dirty = true;
+			throw e;
+		}
+	}
+
+	/**
+	 * Merges entries of the cache into stored entries and drops expired ones.
+	 *
+	 * @param props
+	 *            entries stored in the cache file
+	 */
+	private void merge(final Properties props) {
+		long now = System.currentTimeMillis();
+		Iterator<Map.Entry<Object, Object>> stored = props.entrySet().iterator();
+		while (stored.hasNext()) {
+			if (!isFresh(((String) stored.next().getValue()).split(",", 2)[0], now)) {
+				stored.remove();
+			}
+		}
+		for (Map.Entry<String, Entry> entry : availableVersions.entrySet()) {
+			Entry value = entry.getValue();
+			if (now - value.fetched > timeToLive) {
+				continue;
+			}
+			if (value.versions != null) {
+				StringBuilder versions = new StringBuilder();
+				for (ArtifactVersion version : value.versions) {
+					if (versions.length() != 0) {
+						versions.append(';');
+					}
+					versions.append(version);
+				}
+				props.setProperty(VERSIONS_PREFIX + entry.getKey(), value.fetched + "," + versions);
+			} else {
+				props.setProperty(MISSING_VERSIONS_PREFIX + entry.getKey(), value.fetched + "," + value.failure);
+			}
+		}
+		for (Map.Entry<String, Entry> entry : failedRetrievals.entrySet()) {
+			Entry value = entry.getValue();
+			if (now - value.fetched <= timeToLive) {
+				props.setProperty(MISSING_PREFIX + entry.getKey(), value.fetched + "," + value.failure);
+			}
+		}
+	}
+
+	/**
+	 * Gets cached available versions.
+	 *
+	 * @param key
+	 *            groupId:artifactId and ids of repositories
+	 * @return cached entry or null
+	 */
+	Entry getAvailableVersions(final String key) {
+		return count(availableVersions.get(key));
+	}
+
+	/**
+	 * Remembers available versions or failure of their lookup.
+	 *
+	 * @param key
+	 *            groupId:artifactId and ids of repositories
+	 * @param versions
+	 *            found versions or null if the lookup failed
+	 * @param failure
+	 *            message of the failure or null
+	 */
+	void putAvailableVersions(final String key, final List<ArtifactVersion> versions, final String failure) {
+		List<ArtifactVersion> copy = null;
+		if (versions != null) {
+			copy = Collections.unmodifiableList(new ArrayList<ArtifactVersion>(versions));
+		}
+		availableVersions.put(key, new Entry(System.currentTimeMillis(), copy, failure));
+		dirty = true;
+	}
+
+	/**
+	 * Gets cached failure of metadata retrieval.
+	 *
+	 * @param key
+	 *            stringified artifact and ids of repositories
+	 * @return cached entry or null
+	 */
+	Entry getFailedRetrieval(final String key) {
+		return count(failedRetrievals.get(key));
+	}
+
+	/**
+	 * Remembers failure of metadata retrieval.
+	 *
+	 * @param key
+	 *            stringified artifact and ids of repositories
+	 * @param failure
+	 *            message of the failure
+	 */
+	void putFailedRetrieval(final String key, final String failure) {
+		failedRetrievals.put(key, new Entry(System.currentTimeMillis(), null, failure));
+		dirty = true;
+	}
+
+	/**
+	 * Counts lookup which was not served from the cache.
+	 */
+	void countMiss() {
+		misses.incrementAndGet();
+	}
+
+	/**
+	 * Gets number of lookups served from the cache, thus avoided remote
+	 * lookups.
+	 *
+	 * @return number of hits including negative hits.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Gets number of lookups which were passed to the repositories.
+	 *
+	 * @return number of misses.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns summary of cache counters.
+	 *
+	 * @return the summary.
+	 */
+	@Override
+	public String toString() {
+		return String.format("Metadata cache: %d remote lookups avoided (%d negative), %d lookups", hits.get(),
+				negativeHits.get(), misses.get());
+	}
+
+	private Entry count(final Entry entry) {
+		if (entry != null) {
+			hits.incrementAndGet();
+			if (entry.failure != null) {
+				negativeHits.incrementAndGet();
+			}
+		}
+		return entry;
+	}
+
+	private static void putIfAbsent(final Map<String, Entry> map, final String key, final Entry entry) {
+		if (!map.containsKey(key)) {
+			map.put(key, entry);
+		}
+	}
+}
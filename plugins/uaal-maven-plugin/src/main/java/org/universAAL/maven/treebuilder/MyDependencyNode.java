@@ -34,6 +34,12 @@ public class MyDependencyNode extends DependencyNode {
 		this.remoteRepositories = remoteRepositories;
 	}
 
+	protected MyDependencyNode(final Artifact artifact, final int state, final Artifact relatedArtifact,
+			final List remoteRepositories) {
+		super(artifact, state, relatedArtifact);
+		this.remoteRepositories = remoteRepositories;
+	}
+
 	public List getRemoteRepositories() {
 		return remoteRepositories;
 	}
@@ -0,0 +1,178 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven.treebuilder;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.MavenProjectBuilder;
+import org.apache.maven.project.ProjectBuildingException;
+
+/**
+ * Memo of maven projects built from the repository. Projects are indexed by
+ * groupId:artifactId:version of their POMs. Building of a project for given
+ * POM is performed only once even if the project is requested concurrently by
+ * several threads, the other threads wait for the result. Failed builds are not
+ * remembered so they can be retried with other remote repositories.
+ *
+ * The memo is intended to be shared by the whole maven session (see
+ * forSession method), because the same middleware POMs are needed by every
+ * module of a reactor build. Built projects have to be treated as read-only.
+ */
+public class PomModelMemo {
+
+	/**
+	 * Memos of maven sessions. Sessions are identified by their start time,
+	 * because in parallel builds each project gets its own clone of the
+	 * session and all the clones share the start time.
+	 */
+	private static final Map<Date, PomModelMemo> SESSION_MEMOS = new WeakHashMap<Date, PomModelMemo>();
+
+	/**
+	 * Mapping of stringified POM artifacts (groupId:artifactId:version) to
+	 * tasks building their projects.
+	 */
+	private final ConcurrentHashMap<String, FutureTask<MavenProject>> projects = new ConcurrentHashMap<String, FutureTask<MavenProject>>();
+
+	/**
+	 * Number of requests served from the memo.
+	 */
+	private final AtomicLong hits = new AtomicLong();
+
+	/**
+	 * Number of requests for which the project had to be built.
+	 */
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Gets memo shared by the whole maven session.
+	 *
+	 * @param session
+	 *            maven session, if null then a new memo is returned.
+	 * @return the memo.
+	 */
+	public static PomModelMemo forSession(final MavenSession session) {
+		if (session == null || session.getStartTime() == null) {
+			return new PomModelMemo();
+		}
+		synchronized (SESSION_MEMOS) {
+			PomModelMemo memo = SESSION_MEMOS.get(session.getStartTime());
+			if (memo == null) {
+				memo = new PomModelMemo();
+				SESSION_MEMOS.put(session.getStartTime(), memo);
+			}
+			return memo;
+		}
+	}
+
+	/**
+	 * Gets maven project for given POM artifact. The project is built with
+	 * passed project builder only if it is not present in the memo.
+	 *
+	 * @param mavenProjectBuilder
+	 *            MavenProjectBuilder object provided by maven.
+	 * @param pomArtifact
+	 *            POM artifact.
+	 * @param remoteRepositories
+	 *            Remote repositories used for building the project.
+	 * @param localRepository
+	 *            The maven's local repository.
+	 * @return the maven project.
+	 * @throws ProjectBuildingException
+	 *             when the project cannot be built.
+	 */
+	public MavenProject getProject(final MavenProjectBuilder mavenProjectBuilder, final Artifact pomArtifact,
+			final List remoteRepositories, final ArtifactRepository localRepository) throws ProjectBuildingException {
+		String key = pomArtifact.getGroupId() + ":" + pomArtifact.getArtifactId() + ":" + pomArtifact.getVersion();
+		FutureTask<MavenProject> task = projects.get(key);
+		if (task == null) {
+			FutureTask<MavenProject> newTask = new FutureTask<MavenProject>(new Callable<MavenProject>() {
+				public MavenProject call() throws Exception {
+					return mavenProjectBuilder.buildFromRepository(pomArtifact, remoteRepositories, localRepository);
+				}
+			});
+			task = projects.putIfAbsent(key, newTask);
+			if (task == null) {
+				task = newTask;
+				misses.incrementAndGet();
+				newTask.run();
+			} else {
+				hits.incrementAndGet();
+			}
+		} else {
+			hits.incrementAndGet();
+		}
+		try {
+			return task.get();
+		} catch (ExecutionException e) {
+			projects.remove(key, task);
+			if (e.getCause() instanceof ProjectBuildingException) {
+				throw (ProjectBuildingException) e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Gets number of requests served from the memo.
+	 *
+	 * @return number of hits.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Gets number of requests for which the project had to be built.
+	 *
+	 * @return number of misses.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns summary of memo counters.
+	 *
+	 * @return the summary.
+	 */
+	@Override
+	public String toString() {
+		return String.format("POM model memo: %d hits, %d misses, %d projects", hits.get(), misses.get(),
+				projects.size());
+	}
+}
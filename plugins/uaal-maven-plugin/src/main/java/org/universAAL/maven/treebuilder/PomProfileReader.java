@@ -0,0 +1,557 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven.treebuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.model.Dependency;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.ReaderFactory;
+import org.codehaus.plexus.util.xml.pull.MXParser;
+import org.codehaus.plexus.util.xml.pull.XmlPullParser;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+
+/**
+ * Lightweight reader of RuntimeProfileFacts. Instead of building the whole
+ * maven project (inheritance, interpolation and validation of the model) the
+ * POM is read from the local repository with a streaming pull parser and only
+ * coordinates, parent, properties and dependencies of uAAL runtime profiles
+ * are extracted. Properties are looked up through the parent chain, which is
+ * read the same way.
+ *
+ * The reader gives up (read returns null) and the project has to be built by
+ * the project builder if:
+ * <ul>
+ * <li>the POM or one of its parents is not present in the local repository or
+ * it is a SNAPSHOT, because the project builder could update it,
+ * <li>an expression cannot be interpolated from the coordinates and the
+ * properties of the POM and its parents, or it can be overridden by a system
+ * property or properties of a profile,
+ * <li>the POM cannot be parsed.
+ * </ul>
+ * Results are remembered, so each POM is read only once.
+ */
+public class PomProfileReader {
+
+	/**
+	 * Maximal length of the parent chain and maximal depth of nested
+	 * expressions, guards against cycles.
+	 */
+	static final int MAX_DEPTH = 32;
+
+	/**
+	 * Marks POMs which facts cannot be read without the project builder.
+	 */
+	private static final RuntimeProfileFacts NEEDS_PROJECT = new RuntimeProfileFacts(null, null);
+
+	private ArtifactRepository localRepository;
+
+	/**
+	 * Facts of already read POMs indexed by groupId:artifactId:version.
+	 */
+	private final ConcurrentHashMap<String, RuntimeProfileFacts> facts = new ConcurrentHashMap<String, RuntimeProfileFacts>();
+
+	/**
+	 * Parsed parent POMs indexed by groupId:artifactId:version. Parents are
+	 * shared by many POMs so they are parsed only once.
+	 */
+	private final ConcurrentHashMap<String, PomSkeleton> parents = new ConcurrentHashMap<String, PomSkeleton>();
+
+	/**
+	 * Number of requests which facts were read by the reader.
+	 */
+	private final AtomicLong hits = new AtomicLong();
+
+	/**
+	 * Number of requests which had to be left to the project builder.
+	 */
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Creates reader of POMs in given local repository.
+	 *
+	 * @param localRepository
+	 *            The maven's local repository.
+	 */
+	public PomProfileReader(final ArtifactRepository localRepository) {
+		this.localRepository = localRepository;
+	}
+
+	/**
+	 * Reads facts of given POM artifact.
+	 *
+	 * @param pomArtifact
+	 *            POM artifact.
+	 * @return the facts or null if the maven project has to be built for
+	 *         them.
+	 */
+	public RuntimeProfileFacts read(final Artifact pomArtifact) {
+		String key = pomArtifact.getGroupId() + ":" + pomArtifact.getArtifactId() + ":" + pomArtifact.getVersion();
+		RuntimeProfileFacts result = facts.get(key);
+		if (result == null) {
+			result = extract(pomArtifact);
+			if (result == null) {
+				result = NEEDS_PROJECT;
+			}
+			RuntimeProfileFacts previous = facts.putIfAbsent(key, result);
+			if (previous != null) {
+				result = previous;
+			}
+		}
+		if (result == NEEDS_PROJECT) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return result;
+	}
+
+	/**
+	 * Extracts facts of given POM artifact from the POM and its parents.
+	 *
+	 * @param pomArtifact
+	 *            POM artifact.
+	 * @return the facts or null if the maven project has to be built for
+	 *         them.
+	 */
+	private RuntimeProfileFacts extract(final Artifact pomArtifact) {
+		if (pomArtifact.getVersion() == null || pomArtifact.isSnapshot()) {
+			return null;
+		}
+		PomSkeleton pom = parse(new File(localRepository.getBasedir(), localRepository.pathOf(pomArtifact)));
+		if (pom == null) {
+			return null;
+		}
+		List<PomSkeleton> chain = new ArrayList<PomSkeleton>();
+		chain.add(pom);
+		if (!readParents(chain)) {
+			return null;
+		}
+		Interpolator interpolator = new Interpolator(chain);
+		Map<String, List<Dependency>> profileDependencies = new LinkedHashMap<String, List<Dependency>>();
+		for (Map.Entry<String, List<Dependency>> entry : pom.profileDependencies.entrySet()) {
+			List<Dependency> deps = new ArrayList<Dependency>();
+			for (Dependency rawDep : entry.getValue()) {
+				Dependency dep = new Dependency();
+				dep.setGroupId(interpolator.interpolate(rawDep.getGroupId()));
+				dep.setArtifactId(interpolator.interpolate(rawDep.getArtifactId()));
+				dep.setType(interpolator.interpolate(rawDep.getType()));
+				dep.setClassifier(interpolator.interpolate(rawDep.getClassifier()));
+				dep.setVersion(interpolator.interpolate(rawDep.getVersion()));
+				dep.setScope(interpolator.interpolate(rawDep.getScope()));
+				deps.add(dep);
+			}
+			profileDependencies.put(entry.getKey(), deps);
+		}
+		List<String> separatedGroupIds = new ArrayList<String>();
+		String separatedGroupIdsStr = interpolator.interpolate(interpolator.getProperty(
+				DependencyTreeBuilder.PROP_SEPARATED_GROUP_IDS));
+		if (separatedGroupIdsStr != null) {
+			for (String groupId : separatedGroupIdsStr.split(",")) {
+				separatedGroupIds.add(groupId.trim());
+			}
+		}
+		if (interpolator.failed) {
+			return null;
+		}
+		return new RuntimeProfileFacts(profileDependencies, separatedGroupIds);
+	}
+
+	/**
+	 * Appends parents of the last POM of given chain to the chain.
+	 *
+	 * @param chain
+	 *            the chain starting with the POM which facts are read.
+	 * @return false if one of the parents cannot be read.
+	 */
+	private boolean readParents(final List<PomSkeleton> chain) {
+		PomSkeleton pom = chain.get(chain.size() - 1);
+		while (pom.parentArtifactId != null) {
+			if (chain.size() > MAX_DEPTH || pom.parentGroupId == null || pom.parentVersion == null
+					|| pom.parentVersion.endsWith(Artifact.SNAPSHOT_VERSION)) {
+				return false;
+			}
+			String key = pom.parentGroupId + ":" + pom.parentArtifactId + ":" + pom.parentVersion;
+			PomSkeleton parent = parents.get(key);
+			if (parent == null) {
+				Artifact parentArtifact = new DefaultArtifact(pom.parentGroupId, pom.parentArtifactId,
+						VersionRange.createFromVersion(pom.parentVersion), null, "pom", null,
+						new DefaultArtifactHandler("pom"));
+				parent = parse(new File(localRepository.getBasedir(), localRepository.pathOf(parentArtifact)));
+				if (parent == null) {
+					return false;
+				}
+				parents.putIfAbsent(key, parent);
+			}
+			chain.add(parent);
+			pom = parent;
+		}
+		return true;
+	}
+
+	/**
+	 * Parses given POM file.
+	 *
+	 * @param pomFile
+	 *            the POM file.
+	 * @return the parsed POM or null if it does not exist or it cannot be
+	 *         parsed.
+	 */
+	private PomSkeleton parse(final File pomFile) {
+		if (!pomFile.isFile()) {
+			return null;
+		}
+		Reader reader = null;
+		try {
+			reader = ReaderFactory.newXmlReader(pomFile);
+			XmlPullParser parser = new MXParser();
+			parser.setInput(reader);
+			return new PomSkeleton(parser);
+		} catch (IOException e) {
+			return null;
+		} catch (XmlPullParserException e) {
+			return null;
+		} finally {
+			IOUtil.close(reader);
+		}
+	}
+
+	/**
+	 * Gets number of requests which facts were read by the reader.
+	 *
+	 * @return number of hits.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Gets number of requests which had to be left to the project builder.
+	 *
+	 * @return number of misses.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns summary of reader counters.
+	 *
+	 * @return the summary.
+	 */
+	@Override
+	public String toString() {
+		return String.format("POM profile reader: %d hits, %d left to the project builder, %d POMs, %d parents",
+				hits.get(), misses.get(), facts.size(), parents.size());
+	}
+
+	/**
+	 * Parts of a POM needed for extracting the facts. Values are not
+	 * interpolated.
+	 */
+	private static class PomSkeleton {
+
+		private String groupId;
+
+		private String artifactId;
+
+		private String version;
+
+		private String parentGroupId;
+
+		private String parentArtifactId;
+
+		private String parentVersion;
+
+		private final Map<String, String> properties = new HashMap<String, String>();
+
+		/**
+		 * Names of properties declared in profiles. Profiles activated by the
+		 * project builder can override properties of the POM.
+		 */
+		private final Set<String> profileProperties = new HashSet<String>();
+
+		private final Map<String, List<Dependency>> profileDependencies = new LinkedHashMap<String, List<Dependency>>();
+
+		/**
+		 * Parses POM from given parser. Text of elements is trimmed, as done
+		 * by MavenXpp3Reader.
+		 *
+		 * @param parser
+		 *            parser positioned at the beginning of the POM.
+		 */
+		PomSkeleton(final XmlPullParser parser) throws XmlPullParserException, IOException {
+			List<String> path = new ArrayList<String>();
+			String profileId = null;
+			List<Dependency> profileDeps = null;
+			Dependency dep = null;
+			int eventType = parser.getEventType();
+			while (eventType != XmlPullParser.END_DOCUMENT) {
+				if (eventType == XmlPullParser.START_TAG) {
+					String name = parser.getName();
+					int depth = path.size();
+					String parent = depth > 0 ? path.get(depth - 1) : null;
+					if (depth == 0 && !"project".equals(name)) {
+						throw new XmlPullParserException("Not a POM: " + name);
+					}
+					if (depth == 1 && isCoordinate(name)) {
+						setCoordinate(name, parser.nextText().trim());
+					} else if (depth == 2 && "parent".equals(parent) && isCoordinate(name)) {
+						setParentCoordinate(name, parser.nextText().trim());
+					} else if (depth == 2 && "properties".equals(parent)) {
+						properties.put(name, parser.nextText().trim());
+					} else if (depth == 2 && "profiles".equals(parent) && "profile".equals(name)) {
+						profileId = null;
+						profileDeps = new ArrayList<Dependency>();
+						path.add(name);
+					} else if (depth == 3 && "profile".equals(parent) && "id".equals(name)) {
+						profileId = parser.nextText().trim();
+					} else if (depth == 4 && "properties".equals(parent) && "profile".equals(path.get(2))) {
+						profileProperties.add(name);
+						parser.nextText();
+					} else if (depth == 4 && "dependencies".equals(parent) && "profile".equals(path.get(2))
+							&& "dependency".equals(name)) {
+						dep = new Dependency();
+						profileDeps.add(dep);
+						path.add(name);
+					} else if (depth == 5 && dep != null && "dependency".equals(parent)) {
+						setDependencyField(dep, name, parser);
+					} else {
+						path.add(name);
+					}
+				} else if (eventType == XmlPullParser.END_TAG) {
+					String name = path.remove(path.size() - 1);
+					if (path.size() == 2 && "profile".equals(name)) {
+						if (DependencyTreeBuilder.UAAL_RUNTIME_PROFILE.equals(profileId)
+								|| DependencyTreeBuilder.UAAL_TEST_RUNTIME_PROFILE.equals(profileId)) {
+							List<Dependency> deps = profileDependencies.get(profileId);
+							if (deps == null) {
+								profileDependencies.put(profileId, profileDeps);
+							} else {
+								deps.addAll(profileDeps);
+							}
+						}
+						profileDeps = null;
+					} else if (path.size() == 4 && "dependency".equals(name)) {
+						dep = null;
+					}
+				}
+				eventType = parser.next();
+			}
+		}
+
+		private static boolean isCoordinate(final String name) {
+			return "groupId".equals(name) || "artifactId".equals(name) || "version".equals(name);
+		}
+
+		private void setCoordinate(final String name, final String value) {
+			if ("groupId".equals(name)) {
+				groupId = value;
+			} else if ("artifactId".equals(name)) {
+				artifactId = value;
+			} else {
+				version = value;
+			}
+		}
+
+		private void setParentCoordinate(final String name, final String value) {
+			if ("groupId".equals(name)) {
+				parentGroupId = value;
+			} else if ("artifactId".equals(name)) {
+				parentArtifactId = value;
+			} else {
+				parentVersion = value;
+			}
+		}
+
+		private static void setDependencyField(final Dependency dep, final String name, final XmlPullParser parser)
+				throws XmlPullParserException, IOException {
+			if ("groupId".equals(name)) {
+				dep.setGroupId(parser.nextText().trim());
+			} else if ("artifactId".equals(name)) {
+				dep.setArtifactId(parser.nextText().trim());
+			} else if ("version".equals(name)) {
+				dep.setVersion(parser.nextText().trim());
+			} else if ("type".equals(name)) {
+				dep.setType(parser.nextText().trim());
+			} else if ("classifier".equals(name)) {
+				dep.setClassifier(parser.nextText().trim());
+			} else if ("scope".equals(name)) {
+				dep.setScope(parser.nextText().trim());
+			} else {
+				skipElement(parser);
+			}
+		}
+
+		/**
+		 * Skips the current element with all its children.
+		 */
+		private static void skipElement(final XmlPullParser parser) throws XmlPullParserException, IOException {
+			int depth = 1;
+			while (depth > 0) {
+				int eventType = parser.next();
+				if (eventType == XmlPullParser.START_TAG) {
+					depth++;
+				} else if (eventType == XmlPullParser.END_TAG) {
+					depth--;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Interpolator of expressions in values of a POM. Expressions are resolved
+	 * from coordinates of the POM and its parent and from properties of the
+	 * parent chain. If an expression cannot be resolved the same way as by the
+	 * project builder, the failed flag is set.
+	 */
+	private static class Interpolator {
+
+		private final List<PomSkeleton> chain;
+
+		private final Map<String, String> coordinates = new HashMap<String, String>();
+
+		private boolean failed = false;
+
+		Interpolator(final List<PomSkeleton> chain) {
+			this.chain = chain;
+			PomSkeleton pom = chain.get(0);
+			String groupId = pom.groupId != null ? pom.groupId : pom.parentGroupId;
+			String version = pom.version != null ? pom.version : pom.parentVersion;
+			for (String prefix : new String[] { "project.", "pom.", "" }) {
+				putCoordinate(prefix + "groupId", groupId);
+				putCoordinate(prefix + "artifactId", pom.artifactId);
+				putCoordinate(prefix + "version", version);
+				if (prefix.length() != 0) {
+					putCoordinate(prefix + "parent.groupId", pom.parentGroupId);
+					putCoordinate(prefix + "parent.artifactId", pom.parentArtifactId);
+					putCoordinate(prefix + "parent.version", pom.parentVersion);
+				}
+			}
+		}
+
+		private void putCoordinate(final String name, final String value) {
+			if (value != null) {
+				coordinates.put(name, value);
+			}
+		}
+
+		/**
+		 * Gets property declared in the POM or its nearest parent.
+		 *
+		 * @param name
+		 *            name of the property.
+		 * @return the value or null if it is not declared.
+		 */
+		String getProperty(final String name) {
+			for (PomSkeleton pom : chain) {
+				if (pom.profileProperties.contains(name)) {
+					failed = true;
+					return null;
+				}
+				String value = pom.properties.get(name);
+				if (value != null) {
+					return value;
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Interpolates expressions in given value.
+		 *
+		 * @param value
+		 *            the value, can be null.
+		 * @return the interpolated value.
+		 */
+		String interpolate(final String value) {
+			return interpolate(value, 0);
+		}
+
+		private String interpolate(final String value, final int depth) {
+			if (value == null || value.indexOf("${") < 0) {
+				return value;
+			}
+			if (depth > MAX_DEPTH) {
+				failed = true;
+				return value;
+			}
+			StringBuilder sb = new StringBuilder();
+			int pos = 0;
+			int start;
+			while ((start = value.indexOf("${", pos)) >= 0) {
+				int end = value.indexOf('}', start);
+				if (end < 0) {
+					break;
+				}
+				sb.append(value, pos, start);
+				String resolved = resolve(value.substring(start + 2, end), depth);
+				if (resolved == null) {
+					failed = true;
+					return value;
+				}
+				sb.append(resolved);
+				pos = end + 1;
+			}
+			sb.append(value, pos, value.length());
+			return sb.toString();
+		}
+
+		/**
+		 * Resolves single expression.
+		 *
+		 * @return the value of the expression or null if it cannot be
+		 *         resolved.
+		 */
+		private String resolve(final String expression, final int depth) {
+			if (System.getProperty(expression) != null || expression.startsWith("env.")) {
+				return null;
+			}
+			String value = coordinates.get(expression);
+			if (value == null) {
+				if (expression.startsWith("project.") || expression.startsWith("pom.")) {
+					return null;
+				}
+				value = getProperty(expression);
+			}
+			if (value == null) {
+				return null;
+			}
+			return interpolate(value, depth + 1);
+		}
+	}
+}
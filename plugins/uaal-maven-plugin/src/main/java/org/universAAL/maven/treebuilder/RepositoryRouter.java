@@ -0,0 +1,260 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven.treebuilder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Router which narrows lists of remote repositories to repositories which can
+ * serve given artifact. Routing rules map groupId prefixes to ids of
+ * repositories, e.g.:
+ *
+ * <pre>
+ * org.universAAL=uaal,uaal-thirdparty;org.ops4j=ops4j-releases,paxrunner,central
+ * </pre>
+ *
+ * Artifact is routed by the rule with the longest groupId prefix matching its
+ * groupId. Artifacts not matched by any rule are routed by the default rule
+ * with "*" prefix. If there is no default rule, repositories named in any rule
+ * are treated as dedicated to groupIds of their rules and artifacts not
+ * matched by any rule are looked up in all other repositories. If routing
+ * leaves no repository, the original list is used.
+ *
+ * Repository lists passed to the router are never modified, a new list is
+ * returned instead.
+ *
+ * Skipped repositories are counted as saved probes only when the lookup would
+ * reach them. Artifact missing in the local repository is looked up in the
+ * remote repositories in their order until it is found, so only skipped
+ * repositories preceding the first routed repository are counted. Available
+ * versions are looked up in all repositories, but they are cached for the
+ * session by the metadata cache, so they are counted once per artifact.
+ *
+ */
+public class RepositoryRouter {
+
+	/**
+	 * Ids of repositories indexed by groupId prefixes.
+	 */
+	private final Map<String, Set<String>> routes;
+
+	/**
+	 * Prefix of the default rule.
+	 */
+	private static final String DEFAULT_PREFIX = "*";
+
+	/**
+	 * Ids of repositories named in any rule.
+	 */
+	private final Set<String> dedicatedRepositories = new HashSet<String>();
+
+	/**
+	 * Ids of repositories of the default rule, null if there is no default
+	 * rule.
+	 */
+	private Set<String> defaultRoute = null;
+
+	/**
+	 * Log used for reporting skipped repositories, can be null.
+	 */
+	private final Log log;
+
+	/**
+	 * Local repository used for telling which lookups reach the remote
+	 * repositories, can be null.
+	 */
+	private final ArtifactRepository localRepository;
+
+	/**
+	 * Number of routed lookups.
+	 */
+	private final AtomicLong lookups = new AtomicLong();
+
+	/**
+	 * Number of skipped repositories which would be probed by the lookups.
+	 */
+	private final AtomicLong savedProbes = new AtomicLong();
+
+	/**
+	 * Artifacts (groupId:artifactId) whose lookups of available versions were
+	 * already counted.
+	 */
+	private final Map<String, Boolean> versionLookups = new ConcurrentHashMap<String, Boolean>();
+
+	/**
+	 * Constructor of RepositoryRouter.
+	 *
+	 * @param rules
+	 *            routing rules in the form
+	 *            groupIdPrefix=repoId,repoId;groupIdPrefix=repoId
+	 * @param localRepository
+	 *            local repository, if null then skipped repositories are
+	 *            counted as saved probes for all artifacts
+	 * @param log
+	 *            log used for reporting skipped repositories, can be null
+	 * @throws IllegalArgumentException
+	 *             when the rules are malformed
+	 */
+	public RepositoryRouter(final String rules, final ArtifactRepository localRepository, final Log log) {
+		this.log = log;
+		this.localRepository = localRepository;
+		this.routes = new LinkedHashMap<String, Set<String>>();
+		for (String rule : rules.split(";")) {
+			rule = rule.trim();
+			if (rule.length() == 0) {
+				continue;
+			}
+			int eq = rule.indexOf('=');
+			if (eq <= 0 || eq == rule.length() - 1) {
+				throw new IllegalArgumentException("Malformed repository routing rule \"" + rule
+						+ "\", expected groupIdPrefix=repoId[,repoId...]");
+			}
+			String prefix = rule.substring(0, eq).trim();
+			Set<String> repoIds = routes.get(prefix);
+			if (repoIds == null) {
+				repoIds = new HashSet<String>();
+				routes.put(prefix, repoIds);
+			}
+			for (String repoId : rule.substring(eq + 1).split(",")) {
+				repoId = repoId.trim();
+				if (repoId.length() != 0) {
+					repoIds.add(repoId);
+					dedicatedRepositories.add(repoId);
+				}
+			}
+		}
+		defaultRoute = routes.remove(DEFAULT_PREFIX);
+	}
+
+	/**
+	 * Returns repositories which should be used for looking up given artifact.
+	 *
+	 * @param artifact
+	 *            the artifact
+	 * @param remoteRepositories
+	 *            all remote repositories available for the artifact
+	 * @return repositories which can serve the artifact
+	 */
+	public List route(final Artifact artifact, final List remoteRepositories) {
+		if (remoteRepositories == null || remoteRepositories.isEmpty()) {
+			return remoteRepositories;
+		}
+		Set<String> repoIds = findRoute(artifact.getGroupId());
+		List<ArtifactRepository> routed = new ArrayList<ArtifactRepository>();
+		for (Object repoObj : remoteRepositories) {
+			ArtifactRepository repo = (ArtifactRepository) repoObj;
+			if (repoIds == null ? !dedicatedRepositories.contains(repo.getId()) : repoIds.contains(repo.getId())) {
+				routed.add(repo);
+			}
+		}
+		lookups.incrementAndGet();
+		if (routed.isEmpty()) {
+			return remoteRepositories;
+		}
+		int skipped = countSavedProbes(artifact, remoteRepositories, routed);
+		if (skipped > 0) {
+			savedProbes.addAndGet(skipped);
+			if (log != null && log.isDebugEnabled()) {
+				log.debug(String.format("Repository router: %s:%s looked up in %d of %d repositories",
+						artifact.getGroupId(), artifact.getArtifactId(), routed.size(), remoteRepositories.size()));
+			}
+		}
+		return routed;
+	}
+
+	/**
+	 * Counts skipped repositories which the lookup would probe. Lookup of
+	 * available versions (artifact without version) probes all repositories
+	 * unless it was already made for the artifact. Lookup of artifact present
+	 * in the local repository probes none and lookup of a missing artifact
+	 * probes repositories until the one serving the artifact, which is one of
+	 * the routed repositories.
+	 */
+	private int countSavedProbes(final Artifact artifact, final List remoteRepositories,
+			final List<ArtifactRepository> routed) {
+		if (artifact.getVersion() == null) {
+			String key = artifact.getGroupId() + ":" + artifact.getArtifactId();
+			if (versionLookups.put(key, Boolean.TRUE) != null) {
+				return 0;
+			}
+			return remoteRepositories.size() - routed.size();
+		}
+		if (localRepository != null
+				&& new File(localRepository.getBasedir(), localRepository.pathOf(artifact)).isFile()) {
+			return 0;
+		}
+		return remoteRepositories.indexOf(routed.get(0));
+	}
+
+	/**
+	 * Gets number of repository probes saved thanks to routing.
+	 *
+	 * @return number of saved probes.
+	 */
+	public long getSavedProbes() {
+		return savedProbes.get();
+	}
+
+	/**
+	 * Returns summary of router counters.
+	 *
+	 * @return the summary.
+	 */
+	@Override
+	public String toString() {
+		return String.format("Repository router: %d probes of repositories saved in %d lookups", savedProbes.get(),
+				lookups.get());
+	}
+
+	/**
+	 * Finds ids of repositories for given groupId.
+	 *
+	 * @param groupId
+	 *            the groupId
+	 * @return ids of repositories of the rule with the longest matching
+	 *         prefix, of the default rule if no rule matches or null if there
+	 *         is no default rule
+	 */
+	private Set<String> findRoute(final String groupId) {
+		Set<String> repoIds = defaultRoute;
+		int longest = -1;
+		for (Map.Entry<String, Set<String>> route : routes.entrySet()) {
+			String prefix = route.getKey();
+			if (prefix.length() > longest && groupId.startsWith(prefix)) {
+				repoIds = route.getValue();
+				longest = prefix.length();
+			}
+		}
+		return repoIds;
+	}
+}
@@ -0,0 +1,262 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven.treebuilder;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.resolver.ResolutionListener;
+import org.apache.maven.artifact.resolver.ResolutionListenerForDepMgmt;
+import org.apache.maven.artifact.versioning.VersionRange;
+
+/**
+ * Listener which streams resolution events to a file as JSON lines, e.g.:
+ *
+ * <pre>
+ * {"t":1520,"event":"omitForNearer","artifact":"g:a:jar:1.0","scope":"compile","replacement":"g:a:jar:1.1"}
+ * </pre>
+ *
+ * where t is the time in microseconds since the log was opened. The first
+ * line carries the wall clock time of opening. Depth of an event in the tree
+ * can be reconstructed from nesting of startProcessChildren and
+ * endProcessChildren events.
+ *
+ * Lines are handed over to a background thread through a bounded queue. If
+ * the queue is full, the event is dropped rather than blocking the
+ * resolution, and number of dropped events is written at the end of the log.
+ *
+ */
+public class ResolutionEventLog implements ResolutionListener, ResolutionListenerForDepMgmt {
+
+	/**
+	 * Number of lines which can wait for writing.
+	 */
+	private static final int QUEUE_CAPACITY = 16384;
+
+	/**
+	 * Line which tells the writer thread to finish.
+	 */
+	private static final String END = new String("end");
+
+	/**
+	 * Time in milliseconds for which close waits for the writer thread.
+	 */
+	private static final long CLOSE_TIMEOUT = 30000;
+
+	private final BlockingQueue<String> queue = new ArrayBlockingQueue<String>(QUEUE_CAPACITY);
+
+	private final AtomicLong dropped = new AtomicLong();
+
+	private final long openTime;
+
+	private final Thread writerThread;
+
+	/**
+	 * First error of the writer thread, null if there was none.
+	 */
+	private volatile IOException error = null;
+
+	/**
+	 * Opens the log. The file is overwritten.
+	 *
+	 * @param file
+	 *            file to which events are written
+	 * @throws IOException
+	 *             when the file cannot be opened
+	 */
+	public ResolutionEventLog(final File file) throws IOException {
+		file.getParentFile().mkdirs();
+		final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+		openTime = System.nanoTime();
+		queue.offer("{\"t\":0,\"event\":\"open\",\"time\":" + System.currentTimeMillis() + "}");
+		writerThread = new DaemonThreadFactory("uaal-event-log").newThread(new Runnable() {
+			public void run() {
+				try {
+					try {
+						String line = queue.take();
+						while (line != END) {
+							writer.write(line);
+							writer.write('\n');
+							if (queue.isEmpty()) {
+								writer.flush();
+							}
+							line = queue.take();
+						}
+					} finally {
+						writer.close();
+					}
+				} catch (IOException e) {
+					error = e;
+					queue.clear();
+				} catch (InterruptedException e) {
+					// closed without waiting
+				}
+			}
+		});
+		writerThread.start();
+	}
+
+	/**
+	 * Writes remaining events and closes the file.
+	 *
+	 * @throws IOException
+	 *             when events could not be written
+	 */
+	public void close() throws IOException {
+		if (dropped.get() > 0) {
+			queue.offer(line("dropped", null, null, String.valueOf(dropped.get())));
+		}
+		try {
+			// the writer drains the queue, so END eventually fits in
+			if (writerThread.isAlive() && !queue.offer(END, CLOSE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+				writerThread.interrupt();
+			}
+			writerThread.join(CLOSE_TIMEOUT);
+		} catch (InterruptedException e) {
+			writerThread.interrupt();
+			Thread.currentThread().interrupt();
+		}
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	/**
+	 * @return number of events which were dropped because the writer did not
+	 *         keep up.
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	private void log(final String event, final Artifact artifact, final Artifact replacement, final String detail) {
+		if (!queue.offer(line(event, artifact, replacement, detail))) {
+			dropped.incrementAndGet();
+		}
+	}
+
+	private String line(final String event, final Artifact artifact, final Artifact replacement,
+			final String detail) {
+		StringBuilder sb = new StringBuilder(128);
+		sb.append("{\"t\":").append((System.nanoTime() - openTime) / 1000);
+		sb.append(",\"event\":\"").append(event).append('"');
+		if (artifact != null) {
+			appendArtifact(sb, "artifact", artifact);
+			if (artifact.getScope() != null) {
+				sb.append(",\"scope\":");
+				appendString(sb, artifact.getScope());
+			}
+		}
+		if (replacement != null) {
+			appendArtifact(sb, "replacement", replacement);
+		}
+		if (detail != null) {
+			sb.append(",\"detail\":");
+			appendString(sb, detail);
+		}
+		return sb.append('}').toString();
+	}
+
+	private static void appendArtifact(final StringBuilder sb, final String name, final Artifact artifact) {
+		sb.append(",\"").append(name).append("\":");
+		String version = artifact.getVersion();
+		if (version == null && artifact.getVersionRange() != null) {
+			version = artifact.getVersionRange().toString();
+		}
+		appendString(sb, artifact.getDependencyConflictId() + ":" + version);
+	}
+
+	private static void appendString(final StringBuilder sb, final String s) {
+		sb.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if (c < ' ') {
+				sb.append(String.format("\\u%04x", Integer.valueOf(c)));
+			} else {
+				sb.append(c);
+			}
+		}
+		sb.append('"');
+	}
+
+	public void testArtifact(final Artifact node) {
+		log("testArtifact", node, null, null);
+	}
+
+	public void startProcessChildren(final Artifact artifact) {
+		log("startProcessChildren", artifact, null, null);
+	}
+
+	public void endProcessChildren(final Artifact artifact) {
+		log("endProcessChildren", artifact, null, null);
+	}
+
+	public void includeArtifact(final Artifact artifact) {
+		log("includeArtifact", artifact, null, null);
+	}
+
+	public void omitForNearer(final Artifact omitted, final Artifact kept) {
+		log("omitForNearer", omitted, kept, null);
+	}
+
+	public void updateScope(final Artifact artifact, final String scope) {
+		log("updateScope", artifact, null, scope);
+	}
+
+	public void manageArtifact(final Artifact artifact, final Artifact replacement) {
+		log("manageArtifact", artifact, replacement, null);
+	}
+
+	public void manageArtifactVersion(final Artifact artifact, final Artifact replacement) {
+		log("manageArtifactVersion", artifact, replacement, null);
+	}
+
+	public void manageArtifactScope(final Artifact artifact, final Artifact replacement) {
+		log("manageArtifactScope", artifact, replacement, null);
+	}
+
+	public void omitForCycle(final Artifact artifact) {
+		log("omitForCycle", artifact, null, null);
+	}
+
+	public void updateScopeCurrentPom(final Artifact artifact, final String ignoredScope) {
+		log("updateScopeCurrentPom", artifact, null, ignoredScope);
+	}
+
+	public void selectVersionFromRange(final Artifact artifact) {
+		log("selectVersionFromRange", artifact, null, null);
+	}
+
+	public void restrictRange(final Artifact artifact, final Artifact replacement, final VersionRange newRange) {
+		log("restrictRange", artifact, replacement, String.valueOf(newRange));
+	}
+}
@@ -0,0 +1,361 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven.treebuilder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.maven.artifact.Artifact;
+import org.universAAL.maven.ArtifactKey;
+
+/**
+ * Profiler of the resolution of execution lists. It sums wall time and
+ * number of calls per phase (building and reading POMs, retrieving metadata,
+ * resolving bundles, reading manifests, walking the tree) and per artifact, and
+ * collects hit rates of the caches. The result is written as a JSON report.
+ *
+ * Phases are timed with pairs of start and stop calls:
+ *
+ * <pre>
+ * long start = profiler.start();
+ * ...
+ * profiler.stop(ResolutionProfiler.POM_BUILD, artifact, start);
+ * </pre>
+ *
+ * Phases can be nested, tree-build includes building POMs and retrieving
+ * metadata of the tree. Phases running in background threads are timed in
+ * these threads, so sum of times of phases can exceed the wall time of the
+ * resolution. The disabled
+ * profiler does not even read the clock.
+ *
+ */
+public class ResolutionProfiler {
+
+	public static final String TREE_BUILD = "tree-build";
+
+	public static final String POM_BUILD = "pom-build";
+
+	public static final String POM_READ = "pom-read";
+
+	public static final String METADATA = "metadata";
+
+	public static final String GRAPH_INDEX = "graph-index";
+
+	public static final String LAUNCH_ORDER = "launch-order";
+
+	public static final String BUNDLE_RESOLVE = "bundle-resolve";
+
+	public static final String MANIFEST_READ = "manifest-read";
+
+	public static final String BUNDLE_WAIT = "bundle-wait";
+
+	public static final String BUNDLE_WIRING = "bundle-wiring";
+
+	/**
+	 * Profiler which records nothing.
+	 */
+	public static final ResolutionProfiler DISABLED = new ResolutionProfiler(false);
+
+	/**
+	 * Number of slowest artifacts listed in the report.
+	 */
+	private static final int SLOWEST_ARTIFACTS = 20;
+
+	/**
+	 * Counters of a phase, of an artifact or of an artifact in a phase.
+	 */
+	private static class Timing {
+
+		private final AtomicLong count = new AtomicLong();
+
+		private final AtomicLong nanos = new AtomicLong();
+
+		private void add(final long time) {
+			count.incrementAndGet();
+			nanos.addAndGet(time);
+		}
+	}
+
+	/**
+	 * Hits and misses of a cache.
+	 */
+	private static class CacheCounts {
+
+		private long startHits;
+
+		private long startMisses;
+
+		private long hits;
+
+		private long misses;
+	}
+
+	private final boolean enabled;
+
+	/**
+	 * Time of creation of the profiler.
+	 */
+	private final long creationTime;
+
+	private final ConcurrentMap<String, Timing> phases = new ConcurrentHashMap<String, Timing>();
+
+	private final ConcurrentMap<ArtifactKey, Timing> artifacts = new ConcurrentHashMap<ArtifactKey, Timing>();
+
+	private final ConcurrentMap<ArtifactKey, ConcurrentMap<String, Timing>> artifactPhases =
+			new ConcurrentHashMap<ArtifactKey, ConcurrentMap<String, Timing>>();
+
+	private final Map<String, CacheCounts> caches = new LinkedHashMap<String, CacheCounts>();
+
+	/**
+	 * Creates enabled profiler.
+	 */
+	public ResolutionProfiler() {
+		this(true);
+	}
+
+	private ResolutionProfiler(final boolean enabled) {
+		this.enabled = enabled;
+		this.creationTime = enabled ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * @return true if the profiler records anything.
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Starts timing of a phase.
+	 *
+	 * @return start time to be passed to stop.
+	 */
+	public long start() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Stops timing of a phase which does not concern a single artifact.
+	 *
+	 * @param phase
+	 *            name of the phase
+	 * @param start
+	 *            value returned by start
+	 */
+	public void stop(final String phase, final long start) {
+		if (enabled) {
+			timing(phases, phase).add(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Stops timing of a phase done for given artifact.
+	 *
+	 * @param phase
+	 *            name of the phase
+	 * @param artifact
+	 *            the artifact
+	 * @param start
+	 *            value returned by start
+	 */
+	public void stop(final String phase, final Artifact artifact, final long start) {
+		if (!enabled) {
+			return;
+		}
+		long time = System.nanoTime() - start;
+		ArtifactKey key = ArtifactKey.of(artifact);
+		timing(phases, phase).add(time);
+		timing(artifacts, key).add(time);
+		ConcurrentMap<String, Timing> byPhase = artifactPhases.get(key);
+		if (byPhase == null) {
+			ConcurrentMap<String, Timing> created = new ConcurrentHashMap<String, Timing>();
+			byPhase = artifactPhases.putIfAbsent(key, created);
+			if (byPhase == null) {
+				byPhase = created;
+			}
+		}
+		timing(byPhase, phase).add(time);
+	}
+
+	/**
+	 * Records counters of a cache before the resolution. Caches are often
+	 * shared by the whole session, so only hits and misses between
+	 * startCache and stopCache are reported.
+	 *
+	 * @param name
+	 *            name of the cache
+	 * @param hits
+	 *            current number of hits
+	 * @param misses
+	 *            current number of misses
+	 */
+	public synchronized void startCache(final String name, final long hits, final long misses) {
+		if (!enabled) {
+			return;
+		}
+		CacheCounts counts = new CacheCounts();
+		counts.startHits = hits;
+		counts.startMisses = misses;
+		counts.hits = hits;
+		counts.misses = misses;
+		caches.put(name, counts);
+	}
+
+	/**
+	 * Records counters of a cache after the resolution.
+	 *
+	 * @param name
+	 *            name of the cache
+	 * @param hits
+	 *            current number of hits
+	 * @param misses
+	 *            current number of misses
+	 */
+	public synchronized void stopCache(final String name, final long hits, final long misses) {
+		CacheCounts counts = caches.get(name);
+		if (counts != null) {
+			counts.hits = hits;
+			counts.misses = misses;
+		}
+	}
+
+	private static <K> Timing timing(final ConcurrentMap<K, Timing> timings, final K key) {
+		Timing timing = timings.get(key);
+		if (timing == null) {
+			Timing created = new Timing();
+			timing = timings.putIfAbsent(key, created);
+			if (timing == null) {
+				timing = created;
+			}
+		}
+		return timing;
+	}
+
+	/**
+	 * Writes the JSON report. It contains wall time since creation of the
+	 * profiler, phases sorted by time, slowest artifacts with their phases and
+	 * hit rates of caches.
+	 *
+	 * @param file
+	 *            file to which the report is written
+	 * @param projectId
+	 *            id of the profiled project
+	 * @throws IOException
+	 *             when the file cannot be written
+	 */
+	public synchronized void write(final File file, final String projectId) throws IOException {
+		if (!enabled) {
+			return;
+		}
+		long wallTime = System.nanoTime() - creationTime;
+		file.getParentFile().mkdirs();
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			writer.write("{\n");
+			writer.write("  \"project\": " + quote(projectId) + ",\n");
+			writer.write("  \"wallTimeMs\": " + millis(wallTime) + ",\n");
+			writer.write("  \"phases\": [");
+			String separator = "\n";
+			for (Map.Entry<String, Timing> phase : sortByTime(phases)) {
+				writer.write(separator + "    {\"name\": " + quote(phase.getKey()) + ", \"count\": "
+						+ phase.getValue().count.get() + ", \"timeMs\": " + millis(phase.getValue().nanos.get())
+						+ "}");
+				separator = ",\n";
+			}
+			writer.write("\n  ],\n");
+			writer.write("  \"slowestArtifacts\": [");
+			separator = "\n";
+			List<Map.Entry<ArtifactKey, Timing>> slowest = sortByTime(artifacts);
+			for (Map.Entry<ArtifactKey, Timing> artifact : slowest.subList(0,
+					Math.min(SLOWEST_ARTIFACTS, slowest.size()))) {
+				writer.write(separator + "    {\"artifact\": " + quote(artifact.getKey().toString()) + ", \"timeMs\": "
+						+ millis(artifact.getValue().nanos.get()) + ", \"phases\": {");
+				String phaseSeparator = "";
+				for (Map.Entry<String, Timing> phase : sortByTime(artifactPhases.get(artifact.getKey()))) {
+					writer.write(phaseSeparator + quote(phase.getKey()) + ": " + millis(phase.getValue().nanos.get()));
+					phaseSeparator = ", ";
+				}
+				writer.write("}}");
+				separator = ",\n";
+			}
+			writer.write("\n  ],\n");
+			writer.write("  \"caches\": [");
+			separator = "\n";
+			for (Map.Entry<String, CacheCounts> cache : caches.entrySet()) {
+				long hits = cache.getValue().hits - cache.getValue().startHits;
+				long misses = cache.getValue().misses - cache.getValue().startMisses;
+				String hitRate = hits + misses == 0 ? "null"
+						: String.format(Locale.ENGLISH, "%.3f", (double) hits / (hits + misses));
+				writer.write(separator + "    {\"name\": " + quote(cache.getKey()) + ", \"hits\": " + hits
+						+ ", \"misses\": " + misses + ", \"hitRate\": " + hitRate + "}");
+				separator = ",\n";
+			}
+			writer.write("\n  ]\n");
+			writer.write("}\n");
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static <K> List<Map.Entry<K, Timing>> sortByTime(final Map<K, Timing> timings) {
+		List<Map.Entry<K, Timing>> sorted = new ArrayList<Map.Entry<K, Timing>>(timings.entrySet());
+		Collections.sort(sorted, new Comparator<Map.Entry<K, Timing>>() {
+			public int compare(final Map.Entry<K, Timing> o1, final Map.Entry<K, Timing> o2) {
+				long t1 = o1.getValue().nanos.get();
+				long t2 = o2.getValue().nanos.get();
+				return t1 > t2 ? -1 : (t1 == t2 ? 0 : 1);
+			}
+		});
+		return sorted;
+	}
+
+	private static String millis(final long nanos) {
+		return String.format(Locale.ENGLISH, "%.3f", nanos / 1000000.0);
+	}
+
+	private static String quote(final String s) {
+		StringBuilder sb = new StringBuilder("\"");
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if (c < ' ') {
+				sb.append(String.format("\\u%04x", Integer.valueOf(c)));
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.append('"').toString();
+	}
+}
@@ -0,0 +1,660 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven.treebuilder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.settings.Profile;
+import org.apache.maven.settings.Settings;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.ReaderFactory;
+import org.universAAL.maven.FilteringVisitorSupport;
+
+/**
+ * Persistent cache of RuntimeProfileFacts. Facts of each artifact are stored
+ * in a separate properties file in "uaal-tree-cache" directory placed next to
+ * the local repository (typically ~/.m2/uaal-tree-cache).
+ *
+ * Facts are taken from the effective model, so besides the POM itself they
+ * depend on its parents (inherited properties, separatedGroupIds and managed
+ * versions) and on the values interpolated from outside of the POMs (system
+ * and -D properties, properties of settings profiles and environment
+ * variables). Each file therefore remembers:
+ * <ul>
+ * <li>the state of the POM and of each of its parents: for released artifacts
+ * it is SHA-1 checksum of the POM file, for SNAPSHOT artifacts it is timestamp
+ * and size of the POM file, so that facts are revalidated whenever a POM of
+ * the chain is updated in the local repository,
+ * <li>the outside values of all expressions used in the POM and its parents
+ * and of all properties activating their profiles.
+ * </ul>
+ * Cached facts are used only if all the POMs are present in the local
+ * repository, their states match the remembered ones and the outside values
+ * did not change. Otherwise the maven project has to be built and the facts
+ * are stored again. Facts of POMs which import dependency management or
+ * contain profiles activated by a file, the JDK or the OS are not stored at
+ * all, because their inputs are not tracked.
+ *
+ */
+public class RuntimeProfileCache {
+
+	public static final String CACHE_DIR_NAME = "uaal-tree-cache";
+
+	private static final String FORMAT_VERSION = "2";
+
+	private static final String PROP_FORMAT = "format";
+
+	private static final String PROP_POM_PREFIX = "pom.";
+
+	private static final String PROP_EXPRESSIONS = "expressions";
+
+	private static final String PROP_EXPRESSION_PREFIX = "expression.";
+
+	private static final String PROP_PROFILES = "profiles";
+
+	private static final String PROP_PROFILE_PREFIX = "profile.";
+
+	private Log log;
+
+	private ArtifactRepository localRepository;
+
+	private File cacheDir;
+
+	/**
+	 * System and -D properties of the build.
+	 */
+	private final Properties executionProperties = new Properties();
+
+	/**
+	 * Profiles of the settings, which can define properties.
+	 */
+	private final List<Profile> settingsProfiles = new ArrayList<Profile>();
+
+	/**
+	 * Ids of profiles activated in the settings.
+	 */
+	private final List<String> activeSettingsProfiles = new ArrayList<String>();
+
+	/**
+	 * States of POM files already calculated during this build indexed by
+	 * kind of the state and path of the file.
+	 */
+	private final Map<String, String> pomStates = new ConcurrentHashMap<String, String>();
+
+	/**
+	 * Facts already validated during this build indexed by stringified POM
+	 * artifacts.
+	 */
+	private final Map<String, RuntimeProfileFacts> validatedFacts = new ConcurrentHashMap<String, RuntimeProfileFacts>();
+
+	/**
+	 * Number of facts served from the cache.
+	 */
+	private final AtomicLong hits = new AtomicLong();
+
+	/**
+	 * Number of facts which were not present in the cache or were stale.
+	 */
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Creates cache placed next to given local repository.
+	 *
+	 * @param localRepository
+	 *            The maven's local repository.
+	 * @param session
+	 *            Maven session providing execution properties and settings
+	 *            which can be interpolated into the POMs, can be null.
+	 * @param log
+	 *            Log used for reporting problems with the cache directory.
+	 */
+	public RuntimeProfileCache(final ArtifactRepository localRepository, final MavenSession session, final Log log) {
+		this.localRepository = localRepository;
+		this.log = log;
+		File localRepoBaseDir = new File(localRepository.getBasedir());
+		File parentDir = localRepoBaseDir.getAbsoluteFile().getParentFile();
+		if (parentDir == null) {
+			parentDir = localRepoBaseDir;
+		}
+		this.cacheDir = new File(parentDir, CACHE_DIR_NAME);
+		if (session != null) {
+			if (session.getExecutionProperties() != null) {
+				executionProperties.putAll(session.getExecutionProperties());
+			}
+			Settings settings = session.getSettings();
+			if (settings != null) {
+				for (Object profileObj : settings.getProfiles()) {
+					settingsProfiles.add((Profile) profileObj);
+				}
+				for (Object profileId : settings.getActiveProfiles()) {
+					activeSettingsProfiles.add((String) profileId);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets facts of given POM artifact if they are present in the cache and
+	 * they are up to date.
+	 *
+	 * @param pomArtifact
+	 *            POM artifact.
+	 * @return cached facts or null.
+	 */
+	public RuntimeProfileFacts get(final Artifact pomArtifact) {
+		String stringified = FilteringVisitorSupport.stringify(pomArtifact);
+		RuntimeProfileFacts facts = validatedFacts.get(stringified);
+		if (facts == null) {
+			facts = load(pomArtifact);
+			if (facts != null) {
+				validatedFacts.put(stringified, facts);
+			}
+		}
+		if (facts == null) {
+			misses.incrementAndGet();
+		} else {
+			hits.incrementAndGet();
+		}
+		return facts;
+	}
+
+	/**
+	 * Stores facts of given POM artifact. The POM and its parents have to be
+	 * present in the local repository, otherwise facts are not stored.
+	 *
+	 * @param pomArtifact
+	 *            POM artifact.
+	 * @param facts
+	 *            Facts extracted from the POM.
+	 */
+	public void put(final Artifact pomArtifact, final RuntimeProfileFacts facts) {
+		validatedFacts.put(FilteringVisitorSupport.stringify(pomArtifact), facts);
+		try {
+			Properties props = new Properties();
+			if (!putInputs(pomArtifact, props)) {
+				return;
+			}
+			props.setProperty(PROP_FORMAT, FORMAT_VERSION);
+			props.setProperty(DependencyTreeBuilder.PROP_SEPARATED_GROUP_IDS, join(facts.separatedGroupIds));
+			props.setProperty(PROP_PROFILES, join(facts.profileDependencies.keySet()));
+			for (Map.Entry<String, List<Dependency>> entry : facts.profileDependencies.entrySet()) {
+				int i = 0;
+				for (Dependency dep : entry.getValue()) {
+					props.setProperty(PROP_PROFILE_PREFIX + entry.getKey() + "." + i, toString(dep));
+					i++;
+				}
+			}
+			File cacheFile = getCacheFile(pomArtifact);
+			cacheFile.getParentFile().mkdirs();
+			/*
+			 * Facts are written to a temporary file first, so that other
+			 * builds running in parallel never read a partially written file.
+			 */
+			File tmpFile = File.createTempFile(cacheFile.getName(), ".tmp", cacheFile.getParentFile());
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(tmpFile));
+			try {
+				props.store(out, FilteringVisitorSupport.stringify(pomArtifact));
+			} finally {
+				out.close();
+			}
+			cacheFile.delete();
+			if (!tmpFile.renameTo(cacheFile)) {
+				tmpFile.delete();
+			}
+		} catch (IOException e) {
+			log.warn("Cannot store runtime profile facts of " + FilteringVisitorSupport.stringify(pomArtifact)
+					+ " in " + cacheDir + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Loads facts of given POM artifact from the cache file. Null is returned
+	 * if there is no cache file, it cannot be read or it was created for
+	 * different state of the POM.
+	 *
+	 * @param pomArtifact
+	 *            POM artifact.
+	 * @return loaded facts or null.
+	 */
+	private RuntimeProfileFacts load(final Artifact pomArtifact) {
+		File cacheFile = getCacheFile(pomArtifact);
+		if (!cacheFile.isFile()) {
+			return null;
+		}
+		try {
+			Properties props = new Properties();
+			InputStream in = new BufferedInputStream(new FileInputStream(cacheFile));
+			try {
+				props.load(in);
+			} finally {
+				in.close();
+			}
+			if (!FORMAT_VERSION.equals(props.getProperty(PROP_FORMAT)) || !inputsMatch(props)) {
+				return null;
+			}
+			Map<String, List<Dependency>> profileDependencies = new LinkedHashMap<String, List<Dependency>>();
+			for (String profileId : split(props.getProperty(PROP_PROFILES))) {
+				List<Dependency> deps = new ArrayList<Dependency>();
+				String depStr;
+				for (int i = 0; (depStr = props.getProperty(PROP_PROFILE_PREFIX + profileId + "." + i)) != null; i++) {
+					deps.add(parseDependency(depStr));
+				}
+				profileDependencies.put(profileId, deps);
+			}
+			return new RuntimeProfileFacts(profileDependencies,
+					split(props.getProperty(DependencyTreeBuilder.PROP_SEPARATED_GROUP_IDS)));
+		} catch (IOException e) {
+			return null;
+		} catch (IllegalArgumentException e) {
+			// corrupted cache file
+			return null;
+		}
+	}
+
+	/**
+	 * Remembers the inputs of the facts of given POM artifact in given
+	 * properties: paths and states of the POM and its parents and outside
+	 * values of expressions used in them.
+	 *
+	 * @param pomArtifact
+	 *            POM artifact.
+	 * @param props
+	 *            properties to which inputs are put.
+	 * @return false if the inputs cannot be tracked and facts should not be
+	 *         stored.
+	 */
+	private boolean putInputs(final Artifact pomArtifact, final Properties props) throws IOException {
+		Set<String> expressions = new TreeSet<String>();
+		Artifact artifact = pomArtifact;
+		for (int i = 0; artifact != null; i++) {
+			if (i > PomProfileReader.MAX_DEPTH) {
+				return false;
+			}
+			String path = localRepository.pathOf(artifact);
+			File pomFile = new File(localRepository.getBasedir(), path);
+			PomInputs inputs = PomInputs.read(pomFile);
+			if (inputs == null || inputs.untracked) {
+				return false;
+			}
+			props.setProperty(PROP_POM_PREFIX + i, path);
+			props.setProperty(PROP_POM_PREFIX + i + ".state", getPomState(pomFile, artifact.isSnapshot()));
+			expressions.addAll(inputs.expressions);
+			artifact = null;
+			if (inputs.parentArtifactId != null) {
+				if (inputs.parentGroupId == null || inputs.parentVersion == null) {
+					return false;
+				}
+				artifact = new DefaultArtifact(inputs.parentGroupId, inputs.parentArtifactId,
+						VersionRange.createFromVersion(inputs.parentVersion), null, "pom", null,
+						new DefaultArtifactHandler("pom"));
+			}
+		}
+		for (String expression : expressions) {
+			if (expression.indexOf(',') != -1) {
+				return false;
+			}
+			props.setProperty(PROP_EXPRESSION_PREFIX + expression, getOutsideValue(expression));
+		}
+		props.setProperty(PROP_EXPRESSIONS, join(expressions));
+		return true;
+	}
+
+	/**
+	 * Checks whether the inputs remembered in given properties are the same
+	 * as in this build.
+	 *
+	 * @param props
+	 *            loaded properties.
+	 * @return true if the POMs did not change and the outside values of
+	 *         expressions are the same.
+	 */
+	private boolean inputsMatch(final Properties props) throws IOException {
+		String path;
+		for (int i = 0; (path = props.getProperty(PROP_POM_PREFIX + i)) != null; i++) {
+			String state = props.getProperty(PROP_POM_PREFIX + i + ".state");
+			File pomFile = new File(localRepository.getBasedir(), path);
+			if (state == null || !pomFile.isFile()
+					|| !state.equals(getPomState(pomFile, state.startsWith("timestamp:")))) {
+				return false;
+			}
+		}
+		if (props.getProperty(PROP_POM_PREFIX + 0) == null || props.getProperty(PROP_EXPRESSIONS) == null) {
+			return false;
+		}
+		for (String expression : split(props.getProperty(PROP_EXPRESSIONS))) {
+			if (!getOutsideValue(expression).equals(props.getProperty(PROP_EXPRESSION_PREFIX + expression))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets values which given expression or property has outside of the POMs:
+	 * value of the environment variable, execution property and properties of
+	 * settings profiles (marked with * when the profile is active).
+	 *
+	 * @param expression
+	 *            the expression without ${}.
+	 * @return encoded values, empty string if the expression has no outside
+	 *         value.
+	 */
+	private String getOutsideValue(final String expression) {
+		StringBuilder value = new StringBuilder();
+		if (expression.startsWith("env.")) {
+			String env = System.getenv(expression.substring("env.".length()));
+			if (env != null) {
+				value.append("env=").append(env);
+			}
+			return value.toString();
+		}
+		String execValue = executionProperties.getProperty(expression);
+		if (execValue != null) {
+			value.append('=').append(execValue);
+		}
+		for (Profile profile : settingsProfiles) {
+			String profileValue = profile.getProperties() == null ? null : profile.getProperties().getProperty(
+					expression);
+			if (profileValue != null) {
+				value.append(';').append(profile.getId());
+				if (activeSettingsProfiles.contains(profile.getId())) {
+					value.append('*');
+				}
+				value.append('=').append(profileValue);
+			}
+		}
+		return value.toString();
+	}
+
+	/**
+	 * Calculates state of given POM file in the local repository. States are
+	 * calculated only once during the build.
+	 *
+	 * @param pomFile
+	 *            the POM file, it has to exist.
+	 * @param snapshot
+	 *            whether the POM is a SNAPSHOT.
+	 * @return the state.
+	 */
+	private String getPomState(final File pomFile, final boolean snapshot) throws IOException {
+		String key = (snapshot ? "timestamp:" : "sha1:") + pomFile.getPath();
+		String state = pomStates.get(key);
+		if (state == null) {
+			if (snapshot) {
+				state = "timestamp:" + pomFile.lastModified() + ":" + pomFile.length();
+			} else {
+				state = "sha1:" + sha1(pomFile);
+			}
+			pomStates.put(key, state);
+		}
+		return state;
+	}
+
+	/**
+	 * Gets cache file for given POM artifact.
+	 *
+	 * @param pomArtifact
+	 *            POM artifact.
+	 * @return the cache file.
+	 */
+	private File getCacheFile(final Artifact pomArtifact) {
+		File artifactDir = new File(new File(cacheDir, pomArtifact.getGroupId()), pomArtifact.getArtifactId());
+		return new File(artifactDir, pomArtifact.getVersion() + ".properties");
+	}
+
+	/**
+	 * Calculates SHA-1 checksum of given file.
+	 *
+	 * @param file
+	 *            The file.
+	 * @return hex representation of the checksum.
+	 */
+	private static String sha1(final File file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest()) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * Stringifies dependency to the form
+	 * groupId:artifactId:type:classifier:version:scope. Absent values are
+	 * represented by empty strings.
+	 */
+	private static String toString(final Dependency dep) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(nullToEmpty(dep.getGroupId())).append(':');
+		sb.append(nullToEmpty(dep.getArtifactId())).append(':');
+		sb.append(nullToEmpty(dep.getType())).append(':');
+		sb.append(nullToEmpty(dep.getClassifier())).append(':');
+		sb.append(nullToEmpty(dep.getVersion())).append(':');
+		sb.append(nullToEmpty(dep.getScope()));
+		return sb.toString();
+	}
+
+	/**
+	 * Parses dependency stringified by toString method.
+	 */
+	private static Dependency parseDependency(final String depStr) {
+		String[] elements = depStr.split(":", -1);
+		if (elements.length != 6) {
+			throw new IllegalArgumentException("Invalid dependency: " + depStr);
+		}
+		Dependency dep = new Dependency();
+		dep.setGroupId(emptyToNull(elements[0]));
+		dep.setArtifactId(emptyToNull(elements[1]));
+		dep.setType(emptyToNull(elements[2]));
+		dep.setClassifier(emptyToNull(elements[3]));
+		dep.setVersion(emptyToNull(elements[4]));
+		dep.setScope(emptyToNull(elements[5]));
+		return dep;
+	}
+
+	private static String nullToEmpty(final String str) {
+		return str == null ? "" : str;
+	}
+
+	private static String emptyToNull(final String str) {
+		return str.length() == 0 ? null : str;
+	}
+
+	private static String join(final Iterable<String> strings) {
+		StringBuilder sb = new StringBuilder();
+		for (String str : strings) {
+			if (sb.length() > 0) {
+				sb.append(',');
+			}
+			sb.append(str);
+		}
+		return sb.toString();
+	}
+
+	private static List<String> split(final String str) {
+		List<String> strings = new ArrayList<String>();
+		if (str != null) {
+			for (String element : str.split(",")) {
+				if (element.length() > 0) {
+					strings.add(element);
+				}
+			}
+		}
+		return strings;
+	}
+
+	/**
+	 * Gets number of facts served from the cache.
+	 *
+	 * @return number of hits.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Gets number of facts which were not present in the cache or were stale.
+	 *
+	 * @return number of misses.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Inputs of the effective model found in a POM file: coordinates of the
+	 * parent, names of used expressions and properties activating profiles.
+	 * The POM is scanned as text, so also expressions in comments are taken as
+	 * inputs, which only makes the validation stricter.
+	 */
+	private static final class PomInputs {
+
+		private static final Pattern EXPRESSION = Pattern.compile("\\$\\{([^}]+)\\}");
+
+		private static final Pattern PARENT = Pattern.compile("<parent>(.*?)</parent>", Pattern.DOTALL);
+
+		private static final Pattern ACTIVATION = Pattern.compile("<activation>(.*?)</activation>",
+				Pattern.DOTALL);
+
+		private static final Pattern NAME = Pattern.compile("<name>\\s*!?\\s*(.*?)\\s*</name>", Pattern.DOTALL);
+
+		private static final Pattern UNTRACKED_ACTIVATION = Pattern.compile("<(file|jdk|os)>");
+
+		private static final Pattern IMPORT_SCOPE = Pattern.compile("<scope>\\s*import\\s*</scope>");
+
+		private String parentGroupId;
+
+		private String parentArtifactId;
+
+		private String parentVersion;
+
+		private final Set<String> expressions = new TreeSet<String>();
+
+		/**
+		 * Whether the effective model depends on inputs which are not
+		 * tracked.
+		 */
+		private boolean untracked = false;
+
+		/**
+		 * Reads inputs of given POM file.
+		 *
+		 * @param pomFile
+		 *            the POM file.
+		 * @return the inputs or null if the file does not exist.
+		 */
+		static PomInputs read(final File pomFile) throws IOException {
+			if (!pomFile.isFile()) {
+				return null;
+			}
+			String pom;
+			Reader reader = ReaderFactory.newXmlReader(pomFile);
+			try {
+				pom = IOUtil.toString(reader);
+			} finally {
+				IOUtil.close(reader);
+			}
+			PomInputs inputs = new PomInputs();
+			Matcher expression = EXPRESSION.matcher(pom);
+			while (expression.find()) {
+				inputs.expressions.add(expression.group(1));
+			}
+			Matcher activation = ACTIVATION.matcher(pom);
+			while (activation.find()) {
+				if (UNTRACKED_ACTIVATION.matcher(activation.group(1)).find()) {
+					inputs.untracked = true;
+				}
+				Matcher name = NAME.matcher(activation.group(1));
+				while (name.find()) {
+					inputs.expressions.add(name.group(1));
+				}
+			}
+			inputs.untracked |= IMPORT_SCOPE.matcher(pom).find();
+			Matcher parent = PARENT.matcher(pom);
+			if (parent.find()) {
+				inputs.parentGroupId = element(parent.group(1), "groupId");
+				inputs.parentArtifactId = element(parent.group(1), "artifactId");
+				inputs.parentVersion = element(parent.group(1), "version");
+			}
+			return inputs;
+		}
+
+		private static String element(final String xml, final String name) {
+			Pattern pattern = Pattern.compile("<" + name + ">\\s*(.*?)\\s*</" + name + ">", Pattern.DOTALL);
+			Matcher matcher = pattern.matcher(xml);
+			return matcher.find() ? matcher.group(1) : null;
+		}
+	}
+
+	/**
+	 * Returns summary of cache counters.
+	 *
+	 * @return the summary.
+	 */
+	@Override
+	public String toString() {
+		return String.format("Runtime profile cache %s: %d hits, %d misses", cacheDir, hits.get(), misses.get());
+	}
+}
@@ -0,0 +1,54 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven.treebuilder;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.model.Dependency;
+
+/**
+ * Facts extracted from a POM which are needed by DependencyTreeBuilder and
+ * which otherwise require building of the whole maven project: dependencies of
+ * uAAL runtime profiles and separatedGroupIds property. Facts are cached on
+ * disk by RuntimeProfileCache.
+ *
+ */
+public class RuntimeProfileFacts {
+
+	/**
+	 * Dependencies of "uAAL-Runtime" and "uAAL-Test-Runtime" profiles indexed
+	 * by profile id. Profiles are kept in the order of the POM.
+	 */
+	final Map<String, List<Dependency>> profileDependencies;
+
+	/**
+	 * Values of separatedGroupIds property.
+	 */
+	final List<String> separatedGroupIds;
+
+	public RuntimeProfileFacts(final Map<String, List<Dependency>> profileDependencies,
+			final List<String> separatedGroupIds) {
+		this.profileDependencies = profileDependencies;
+		this.separatedGroupIds = separatedGroupIds;
+	}
+
+}
@@ -0,0 +1,152 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven.treebuilder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Properties file shared by builds running in parallel, e.g. a cache stored in
+ * the local repository. Reading needs no locking, because the file is always
+ * replaced by a completely written temporary file. Updates are done under an
+ * exclusive lock of a lock file next to the properties file: the file is read
+ * again, the update is applied to its current content and the result is
+ * written back, so entries stored by other builds in the meantime are kept.
+ * The file lock is held by the whole JVM, so updates made by builds running in
+ * threads of the same JVM are serialized by a monitor of the file in addition.
+ *
+ */
+public final class SharedPropertiesFile {
+
+	/**
+	 * Update of the content of the file.
+	 */
+	public interface Update {
+
+		/**
+		 * Applies the update.
+		 *
+		 * @param props
+		 *            current content of the file, empty if the file does not
+		 *            exist or is unreadable
+		 */
+		void apply(Properties props);
+	}
+
+	/**
+	 * Monitors serializing updates within this JVM, indexed by absolute paths
+	 * of the files.
+	 */
+	private static final ConcurrentMap<String, Object> MONITORS = new ConcurrentHashMap<String, Object>();
+
+	private SharedPropertiesFile() {
+	}
+
+	private static Object monitorOf(final File file) {
+		String path = file.getAbsolutePath();
+		Object monitor = MONITORS.get(path);
+		if (monitor == null) {
+			MONITORS.putIfAbsent(path, new Object());
+			monitor = MONITORS.get(path);
+		}
+		return monitor;
+	}
+
+	/**
+	 * Loads given properties file.
+	 *
+	 * @param file
+	 *            the file
+	 * @return loaded properties, empty if the file does not exist or is
+	 *         unreadable
+	 */
+	public static Properties load(final File file) {
+		Properties props = new Properties();
+		if (!file.isFile()) {
+			return props;
+		}
+		try {
+			InputStream in = new BufferedInputStream(new FileInputStream(file));
+			try {
+				props.load(in);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			return new Properties();
+		}
+		return props;
+	}
+
+	/**
+	 * Applies update to the current content of given properties file and
+	 * stores the result.
+	 *
+	 * @param file
+	 *            the file
+	 * @param update
+	 *            the update
+	 * @param comments
+	 *            comments written to the file
+	 * @throws IOException
+	 *             when the file cannot be locked or written
+	 */
+	public static void update(final File file, final Update update, final String comments) throws IOException {
+		File dir = file.getAbsoluteFile().getParentFile();
+		dir.mkdirs();
+		synchronized (monitorOf(file)) {
+			RandomAccessFile lockFile = new RandomAccessFile(new File(dir, file.getName() + ".lock"), "rw");
+			try {
+				FileLock lock = lockFile.getChannel().lock();
+				try {
+					Properties props = load(file);
+					update.apply(props);
+					File tmpFile = File.createTempFile(file.getName(), ".tmp", dir);
+					OutputStream out = new BufferedOutputStream(new FileOutputStream(tmpFile));
+					try {
+						props.store(out, comments);
+					} finally {
+						out.close();
+					}
+					file.delete();
+					if (!tmpFile.renameTo(file)) {
+						tmpFile.delete();
+					}
+				} finally {
+					lock.release();
+				}
+			} finally {
+				lockFile.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,142 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven.treebuilder;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Dependency trees of projects resolved by one goal which can be reused by
+ * another goal executed later in the same maven session. The composite goal
+ * publishes the tree resolved for the main composite and the itests goal takes
+ * it and resolves only dependencies from the uAAL-Test-Runtime profile on top
+ * of it (see DependencyTreeBuilder.resolveTestRuntimes).
+ *
+ * Each published tree can be taken only once because resolving test runtimes
+ * modifies it.
+ *
+ * Trees which are never taken (e.g. the itests goal is not executed) must not
+ * pile up for the rest of the session, so at most MAX_UNCLAIMED trees are
+ * kept and publishing another one drops the oldest unclaimed tree. In a
+ * sequential build the itests goal of a project takes its tree before the
+ * next project publishes, so no tree is dropped before it is used.
+ *
+ */
+public class SharedResolutions {
+
+	/**
+	 * Maximal number of published trees which were not taken yet.
+	 */
+	static final int MAX_UNCLAIMED = 2;
+
+	/**
+	 * Shared resolutions of maven sessions. Sessions are identified by their
+	 * start time, the same way as in PomModelMemo.
+	 */
+	private static final Map<Date, SharedResolutions> SESSION_RESOLUTIONS = new WeakHashMap<Date, SharedResolutions>();
+
+	/**
+	 * Tree builder which finished resolution of a project together with
+	 * repositories used for the resolution.
+	 */
+	static class Resolution {
+
+		final DependencyTreeBuilder treeBuilder;
+
+		final List<ArtifactRepository> remoteRepositories;
+
+		Resolution(final DependencyTreeBuilder treeBuilder, final List<ArtifactRepository> remoteRepositories) {
+			this.treeBuilder = treeBuilder;
+			this.remoteRepositories = remoteRepositories;
+		}
+	}
+
+	/**
+	 * Unclaimed resolutions indexed by projects, in the order of publishing.
+	 */
+	private final Map<String, Resolution> resolutions = new LinkedHashMap<String, Resolution>() {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<String, Resolution> eldest) {
+			return size() > MAX_UNCLAIMED;
+		}
+	};
+
+	/**
+	 * Gets shared resolutions of the whole maven session.
+	 *
+	 * @param session
+	 *            maven session, if null then a new instance is returned.
+	 * @return the shared resolutions.
+	 */
+	public static SharedResolutions forSession(final MavenSession session) {
+		if (session == null || session.getStartTime() == null) {
+			return new SharedResolutions();
+		}
+		synchronized (SESSION_RESOLUTIONS) {
+			SharedResolutions sharedResolutions = SESSION_RESOLUTIONS.get(session.getStartTime());
+			if (sharedResolutions == null) {
+				sharedResolutions = new SharedResolutions();
+				SESSION_RESOLUTIONS.put(session.getStartTime(), sharedResolutions);
+			}
+			return sharedResolutions;
+		}
+	}
+
+	private static String key(final MavenProject project) {
+		return project.getId() + "@" + project.getFile();
+	}
+
+	/**
+	 * Publishes resolution of given project. The oldest unclaimed resolution
+	 * is dropped if there are already MAX_UNCLAIMED of them.
+	 *
+	 * @param project
+	 *            the resolved project
+	 * @param resolution
+	 *            the resolution
+	 */
+	synchronized void publish(final MavenProject project, final Resolution resolution) {
+		resolutions.remove(key(project));
+		resolutions.put(key(project), resolution);
+	}
+
+	/**
+	 * Takes resolution of given project published earlier. The resolution is
+	 * removed.
+	 *
+	 * @param project
+	 *            the project
+	 * @return the resolution or null if not published
+	 */
+	synchronized Resolution take(final MavenProject project) {
+		return resolutions.remove(key(project));
+	}
+}
@@ -0,0 +1,227 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven.treebuilder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.resolver.ResolutionNode;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.shared.dependency.tree.DependencyNode;
+
+/**
+ * Converts dependency trees built by DependencyTreeBuilder into compact trees
+ * which are enough for creating the execution list. Each node of a compact
+ * tree keeps only an artifact with coordinates, scope and type, its state,
+ * the related artifact and an index into a table of distinct repository lists
+ * (see CompactDependencyNode). Dependency filters, available versions and
+ * dependency trails of artifacts and whole graphs of ResolutionNodes
+ * referenced by excluded core artifacts are dropped.
+ *
+ * Root nodes are converted in place, one after another, so the original tree
+ * of each root can be garbage collected as soon as it is converted. The
+ * compactor itself does not reference original nodes, artifacts or repository
+ * lists: equal artifacts (the same coordinates, scope and optionality) are
+ * converted to one shared compact artifact and equal repository lists to one
+ * entry of the table.
+ *
+ * Trees can be compacted only after DependencyTreeBuilder resolved all roots.
+ * Roots share the map of resolved artifacts, so a conflict found while
+ * resolving a later root updates nodes of trees of earlier roots, and the
+ * graph of resolution nodes is needed until the end. Compaction therefore does
+ * not lower the peak of memory used during the resolution, it lowers memory
+ * held afterwards, while the execution list is created from the trees.
+ */
+public class TreeCompactor {
+
+	/**
+	 * Compact artifacts indexed by their coordinates, scope and optionality.
+	 */
+	private final Map<String, Artifact> artifacts = new HashMap<String, Artifact>();
+
+	/**
+	 * Table of distinct repository lists shared by compact nodes.
+	 */
+	private final List<List> repositoryLists = new ArrayList<List>();
+
+	/**
+	 * Indexes of repository lists in the table.
+	 */
+	private final Map<List, Integer> repositoryListIndexes = new HashMap<List, Integer>();
+
+	/**
+	 * Number of converted nodes.
+	 */
+	private int nodes = 0;
+
+	/**
+	 * Replaces trees and excluded core artifacts of given root nodes by their
+	 * compact versions.
+	 *
+	 * @param rootNodes
+	 *            root nodes returned by DependencyTreeBuilder
+	 */
+	public void compact(final List<RootNode> rootNodes) {
+		for (RootNode rootNode : rootNodes) {
+			rootNode.rootNode = compact(rootNode.rootNode);
+			List<ResolutionNode> excludedCoreArtifacts = new ArrayList<ResolutionNode>();
+			for (ResolutionNode excludedCoreArtifact : rootNode.excludedCoreArtifacts) {
+				excludedCoreArtifacts.add(compact(excludedCoreArtifact));
+			}
+			rootNode.excludedCoreArtifacts = excludedCoreArtifacts;
+			if (rootNode.remoteRepositories != null) {
+				rootNode.remoteRepositories = repositoryLists.get(indexOf(rootNode.remoteRepositories));
+			}
+		}
+	}
+
+	/**
+	 * Creates compact version of given tree. The tree is walked iteratively,
+	 * so its depth is not limited by the size of the stack.
+	 *
+	 * @param root
+	 *            root of the tree
+	 * @return root of the compact tree
+	 */
+	public DependencyNode compact(final DependencyNode root) {
+		List<DependencyNode> originals = new ArrayList<DependencyNode>();
+		List<DependencyNode> parents = new ArrayList<DependencyNode>();
+		originals.add(root);
+		parents.add(null);
+		DependencyNode compactRoot = null;
+		while (!originals.isEmpty()) {
+			DependencyNode original = originals.remove(originals.size() - 1);
+			DependencyNode parent = parents.remove(parents.size() - 1);
+			DependencyNode node = compactNode(original);
+			if (parent == null) {
+				compactRoot = node;
+			} else {
+				parent.addChild(node);
+			}
+			List children = original.getChildren();
+			for (int i = children.size() - 1; i >= 0; i--) {
+				originals.add((DependencyNode) children.get(i));
+				parents.add(node);
+			}
+		}
+		return compactRoot;
+	}
+
+	/**
+	 * Creates detached resolution node with compact artifact of given node. It
+	 * does not reference parents and children of the original node.
+	 *
+	 * @param node
+	 *            the resolution node
+	 * @return the detached node
+	 */
+	public ResolutionNode compact(final ResolutionNode node) {
+		return new ResolutionNode(compact(node.getArtifact()), repositoryLists.get(indexOf(node
+				.getRemoteRepositories())));
+	}
+
+	/**
+	 * Gets compact version of given artifact. The same compact artifact is
+	 * returned for all equal artifacts.
+	 *
+	 * @param artifact
+	 *            the original artifact
+	 * @return the compact artifact, null if the original artifact is null
+	 */
+	public Artifact compact(final Artifact artifact) {
+		if (artifact == null) {
+			return null;
+		}
+		VersionRange versionRange = artifact.getVersionRange();
+		if (artifact.getVersion() != null) {
+			versionRange = VersionRange.createFromVersion(artifact.getVersion());
+		}
+		String key = artifact.getDependencyConflictId() + ":" + versionRange + ":" + artifact.getScope() + ":"
+				+ artifact.isOptional();
+		Artifact compactArtifact = artifacts.get(key);
+		if (compactArtifact == null) {
+			compactArtifact = new DefaultArtifact(artifact.getGroupId(), artifact.getArtifactId(), versionRange,
+					artifact.getScope(), artifact.getType(), artifact.getClassifier(), artifact.getArtifactHandler(),
+					artifact.isOptional());
+			if (artifact.getFile() != null) {
+				compactArtifact.setFile(artifact.getFile());
+				compactArtifact.setResolved(artifact.isResolved());
+			}
+			artifacts.put(key, compactArtifact);
+		}
+		return compactArtifact;
+	}
+
+	/**
+	 * Creates compact node for given node, without children.
+	 *
+	 * @param original
+	 *            the original node
+	 * @return the compact node
+	 */
+	private DependencyNode compactNode(final DependencyNode original) {
+		List remoteRepositories = null;
+		if (original instanceof MyDependencyNode) {
+			remoteRepositories = ((MyDependencyNode) original).getRemoteRepositories();
+		}
+		DependencyNode node = new CompactDependencyNode(compact(original.getArtifact()), original.getState(),
+				compact(original.getRelatedArtifact()), repositoryLists, indexOf(remoteRepositories));
+		node.setOriginalScope(original.getOriginalScope());
+		node.setFailedUpdateScope(original.getFailedUpdateScope());
+		node.setPremanagedVersion(original.getPremanagedVersion());
+		node.setPremanagedScope(original.getPremanagedScope());
+		nodes++;
+		return node;
+	}
+
+	/**
+	 * Gets index of given repository list in the table, the list is added to
+	 * the table if no equal list is present.
+	 *
+	 * @param remoteRepositories
+	 *            the repository list
+	 * @return index in the table
+	 */
+	private int indexOf(final List remoteRepositories) {
+		Integer index = repositoryListIndexes.get(remoteRepositories);
+		if (index == null) {
+			index = Integer.valueOf(repositoryLists.size());
+			repositoryLists.add(remoteRepositories);
+			repositoryListIndexes.put(remoteRepositories, index);
+		}
+		return index.intValue();
+	}
+
+	/**
+	 * Returns summary of compacted trees.
+	 *
+	 * @return the summary.
+	 */
+	@Override
+	public String toString() {
+		return String.format("Compact dependency trees: %d nodes, %d artifacts, %d distinct repository lists", nodes,
+				artifacts.size(), repositoryLists.size());
+	}
+}
@@ -0,0 +1,254 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.repository.DefaultArtifactRepository;
+import org.apache.maven.artifact.repository.layout.DefaultRepositoryLayout;
+import org.apache.maven.shared.dependency.tree.DependencyNode;
+
+/**
+ * Resolves wiring of small execution lists of bundles with hand-made
+ * manifests and checks the order computed by BundleWiringResolver, the
+ * written wires and the reported unsatisfied imports.
+ *
+ */
+public class BundleWiringResolverTest extends TestCase {
+
+	private static final String GROUP_ID = "org.universAAL.test";
+
+	private File workDir;
+
+	private ArtifactRepository localRepository;
+
+	private final SyntheticArtifactFactory artifactFactory = new SyntheticArtifactFactory();
+
+	private BundleWiringResolver resolver;
+
+	protected void setUp() throws Exception {
+		workDir = new File("target/bundle-wiring");
+		SyntheticRepository.delete(workDir);
+		workDir.mkdirs();
+		localRepository = new DefaultArtifactRepository("local", "file://" + workDir.getAbsolutePath(),
+				new DefaultRepositoryLayout());
+		resolver = new BundleWiringResolver(new QuietLog(), artifactFactory, new SyntheticArtifactResolver(),
+				localRepository);
+		resolver.setWiringFile(new File(workDir, "wiring.txt"));
+	}
+
+	protected void tearDown() throws Exception {
+		SyntheticRepository.delete(workDir);
+	}
+
+	public void testExportersBeforeImporters() throws Exception {
+		String importer = bundle("importer", "1.0.0", null, "org.test.api");
+		String other = bundle("other", "1.0.0", null, null);
+		String exporter = bundle("exporter", "1.0.0", "org.test.api;version=1.0.0", null);
+		assertEquals(Arrays.asList(other, exporter, importer), resolve(importer, other, exporter));
+		assertEquals(Collections.singletonList(wire(importer, "org.test.api", exporter)), wires());
+		assertTrue(resolver.getUnsatisfied().isEmpty());
+	}
+
+	/**
+	 * Bundles which import packages from each other keep their original order,
+	 * the bundle importing from the cycle waits until the cycle is placed.
+	 */
+	public void testCycle() throws Exception {
+		String user = bundle("user", "1.0.0", null, "org.test.b");
+		String a = bundle("a", "1.0.0", "org.test.a", "org.test.b");
+		String b = bundle("b", "1.0.0", "org.test.b", "org.test.a");
+		String last = bundle("last", "1.0.0", null, null);
+		assertEquals(Arrays.asList(last, a, b, user), resolve(user, a, b, last));
+		assertTrue(resolver.getUnsatisfied().isEmpty());
+	}
+
+	/**
+	 * Bundle a is moved after c because of its import, b is a maven
+	 * dependent of a so it has to follow a.
+	 */
+	public void testMavenDependenciesAreKept() throws Exception {
+		String a = bundle("a", "1.0.0", null, "org.test.c");
+		String b = bundle("b", "1.0.0", null, null);
+		String c = bundle("c", "1.0.0", "org.test.c", null);
+		assertEquals(Arrays.asList(b, c, a), resolve(a, b, c));
+		DependencyNode root = new DependencyNode(artifact("root", "pom"));
+		DependencyNode bNode = new DependencyNode(artifact("b", "jar"));
+		bNode.addChild(new DependencyNode(artifact("a", "jar")));
+		root.addChild(bNode);
+		root.addChild(new DependencyNode(artifact("c", "jar")));
+		IndexingDependencyNodeVisitor indexingVisitor = new IndexingDependencyNodeVisitor(new QuietLog());
+		indexingVisitor.index(root);
+		assertEquals(Arrays.asList(c, a, b), resolver.resolve(Arrays.asList(a, b, c), null,
+				new ArrayList<Artifact>(), new ArrayList(), indexingVisitor.getGraph()));
+	}
+
+	public void testTwoVersionsOfExporter() throws Exception {
+		String oldImporter = bundle("old-importer", "1.0.0", null, "org.test.api;version=\"[1.0,2.0)\"");
+		String newImporter = bundle("new-importer", "1.0.0", null, "org.test.api");
+		String newExporter = bundle("exporter", "2.0.0", "org.test.api;version=2.0.0", null);
+		String oldExporter = bundle("exporter", "1.0.0", "org.test.api;version=1.0.0", null);
+		assertEquals(Arrays.asList(newExporter, newImporter, oldExporter, oldImporter),
+				resolve(oldImporter, newImporter, newExporter, oldExporter));
+		assertEquals(Arrays.asList(wire(oldImporter, "org.test.api", oldExporter),
+				wire(newImporter, "org.test.api", newExporter)), wires());
+	}
+
+	public void testBundlePreferredToWrappedJar() throws Exception {
+		String importer = bundle("importer", "1.0.0", null, "org.test.api");
+		String wrapped = wrappedJar("lib", "org/test/api/Api.class");
+		String exporter = bundle("exporter", "1.0.0", "org.test.api;version=1.0.0", null);
+		assertEquals(Arrays.asList(wrapped, exporter, importer), resolve(importer, wrapped, exporter));
+		assertEquals(Collections.singletonList(wire(importer, "org.test.api", exporter)), wires());
+	}
+
+	public void testWrappedJarExportsItsPackages() throws Exception {
+		String importer = bundle("importer", "1.0.0", null, "org.test.lib");
+		String wrapped = wrappedJar("lib", "org/test/lib/Lib.class");
+		assertEquals(Arrays.asList(wrapped, importer), resolve(importer, wrapped));
+		assertEquals(Collections.singletonList(wire(importer, "org.test.lib", wrapped)), wires());
+	}
+
+	public void testOptionalImportsAndSystemPackages() throws Exception {
+		resolver.addSystemPackages("org.test.boot, org.test.ext.*");
+		String importer = bundle("importer", "1.0.0", null, "javax.xml.parsers,org.osgi.framework;version=1.5,"
+				+ "org.test.boot,org.test.ext.util,org.test.extra;resolution:=optional,org.test.missing");
+		assertEquals(Collections.singletonList(importer), resolve(importer));
+		assertEquals(Collections.singletonList(location(importer) + " requires org.test.missing 0.0.0"),
+				resolver.getUnsatisfied());
+		assertTrue(wires().isEmpty());
+	}
+
+	public void testOptionalImportIsWiredIfPossible() throws Exception {
+		String importer = bundle("importer", "1.0.0", null, "org.test.extra;resolution:=optional");
+		String exporter = bundle("exporter", "1.0.0", "org.test.extra", null);
+		assertEquals(Arrays.asList(exporter, importer), resolve(importer, exporter));
+		assertEquals(Collections.singletonList(wire(importer, "org.test.extra", exporter)), wires());
+	}
+
+	public void testFailOnUnsatisfied() throws Exception {
+		resolver.setFailOnUnsatisfied(true);
+		String importer = bundle("importer", "1.0.0", null, "org.test.missing");
+		try {
+			resolve(importer);
+			fail("unsatisfied import does not fail the resolution");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage().indexOf("org.test.missing") != -1);
+		}
+	}
+
+	private List<String> resolve(final String... mvnUrls) throws Exception {
+		return resolver.resolve(Arrays.asList(mvnUrls), null, new ArrayList<Artifact>(), new ArrayList(), null);
+	}
+
+	private List<String> wires() throws Exception {
+		List<String> wires = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(new File(workDir,
+				"wiring.txt")), "UTF-8"));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				wires.add(line);
+			}
+		} finally {
+			reader.close();
+		}
+		return wires;
+	}
+
+	private static String wire(final String importer, final String pkg, final String exporter) {
+		return location(importer) + "\t" + pkg + "\t" + location(exporter);
+	}
+
+	private static String location(final String mvnUrl) {
+		return mvnUrl.startsWith("wrap:") ? mvnUrl.substring("wrap:".length()) : mvnUrl;
+	}
+
+	/**
+	 * Writes bundle with given headers to the local repository.
+	 *
+	 * @return mvn url of the bundle
+	 */
+	private String bundle(final String artifactId, final String version, final String exports,
+			final String imports) throws Exception {
+		Manifest manifest = new Manifest();
+		Attributes attributes = manifest.getMainAttributes();
+		attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		attributes.putValue("Bundle-ManifestVersion", "2");
+		attributes.putValue("Bundle-SymbolicName", GROUP_ID + "." + artifactId);
+		attributes.putValue("Bundle-Version", version);
+		if (exports != null) {
+			attributes.putValue("Export-Package", exports);
+		}
+		if (imports != null) {
+			attributes.putValue("Import-Package", imports);
+		}
+		new JarOutputStream(new FileOutputStream(file(artifactId, version)), manifest).close();
+		return "mvn:" + GROUP_ID + "/" + artifactId + "/" + version;
+	}
+
+	/**
+	 * Writes plain jar with given entries to the local repository.
+	 *
+	 * @return mvn url of the jar
+	 */
+	private String wrappedJar(final String artifactId, final String... entries) throws Exception {
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		JarOutputStream jar = new JarOutputStream(new FileOutputStream(file(artifactId, "1.0.0")), manifest);
+		try {
+			for (String entry : entries) {
+				jar.putNextEntry(new ZipEntry(entry));
+				jar.closeEntry();
+			}
+		} finally {
+			jar.close();
+		}
+		return "wrap:mvn:" + GROUP_ID + "/" + artifactId + "/1.0.0";
+	}
+
+	private Artifact artifact(final String artifactId, final String type) {
+		return artifactFactory.createArtifact(GROUP_ID, artifactId, "1.0.0", Artifact.SCOPE_COMPILE, type);
+	}
+
+	private File file(final String artifactId, final String version) {
+		Artifact artifact = artifactFactory.createArtifact(GROUP_ID, artifactId, version, "", "jar");
+		File file = new File(localRepository.getBasedir(), localRepository.pathOf(artifact));
+		file.getParentFile().mkdirs();
+		return file;
+	}
+}
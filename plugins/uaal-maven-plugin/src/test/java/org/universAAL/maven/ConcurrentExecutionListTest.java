@@ -0,0 +1,201 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Profile;
+import org.apache.maven.project.MavenProject;
+import org.universAAL.maven.treebuilder.ExecutionListCreator;
+import org.universAAL.maven.treebuilder.MetadataCache;
+import org.universAAL.maven.treebuilder.PomModelMemo;
+import org.universAAL.maven.treebuilder.RuntimeProfileCache;
+import org.universAAL.maven.treebuilder.SharedResolutions;
+
+/**
+ * Creates execution lists of many projects at once, as the composite and
+ * itests goals do in a parallel reactor build, and compares them with
+ * execution lists created sequentially with private caches. The concurrent
+ * builds share everything the goals share in one maven session: the POM model
+ * memo, the metadata cache persisted in the local repository, the shared
+ * resolutions, the manifest cache of the local repository and files of the
+ * runtime profile cache. The concurrent builds are run twice, so that the
+ * second run reads the files written by the first one.
+ *
+ */
+public class ConcurrentExecutionListTest extends TestCase {
+
+	private static final int ARTIFACTS = 200;
+
+	private static final int THREADS = 8;
+
+	private File workDir;
+
+	private ArtifactRepository localRepository;
+
+	private SyntheticArtifactFactory artifactFactory;
+
+	private SyntheticProjectBuilder projectBuilder;
+
+	private SyntheticMetadataSource metadataSource;
+
+	private SyntheticArtifactResolver artifactResolver;
+
+	private List<MavenProject> projects;
+
+	private final QuietLog log = new QuietLog();
+
+	protected void setUp() throws Exception {
+		workDir = new File("target/concurrent-execution-lists");
+		SyntheticRepository.delete(workDir);
+		localRepository = SyntheticRepository.generate(new File(workDir, "repository"), ARTIFACTS, 4, 42);
+		artifactFactory = new SyntheticArtifactFactory();
+		projectBuilder = new SyntheticProjectBuilder(artifactFactory);
+		metadataSource = new SyntheticMetadataSource(artifactFactory, projectBuilder);
+		artifactResolver = new SyntheticArtifactResolver();
+		MavenProject rootProject = buildProject(SyntheticRepository.ROOT_GROUP_ID,
+				SyntheticRepository.ROOT_ARTIFACT_ID);
+		List<Dependency> dependencies = new ArrayList<Dependency>(rootProject.getModel().getDependencies());
+		for (Object profileObj : rootProject.getModel().getProfiles()) {
+			dependencies.addAll(((Profile) profileObj).getDependencies());
+		}
+		projects = new ArrayList<MavenProject>();
+		for (Dependency dependency : dependencies) {
+			projects.add(buildProject(dependency.getGroupId(), dependency.getArtifactId()));
+		}
+	}
+
+	protected void tearDown() throws Exception {
+		SyntheticRepository.delete(workDir);
+	}
+
+	private MavenProject buildProject(final String groupId, final String artifactId) throws Exception {
+		Artifact artifact = artifactFactory.createProjectArtifact(groupId, artifactId, SyntheticRepository.VERSION);
+		return projectBuilder.buildFromRepository(artifact, new ArrayList(), localRepository);
+	}
+
+	private ExecutionListCreator createExecutionListCreator(final int threads, final PomModelMemo memo,
+			final MetadataCache cache) {
+		ExecutionListCreator execListCreator = new ExecutionListCreator(log, metadataSource, artifactFactory,
+				projectBuilder, localRepository, new ArrayList(), artifactResolver, "true", null);
+		execListCreator.setResolutionThreads(threads);
+		execListCreator.setPomModelMemo(memo);
+		execListCreator.setMetadataCache(cache);
+		return execListCreator;
+	}
+
+	/**
+	 * Creates execution lists of the composite and itests goals of each
+	 * project one by one, with private caches.
+	 */
+	private List<List> createSequentially() throws Exception {
+		List<List> executionLists = new ArrayList<List>();
+		for (MavenProject project : projects) {
+			List executionList = new ArrayList();
+			executionList.addAll(createExecutionListCreator(1, new PomModelMemo(), new MetadataCache())
+					.createArtifactExecutionList(project, new HashSet<String>(), false, false));
+			executionList.addAll(createExecutionListCreator(1, new PomModelMemo(), new MetadataCache())
+					.createArtifactExecutionList(project, new HashSet<String>(), true, false));
+			executionLists.add(executionList);
+		}
+		return executionLists;
+	}
+
+	/**
+	 * Creates execution lists of the composite and itests goals of all
+	 * projects concurrently, with caches shared like in one maven session.
+	 */
+	private List<List> createConcurrently(final List<RuntimeProfileCache> treeCaches) throws Exception {
+		final PomModelMemo memo = new PomModelMemo();
+		final MetadataCache cache = new MetadataCache();
+		cache.persistIn(new File(localRepository.getBasedir(), MetadataCache.CACHE_FILE_NAME), 3600000L);
+		final SharedResolutions sharedResolutions = SharedResolutions.forSession(null);
+		ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<List>> futures = new ArrayList<Future<List>>();
+			for (final MavenProject project : projects) {
+				futures.add(pool.submit(new Callable<List>() {
+
+					public List call() throws Exception {
+						List executionList = new ArrayList();
+						for (boolean includeTestRuntimes : new boolean[] { false, true }) {
+							ExecutionListCreator execListCreator = createExecutionListCreator(2, memo, cache);
+							RuntimeProfileCache treeCache = new RuntimeProfileCache(localRepository, null, log);
+							treeCaches.add(treeCache);
+							execListCreator.setRuntimeProfileCache(treeCache);
+							execListCreator.setSharedResolutions(sharedResolutions);
+							executionList.addAll(execListCreator.createArtifactExecutionList(project,
+									new HashSet<String>(), includeTestRuntimes, false));
+						}
+						return executionList;
+					}
+				}));
+			}
+			List<List> executionLists = new ArrayList<List>();
+			for (Future<List> future : futures) {
+				executionLists.add(future.get());
+			}
+			return executionLists;
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static long hits(final List<RuntimeProfileCache> treeCaches) {
+		long hits = 0;
+		for (RuntimeProfileCache treeCache : treeCaches) {
+			hits += treeCache.getHits();
+		}
+		return hits;
+	}
+
+	public void testConcurrentExecutionLists() throws Exception {
+		List<List> sequential = createSequentially();
+
+		List<RuntimeProfileCache> coldTreeCaches = Collections.synchronizedList(new ArrayList<RuntimeProfileCache>());
+		List<List> cold = createConcurrently(coldTreeCaches);
+		List<RuntimeProfileCache> warmTreeCaches = Collections.synchronizedList(new ArrayList<RuntimeProfileCache>());
+		List<List> warm = createConcurrently(warmTreeCaches);
+		for (int i = 0; i < projects.size(); i++) {
+			assertEquals(projects.get(i).getId(), sequential.get(i), cold.get(i));
+			assertEquals(projects.get(i).getId(), sequential.get(i), warm.get(i));
+		}
+
+		File repositoryDir = new File(localRepository.getBasedir());
+		assertTrue(new File(repositoryDir, MetadataCache.CACHE_FILE_NAME).isFile());
+		assertTrue(new File(repositoryDir, BundleManifestCache.CACHE_FILE_NAME).isFile());
+		assertTrue(new File(workDir, RuntimeProfileCache.CACHE_DIR_NAME).isDirectory());
+		assertTrue(hits(warmTreeCaches) > 0);
+	}
+}
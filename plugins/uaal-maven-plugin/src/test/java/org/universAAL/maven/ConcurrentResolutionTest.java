@@ -0,0 +1,203 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.resolver.ResolutionListener;
+import org.apache.maven.artifact.resolver.ResolutionListenerForDepMgmt;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.project.MavenProject;
+import org.universAAL.maven.treebuilder.DependencyTreeBuilder;
+import org.universAAL.maven.treebuilder.ExecutionListCreator;
+import org.universAAL.maven.treebuilder.MavenProjectDescriptor;
+
+/**
+ * Resolves the same synthetic project with one resolution thread and with
+ * POMs fetched in the background by several threads, and checks that the
+ * concurrent mode is invisible: the tree builder notifies its listeners about
+ * the same sequence of resolution events and the same execution lists are
+ * created.
+ *
+ */
+public class ConcurrentResolutionTest extends TestCase {
+
+	private static final int ARTIFACTS = 200;
+
+	private static final int THREADS = 4;
+
+	private File workDir;
+
+	private ArtifactRepository localRepository;
+
+	private SyntheticArtifactFactory artifactFactory;
+
+	private SyntheticProjectBuilder projectBuilder;
+
+	private SyntheticMetadataSource metadataSource;
+
+	private MavenProject rootProject;
+
+	private final QuietLog log = new QuietLog();
+
+	protected void setUp() throws Exception {
+		workDir = new File("target/concurrent-resolution");
+		SyntheticRepository.delete(workDir);
+		localRepository = SyntheticRepository.generate(new File(workDir, "repository"), ARTIFACTS, 4, 7);
+		artifactFactory = new SyntheticArtifactFactory();
+		projectBuilder = new SyntheticProjectBuilder(artifactFactory);
+		metadataSource = new SyntheticMetadataSource(artifactFactory, projectBuilder);
+		rootProject = buildProject(SyntheticRepository.ROOT_GROUP_ID, SyntheticRepository.ROOT_ARTIFACT_ID);
+	}
+
+	protected void tearDown() throws Exception {
+		SyntheticRepository.delete(workDir);
+	}
+
+	private MavenProject buildProject(final String groupId, final String artifactId) throws Exception {
+		Artifact artifact = artifactFactory.createProjectArtifact(groupId, artifactId, SyntheticRepository.VERSION);
+		return projectBuilder.buildFromRepository(artifact, new ArrayList(), localRepository);
+	}
+
+	/**
+	 * Builds dependency tree of given project and returns resolution events
+	 * received by the additional listener of the tree builder.
+	 */
+	private List<String> resolutionEvents(final MavenProject project, final boolean includeTestRuntimes,
+			final int threads) throws Exception {
+		DependencyTreeBuilder treeBuilder = new DependencyTreeBuilder(artifactFactory, projectBuilder,
+				localRepository, includeTestRuntimes, false);
+		treeBuilder.setResolutionThreads(threads);
+		RecordingListener listener = new RecordingListener();
+		treeBuilder.setEventListener(listener);
+		treeBuilder.buildDependencyTree(localRepository, artifactFactory, metadataSource,
+				new MavenProjectDescriptor(project, new ArrayList(), true));
+		return listener.events;
+	}
+
+	private List executionList(final MavenProject project, final boolean includeTestRuntimes, final int threads)
+			throws Exception {
+		ExecutionListCreator execListCreator = new ExecutionListCreator(log, metadataSource, artifactFactory,
+				projectBuilder, localRepository, new ArrayList(), new SyntheticArtifactResolver(), "true", null);
+		execListCreator.setResolutionThreads(threads);
+		return execListCreator.createArtifactExecutionList(project, new HashSet<String>(), includeTestRuntimes,
+				false);
+	}
+
+	public void testResolutionEvents() throws Exception {
+		for (boolean includeTestRuntimes : new boolean[] { false, true }) {
+			List<String> sequential = resolutionEvents(rootProject, includeTestRuntimes, 1);
+			assertFalse(sequential.isEmpty());
+			assertEquals(sequential, resolutionEvents(rootProject, includeTestRuntimes, THREADS));
+		}
+	}
+
+	public void testExecutionLists() throws Exception {
+		List<MavenProject> projects = new ArrayList<MavenProject>();
+		projects.add(rootProject);
+		for (Object dependencyObj : rootProject.getModel().getDependencies()) {
+			Dependency dependency = (Dependency) dependencyObj;
+			projects.add(buildProject(dependency.getGroupId(), dependency.getArtifactId()));
+		}
+		for (MavenProject project : projects) {
+			for (boolean includeTestRuntimes : new boolean[] { false, true }) {
+				List sequential = executionList(project, includeTestRuntimes, 1);
+				assertEquals(project.getId(), sequential, executionList(project, includeTestRuntimes, THREADS));
+			}
+		}
+	}
+
+	/**
+	 * Listener which records received events as strings.
+	 */
+	private static final class RecordingListener implements ResolutionListener, ResolutionListenerForDepMgmt {
+
+		private final List<String> events = new ArrayList<String>();
+
+		private void record(final String event, final Object... args) {
+			StringBuilder line = new StringBuilder(event);
+			for (Object arg : args) {
+				line.append(' ').append(arg);
+			}
+			events.add(line.toString());
+		}
+
+		public void testArtifact(final Artifact node) {
+			record("testArtifact", node);
+		}
+
+		public void startProcessChildren(final Artifact artifact) {
+			record("startProcessChildren", artifact);
+		}
+
+		public void endProcessChildren(final Artifact artifact) {
+			record("endProcessChildren", artifact);
+		}
+
+		public void includeArtifact(final Artifact artifact) {
+			record("includeArtifact", artifact);
+		}
+
+		public void omitForNearer(final Artifact omitted, final Artifact kept) {
+			record("omitForNearer", omitted, kept);
+		}
+
+		public void updateScope(final Artifact artifact, final String scope) {
+			record("updateScope", artifact, scope);
+		}
+
+		public void manageArtifact(final Artifact artifact, final Artifact replacement) {
+			record("manageArtifact", artifact, replacement);
+		}
+
+		public void manageArtifactVersion(final Artifact artifact, final Artifact replacement) {
+			record("manageArtifactVersion", artifact, replacement);
+		}
+
+		public void manageArtifactScope(final Artifact artifact, final Artifact replacement) {
+			record("manageArtifactScope", artifact, replacement);
+		}
+
+		public void omitForCycle(final Artifact artifact) {
+			record("omitForCycle", artifact);
+		}
+
+		public void updateScopeCurrentPom(final Artifact artifact, final String ignoredScope) {
+			record("updateScopeCurrentPom", artifact, ignoredScope);
+		}
+
+		public void selectVersionFromRange(final Artifact artifact) {
+			record("selectVersionFromRange", artifact);
+		}
+
+		public void restrictRange(final Artifact artifact, final Artifact replacement, final VersionRange newRange) {
+			record("restrictRange", artifact, replacement, newRange);
+		}
+	}
+}
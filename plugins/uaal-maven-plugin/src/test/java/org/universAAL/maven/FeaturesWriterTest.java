@@ -0,0 +1,172 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.shared.dependency.tree.DependencyNode;
+
+/**
+ * Writes features files of small execution lists and checks how
+ * FeaturesWriter partitions bundles into features, by groupIds only and with
+ * bundles claimed through hand-made dependency graphs.
+ *
+ */
+public class FeaturesWriterTest extends TestCase {
+
+	private static final String RULES = "mw=org.test.mw;ont=org.test.ont";
+
+	private static final String HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<features name=\"app\" xmlns=\"" + FeaturesWriter.NAMESPACE + "\">\n";
+
+	private File featuresFile;
+
+	protected void setUp() throws Exception {
+		featuresFile = new File("target/features-writer/features.xml");
+		featuresFile.delete();
+	}
+
+	protected void tearDown() throws Exception {
+		featuresFile.delete();
+	}
+
+	public void testPartitionByGroupIds() throws Exception {
+		List<String> mvnUrls = Arrays.asList("mvn:org.test.mw/mw.bus/1.0.0@3", "wrap:mvn:org.test.lib/lib/1.0.0",
+				"mvn:org.test.ont/ont.phw/1.0.0@4@nostart", "mvn:org.test.app/app/1.0.0");
+		assertEquals(HEADER
+				+ feature("app-mw", null, bundle("mvn:org.test.mw/mw.bus/1.0.0", " start-level=\"3\""))
+				+ feature("app-ont", null,
+						bundle("mvn:org.test.ont/ont.phw/1.0.0", " start-level=\"4\" start=\"false\""))
+				+ feature("app", new String[] { "app-mw", "app-ont" }, bundle("wrap:mvn:org.test.lib/lib/1.0.0", "")
+						+ bundle("mvn:org.test.app/app/1.0.0", ""))
+				+ "</features>\n", write(mvnUrls, null));
+	}
+
+	/**
+	 * The library is reached from the middleware bundle through a pom which
+	 * is not in the execution list, so it is installed with the middleware.
+	 * The bundle of the main feature is not claimed.
+	 */
+	public void testClaimDependencies() throws Exception {
+		DependencyNode root = node("org.test.app", "app", "jar");
+		DependencyNode bus = child(root, node("org.test.mw", "mw.bus", "jar"));
+		DependencyNode libs = child(bus, node("org.test.mw", "mw.libs", "pom"));
+		child(libs, node("org.test.lib", "lib", "jar"));
+		child(root, node("org.test.other", "other", "jar"));
+		List<String> mvnUrls = Arrays.asList("wrap:mvn:org.test.lib/lib/1.0.0", "mvn:org.test.mw/mw.bus/1.0.0",
+				"mvn:org.test.other/other/1.0.0", "mvn:org.test.app/app/1.0.0");
+		assertEquals(HEADER
+				+ feature("app-mw", null, bundle("wrap:mvn:org.test.lib/lib/1.0.0", "")
+						+ bundle("mvn:org.test.mw/mw.bus/1.0.0", ""))
+				+ feature("app", new String[] { "app-mw" }, bundle("mvn:org.test.other/other/1.0.0", "")
+						+ bundle("mvn:org.test.app/app/1.0.0", ""))
+				+ "</features>\n", write(mvnUrls, root));
+	}
+
+	/**
+	 * Middleware and ontology bundles depend on each other and share a
+	 * library. The library is claimed by the first rule, the middleware
+	 * feature requires the ontology feature and the requirement in the
+	 * opposite direction is dropped, so features do not depend on each other.
+	 */
+	public void testPrerequisiteFeaturesReachingEachOther() throws Exception {
+		DependencyNode root = node("org.test.app", "app", "jar");
+		DependencyNode bus = child(root, node("org.test.mw", "mw.bus", "jar"));
+		DependencyNode phw = child(bus, node("org.test.ont", "ont.phw", "jar"));
+		child(phw, node("org.test.lib", "lib", "jar"));
+		child(phw, omitted("org.test.mw", "mw.bus"));
+		child(bus, omitted("org.test.lib", "lib"));
+		List<String> mvnUrls = Arrays.asList("mvn:org.test.lib/lib/1.0.0", "mvn:org.test.ont/ont.phw/1.0.0",
+				"mvn:org.test.mw/mw.bus/1.0.0", "mvn:org.test.app/app/1.0.0");
+		assertEquals(HEADER
+				+ feature("app-mw", new String[] { "app-ont" }, bundle("mvn:org.test.lib/lib/1.0.0", "")
+						+ bundle("mvn:org.test.mw/mw.bus/1.0.0", ""))
+				+ feature("app-ont", null, bundle("mvn:org.test.ont/ont.phw/1.0.0", ""))
+				+ feature("app", new String[] { "app-mw", "app-ont" }, bundle("mvn:org.test.app/app/1.0.0", ""))
+				+ "</features>\n", write(mvnUrls, root));
+	}
+
+	private String write(final List<String> mvnUrls, final DependencyNode root) throws Exception {
+		DependencyGraph graph = null;
+		if (root != null) {
+			IndexingDependencyNodeVisitor indexingVisitor = new IndexingDependencyNodeVisitor(new QuietLog());
+			indexingVisitor.index(root);
+			graph = indexingVisitor.getGraph();
+		}
+		new FeaturesWriter(featuresFile, RULES).write(mvnUrls, graph, "app", "1.0.0", null);
+		StringBuilder content = new StringBuilder();
+		Reader reader = new InputStreamReader(new FileInputStream(featuresFile), "UTF-8");
+		try {
+			char[] buffer = new char[4096];
+			int read;
+			while ((read = reader.read(buffer)) != -1) {
+				content.append(buffer, 0, read);
+			}
+		} finally {
+			reader.close();
+		}
+		return content.toString();
+	}
+
+	private static String feature(final String name, final String[] prerequisites, final String bundles) {
+		StringBuilder feature = new StringBuilder("\t<feature name=\"" + name + "\" version=\"1.0.0\">\n");
+		if (prerequisites != null) {
+			for (String prerequisite : prerequisites) {
+				feature.append("\t\t<feature version=\"1.0.0\">" + prerequisite + "</feature>\n");
+			}
+		}
+		return feature.append(bundles).append("\t</feature>\n").toString();
+	}
+
+	private static String bundle(final String location, final String attributes) {
+		return "\t\t<bundle" + attributes + ">" + location + "</bundle>\n";
+	}
+
+	private static DependencyNode child(final DependencyNode parent, final DependencyNode child) {
+		parent.addChild(child);
+		return child;
+	}
+
+	private static DependencyNode node(final String groupId, final String artifactId, final String type) {
+		return new DependencyNode(artifact(groupId, artifactId, type));
+	}
+
+	private static DependencyNode omitted(final String groupId, final String artifactId) {
+		return new DependencyNode(artifact(groupId, artifactId, "jar"), DependencyNode.OMITTED_FOR_DUPLICATE,
+				artifact(groupId, artifactId, "jar"));
+	}
+
+	private static Artifact artifact(final String groupId, final String artifactId, final String type) {
+		return new DefaultArtifact(groupId, artifactId, VersionRange.createFromVersion("1.0.0"),
+				Artifact.SCOPE_COMPILE, type, null, new DefaultArtifactHandler(type));
+	}
+}
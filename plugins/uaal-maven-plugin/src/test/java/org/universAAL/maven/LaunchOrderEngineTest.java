@@ -0,0 +1,313 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.repository.DefaultArtifactRepository;
+import org.apache.maven.artifact.repository.layout.DefaultRepositoryLayout;
+import org.apache.maven.artifact.resolver.ResolutionNode;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.shared.dependency.tree.DependencyNode;
+import org.universAAL.maven.treebuilder.MyDependencyNode;
+
+/**
+ * Compares execution lists emitted by LaunchOrderEngine with the ones emitted
+ * by LaunchOrderDependencyNodeVisitor accepted by the tree. Trees are built by
+ * hand and their artifacts are resolved from a local repository in which
+ * plain jars (which have to be wrapped) are mixed with bundles.
+ *
+ */
+public class LaunchOrderEngineTest extends TestCase {
+
+	private static final String GROUP_ID = "org.universAAL.test";
+
+	private static final String VERSION = "1.0.0";
+
+	private File workDir;
+
+	private ArtifactRepository localRepository;
+
+	private final SyntheticArtifactResolver artifactResolver = new SyntheticArtifactResolver();
+
+	private final QuietLog log = new QuietLog();
+
+	private List<ResolutionNode> excludedCoreArtifacts;
+
+	private boolean throwExceptionOnConflict;
+
+	protected void setUp() throws Exception {
+		workDir = new File("target/launch-order-engine");
+		SyntheticRepository.delete(workDir);
+		workDir.mkdirs();
+		localRepository = new DefaultArtifactRepository("local", "file://" + workDir.getAbsolutePath(),
+				new DefaultRepositoryLayout());
+		excludedCoreArtifacts = new ArrayList<ResolutionNode>();
+		throwExceptionOnConflict = false;
+	}
+
+	protected void tearDown() throws Exception {
+		SyntheticRepository.delete(workDir);
+	}
+
+	public void testVersionConflict() throws Exception {
+		DependencyNode root = node("root");
+		DependencyNode a = child(root, node("a"));
+		child(a, node("c"));
+		DependencyNode b = child(root, node("b"));
+		child(b, omitted("c", "0.9.0", DependencyNode.OMITTED_FOR_CONFLICT));
+		assertSameOrder(root, "c", "a", "b", "root");
+	}
+
+	public void testVersionConflictReportedByBoth() throws Exception {
+		DependencyNode root = node("root");
+		DependencyNode a = child(root, node("a"));
+		child(a, node("c"));
+		DependencyNode b = child(root, node("b"));
+		child(b, omitted("c", "0.9.0", DependencyNode.OMITTED_FOR_CONFLICT));
+		throwExceptionOnConflict = true;
+		String visitorMessage = null;
+		try {
+			visitor(root);
+			fail("the visitor does not report the conflict");
+		} catch (IllegalStateException e) {
+			visitorMessage = e.getMessage();
+		}
+		try {
+			engine(root);
+			fail("the engine does not report the conflict");
+		} catch (IllegalStateException e) {
+			assertEquals(visitorMessage, e.getMessage());
+		}
+	}
+
+	public void testDuplicates() throws Exception {
+		DependencyNode root = node("root");
+		DependencyNode a = child(root, node("a"));
+		DependencyNode c = child(a, node("c"));
+		child(c, node("d"));
+		DependencyNode b = child(root, node("b"));
+		child(b, omitted("c", VERSION, DependencyNode.OMITTED_FOR_DUPLICATE));
+		child(b, omitted("a", VERSION, DependencyNode.OMITTED_FOR_DUPLICATE));
+		DependencyNode e = child(b, node("e"));
+		child(e, omitted("d", VERSION, DependencyNode.OMITTED_FOR_DUPLICATE));
+		assertSameOrder(root, "d", "c", "a", "e", "b", "root");
+	}
+
+	public void testOutOfScopeDependencies() throws Exception {
+		DependencyNode root = node("root");
+		DependencyNode a = child(root, node("a"));
+		DependencyNode test = child(a, node("test"));
+		test.getArtifact().setScope(Artifact.SCOPE_TEST);
+		child(test, node("c"));
+		child(root, node("b"));
+		assertSameOrder(root, "a", "b", "root");
+	}
+
+	public void testWrappedJars() throws Exception {
+		DependencyNode root = node("root");
+		DependencyNode a = child(root, node("a"));
+		child(a, plainJar("lib"));
+		DependencyNode b = child(root, plainJar("b"));
+		child(b, omitted("lib", VERSION, DependencyNode.OMITTED_FOR_DUPLICATE));
+		List mvnUrls = assertSameOrder(root, "lib", "a", "b", "root");
+		assertEquals("wrap:" + mvnUrl("lib"), mvnUrls.get(0));
+		assertEquals(mvnUrl("a"), mvnUrls.get(1));
+		assertEquals("wrap:" + mvnUrl("b"), mvnUrls.get(2));
+	}
+
+	public void testExcludedCoreArtifacts() throws Exception {
+		DependencyNode root = node("root");
+		DependencyNode core = child(root, node("core"));
+		DependencyNode a = child(core, node("a"));
+		child(a, node("c"));
+		DependencyNode b = child(root, node("b"));
+		child(b, omitted("core", VERSION, DependencyNode.OMITTED_FOR_DUPLICATE));
+		excludedCoreArtifacts.add(new ResolutionNode(core.getArtifact(), Collections.EMPTY_LIST));
+		assertSameOrder(root, "c", "a", "b", "root");
+	}
+
+	/**
+	 * Kept node of an omitted node can be an ancestor of the omitted node
+	 * after a redirection: a reaches b through x and b reaches a through y.
+	 * The visitor would recurse forever in such tree, the engine does not enter
+	 * a node which is still on its stack.
+	 */
+	public void testCycle() throws Exception {
+		DependencyNode root = node("root");
+		DependencyNode a = child(root, node("a"));
+		DependencyNode x = child(a, node("x"));
+		child(x, omitted("b", VERSION, DependencyNode.OMITTED_FOR_DUPLICATE));
+		DependencyNode b = child(root, node("b"));
+		DependencyNode y = child(b, node("y"));
+		child(y, omitted("a", VERSION, DependencyNode.OMITTED_FOR_DUPLICATE));
+		assertEquals(mvnUrls("y", "b", "x", "a", "root"), engine(root));
+	}
+
+	/**
+	 * The visitor is run in a thread with a large stack, the engine is run in
+	 * the current thread.
+	 */
+	public void testVeryDeepChain() throws Exception {
+		final int depth = 5000;
+		final DependencyNode root = node("root");
+		DependencyNode parent = root;
+		String[] expected = new String[depth + 1];
+		for (int i = 0; i < depth; i++) {
+			parent = child(parent, node("chain" + i));
+			expected[depth - 1 - i] = "chain" + i;
+		}
+		expected[depth] = "root";
+		final List[] visitorOrder = new List[1];
+		final Throwable[] visitorError = new Throwable[1];
+		Thread thread = new Thread(null, new Runnable() {
+			public void run() {
+				try {
+					visitorOrder[0] = visitor(root);
+				} catch (Throwable e) {
+					visitorError[0] = e;
+				}
+			}
+		}, "deep-visitor", 512L * 1024 * 1024);
+		thread.start();
+		thread.join();
+		if (visitorError[0] != null) {
+			throw new AssertionError(visitorError[0]);
+		}
+		List engineOrder = engine(root);
+		assertEquals(mvnUrls(expected), engineOrder);
+		assertEquals(visitorOrder[0], engineOrder);
+	}
+
+	private List assertSameOrder(final DependencyNode root, final String... expected) {
+		List visitorOrder = visitor(root);
+		List engineOrder = engine(root);
+		assertEquals(visitorOrder, engineOrder);
+		assertEquals(Arrays.asList(expected).toString(), artifactIds(engineOrder).toString());
+		return engineOrder;
+	}
+
+	private List visitor(final DependencyNode root) {
+		IndexingDependencyNodeVisitor indexingVisitor = new IndexingDependencyNodeVisitor(log);
+		root.accept(indexingVisitor);
+		LaunchOrderDependencyNodeVisitor visitor = createVisitor(root, indexingVisitor);
+		root.accept(visitor);
+		return visitor.getMvnUrls();
+	}
+
+	private List engine(final DependencyNode root) {
+		IndexingDependencyNodeVisitor indexingVisitor = new IndexingDependencyNodeVisitor(log);
+		indexingVisitor.index(root);
+		LaunchOrderDependencyNodeVisitor visitor = createVisitor(root, indexingVisitor);
+		new LaunchOrderEngine(visitor, indexingVisitor.getGraph()).emit(root);
+		return visitor.getMvnUrls();
+	}
+
+	private LaunchOrderDependencyNodeVisitor createVisitor(final DependencyNode root,
+			final IndexingDependencyNodeVisitor indexingVisitor) {
+		LaunchOrderDependencyNodeVisitor visitor = new LaunchOrderDependencyNodeVisitor(log,
+				indexingVisitor.getGraph(), throwExceptionOnConflict, localRepository, artifactResolver,
+				root.getArtifact(), null);
+		visitor.setExcludedCoreArtifacts(excludedCoreArtifacts);
+		return visitor;
+	}
+
+	private static DependencyNode child(final DependencyNode parent, final DependencyNode child) {
+		parent.addChild(child);
+		return child;
+	}
+
+	private DependencyNode node(final String artifactId) throws Exception {
+		Artifact artifact = artifact(artifactId, VERSION);
+		writeJar(artifact, true);
+		return new MyDependencyNode(artifact, Collections.EMPTY_LIST);
+	}
+
+	private DependencyNode plainJar(final String artifactId) throws Exception {
+		Artifact artifact = artifact(artifactId, VERSION);
+		writeJar(artifact, false);
+		return new MyDependencyNode(artifact, Collections.EMPTY_LIST);
+	}
+
+	private static DependencyNode omitted(final String artifactId, final String version, final int state) {
+		return new DependencyNode(artifact(artifactId, version), state, artifact(artifactId, VERSION));
+	}
+
+	private void writeJar(final Artifact artifact, final boolean bundle) throws Exception {
+		File file = new File(localRepository.getBasedir(), localRepository.pathOf(artifact));
+		file.getParentFile().mkdirs();
+		Manifest manifest = new Manifest();
+		Attributes attributes = manifest.getMainAttributes();
+		attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		if (bundle) {
+			attributes.putValue("Bundle-ManifestVersion", "2");
+			attributes.putValue("Bundle-SymbolicName", GROUP_ID + "." + artifact.getArtifactId());
+		}
+		new JarOutputStream(new FileOutputStream(file), manifest).close();
+	}
+
+	private static Artifact artifact(final String artifactId, final String version) {
+		return new DefaultArtifact(GROUP_ID, artifactId, VersionRange.createFromVersion(version),
+				Artifact.SCOPE_COMPILE, "jar", null, new DefaultArtifactHandler("jar"));
+	}
+
+	private static String mvnUrl(final String artifactId) {
+		return "mvn:" + GROUP_ID + "/" + artifactId + "/" + VERSION;
+	}
+
+	/**
+	 * Mvn urls of given artifacts, the root is not resolved so it is wrapped.
+	 */
+	private static List<String> mvnUrls(final String... artifactIds) {
+		List<String> mvnUrls = new ArrayList<String>();
+		for (String artifactId : artifactIds) {
+			if ("root".equals(artifactId)) {
+				mvnUrls.add("wrap:" + mvnUrl(artifactId));
+			} else {
+				mvnUrls.add(mvnUrl(artifactId));
+			}
+		}
+		return mvnUrls;
+	}
+
+	private static List<String> artifactIds(final List mvnUrls) {
+		List<String> artifactIds = new ArrayList<String>();
+		for (Object mvnUrl : mvnUrls) {
+			String[] parts = ((String) mvnUrl).split("/");
+			artifactIds.add(parts[1]);
+		}
+		return artifactIds;
+	}
+}
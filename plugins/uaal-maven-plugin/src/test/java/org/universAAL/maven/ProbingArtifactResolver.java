@@ -0,0 +1,171 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.metadata.ArtifactMetadataSource;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.resolver.ArtifactNotFoundException;
+import org.apache.maven.artifact.resolver.ArtifactResolutionException;
+import org.apache.maven.artifact.resolver.ArtifactResolutionResult;
+import org.apache.maven.artifact.resolver.ArtifactResolver;
+import org.apache.maven.artifact.resolver.filter.ArtifactFilter;
+
+/**
+ * ArtifactResolver downloading artifacts missing in the local repository from
+ * file:// remote repositories, the way the maven resolver does: remote
+ * repositories are probed in their order until the artifact is found. Every
+ * probe is written to the access log, so tests can count lookups which would
+ * go to the network. Repositories with other protocols are probed (logged)
+ * but never contain anything.
+ */
+final class ProbingArtifactResolver implements ArtifactResolver {
+
+	private final List<String> accessLog = Collections.synchronizedList(new ArrayList<String>());
+
+	/**
+	 * Gets the access log, one "repositoryId groupId:artifactId:version:type"
+	 * entry per probe.
+	 *
+	 * @return copy of the access log
+	 */
+	List<String> getAccessLog() {
+		synchronized (accessLog) {
+			return new ArrayList<String>(accessLog);
+		}
+	}
+
+	/**
+	 * Logs probe of given repository.
+	 *
+	 * @param repository
+	 *            the probed repository
+	 * @param artifact
+	 *            the looked up artifact
+	 */
+	void logProbe(final ArtifactRepository repository, final Artifact artifact) {
+		accessLog.add(repository.getId() + " " + artifact.getGroupId() + ":" + artifact.getArtifactId() + ":"
+				+ artifact.getVersion() + ":" + artifact.getType());
+	}
+
+	public void resolve(final Artifact artifact, final List remoteRepositories,
+			final ArtifactRepository localRepository) throws ArtifactResolutionException, ArtifactNotFoundException {
+		File file = new File(localRepository.getBasedir(), localRepository.pathOf(artifact));
+		if (!file.exists()) {
+			download(artifact, remoteRepositories, file);
+		}
+		artifact.setFile(file);
+		artifact.setResolved(true);
+	}
+
+	private void download(final Artifact artifact, final List remoteRepositories, final File file)
+			throws ArtifactResolutionException, ArtifactNotFoundException {
+		for (Object repoObj : remoteRepositories) {
+			ArtifactRepository repository = (ArtifactRepository) repoObj;
+			logProbe(repository, artifact);
+			if (!repository.getUrl().startsWith("file:")) {
+				continue;
+			}
+			File remoteFile = new File(repository.getBasedir(), repository.pathOf(artifact));
+			if (remoteFile.isFile()) {
+				try {
+					copy(remoteFile, file);
+				} catch (IOException e) {
+					throw new ArtifactResolutionException("Cannot download artifact", artifact, e);
+				}
+				return;
+			}
+		}
+		throw new ArtifactNotFoundException("Artifact is not present in any repository", artifact);
+	}
+
+	private static void copy(final File from, final File to) throws IOException {
+		to.getParentFile().mkdirs();
+		InputStream in = new FileInputStream(from);
+		try {
+			OutputStream out = new FileOutputStream(to);
+			try {
+				byte[] buffer = new byte[8192];
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					out.write(buffer, 0, read);
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	public void resolveAlways(final Artifact artifact, final List remoteRepositories,
+			final ArtifactRepository localRepository) throws ArtifactResolutionException, ArtifactNotFoundException {
+		resolve(artifact, remoteRepositories, localRepository);
+	}
+
+	public ArtifactResolutionResult resolveTransitively(final Set artifacts, final Artifact originatingArtifact,
+			final List remoteRepositories, final ArtifactRepository localRepository,
+			final ArtifactMetadataSource source) {
+		throw new UnsupportedOperationException();
+	}
+
+	public ArtifactResolutionResult resolveTransitively(final Set artifacts, final Artifact originatingArtifact,
+			final List remoteRepositories, final ArtifactRepository localRepository,
+			final ArtifactMetadataSource source, final List listeners) {
+		throw new UnsupportedOperationException();
+	}
+
+	public ArtifactResolutionResult resolveTransitively(final Set artifacts, final Artifact originatingArtifact,
+			final ArtifactRepository localRepository, final List remoteRepositories,
+			final ArtifactMetadataSource source, final ArtifactFilter filter) {
+		throw new UnsupportedOperationException();
+	}
+
+	public ArtifactResolutionResult resolveTransitively(final Set artifacts, final Artifact originatingArtifact,
+			final Map managedVersions, final ArtifactRepository localRepository, final List remoteRepositories,
+			final ArtifactMetadataSource source) {
+		throw new UnsupportedOperationException();
+	}
+
+	public ArtifactResolutionResult resolveTransitively(final Set artifacts, final Artifact originatingArtifact,
+			final Map managedVersions, final ArtifactRepository localRepository, final List remoteRepositories,
+			final ArtifactMetadataSource source, final ArtifactFilter filter) {
+		throw new UnsupportedOperationException();
+	}
+
+	public ArtifactResolutionResult resolveTransitively(final Set artifacts, final Artifact originatingArtifact,
+			final Map managedVersions, final ArtifactRepository localRepository, final List remoteRepositories,
+			final ArtifactMetadataSource source, final ArtifactFilter filter, final List listeners) {
+		throw new UnsupportedOperationException();
+	}
+}
@@ -0,0 +1,73 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven;
+
+import java.util.List;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.metadata.ArtifactMetadataRetrievalException;
+import org.apache.maven.artifact.metadata.ArtifactMetadataSource;
+import org.apache.maven.artifact.metadata.ResolutionGroup;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+
+/**
+ * ArtifactMetadataSource wrapping SyntheticMetadataSource, which logs lookups
+ * of available versions as probes of all passed remote repositories, because
+ * the maven resolver refreshes maven-metadata.xml of version ranges from each
+ * of them. Dependencies of retrieved POMs are given the project repositories,
+ * as if every POM declared them, so that repository lists of all nodes are
+ * the same as in a build without routing. POMs are expected to be present in
+ * the local repository.
+ */
+final class ProbingMetadataSource implements ArtifactMetadataSource {
+
+	private final ArtifactMetadataSource source;
+
+	private final ProbingArtifactResolver resolver;
+
+	private final List projectRepositories;
+
+	ProbingMetadataSource(final ArtifactMetadataSource source, final ProbingArtifactResolver resolver,
+			final List projectRepositories) {
+		this.source = source;
+		this.resolver = resolver;
+		this.projectRepositories = projectRepositories;
+	}
+
+	public ResolutionGroup retrieve(final Artifact artifact, final ArtifactRepository localRepository,
+			final List remoteRepositories) throws ArtifactMetadataRetrievalException {
+		ResolutionGroup group = source.retrieve(artifact, localRepository, remoteRepositories);
+		return new ResolutionGroup(group.getPomArtifact(), group.getArtifacts(), projectRepositories);
+	}
+
+	public Artifact retrieveRelocatedArtifact(final Artifact artifact, final ArtifactRepository localRepository,
+			final List remoteRepositories) throws ArtifactMetadataRetrievalException {
+		return source.retrieveRelocatedArtifact(artifact, localRepository, remoteRepositories);
+	}
+
+	public List retrieveAvailableVersions(final Artifact artifact, final ArtifactRepository localRepository,
+			final List remoteRepositories) throws ArtifactMetadataRetrievalException {
+		for (Object repoObj : remoteRepositories) {
+			resolver.logProbe((ArtifactRepository) repoObj, artifact);
+		}
+		return source.retrieveAvailableVersions(artifact, localRepository, remoteRepositories);
+	}
+}
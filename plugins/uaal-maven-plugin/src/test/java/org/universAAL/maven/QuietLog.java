@@ -0,0 +1,53 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+
+/**
+ * Log which drops debug and info messages, so that statistics logged by
+ * ExecutionListCreator after each invocation do not flood the output of tests
+ * and benchmarks. Warnings and errors are still printed.
+ */
+public final class QuietLog extends SystemStreamLog {
+
+	public void debug(final CharSequence content) {
+	}
+
+	public void debug(final CharSequence content, final Throwable error) {
+	}
+
+	public void debug(final Throwable error) {
+	}
+
+	public void info(final CharSequence content) {
+	}
+
+	public void info(final CharSequence content, final Throwable error) {
+	}
+
+	public void info(final Throwable error) {
+	}
+
+	public boolean isInfoEnabled() {
+		return false;
+	}
+}
@@ -0,0 +1,182 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.repository.DefaultArtifactRepository;
+import org.apache.maven.artifact.repository.layout.DefaultRepositoryLayout;
+import org.apache.maven.project.MavenProject;
+import org.universAAL.maven.treebuilder.ExecutionListCreator;
+import org.universAAL.maven.treebuilder.MetadataCache;
+import org.universAAL.maven.treebuilder.PomModelMemo;
+import org.universAAL.maven.treebuilder.RepositoryRouter;
+
+/**
+ * Creates the execution list of an artifact of a SyntheticRepository with and
+ * without the repository router. Jars of the synthetic artifacts are moved to
+ * the "uaal" file:// repository, which is preceded by two empty file://
+ * repositories and followed by the paxrunner and ops4j repositories, so every
+ * jar is downloaded and every probe is written to the access log. The router
+ * has to keep the execution list, send all lookups of the synthetic artifacts
+ * to the "uaal" repository only and count exactly the probes it saved.
+ *
+ */
+public class RepositoryRouterTest extends TestCase {
+
+	private static final int ARTIFACTS = 100;
+
+	private static final String RULES = SyntheticRepository.ROOT_GROUP_ID + "=uaal";
+
+	/**
+	 * GroupId of the artifact whose execution list is created. Execution list
+	 * of the synthetic root project is not used, because dependencies of POM
+	 * projects are not resolved.
+	 */
+	private static final String GROUP_ID = SyntheticRepository.ROOT_GROUP_ID + ".g2";
+
+	private static final String ARTIFACT_ID = "bundle2";
+
+	private File workDir;
+
+	private File localDir;
+
+	private ArtifactRepository localRepository;
+
+	private List<ArtifactRepository> remoteRepositories;
+
+	protected void setUp() throws Exception {
+		workDir = new File("target/repository-router");
+		SyntheticRepository.delete(workDir);
+		localDir = new File(workDir, "local");
+		localRepository = SyntheticRepository.generate(localDir, ARTIFACTS, 4, 42);
+		moveJars(localDir, new File(workDir, "uaal"));
+		remoteRepositories = new ArrayList<ArtifactRepository>();
+		remoteRepositories.add(fileRepository("central"));
+		remoteRepositories.add(fileRepository("thirdparty"));
+		remoteRepositories.add(fileRepository("uaal"));
+		remoteRepositories.add(new DefaultArtifactRepository("paxrunner",
+				"http://osgi.sonatype.org/content/groups/pax-runner", new DefaultRepositoryLayout()));
+		remoteRepositories.add(new DefaultArtifactRepository("ops4j-releases", "http://repository.ops4j.org/maven2",
+				new DefaultRepositoryLayout()));
+	}
+
+	protected void tearDown() throws Exception {
+		SyntheticRepository.delete(workDir);
+	}
+
+	private ArtifactRepository fileRepository(final String id) {
+		File dir = new File(workDir, id);
+		dir.mkdirs();
+		return new DefaultArtifactRepository(id, "file://" + dir.getAbsolutePath(), new DefaultRepositoryLayout());
+	}
+
+	private static void moveJars(final File from, final File to) {
+		File[] children = from.listFiles();
+		if (children == null) {
+			return;
+		}
+		for (File child : children) {
+			File target = new File(to, child.getName());
+			if (child.isDirectory()) {
+				moveJars(child, target);
+			} else if (child.getName().endsWith(".jar")) {
+				target.getParentFile().mkdirs();
+				assertTrue("Cannot move " + child, child.renameTo(target));
+			}
+		}
+	}
+
+	private static void deleteJars(final File dir) {
+		File[] children = dir.listFiles();
+		if (children == null) {
+			return;
+		}
+		for (File child : children) {
+			if (child.isDirectory()) {
+				deleteJars(child);
+			} else if (child.getName().endsWith(".jar")) {
+				child.delete();
+			}
+		}
+	}
+
+	/**
+	 * Creates the execution list with empty local repository of jars and
+	 * fresh caches.
+	 */
+	private List createExecutionList(final ProbingArtifactResolver resolver, final RepositoryRouter router)
+			throws Exception {
+		deleteJars(localDir);
+		QuietLog log = new QuietLog();
+		SyntheticArtifactFactory artifactFactory = new SyntheticArtifactFactory();
+		SyntheticProjectBuilder projectBuilder = new SyntheticProjectBuilder(artifactFactory);
+		ProbingMetadataSource metadataSource = new ProbingMetadataSource(new SyntheticMetadataSource(
+				artifactFactory, projectBuilder), resolver, remoteRepositories);
+		Artifact rootArtifact = artifactFactory.createProjectArtifact(GROUP_ID, ARTIFACT_ID,
+				SyntheticRepository.VERSION);
+		MavenProject rootProject = projectBuilder.buildFromRepository(rootArtifact, remoteRepositories,
+				localRepository);
+		rootProject.setRemoteArtifactRepositories(remoteRepositories);
+		ExecutionListCreator execListCreator = new ExecutionListCreator(log, metadataSource, artifactFactory,
+				projectBuilder, localRepository, remoteRepositories, resolver, "true", null);
+		execListCreator.setResolutionThreads(1);
+		execListCreator.setPomModelMemo(new PomModelMemo());
+		execListCreator.setMetadataCache(new MetadataCache());
+		if (router != null) {
+			execListCreator.setRepositoryRouter(router);
+		}
+		return execListCreator.createArtifactExecutionList(rootProject, new HashSet<String>(), false, false);
+	}
+
+	public void testRoutedLookups() throws Exception {
+		ProbingArtifactResolver plainResolver = new ProbingArtifactResolver();
+		List plainList = createExecutionList(plainResolver, null);
+		assertTrue(plainList.size() > 1);
+
+		ProbingArtifactResolver routedResolver = new ProbingArtifactResolver();
+		RepositoryRouter router = new RepositoryRouter(RULES, localRepository, null);
+		List routedList = createExecutionList(routedResolver, router);
+		assertEquals(plainList, routedList);
+
+		List<String> plainLog = plainResolver.getAccessLog();
+		List<String> routedLog = routedResolver.getAccessLog();
+		int plainJarProbes = 0;
+		for (String probe : plainLog) {
+			if (probe.startsWith("central ") && probe.endsWith(SyntheticRepository.VERSION + ":jar")) {
+				plainJarProbes++;
+			}
+		}
+		assertTrue(plainJarProbes > 0);
+		for (String probe : routedLog) {
+			assertTrue(probe, probe.startsWith("uaal "));
+		}
+		assertTrue(router.getSavedProbes() > 0);
+		assertEquals(plainLog.size() - routedLog.size(), router.getSavedProbes());
+	}
+}
@@ -0,0 +1,122 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven;
+
+import java.util.Collections;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.shared.dependency.tree.DependencyNode;
+
+/**
+ * Checks start levels assigned by StartLevelAssigner on a small graph in
+ * which root depends on mid and other, both of them depend on leaf. When mid
+ * is overridden by a start spec, root has to start after the overridden level,
+ * not after the level mid would get automatically. Automatic levels never go
+ * below the base level.
+ *
+ */
+public class StartLevelAssignerTest extends TestCase {
+
+	private static final String GROUP_ID = "org.universAAL.test";
+
+	private static final int BASE_LEVEL = 5;
+
+	private final QuietLog log = new QuietLog();
+
+	private IndexingDependencyNodeVisitor indexingVisitor;
+
+	protected void setUp() throws Exception {
+		DependencyNode root = new DependencyNode(artifact("root"));
+		DependencyNode mid = new DependencyNode(artifact("mid"));
+		mid.addChild(new DependencyNode(artifact("leaf")));
+		root.addChild(mid);
+		DependencyNode other = new DependencyNode(artifact("other"));
+		other.addChild(new DependencyNode(artifact("leaf"), DependencyNode.OMITTED_FOR_DUPLICATE,
+				artifact("leaf")));
+		root.addChild(other);
+		indexingVisitor = new IndexingDependencyNodeVisitor(log);
+		indexingVisitor.index(root);
+	}
+
+	public void testAutomaticLevels() {
+		Map<ArtifactKey, Integer> levels = assign(null);
+		assertEquals(BASE_LEVEL, level(levels, "leaf"));
+		assertEquals(BASE_LEVEL + 1, level(levels, "mid"));
+		assertEquals(BASE_LEVEL + 1, level(levels, "other"));
+		assertEquals(BASE_LEVEL + 2, level(levels, "root"));
+	}
+
+	public void testOverrideOfMidGraphBundle() {
+		Map<ArtifactKey, Integer> levels = assign(new StartSpec[] { startSpec("mid", 10) });
+		assertEquals(BASE_LEVEL, level(levels, "leaf"));
+		assertEquals(10, level(levels, "mid"));
+		assertEquals(BASE_LEVEL + 1, level(levels, "other"));
+		assertEquals(11, level(levels, "root"));
+	}
+
+	public void testOverrideBelowBaseLevel() {
+		Map<ArtifactKey, Integer> levels = assign(new StartSpec[] { startSpec("leaf", 2) });
+		assertEquals(2, level(levels, "leaf"));
+		assertEquals(BASE_LEVEL, level(levels, "mid"));
+		assertEquals(BASE_LEVEL, level(levels, "other"));
+		assertEquals(BASE_LEVEL + 1, level(levels, "root"));
+	}
+
+	private Map<ArtifactKey, Integer> assign(final StartSpec[] startSpecs) {
+		StartLevelAssigner assigner = new StartLevelAssigner(indexingVisitor.getGraph(), indexingVisitor,
+				Collections.<ArtifactKey> emptySet());
+		assigner.setStartSpecs(startSpecs);
+		return assigner.assign(BASE_LEVEL);
+	}
+
+	private static int level(final Map<ArtifactKey, Integer> levels, final String artifactId) {
+		Integer level = levels.get(ArtifactKey.of(artifact(artifactId)));
+		assertNotNull(artifactId + " has no start level", level);
+		return level.intValue();
+	}
+
+	private static StartSpec startSpec(final String artifactId, final int startlevel) {
+		return new StartSpec() {
+			public String getGroupId() {
+				return GROUP_ID;
+			}
+
+			public String getArtifactId() {
+				return artifactId;
+			}
+
+			public Integer getStartlevel() {
+				return Integer.valueOf(startlevel);
+			}
+		};
+	}
+
+	private static Artifact artifact(final String artifactId) {
+		return new DefaultArtifact(GROUP_ID, artifactId, VersionRange.createFromVersion("1.0.0"),
+				Artifact.SCOPE_COMPILE, "jar", null, new DefaultArtifactHandler("jar"));
+	}
+}
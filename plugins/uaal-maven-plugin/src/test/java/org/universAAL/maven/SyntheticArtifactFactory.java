@@ -0,0 +1,145 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.factory.ArtifactFactory;
+import org.apache.maven.artifact.handler.ArtifactHandler;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.versioning.VersionRange;
+
+/**
+ * ArtifactFactory used instead of the one provided by the maven container.
+ * Artifacts are created in the same way as by DefaultArtifactFactory of maven
+ * 2.2.1, with a default handler of each type.
+ */
+public final class SyntheticArtifactFactory implements ArtifactFactory {
+
+	private final Map<String, ArtifactHandler> handlers = new ConcurrentHashMap<String, ArtifactHandler>();
+
+	public Artifact createArtifact(final String groupId, final String artifactId, final String version,
+			final String scope, final String type) {
+		return create(groupId, artifactId, version, scope, type, null, null, false);
+	}
+
+	public Artifact createArtifactWithClassifier(final String groupId, final String artifactId,
+			final String version, final String type, final String classifier) {
+		return create(groupId, artifactId, version, null, type, classifier, null, false);
+	}
+
+	public Artifact createDependencyArtifact(final String groupId, final String artifactId,
+			final VersionRange versionRange, final String type, final String classifier, final String scope) {
+		return create(groupId, artifactId, versionRange, scope, type, classifier, null, false);
+	}
+
+	public Artifact createDependencyArtifact(final String groupId, final String artifactId,
+			final VersionRange versionRange, final String type, final String classifier, final String scope,
+			final boolean optional) {
+		return create(groupId, artifactId, versionRange, scope, type, classifier, null, optional);
+	}
+
+	public Artifact createDependencyArtifact(final String groupId, final String artifactId,
+			final VersionRange versionRange, final String type, final String classifier, final String scope,
+			final String inheritedScope) {
+		return create(groupId, artifactId, versionRange, scope, type, classifier, inheritedScope, false);
+	}
+
+	public Artifact createDependencyArtifact(final String groupId, final String artifactId,
+			final VersionRange versionRange, final String type, final String classifier, final String scope,
+			final String inheritedScope, final boolean optional) {
+		return create(groupId, artifactId, versionRange, scope, type, classifier, inheritedScope, optional);
+	}
+
+	public Artifact createBuildArtifact(final String groupId, final String artifactId, final String version,
+			final String packaging) {
+		return create(groupId, artifactId, version, null, packaging, null, null, false);
+	}
+
+	public Artifact createProjectArtifact(final String groupId, final String artifactId, final String version) {
+		return createProjectArtifact(groupId, artifactId, version, null);
+	}
+
+	public Artifact createParentArtifact(final String groupId, final String artifactId, final String version) {
+		return createProjectArtifact(groupId, artifactId, version);
+	}
+
+	public Artifact createPluginArtifact(final String groupId, final String artifactId,
+			final VersionRange versionRange) {
+		return create(groupId, artifactId, versionRange, null, "maven-plugin", null, Artifact.SCOPE_RUNTIME, false);
+	}
+
+	public Artifact createProjectArtifact(final String groupId, final String artifactId, final String version,
+			final String scope) {
+		return create(groupId, artifactId, version, scope, "pom", null, null, false);
+	}
+
+	public Artifact createExtensionArtifact(final String groupId, final String artifactId,
+			final VersionRange versionRange) {
+		return create(groupId, artifactId, versionRange, null, "jar", null, Artifact.SCOPE_RUNTIME, false);
+	}
+
+	private Artifact create(final String groupId, final String artifactId, final String version,
+			final String scope, final String type, final String classifier, final String inheritedScope,
+			final boolean optional) {
+		VersionRange versionRange = null;
+		if (version != null) {
+			versionRange = VersionRange.createFromVersion(version);
+		}
+		return create(groupId, artifactId, versionRange, scope, type, classifier, inheritedScope, optional);
+	}
+
+	private Artifact create(final String groupId, final String artifactId, final VersionRange versionRange,
+			final String scope, final String type, final String classifier, final String inheritedScope,
+			final boolean optional) {
+		String desiredScope = Artifact.SCOPE_RUNTIME;
+		if (inheritedScope == null) {
+			desiredScope = scope;
+		} else if (Artifact.SCOPE_TEST.equals(scope) || Artifact.SCOPE_PROVIDED.equals(scope)) {
+			return null;
+		} else if (Artifact.SCOPE_COMPILE.equals(scope) && Artifact.SCOPE_COMPILE.equals(inheritedScope)) {
+			desiredScope = Artifact.SCOPE_COMPILE;
+		}
+		if (Artifact.SCOPE_TEST.equals(inheritedScope)) {
+			desiredScope = Artifact.SCOPE_TEST;
+		}
+		if (Artifact.SCOPE_PROVIDED.equals(inheritedScope)) {
+			desiredScope = Artifact.SCOPE_PROVIDED;
+		}
+		if (Artifact.SCOPE_SYSTEM.equals(scope)) {
+			desiredScope = Artifact.SCOPE_SYSTEM;
+		}
+		return new DefaultArtifact(groupId, artifactId, versionRange, desiredScope, type, classifier,
+				handler(type), optional);
+	}
+
+	private ArtifactHandler handler(final String type) {
+		ArtifactHandler handler = handlers.get(type);
+		if (handler == null) {
+			handler = new DefaultArtifactHandler(type);
+			handlers.put(type, handler);
+		}
+		return handler;
+	}
+}
@@ -0,0 +1,93 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.metadata.ArtifactMetadataSource;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.resolver.ArtifactNotFoundException;
+import org.apache.maven.artifact.resolver.ArtifactResolutionResult;
+import org.apache.maven.artifact.resolver.ArtifactResolver;
+import org.apache.maven.artifact.resolver.filter.ArtifactFilter;
+
+/**
+ * ArtifactResolver used instead of the one provided by the maven container.
+ * Artifacts are resolved only from the local repository, remote repositories
+ * are never contacted.
+ */
+public final class SyntheticArtifactResolver implements ArtifactResolver {
+
+	public void resolve(final Artifact artifact, final List remoteRepositories,
+			final ArtifactRepository localRepository) throws ArtifactNotFoundException {
+		File file = new File(localRepository.getBasedir(), localRepository.pathOf(artifact));
+		if (!file.exists()) {
+			throw new ArtifactNotFoundException("Artifact is not present in the synthetic repository", artifact);
+		}
+		artifact.setFile(file);
+		artifact.setResolved(true);
+	}
+
+	public void resolveAlways(final Artifact artifact, final List remoteRepositories,
+			final ArtifactRepository localRepository) throws ArtifactNotFoundException {
+		resolve(artifact, remoteRepositories, localRepository);
+	}
+
+	public ArtifactResolutionResult resolveTransitively(final Set artifacts, final Artifact originatingArtifact,
+			final List remoteRepositories, final ArtifactRepository localRepository,
+			final ArtifactMetadataSource source) {
+		throw new UnsupportedOperationException();
+	}
+
+	public ArtifactResolutionResult resolveTransitively(final Set artifacts, final Artifact originatingArtifact,
+			final List remoteRepositories, final ArtifactRepository localRepository,
+			final ArtifactMetadataSource source, final List listeners) {
+		throw new UnsupportedOperationException();
+	}
+
+	public ArtifactResolutionResult resolveTransitively(final Set artifacts, final Artifact originatingArtifact,
+			final ArtifactRepository localRepository, final List remoteRepositories,
+			final ArtifactMetadataSource source, final ArtifactFilter filter) {
+		throw new UnsupportedOperationException();
+	}
+
+	public ArtifactResolutionResult resolveTransitively(final Set artifacts, final Artifact originatingArtifact,
+			final Map managedVersions, final ArtifactRepository localRepository, final List remoteRepositories,
+			final ArtifactMetadataSource source) {
+		throw new UnsupportedOperationException();
+	}
+
+	public ArtifactResolutionResult resolveTransitively(final Set artifacts, final Artifact originatingArtifact,
+			final Map managedVersions, final ArtifactRepository localRepository, final List remoteRepositories,
+			final ArtifactMetadataSource source, final ArtifactFilter filter) {
+		throw new UnsupportedOperationException();
+	}
+
+	public ArtifactResolutionResult resolveTransitively(final Set artifacts, final Artifact originatingArtifact,
+			final Map managedVersions, final ArtifactRepository localRepository, final List remoteRepositories,
+			final ArtifactMetadataSource source, final ArtifactFilter filter, final List listeners) {
+		throw new UnsupportedOperationException();
+	}
+}
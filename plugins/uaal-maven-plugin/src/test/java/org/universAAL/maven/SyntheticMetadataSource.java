@@ -0,0 +1,133 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.factory.ArtifactFactory;
+import org.apache.maven.artifact.metadata.ArtifactMetadataRetrievalException;
+import org.apache.maven.artifact.metadata.ArtifactMetadataSource;
+import org.apache.maven.artifact.metadata.ResolutionGroup;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.apache.maven.artifact.repository.metadata.io.xpp3.MetadataXpp3Reader;
+import org.apache.maven.artifact.resolver.filter.ExcludesArtifactFilter;
+import org.apache.maven.artifact.versioning.DefaultArtifactVersion;
+import org.apache.maven.artifact.versioning.InvalidVersionSpecificationException;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Exclusion;
+import org.apache.maven.model.Model;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+
+/**
+ * ArtifactMetadataSource used instead of the one provided by the maven
+ * container. Dependencies are read from POMs in the local repository and
+ * available versions from maven-metadata.xml files next to the versions.
+ */
+public final class SyntheticMetadataSource implements ArtifactMetadataSource {
+
+	private final ArtifactFactory artifactFactory;
+
+	private final SyntheticProjectBuilder projectBuilder;
+
+	public SyntheticMetadataSource(final ArtifactFactory artifactFactory, final SyntheticProjectBuilder projectBuilder) {
+		this.artifactFactory = artifactFactory;
+		this.projectBuilder = projectBuilder;
+	}
+
+	public ResolutionGroup retrieve(final Artifact artifact, final ArtifactRepository localRepository,
+			final List remoteRepositories) throws ArtifactMetadataRetrievalException {
+		try {
+			Model model = projectBuilder.readModel(artifact, localRepository);
+			Set<Artifact> artifacts = new LinkedHashSet<Artifact>();
+			for (Object depObj : model.getDependencies()) {
+				Dependency dep = (Dependency) depObj;
+				String scope = dep.getScope() == null ? Artifact.SCOPE_COMPILE : dep.getScope();
+				Artifact depArtifact = artifactFactory.createDependencyArtifact(dep.getGroupId(),
+						dep.getArtifactId(), VersionRange.createFromVersionSpec(dep.getVersion()), dep.getType(),
+						dep.getClassifier(), scope, artifact.getScope(), dep.isOptional());
+				if (depArtifact == null) {
+					continue;
+				}
+				if (!dep.getExclusions().isEmpty()) {
+					List<String> patterns = new ArrayList<String>();
+					for (Object exclusionObj : dep.getExclusions()) {
+						Exclusion exclusion = (Exclusion) exclusionObj;
+						patterns.add(exclusion.getGroupId() + ":" + exclusion.getArtifactId());
+					}
+					depArtifact.setDependencyFilter(new ExcludesArtifactFilter(patterns));
+				}
+				artifacts.add(depArtifact);
+			}
+			Artifact pomArtifact = artifactFactory.createProjectArtifact(artifact.getGroupId(),
+					artifact.getArtifactId(), artifact.getVersion());
+			return new ResolutionGroup(pomArtifact, artifacts, remoteRepositories);
+		} catch (IOException e) {
+			throw new ArtifactMetadataRetrievalException("Cannot read POM of " + artifact, e, artifact);
+		} catch (XmlPullParserException e) {
+			throw new ArtifactMetadataRetrievalException("Cannot parse POM of " + artifact, e, artifact);
+		} catch (InvalidVersionSpecificationException e) {
+			throw new ArtifactMetadataRetrievalException("Invalid dependency version in POM of " + artifact, e,
+					artifact);
+		}
+	}
+
+	public Artifact retrieveRelocatedArtifact(final Artifact artifact, final ArtifactRepository localRepository,
+			final List remoteRepositories) {
+		return artifact;
+	}
+
+	public List retrieveAvailableVersions(final Artifact artifact, final ArtifactRepository localRepository,
+			final List remoteRepositories) throws ArtifactMetadataRetrievalException {
+		File metadataFile = new File(localRepository.getBasedir(), artifact.getGroupId().replace('.', '/') + "/"
+				+ artifact.getArtifactId() + "/maven-metadata.xml");
+		List versions = new ArrayList();
+		if (!metadataFile.exists()) {
+			return versions;
+		}
+		try {
+			Reader reader = new InputStreamReader(new FileInputStream(metadataFile), "UTF-8");
+			try {
+				Metadata metadata = new MetadataXpp3Reader().read(reader);
+				for (Object version : metadata.getVersioning().getVersions()) {
+					versions.add(new DefaultArtifactVersion((String) version));
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			throw new ArtifactMetadataRetrievalException("Cannot read " + metadataFile, e, artifact);
+		} catch (XmlPullParserException e) {
+			throw new ArtifactMetadataRetrievalException("Cannot parse " + metadataFile, e, artifact);
+		}
+		return versions;
+	}
+}
@@ -0,0 +1,161 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.factory.ArtifactFactory;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
+import org.apache.maven.profiles.ProfileManager;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.MavenProjectBuilder;
+import org.apache.maven.project.ProjectBuilderConfiguration;
+import org.apache.maven.project.ProjectBuildingException;
+import org.apache.maven.wagon.events.TransferListener;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+
+/**
+ * MavenProjectBuilder used instead of the one provided by the maven container.
+ * Only building projects from the (local) repository is supported. POMs are
+ * parsed on each call, without inheritance and interpolation, which is enough
+ * for POMs of SyntheticRepository.
+ */
+public final class SyntheticProjectBuilder implements MavenProjectBuilder {
+
+	private final ArtifactFactory artifactFactory;
+
+	public SyntheticProjectBuilder(final ArtifactFactory artifactFactory) {
+		this.artifactFactory = artifactFactory;
+	}
+
+	/**
+	 * Reads model of the POM of given artifact from the repository.
+	 *
+	 * @param artifact
+	 *            the artifact
+	 * @param repository
+	 *            the repository
+	 * @return the model
+	 * @throws IOException
+	 *             when the POM cannot be read
+	 * @throws XmlPullParserException
+	 *             when the POM cannot be parsed
+	 */
+	Model readModel(final Artifact artifact, final ArtifactRepository repository) throws IOException,
+			XmlPullParserException {
+		Artifact pomArtifact = artifact;
+		if (!"pom".equals(artifact.getType())) {
+			pomArtifact = artifactFactory.createProjectArtifact(artifact.getGroupId(), artifact.getArtifactId(),
+					artifact.getVersion());
+		}
+		File pom = new File(repository.getBasedir(), repository.pathOf(pomArtifact));
+		Reader reader = new InputStreamReader(new FileInputStream(pom), "UTF-8");
+		try {
+			return new MavenXpp3Reader().read(reader);
+		} finally {
+			reader.close();
+		}
+	}
+
+	public MavenProject buildFromRepository(final Artifact artifact, final List remoteRepositories,
+			final ArtifactRepository localRepository) throws ProjectBuildingException {
+		String projectId = artifact.getGroupId() + ":" + artifact.getArtifactId() + ":" + artifact.getVersion();
+		Model model;
+		try {
+			model = readModel(artifact, localRepository);
+		} catch (IOException e) {
+			throw new ProjectBuildingException(projectId, "Cannot read POM", e);
+		} catch (XmlPullParserException e) {
+			throw new ProjectBuildingException(projectId, "Cannot parse POM", e);
+		}
+		MavenProject project = new MavenProject(model);
+		project.setArtifact(artifactFactory.createBuildArtifact(model.getGroupId(), model.getArtifactId(),
+				model.getVersion(), model.getPackaging()));
+		project.setRemoteArtifactRepositories(Collections.EMPTY_LIST);
+		return project;
+	}
+
+	public MavenProject buildFromRepository(final Artifact artifact, final List remoteRepositories,
+			final ArtifactRepository localRepository, final boolean allowStubModel)
+			throws ProjectBuildingException {
+		return buildFromRepository(artifact, remoteRepositories, localRepository);
+	}
+
+	public MavenProject build(final File pom, final ArtifactRepository localRepository,
+			final ProfileManager profileManager) {
+		throw new UnsupportedOperationException();
+	}
+
+	public MavenProject build(final File pom, final ArtifactRepository localRepository,
+			final ProfileManager profileManager, final boolean checkDistributionManagementStatus) {
+		throw new UnsupportedOperationException();
+	}
+
+	public MavenProject buildWithDependencies(final File pom, final ArtifactRepository localRepository,
+			final ProfileManager profileManager, final TransferListener transferListener) {
+		throw new UnsupportedOperationException();
+	}
+
+	public MavenProject buildWithDependencies(final File pom, final ArtifactRepository localRepository,
+			final ProfileManager profileManager) {
+		throw new UnsupportedOperationException();
+	}
+
+	public MavenProject buildStandaloneSuperProject(final ArtifactRepository localRepository) {
+		throw new UnsupportedOperationException();
+	}
+
+	public MavenProject buildStandaloneSuperProject(final ArtifactRepository localRepository,
+			final ProfileManager profileManager) {
+		throw new UnsupportedOperationException();
+	}
+
+	public MavenProject buildStandaloneSuperProject(final ProjectBuilderConfiguration config) {
+		throw new UnsupportedOperationException();
+	}
+
+	public MavenProject build(final File pom, final ProjectBuilderConfiguration config) {
+		throw new UnsupportedOperationException();
+	}
+
+	public MavenProject build(final File pom, final ProjectBuilderConfiguration config,
+			final boolean checkDistributionManagementStatus) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void calculateConcreteState(final MavenProject project, final ProjectBuilderConfiguration config) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void calculateConcreteState(final MavenProject project, final ProjectBuilderConfiguration config,
+			final boolean processResources) {
+		throw new UnsupportedOperationException();
+	}
+}
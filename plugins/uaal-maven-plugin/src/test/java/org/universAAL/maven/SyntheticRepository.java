@@ -0,0 +1,344 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.repository.DefaultArtifactRepository;
+import org.apache.maven.artifact.repository.layout.DefaultRepositoryLayout;
+import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.apache.maven.artifact.repository.metadata.Versioning;
+import org.apache.maven.artifact.repository.metadata.io.xpp3.MetadataXpp3Writer;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Profile;
+import org.apache.maven.model.io.xpp3.MavenXpp3Writer;
+import org.universAAL.maven.treebuilder.DependencyTreeBuilder;
+
+/**
+ * Generator of a synthetic file:// maven repository laid out like the
+ * repositories of universAAL projects. Artifacts are split into layers, each
+ * twice as large as the previous one. The root project
+ * (org.universAAL.benchmark:root:1.0.0) depends on all artifacts of the first
+ * layer, every other artifact is a dependency of a random artifact of the
+ * previous layer, so all artifacts are reachable and the tree is not deeper
+ * than in real projects. Each artifact depends additionally on up to fanOut
+ * random artifacts of further layers, which gives duplicates and conflicts in
+ * the tree, and the dependencies still form a DAG. About a quarter of the
+ * dependencies is declared in the "uAAL-Runtime" profile, some of regular
+ * dependencies use version ranges and every fourth group is listed in the
+ * separatedGroupIds property, its artifacts are published as .core/.osgi
+ * pairs.
+ */
+public final class SyntheticRepository {
+
+	/**
+	 * GroupId of the root project.
+	 */
+	public static final String ROOT_GROUP_ID = "org.universAAL.benchmark";
+
+	/**
+	 * ArtifactId of the root project.
+	 */
+	public static final String ROOT_ARTIFACT_ID = "root";
+
+	/**
+	 * Version of the root project and of all artifacts.
+	 */
+	public static final String VERSION = "1.0.0";
+
+	/**
+	 * Version published additionally for artifacts which are referenced by
+	 * version ranges.
+	 */
+	private static final String NEXT_VERSION = "1.1.0";
+
+	private static final String RANGE = "[1.0.0,2.0.0)";
+
+	private static final int GROUPS = 8;
+
+	private static final int FIRST_LAYER = 20;
+
+	private final File basedir;
+
+	private final int artifacts;
+
+	private final List<Set<Integer>> dependencies;
+
+	private final int firstLayer;
+
+	private final Random random;
+
+	private SyntheticRepository(final File basedir, final int artifacts, final int fanOut, final long seed) {
+		this.basedir = basedir;
+		this.artifacts = artifacts;
+		this.random = new Random(seed);
+		dependencies = new ArrayList<Set<Integer>>();
+		for (int i = 0; i < artifacts; i++) {
+			dependencies.add(new LinkedHashSet<Integer>());
+		}
+		firstLayer = Math.min(artifacts, FIRST_LAYER);
+		int layerStart = 0;
+		int layerEnd = firstLayer;
+		while (layerEnd < artifacts) {
+			int nextLayerEnd = Math.min(artifacts, layerEnd + 2 * (layerEnd - layerStart));
+			for (int i = layerEnd; i < nextLayerEnd; i++) {
+				int parent = layerStart + random.nextInt(layerEnd - layerStart);
+				dependencies.get(parent).add(Integer.valueOf(i));
+			}
+			for (int i = layerStart; i < layerEnd; i++) {
+				int count = random.nextInt(fanOut + 1);
+				for (int j = 0; j < count; j++) {
+					dependencies.get(i).add(Integer.valueOf(layerEnd + random.nextInt(artifacts - layerEnd)));
+				}
+			}
+			layerStart = layerEnd;
+			layerEnd = nextLayerEnd;
+		}
+	}
+
+	/**
+	 * Generates a repository of given number of artifacts. A .core/.osgi pair
+	 * is counted as one artifact.
+	 *
+	 * @param basedir
+	 *            directory in which the repository is created
+	 * @param artifacts
+	 *            number of artifacts
+	 * @param fanOut
+	 *            maximal number of additional dependencies of each artifact
+	 * @param seed
+	 *            seed of the random generator
+	 * @return the repository which can be used as the local repository
+	 * @throws IOException
+	 *             when files of the repository cannot be written
+	 */
+	public static ArtifactRepository generate(final File basedir, final int artifacts, final int fanOut,
+			final long seed) throws IOException {
+		new SyntheticRepository(basedir, artifacts, fanOut, seed).write();
+		return new DefaultArtifactRepository("synthetic", "file://" + basedir.getAbsolutePath(),
+				new DefaultRepositoryLayout());
+	}
+
+	/**
+	 * Deletes given directory recursively.
+	 *
+	 * @param dir
+	 *            the directory
+	 */
+	public static void delete(final File dir) {
+		File[] children = dir.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		dir.delete();
+	}
+
+	private void write() throws IOException {
+		List<String> separatedGroupIds = new ArrayList<String>();
+		for (int group = 0; group < GROUPS; group += 4) {
+			separatedGroupIds.add(groupId(group));
+		}
+		for (int i = 0; i < artifacts; i++) {
+			Model model = model(groupId(i % GROUPS), artifactId(i), VERSION, "jar");
+			for (Integer dependency : dependencies.get(i)) {
+				addDependency(model, dependency.intValue());
+			}
+			if (isSeparated(i)) {
+				model.addProperty(DependencyTreeBuilder.PROP_SEPARATED_GROUP_IDS, groupId(i % GROUPS));
+				writeArtifact(model, false);
+				Model osgiModel = model(groupId(i % GROUPS), osgiArtifactId(i), VERSION, "jar");
+				osgiModel.addProperty(DependencyTreeBuilder.PROP_SEPARATED_GROUP_IDS, groupId(i % GROUPS));
+				osgiModel.addDependency(dependency(groupId(i % GROUPS), artifactId(i), VERSION));
+				writeArtifact(osgiModel, true);
+				writeMetadata(groupId(i % GROUPS), osgiArtifactId(i), VERSION);
+				writeMetadata(groupId(i % GROUPS), artifactId(i), VERSION);
+			} else if (hasNextVersion(i)) {
+				writeArtifact(model, true);
+				model.setVersion(NEXT_VERSION);
+				writeArtifact(model, true);
+				writeMetadata(groupId(i % GROUPS), artifactId(i), VERSION, NEXT_VERSION);
+			} else {
+				writeArtifact(model, true);
+				writeMetadata(groupId(i % GROUPS), artifactId(i), VERSION);
+			}
+		}
+		Model root = model(ROOT_GROUP_ID, ROOT_ARTIFACT_ID, VERSION, "pom");
+		StringBuilder rootSeparatedGroupIds = new StringBuilder();
+		for (String groupId : separatedGroupIds) {
+			if (rootSeparatedGroupIds.length() != 0) {
+				rootSeparatedGroupIds.append(",");
+			}
+			rootSeparatedGroupIds.append(groupId);
+		}
+		root.addProperty(DependencyTreeBuilder.PROP_SEPARATED_GROUP_IDS, rootSeparatedGroupIds.toString());
+		for (int i = 0; i < firstLayer; i++) {
+			addDependency(root, i);
+		}
+		writePom(root);
+		writeMetadata(ROOT_GROUP_ID, ROOT_ARTIFACT_ID, VERSION);
+	}
+
+	/**
+	 * Adds dependency on artifact of given index. Separated artifacts are
+	 * referenced by their .core artifactId. The dependency is placed either
+	 * among regular dependencies (using a version range if the artifact has
+	 * more versions) or in the uAAL-Runtime profile.
+	 */
+	private void addDependency(final Model model, final int index) {
+		String groupId = groupId(index % GROUPS);
+		if (random.nextInt(4) == 0) {
+			Profile profile = runtimeProfile(model);
+			profile.addDependency(dependency(groupId, artifactId(index), VERSION));
+		} else if (hasNextVersion(index) && random.nextBoolean()) {
+			model.addDependency(dependency(groupId, artifactId(index), RANGE));
+		} else {
+			model.addDependency(dependency(groupId, artifactId(index), VERSION));
+		}
+	}
+
+	private static Profile runtimeProfile(final Model model) {
+		for (Object profileObj : model.getProfiles()) {
+			Profile profile = (Profile) profileObj;
+			if (DependencyTreeBuilder.UAAL_RUNTIME_PROFILE.equals(profile.getId())) {
+				return profile;
+			}
+		}
+		Profile profile = new Profile();
+		profile.setId(DependencyTreeBuilder.UAAL_RUNTIME_PROFILE);
+		model.addProfile(profile);
+		return profile;
+	}
+
+	private boolean isSeparated(final int index) {
+		return index % 4 == 0;
+	}
+
+	private boolean hasNextVersion(final int index) {
+		return !isSeparated(index) && index % 5 == 1;
+	}
+
+	private static String groupId(final int group) {
+		return ROOT_GROUP_ID + ".g" + group;
+	}
+
+	private String artifactId(final int index) {
+		if (isSeparated(index)) {
+			return "lib" + index + ".core";
+		}
+		return "bundle" + index;
+	}
+
+	private static String osgiArtifactId(final int index) {
+		return "lib" + index + ".osgi";
+	}
+
+	private static Model model(final String groupId, final String artifactId, final String version,
+			final String packaging) {
+		Model model = new Model();
+		model.setModelVersion("4.0.0");
+		model.setGroupId(groupId);
+		model.setArtifactId(artifactId);
+		model.setVersion(version);
+		model.setPackaging(packaging);
+		return model;
+	}
+
+	private static Dependency dependency(final String groupId, final String artifactId, final String version) {
+		Dependency dependency = new Dependency();
+		dependency.setGroupId(groupId);
+		dependency.setArtifactId(artifactId);
+		dependency.setVersion(version);
+		return dependency;
+	}
+
+	private File artifactDir(final String groupId, final String artifactId) {
+		return new File(basedir, groupId.replace('.', '/') + "/" + artifactId);
+	}
+
+	private File file(final Model model, final String extension) {
+		File dir = new File(artifactDir(model.getGroupId(), model.getArtifactId()), model.getVersion());
+		dir.mkdirs();
+		return new File(dir, model.getArtifactId() + "-" + model.getVersion() + "." + extension);
+	}
+
+	private void writePom(final Model model) throws IOException {
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file(model, "pom")), "UTF-8");
+		try {
+			new MavenXpp3Writer().write(writer, model);
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Writes POM and an empty jar of given model. Manifest of the jar contains
+	 * Bundle-ManifestVersion header if the artifact is a bundle.
+	 */
+	private void writeArtifact(final Model model, final boolean bundle) throws IOException {
+		writePom(model);
+		Manifest manifest = new Manifest();
+		Attributes attributes = manifest.getMainAttributes();
+		attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		if (bundle) {
+			attributes.putValue("Bundle-ManifestVersion", "2");
+			attributes.putValue("Bundle-SymbolicName", model.getGroupId() + "." + model.getArtifactId());
+			attributes.putValue("Bundle-Version", model.getVersion());
+		}
+		new JarOutputStream(new FileOutputStream(file(model, "jar")), manifest).close();
+	}
+
+	private void writeMetadata(final String groupId, final String artifactId, final String... versions)
+			throws IOException {
+		Metadata metadata = new Metadata();
+		metadata.setGroupId(groupId);
+		metadata.setArtifactId(artifactId);
+		Versioning versioning = new Versioning();
+		for (String version : versions) {
+			versioning.addVersion(version);
+		}
+		versioning.setLatest(versions[versions.length - 1]);
+		versioning.setRelease(versions[versions.length - 1]);
+		metadata.setVersioning(versioning);
+		Writer writer = new OutputStreamWriter(new FileOutputStream(new File(artifactDir(groupId, artifactId),
+				"maven-metadata.xml")), "UTF-8");
+		try {
+			new MetadataXpp3Writer().write(writer, metadata);
+		} finally {
+			writer.close();
+		}
+	}
+}
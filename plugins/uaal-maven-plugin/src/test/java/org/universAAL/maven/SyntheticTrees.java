@@ -0,0 +1,104 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.shared.dependency.tree.DependencyNode;
+
+/**
+ * Generator of synthetic dependency trees shaped like the trees produced by
+ * DependencyTreeBuilder: every artifact is kept only at its first occurrence
+ * (in depth-first order), further occurrences are omitted as duplicates and
+ * some of them are omitted as conflicts with an older version.
+ */
+public final class SyntheticTrees {
+
+	private SyntheticTrees() {
+	}
+
+	/**
+	 * Creates a tree of given number of artifacts. Artifact i depends on up to
+	 * fanOut random artifacts with greater index, so the dependencies form a
+	 * DAG which is unfolded into a tree.
+	 *
+	 * @param artifacts
+	 *            number of artifacts (bundles) in the tree
+	 * @param fanOut
+	 *            maximal number of dependencies of each artifact
+	 * @param seed
+	 *            seed of the random generator
+	 * @return root node of the tree, its artifact is a pom
+	 */
+	public static DependencyNode create(final int artifacts, final int fanOut, final long seed) {
+		Random random = new Random(seed);
+		int[][] dependencies = new int[artifacts][];
+		for (int i = 0; i < artifacts; i++) {
+			int count = Math.min(artifacts - i - 1, random.nextInt(fanOut + 1));
+			dependencies[i] = new int[count];
+			for (int j = 0; j < count; j++) {
+				dependencies[i][j] = i + 1 + random.nextInt(artifacts - i - 1);
+			}
+		}
+		DependencyNode root = new DependencyNode(artifact("root", "1.0.0", "pom"));
+		Map<Integer, DependencyNode> kept = new HashMap<Integer, DependencyNode>();
+		List<Integer> rootDependencies = new ArrayList<Integer>();
+		for (int i = 0; i < artifacts; i += Math.max(1, artifacts / 20)) {
+			rootDependencies.add(Integer.valueOf(i));
+		}
+		for (Integer dependency : rootDependencies) {
+			root.addChild(unfold(dependency.intValue(), dependencies, kept, random));
+		}
+		return root;
+	}
+
+	private static DependencyNode unfold(final int index, final int[][] dependencies,
+			final Map<Integer, DependencyNode> kept, final Random random) {
+		DependencyNode keptNode = kept.get(Integer.valueOf(index));
+		if (keptNode != null) {
+			if (random.nextInt(10) == 0) {
+				return new DependencyNode(artifact("bundle" + index, "0.9.0", "jar"),
+						DependencyNode.OMITTED_FOR_CONFLICT, keptNode.getArtifact());
+			}
+			return new DependencyNode(artifact("bundle" + index, "1.0.0", "jar"),
+					DependencyNode.OMITTED_FOR_DUPLICATE, keptNode.getArtifact());
+		}
+		DependencyNode node = new DependencyNode(artifact("bundle" + index, "1.0.0", "jar"));
+		kept.put(Integer.valueOf(index), node);
+		for (int dependency : dependencies[index]) {
+			node.addChild(unfold(dependency, dependencies, kept, random));
+		}
+		return node;
+	}
+
+	private static Artifact artifact(final String artifactId, final String version, final String type) {
+		return new DefaultArtifact("org.universAAL.benchmark", artifactId, VersionRange.createFromVersion(version),
+				Artifact.SCOPE_COMPILE, type, null, new DefaultArtifactHandler(type));
+	}
+}
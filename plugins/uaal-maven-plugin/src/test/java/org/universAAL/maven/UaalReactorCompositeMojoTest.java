@@ -0,0 +1,233 @@
+/*
+Copyright 2011-2014 AGH-UST, http://www.agh.edu.pl
+Faculty of Computer Science, Electronics and Telecommunications
+Department of Computer Science
+
+See the NOTICE file distributed with this work for additional
+information regarding copyright ownership
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.universAAL.maven;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.ReflectionUtils;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.codehaus.plexus.util.xml.Xpp3DomBuilder;
+
+/**
+ * Runs the reactor-composite goal on a small reactor of synthetic projects
+ * configured in different ways and compares the written composite files with
+ * the ones written by the composite goal executed in each project with the
+ * same configuration. Projects without an execution of the composite goal are
+ * skipped by the reactor-composite goal.
+ *
+ */
+public class UaalReactorCompositeMojoTest extends TestCase {
+
+	private static final String[] OUTPUTS = { CompositeWriter.MAIN_COMPOSITE, CompositeWriter.MAIN_DEPS,
+			CompositeWriter.MAIN_VERSION };
+
+	private File workDir;
+
+	private ArtifactRepository localRepository;
+
+	private SyntheticArtifactFactory artifactFactory;
+
+	private SyntheticProjectBuilder projectBuilder;
+
+	private SyntheticMetadataSource metadataSource;
+
+	private MavenSession session;
+
+	private List<MavenProject> projects;
+
+	protected void setUp() throws Exception {
+		workDir = new File("target/reactor-composite");
+		SyntheticRepository.delete(workDir);
+		localRepository = SyntheticRepository.generate(new File(workDir, "repository"), 60, 3, 11);
+		artifactFactory = new SyntheticArtifactFactory();
+		projectBuilder = new SyntheticProjectBuilder(artifactFactory);
+		metadataSource = new SyntheticMetadataSource(artifactFactory, projectBuilder);
+		Properties executionProperties = new Properties();
+		executionProperties.setProperty("uaal.autoStartLevelBase", "7");
+		session = new MavenSession(null, null, localRepository, null, null, null, workDir.getPath(),
+				executionProperties, new Properties(), null);
+
+		MavenProject root = buildProject(SyntheticRepository.ROOT_GROUP_ID, SyntheticRepository.ROOT_ARTIFACT_ID,
+				"root");
+		List<Dependency> dependencies = new ArrayList<Dependency>(root.getModel().getDependencies());
+		projects = new ArrayList<MavenProject>();
+		projects.add(root);
+		for (int i = 0; i < 4; i++) {
+			projects.add(buildProject(dependencies.get(i).getGroupId(), dependencies.get(i).getArtifactId(),
+					"module" + i));
+		}
+		MavenProject module0 = projects.get(1);
+		addPlugin(module0, null, "<configuration><useMwComposite>false</useMwComposite>"
+				+ "<autoStartLevels>true</autoStartLevels><startArtifacts><startArtifact><groupId>"
+				+ module0.getGroupId() + "</groupId><artifactId>" + module0.getArtifactId()
+				+ "</artifactId><startlevel>20</startlevel></startArtifact></startArtifacts></configuration>");
+		addPlugin(projects.get(2), "<configuration><autoStartLevels>${levels}</autoStartLevels></configuration>",
+				"<configuration><useMwComposite>false</useMwComposite></configuration>");
+		projects.get(2).getProperties().setProperty("levels", "true");
+		addPlugin(projects.get(3), null, null);
+		Plugin plugin = addPlugin(projects.get(4), null, null);
+		((PluginExecution) plugin.getExecutions().get(0)).getGoals().clear();
+		((PluginExecution) plugin.getExecutions().get(0)).addGoal("features");
+	}
+
+	protected void tearDown() throws Exception {
+		SyntheticRepository.delete(workDir);
+	}
+
+	private MavenProject buildProject(final String groupId, final String artifactId, final String dirName)
+			throws Exception {
+		Artifact artifact = artifactFactory.createProjectArtifact(groupId, artifactId, SyntheticRepository.VERSION);
+		MavenProject project = projectBuilder.buildFromRepository(artifact, new ArrayList(), localRepository);
+		File dir = new File(workDir, dirName);
+		dir.mkdirs();
+		project.setFile(new File(dir, "pom.xml"));
+		project.getModel().setBuild(new Build());
+		return project;
+	}
+
+	/**
+	 * Adds uaal-maven-plugin with an execution of the composite goal to the
+	 * build of given project.
+	 */
+	private static Plugin addPlugin(final MavenProject project, final String pluginConfiguration,
+			final String executionConfiguration) throws Exception {
+		Plugin plugin = new Plugin();
+		plugin.setGroupId(GoalConfiguration.PLUGIN_GROUP_ID);
+		plugin.setArtifactId(GoalConfiguration.PLUGIN_ARTIFACT_ID);
+		plugin.setConfiguration(dom(pluginConfiguration));
+		PluginExecution execution = new PluginExecution();
+		execution.setId("composite");
+		execution.addGoal("composite");
+		execution.setConfiguration(dom(executionConfiguration));
+		plugin.addExecution(execution);
+		project.getModel().getBuild().addPlugin(plugin);
+		return plugin;
+	}
+
+	private static Xpp3Dom dom(final String xml) throws Exception {
+		return xml == null ? null : Xpp3DomBuilder.build(new StringReader(xml));
+	}
+
+	private void runReactorGoal() throws Exception {
+		UaalReactorCompositeMojo mojo = new UaalReactorCompositeMojo();
+		mojo.setLog(new QuietLog());
+		set(mojo, "artifactFactory", artifactFactory);
+		set(mojo, "artifactResolver", new SyntheticArtifactResolver());
+		set(mojo, "artifactMetadataSource", metadataSource);
+		set(mojo, "mavenProjectBuilder", projectBuilder);
+		set(mojo, "reactorProjects", projects);
+		set(mojo, "session", session);
+		set(mojo, "localRepository", localRepository);
+		set(mojo, "reactorThreads", Integer.valueOf(2));
+		mojo.execute();
+	}
+
+	/**
+	 * Runs the composite goal in given project with parameters which maven
+	 * would inject according to the configuration added in setUp.
+	 */
+	private void runModuleGoal(final MavenProject project, final boolean useMwComposite,
+			final boolean autoStartLevels, final StartSpec[] startArtifacts) throws Exception {
+		UaalCompositeMojo mojo = new UaalCompositeMojo();
+		mojo.setLog(new QuietLog());
+		set(mojo, "artifactFactory", artifactFactory);
+		set(mojo, "artifactResolver", new SyntheticArtifactResolver());
+		set(mojo, "artifactMetadataSource", metadataSource);
+		set(mojo, "mavenProjectBuilder", projectBuilder);
+		set(mojo, "project", project);
+		set(mojo, "session", session);
+		set(mojo, "remoteRepositories", project.getRemoteArtifactRepositories());
+		set(mojo, "localRepository", localRepository);
+		set(mojo, "baseDirectory", project.getBasedir());
+		set(mojo, "useMwComposite", Boolean.valueOf(useMwComposite));
+		set(mojo, "startArtifacts", startArtifacts);
+		set(mojo, "resolutionThreads", Integer.valueOf(1));
+		set(mojo, "autoStartLevels", Boolean.valueOf(autoStartLevels));
+		set(mojo, "autoStartLevelBase", Integer.valueOf(7));
+		set(mojo, "bundleWiring", "off");
+		mojo.execute();
+	}
+
+	private static void set(final Object mojo, final String field, final Object value) throws Exception {
+		ReflectionUtils.setVariableValueInObject(mojo, field, value);
+	}
+
+	public void testSameOutputsAsModuleGoal() throws Exception {
+		runReactorGoal();
+		assertFalse(new File(projects.get(0).getBasedir(), "target").exists());
+		assertFalse(new File(projects.get(4).getBasedir(), "target").exists());
+		List<String> reactorOutputs = new ArrayList<String>();
+		for (int i = 1; i <= 3; i++) {
+			for (String output : OUTPUTS) {
+				reactorOutputs.add(read(new File(projects.get(i).getBasedir(), output)));
+			}
+			SyntheticRepository.delete(new File(projects.get(i).getBasedir(), "target"));
+		}
+		assertTrue(reactorOutputs.get(0).indexOf("@20") != -1);
+		assertTrue(reactorOutputs.get(OUTPUTS.length).indexOf("@7") != -1);
+		assertTrue(reactorOutputs.get(2 * OUTPUTS.length).indexOf('@') == -1);
+
+		MavenProject module0 = projects.get(1);
+		runModuleGoal(module0, false, true, new StartSpec[] { new StartSpec(module0.getGroupId(),
+				module0.getArtifactId(), Integer.valueOf(20), false) });
+		runModuleGoal(projects.get(2), false, true, null);
+		runModuleGoal(projects.get(3), true, false, null);
+		List<String> moduleOutputs = new ArrayList<String>();
+		for (int i = 1; i <= 3; i++) {
+			for (String output : OUTPUTS) {
+				moduleOutputs.add(read(new File(projects.get(i).getBasedir(), output)));
+			}
+		}
+		assertEquals(moduleOutputs, reactorOutputs);
+	}
+
+	private static String read(final File file) throws Exception {
+		StringBuilder content = new StringBuilder();
+		Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+		try {
+			char[] buffer = new char[4096];
+			int read;
+			while ((read = reader.read(buffer)) != -1) {
+				content.append(buffer, 0, read);
+			}
+		} finally {
+			reader.close();
+		}
+		return content.toString();
+	}
+}
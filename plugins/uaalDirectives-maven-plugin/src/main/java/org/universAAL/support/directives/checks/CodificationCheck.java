@@ -46,39 +46,64 @@ import org.universAAL.support.directives.util.SourceExplorer;
  */
 public class CodificationCheck implements APICheck, SourceChecker {
 
-	CharsetEncoder UTF8Encoder = Charset.forName("UTF8").newEncoder().onMalformedInput(CodingErrorAction.REPORT)
-			.onUnmappableCharacter(CodingErrorAction.REPORT);
-
-	Map<File, Integer> lineMap = new HashMap<File, Integer>();
-
 	/** {@ inheritDoc} */
 	public boolean passesTest(File sourceFile) {
+		return findCodingError(sourceFile) == 0;
+	}
+
+	/**
+	 * Finds the first line of the file which cannot be encoded in UTF-8.
+	 * Encoders are not thread safe, so a new one is created for each file.
+	 *
+	 * @param sourceFile
+	 *            the file to check
+	 * @return number of the line, 0 if all lines can be encoded or -1 if the
+	 *         file could not be read.
+	 */
+	private int findCodingError(File sourceFile) {
+		CharsetEncoder UTF8Encoder = Charset.forName("UTF8").newEncoder().onMalformedInput(CodingErrorAction.REPORT)
+				.onUnmappableCharacter(CodingErrorAction.REPORT);
 		int lineNo = 1;
 		BufferedReader br;
 		try {
 			br = new BufferedReader(new FileReader(sourceFile));
-			String line = br.readLine();
-			while (line != null) {
-				UTF8Encoder.encode(CharBuffer.wrap(line));
-				line = br.readLine();
-				lineNo++;
+			try {
+				String line = br.readLine();
+				while (line != null) {
+					UTF8Encoder.encode(CharBuffer.wrap(line));
+					line = br.readLine();
+					lineNo++;
+				}
+			} finally {
+				br.close();
 			}
-			br.close();
 		} catch (FileNotFoundException e) {
 			// improbable
-			return false;
+			return -1;
 		} catch (CharacterCodingException e) {
-			lineMap.put(sourceFile, new Integer(lineNo));
-			return false;
+			return lineNo;
 		} catch (IOException e) {
 			e.printStackTrace();
+			return -1;
 		}
-		return false;
+		return 0;
 	}
 
 	/** {@ inheritDoc} */
 	public boolean check(MavenProject mavenProject, Log log) throws MojoExecutionException, MojoFailureException {
-		SourceExplorer se = new SourceExplorer(this);
+		// line numbers are collected per call, the check may be shared by
+		// concurrently built projects
+		final Map<File, Integer> lineMap = new HashMap<File, Integer>();
+		SourceExplorer se = new SourceExplorer(new SourceChecker() {
+
+			public boolean passesTest(File sourceFile) {
+				int lineNo = findCodingError(sourceFile);
+				if (lineNo > 0) {
+					lineMap.put(sourceFile, new Integer(lineNo));
+				}
+				return lineNo == 0;
+			}
+		});
 		ArrayList<File> conflicted = se.walk(mavenProject.getBasedir().getAbsolutePath() + "/src/main/java/");
 		if (conflicted.size() > 0) {
 			String m = "The following Files Contain a possibly charset coding error:\n";
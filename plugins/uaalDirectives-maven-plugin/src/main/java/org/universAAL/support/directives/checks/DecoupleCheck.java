@@ -37,7 +37,7 @@ import org.universAAL.support.directives.util.SourceFileReader;
  */
 public class DecoupleCheck implements APICheck, SourceChecker {
 
-	static private String OSGI_MATCH = ".*osgi.*";
+	static private final String OSGI_MATCH = ".*osgi.*";
 
 	/** {@inheritDoc} */
 	public boolean check(MavenProject mavenProject, Log log) throws MojoFailureException, MojoExecutionException {
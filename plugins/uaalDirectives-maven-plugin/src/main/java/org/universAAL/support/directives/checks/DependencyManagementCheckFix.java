@@ -20,6 +20,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.maven.artifact.repository.ArtifactRepository;
 import org.apache.maven.model.Dependency;
@@ -39,7 +40,7 @@ import org.universAAL.support.directives.util.PomWriter;
  * @author amedrano
  *
  */
-public class DependencyManagementCheckFix implements APIFixableCheck, PomFixer {
+public class DependencyManagementCheckFix implements APIFixableCheck {
 
 	/**
 	 * Message content when check fails
@@ -53,14 +54,12 @@ public class DependencyManagementCheckFix implements APIFixableCheck, PomFixer {
 			+ "It seems the POM has versions it shouldn't.";
 
 	/**
-	 * List of Dependencies to be fixed
+	 * Dependencies to be fixed found by the last check of each project,
+	 * indexed by project id. The check may be shared by concurrently built
+	 * projects, so nothing else about the checked project is kept in fields.
 	 */
-	private Map<DependencyID, String> toBeFixed;
-
-	/**
-	 * list of children projects.
-	 */
-	private List<MavenProject> reactorProjects;
+	private final Map<String, Map<DependencyID, String>> toBeFixedByProject =
+			new ConcurrentHashMap<String, Map<DependencyID, String>>();
 
 	private MavenProjectBuilder mavenProjectBuilder;
 	private ArtifactRepository localRepository;
@@ -71,33 +70,35 @@ public class DependencyManagementCheckFix implements APIFixableCheck, PomFixer {
 		this.localRepository = localRepository;
 	}
 
-	/**
-	 * Log instance.
-	 */
-	private Log log;
-
 	/** {@inheritDoc} */
 	public boolean check(MavenProject mavenProject, Log log) throws MojoExecutionException, MojoFailureException {
 
-		this.log = log;
-		if (!passCheck(mavenProject)) {
-			String err = getErrorMessge(mavenProject);
+		Map<DependencyID, String> toBeFixed = new TreeMap<DependencyID, String>();
+		if (!passCheck(mavenProject, toBeFixed, log)) {
+			toBeFixedByProject.put(mavenProject.getId(), toBeFixed);
+			String err = getErrorMessge(mavenProject, toBeFixed);
 			throw new MojoFailureException(err);
 		}
+		toBeFixedByProject.remove(mavenProject.getId());
 		return true;
 	}
 
 	/** {@inheritDoc} */
 	public void fix(MavenProject mavenProject, Log log) throws MojoExecutionException, MojoFailureException {
+		Map<DependencyID, String> toBeFixed = toBeFixedByProject.remove(mavenProject.getId());
+		if (toBeFixed == null) {
+			toBeFixed = new TreeMap<DependencyID, String>();
+			passCheck(mavenProject, toBeFixed, log);
+		}
 		try {
-			new PomWriter(this, mavenProject).fix();
+			new PomWriter(new Fixer(toBeFixed, log), mavenProject).fix();
 		} catch (Exception e) {
 			log.error("unable to Write POM.");
 			log.error(e);
 		}
 	}
 
-	private String getErrorMessge(MavenProject mavenProject) {
+	private String getErrorMessge(MavenProject mavenProject, Map<DependencyID, String> toBeFixed) {
 		String err;
 		if (mavenProject.getPackaging().equals("pom")) {
 			err = VERSIONS_NOT_CONFIGURED_ROOT;
@@ -113,33 +114,29 @@ public class DependencyManagementCheckFix implements APIFixableCheck, PomFixer {
 		return err;
 	}
 
-	/**
-	 * @return
-	 */
-	private Log getLog() {
-		return this.log;
-	}
-
 	/**
 	 * check whether there are any versions defined or dependencyManagement
 	 * points to correct versions
 	 *
 	 * @param mavenProject2
+	 * @param toBeFixed
+	 *            map to which dependencies to be fixed are added
+	 * @param log
 	 * @return
 	 * @throws Exception
 	 *             when any of the children pom files can not be located.
 	 */
-	private boolean passCheck(MavenProject mavenProject2) {
-		toBeFixed = new TreeMap<DependencyID, String>();
-		reactorProjects = getChildrenModules(mavenProject2, mavenProjectBuilder, localRepository, null);
+	private boolean passCheck(MavenProject mavenProject2, Map<DependencyID, String> toBeFixed, Log log) {
 		if (mavenProject2.getPackaging().equals("pom")) {
-			return passRootCheck(mavenProject2);
+			List<MavenProject> reactorProjects = getChildrenModules(mavenProject2, mavenProjectBuilder,
+					localRepository, null);
+			return passRootCheck(mavenProject2, reactorProjects, toBeFixed, log);
 		} else {
-			return passNoRootCheck(mavenProject2);
+			return passNoRootCheck(mavenProject2, toBeFixed, log);
 		}
 	}
 
-	private boolean passNoRootCheck(MavenProject mavenProject2) {
+	private boolean passNoRootCheck(MavenProject mavenProject2, Map<DependencyID, String> toBeFixed, Log log) {
 		// check that the pom (not the model) hasn't any versions in it.
 		DependencyManagement dm = mavenProject2.getParent().getDependencyManagement();
 		if (dm == null) // no dependency management -> no fixing
@@ -154,10 +151,10 @@ public class DependencyManagementCheckFix implements APIFixableCheck, PomFixer {
 			for (Object o : PomWriter.readPOMFile(mavenProject2).getDependencies()) {
 				Dependency dep = (Dependency) o;
 				DependencyID depID = new DependencyID(dep);
-				getLog().debug("***.1 " + dep.getGroupId() + ":" + dep.getArtifactId() + ":" + dep.getVersion());
-				getLog().debug("***.1 " + depID.getGID() + ":" + depID.getAID());
+				log.debug("***.1 " + dep.getGroupId() + ":" + dep.getArtifactId() + ":" + dep.getVersion());
+				log.debug("***.1 " + depID.getGID() + ":" + depID.getAID());
 				if (depIDMan.containsKey(depID) && dep.getVersion() != null) {
-					getLog().debug("in DepManagement. Declared Version: " + dep.getVersion() + "Managed Version: "
+					log.debug("in DepManagement. Declared Version: " + dep.getVersion() + "Managed Version: "
 							+ depIDMan.get(depID));
 					toBeFixed.put(depID, null);
 				}
@@ -167,8 +164,9 @@ public class DependencyManagementCheckFix implements APIFixableCheck, PomFixer {
 		return toBeFixed.isEmpty();
 	}
 
-	private boolean passRootCheck(MavenProject mavenProject2) {
-		Map<DependencyID, String> versionMap = getActualVersions(mavenProject2);
+	private boolean passRootCheck(MavenProject mavenProject2, List<MavenProject> reactorProjects,
+			Map<DependencyID, String> toBeFixed, Log log) {
+		Map<DependencyID, String> versionMap = getActualVersions(mavenProject2, reactorProjects, log);
 		DependencyManagement dm = mavenProject2.getDependencyManagement();
 		if (dm == null) // no DependencyManagement -> no fixing
 			return true;
@@ -181,11 +179,11 @@ public class DependencyManagementCheckFix implements APIFixableCheck, PomFixer {
 			DependencyID depId = new DependencyID(dependency);
 			String realVersion = versionMap.get(depId);
 			lodVersionMap.put(depId, dependency.getVersion());
-			getLog().debug("***1 ." + dependency.getGroupId() + ":" + dependency.getArtifactId() + " Real:\""
+			log.debug("***1 ." + dependency.getGroupId() + ":" + dependency.getArtifactId() + " Real:\""
 					+ realVersion + "\" - Declared: \"" + dependency.getVersion() + "\"");
 			if (dependency != null && !dependency.getVersion().equals(realVersion) && realVersion != null
 					&& !realVersion.isEmpty()) {
-				getLog().debug("Marked as wrong.");
+				log.debug("Marked as wrong.");
 				toBeFixed.put(new DependencyID(dependency), realVersion);
 			}
 		}
@@ -195,7 +193,7 @@ public class DependencyManagementCheckFix implements APIFixableCheck, PomFixer {
 		for (DependencyID key : versionMap.keySet()) {
 			if (!lodVersionMap.containsKey(key)) {
 				toBeFixed.put(key, versionMap.get(key));
-				getLog().debug("***2 ." + key.getGID() + ":" + key.getAID() + " Not declared.");
+				log.debug("***2 ." + key.getGID() + ":" + key.getAID() + " Not declared.");
 				// System.out.println("***2 ." + key + ". - ." +
 				// versionMap.get(key) + ".");
 			}
@@ -203,7 +201,8 @@ public class DependencyManagementCheckFix implements APIFixableCheck, PomFixer {
 		return toBeFixed.isEmpty();
 	}
 
-	private Map<DependencyID, String> getActualVersions(MavenProject mavenProject2) {
+	private Map<DependencyID, String> getActualVersions(MavenProject mavenProject2,
+			List<MavenProject> reactorProjects, Log log) {
 		TreeMap<DependencyID, String> versionMap = new TreeMap<DependencyID, String>();
 		boolean containsSubPOMProjects = includesPOMSubProjects(mavenProject2);
 		for (MavenProject mavenProject : reactorProjects) {
@@ -212,7 +211,7 @@ public class DependencyManagementCheckFix implements APIFixableCheck, PomFixer {
 				// Check if its a pom, add it if not!
 				versionMap.put(new DependencyID(mavenProject.getGroupId(), mavenProject.getArtifactId()),
 						mavenProject.getVersion());
-				getLog().debug("added to ActualVersions: " + mavenProject.getGroupId() + ":"
+				log.debug("added to ActualVersions: " + mavenProject.getGroupId() + ":"
 						+ mavenProject.getArtifactId() + ":" + mavenProject.getVersion());
 			}
 		}
@@ -235,15 +234,31 @@ public class DependencyManagementCheckFix implements APIFixableCheck, PomFixer {
 		return false;
 	}
 
-	public void fix(Model model) {
-		if (model.getPackaging().equals("pom")) {
-			fixPOM(model);
-		} else {
-			fixNonPOM(model);
+	/**
+	 * Fixes POM of a project using dependencies to be fixed found by its
+	 * check.
+	 */
+	class Fixer implements PomFixer {
+
+		private Map<DependencyID, String> toBeFixed;
+
+		private Log log;
+
+		Fixer(Map<DependencyID, String> toBeFixed, Log log) {
+			this.toBeFixed = toBeFixed;
+			this.log = log;
+		}
+
+		public void fix(Model model) {
+			if (model.getPackaging().equals("pom")) {
+				fixPOM(model, toBeFixed, log);
+			} else {
+				fixNonPOM(model, toBeFixed);
+			}
 		}
 	}
 
-	public void fixNonPOM(Model model) {
+	private void fixNonPOM(Model model, Map<DependencyID, String> toBeFixed) {
 		List<Dependency> ld = model.getDependencies();
 		List<Dependency> nld = new ArrayList<Dependency>();
 		for (Dependency dep : ld) {
@@ -260,16 +275,16 @@ public class DependencyManagementCheckFix implements APIFixableCheck, PomFixer {
 		model.setDependencies(nld);
 	}
 
-	public void fixPOM(Model model) {
+	private void fixPOM(Model model, Map<DependencyID, String> toBeFixed, Log log) {
 		List<Dependency> modelDependencyManagement = model.getDependencyManagement().getDependencies();
 		List<Dependency> newDep = new ArrayList<Dependency>();
-		getLog().debug(Integer.toString(modelDependencyManagement.size()) + "\n");
+		log.debug(Integer.toString(modelDependencyManagement.size()) + "\n");
 		List<DependencyID> toBeRemoved = new ArrayList<DependencyID>();
 		for (Dependency dep : modelDependencyManagement) {
 			DependencyID key = new DependencyID(dep);
 			if (toBeFixed.containsKey(key)) {
 				dep.setVersion(toBeFixed.get(key));
-				getLog().info("Fixing: " + dep.getGroupId() + ":" + dep.getArtifactId() + " to: " + toBeFixed.get(key));
+				log.info("Fixing: " + dep.getGroupId() + ":" + dep.getArtifactId() + " to: " + toBeFixed.get(key));
 				Dependency d = dep;
 				d.setVersion(toBeFixed.get(key));
 				newDep.add(d);
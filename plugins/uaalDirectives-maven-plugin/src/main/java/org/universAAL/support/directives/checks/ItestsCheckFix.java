@@ -40,12 +40,9 @@ import org.universAAL.support.directives.util.SourceFileReader;
  * @author amedrano
  *
  */
-public class ItestsCheckFix implements APIFixableCheck, SourceChecker, PomFixer {
+public class ItestsCheckFix implements APIFixableCheck, SourceChecker {
 
-	static private String ITEST_MATCH = ".*org\\.universAAL\\.itests\\.IntegrationTest.*";
-
-	// result of the check for implementations of IntegrationTests
-	private boolean integrationTestsPresent = false;
+	static private final String ITEST_MATCH = ".*org\\.universAAL\\.itests\\.IntegrationTest.*";
 
 	/** {@inheritDoc} */
 	public boolean check(MavenProject mavenProject, Log log) throws MojoFailureException, MojoExecutionException {
@@ -70,10 +67,8 @@ public class ItestsCheckFix implements APIFixableCheck, SourceChecker, PomFixer
 		if (itest.size() == 0) {
 			String m = "This project has a dependency to itests, but does not implement any IntegrationTest.\n"
 					+ "Remove the itests dependency from the POM.";
-			integrationTestsPresent = false;
 			throw new MojoFailureException(m);
 		}
-		integrationTestsPresent = true;
 		return true;
 	}
 
@@ -104,16 +99,22 @@ public class ItestsCheckFix implements APIFixableCheck, SourceChecker, PomFixer
 	/** {@inheritDoc} */
 	public void fix(MavenProject mavenProject, Log log) throws MojoExecutionException, MojoFailureException {
 
+		// result of the check for implementations of IntegrationTests
+		final boolean integrationTestsPresent = !findIntegrationTests(mavenProject.getBasedir()).isEmpty();
 		try {
-			new PomWriter(this, mavenProject).fix();
+			new PomWriter(new PomFixer() {
+
+				public void fix(Model model) {
+					removeItestsDependency(model, integrationTestsPresent);
+				}
+			}, mavenProject).fix();
 		} catch (Exception e) {
 			log.error("unable to Write POM.");
 			log.error(e);
 		}
 	}
 
-	/** {@inheritDoc} */
-	public void fix(Model model) {
+	private void removeItestsDependency(Model model, boolean integrationTestsPresent) {
 		if (!integrationTestsPresent) {
 			/*
 			 * Remove the dependency to itests
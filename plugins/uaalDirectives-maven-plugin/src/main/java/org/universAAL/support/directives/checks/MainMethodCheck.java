@@ -37,9 +37,9 @@ import org.universAAL.support.directives.util.SourceExplorer;
  */
 public class MainMethodCheck implements SourceChecker, APICheck {
 
-	public static String MAIN_REGEXP = "(public\\s+)?static\\s+(public\\s+)?void\\s+main\\s*\\(\\s*String(\\s*\\[\\])?\\s+\\w+(\\s*\\[\\])?\\s*\\)";
+	public static final String MAIN_REGEXP = "(public\\s+)?static\\s+(public\\s+)?void\\s+main\\s*\\(\\s*String(\\s*\\[\\])?\\s+\\w+(\\s*\\[\\])?\\s*\\)";
 
-	private static Pattern MAIN_PATTERN = Pattern.compile(MAIN_REGEXP);
+	private static final Pattern MAIN_PATTERN = Pattern.compile(MAIN_REGEXP);
 
 	/** {@ inheritDoc} */
 	public boolean check(MavenProject mavenproject, Log log) throws MojoExecutionException, MojoFailureException {
@@ -20,6 +20,8 @@ import java.io.FilenameFilter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.maven.model.Model;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -34,7 +36,7 @@ import org.universAAL.support.directives.util.PomWriter;
  * @author amedrano
  *
  */
-public class ModulesCheckFix implements APIFixableCheck, PomFixer {
+public class ModulesCheckFix implements APIFixableCheck {
 
 	/**
 	 * Message content when check fails
@@ -45,21 +47,25 @@ public class ModulesCheckFix implements APIFixableCheck, PomFixer {
 	private static final String SVN_FOLDER = ".svn";
 
 	/**
-	 * List of Dependencies to be fixed
+	 * Modules to be added found by the last check of each project, indexed by
+	 * project id.
 	 */
-	private ArrayList<String> toBeFixed;
+	private final Map<String, List<String>> toBeFixedByProject = new ConcurrentHashMap<String, List<String>>();
 
 	/** {@inheritDoc} */
 	public boolean check(MavenProject mavenproject, Log log) throws MojoExecutionException, MojoFailureException {
 
-		if (!passCheck(mavenproject, log)) {
-			String err = getErrorMessge(mavenproject);
+		List<String> toBeFixed = new ArrayList<String>();
+		if (!passCheck(mavenproject, toBeFixed, log)) {
+			toBeFixedByProject.put(mavenproject.getId(), toBeFixed);
+			String err = getErrorMessge(mavenproject, toBeFixed);
 			throw new MojoFailureException(err);
 		}
+		toBeFixedByProject.remove(mavenproject.getId());
 		return true;
 	}
 
-	private String getErrorMessge(MavenProject mavenProject) {
+	private String getErrorMessge(MavenProject mavenProject, List<String> toBeFixed) {
 		if (mavenProject.getPackaging().equals("pom")) {
 			String err = MODULES_NOT_CONFIGURED_ROOT;
 			for (String mod : toBeFixed) {
@@ -74,8 +80,21 @@ public class ModulesCheckFix implements APIFixableCheck, PomFixer {
 	 * {@inheritDoc}
 	 */
 	public void fix(MavenProject mavenProject2, Log log) throws MojoFailureException {
+		List<String> toBeFixed = toBeFixedByProject.remove(mavenProject2.getId());
+		if (toBeFixed == null) {
+			toBeFixed = new ArrayList<String>();
+			passCheck(mavenProject2, toBeFixed, log);
+		}
+		final List<String> modules = toBeFixed;
 		try {
-			new PomWriter(this, mavenProject2).fix();
+			new PomWriter(new PomFixer() {
+
+				public void fix(Model model) {
+					for (String mod : modules) {
+						model.addModule(mod);
+					}
+				}
+			}, mavenProject2).fix();
 		} catch (Exception e) {
 			log.error("unable to Write POM.");
 		}
@@ -86,17 +105,18 @@ public class ModulesCheckFix implements APIFixableCheck, PomFixer {
 	 * points to correct versions
 	 *
 	 * @param mavenProject2
+	 * @param toBeFixed
+	 *            list to which modules to be added are added.
 	 * @param log
 	 *            log element to output log.
 	 * @return
 	 */
-	private boolean passCheck(MavenProject mavenProject2, Log log) {
-		toBeFixed = new ArrayList<String>();
+	private boolean passCheck(MavenProject mavenProject2, List<String> toBeFixed, Log log) {
 		if (isAparentPOM(mavenProject2, log)) {
 			if (isOfCommonType(mavenProject2, log)) {
-				return passRootCheckCommonType(mavenProject2, log);
+				return passRootCheckCommonType(mavenProject2, toBeFixed, log);
 			} else {
-				return passRootCheckSiblingType(mavenProject2, log);
+				return passRootCheckSiblingType(mavenProject2, toBeFixed, log);
 			}
 		} else {
 			return true;
@@ -164,7 +184,7 @@ public class ModulesCheckFix implements APIFixableCheck, PomFixer {
 		return listed.size() > 0 && common;
 	}
 
-	private boolean passRootCheckCommonType(MavenProject mavenProject2, Log log) {
+	private boolean passRootCheckCommonType(MavenProject mavenProject2, List<String> toBeFixed, Log log) {
 		List<String> mods = (List<String>) mavenProject2.getModules();
 		List<File> listed = new ArrayList<File>();
 		for (String m : mods) {
@@ -193,7 +213,7 @@ public class ModulesCheckFix implements APIFixableCheck, PomFixer {
 		return toBeFixed.isEmpty();
 	}
 
-	private boolean passRootCheckSiblingType(MavenProject mavenProject2, Log log) {
+	private boolean passRootCheckSiblingType(MavenProject mavenProject2, List<String> toBeFixed, Log log) {
 		List<String> listed = (List<String>) mavenProject2.getModules();
 
 		// gather the existent modules
@@ -225,10 +245,4 @@ public class ModulesCheckFix implements APIFixableCheck, PomFixer {
 			}
 		}).length > 0;
 	}
-
-	public void fix(Model model) {
-		for (String mod : toBeFixed) {
-			model.addModule(mod);
-		}
-	}
 }
\ No newline at end of file
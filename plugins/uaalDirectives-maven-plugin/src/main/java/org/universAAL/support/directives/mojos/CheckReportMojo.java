@@ -50,6 +50,7 @@ import org.universAAL.support.directives.checks.ModulesCheckFix;
  *
  * @author amedrano
  * @goal check-report
+ * @threadSafe
  * @phase site
  * @see DecoupleCheckMojo
  * @see DependencyManagementCheckMojo
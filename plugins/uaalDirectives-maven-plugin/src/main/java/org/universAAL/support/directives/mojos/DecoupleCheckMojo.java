@@ -28,6 +28,7 @@ import org.universAAL.support.directives.checks.DecoupleCheck;
  * @author amedrano
  *
  * @goal decouple-check
+ * @threadSafe
  */
 public class DecoupleCheckMojo extends AbstractCheckMojo {
 
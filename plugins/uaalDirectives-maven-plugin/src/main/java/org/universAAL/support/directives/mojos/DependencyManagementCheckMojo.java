@@ -35,6 +35,7 @@ import org.universAAL.support.directives.checks.DependencyManagementCheckFix;
  * @author amedrano
  *
  * @goal dependency-check
+ * @threadSafe
  *
  * @phase process-sources
  */
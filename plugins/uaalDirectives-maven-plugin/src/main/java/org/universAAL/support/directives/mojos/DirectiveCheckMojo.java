@@ -38,6 +38,7 @@ import org.universAAL.support.directives.checks.ModulesCheckFix;
  *
  * @author amedrano
  * @goal check
+ * @threadSafe
  *
  * @see DecoupleCheckMojo
  * @see DependencyManagementCheckMojo
@@ -28,6 +28,7 @@ import org.universAAL.support.directives.checks.FelixDepCheckFix;
  * @author amedrano
  *
  * @goal felix-check
+ * @threadSafe
  *
  * @phase process-sources
  */
@@ -36,6 +36,7 @@ import org.universAAL.support.directives.procedures.IncreaseVersionProcedure;
  * @author amedrano
  *
  * @goal increase-version
+ * @threadSafe
  *
  * @requiresDirectInvocation
  *
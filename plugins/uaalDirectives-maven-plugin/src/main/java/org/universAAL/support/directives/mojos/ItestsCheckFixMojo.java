@@ -28,6 +28,7 @@ import org.universAAL.support.directives.checks.ItestsCheckFix;
  * @author amedrano
  *
  * @goal itest-check
+ * @threadSafe
  *
  * @phase process-sources
  */
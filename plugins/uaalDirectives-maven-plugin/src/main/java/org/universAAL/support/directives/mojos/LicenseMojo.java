@@ -32,6 +32,7 @@ import org.universAAL.support.directives.checks.LicenseHeaderCheckFix;
  *
  * @author amedrano
  * @goal license-check
+ * @threadSafe
  *
  */
 public class LicenseMojo extends AbstractFixableCheckMojo {
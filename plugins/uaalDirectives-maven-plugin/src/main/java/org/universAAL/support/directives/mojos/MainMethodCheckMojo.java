@@ -28,6 +28,7 @@ import org.universAAL.support.directives.checks.MainMethodCheck;
  * @author amedrano
  *
  * @goal mainMethod-check
+ * @threadSafe
  */
 public class MainMethodCheckMojo extends AbstractCheckMojo {
 
@@ -29,6 +29,7 @@ import org.universAAL.support.directives.checks.ModulesCheckFix;
  * @aggregator
  *
  * @goal modules-check
+ * @threadSafe
  *
  * @phase process-sources
  */
@@ -38,6 +38,7 @@ import org.universAAL.support.directives.checks.MavenCoordinateCheck;
  * @author amedrano
  *
  * @goal name-check
+ * @threadSafe
  */
 public class NamingCheckMojo extends AbstractCheckMojo {
 
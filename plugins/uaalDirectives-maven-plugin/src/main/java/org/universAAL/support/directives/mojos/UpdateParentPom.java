@@ -37,6 +37,7 @@ import org.universAAL.support.directives.checks.ModulesCheckFix;
  *
  * @author amedrano
  * @goal update-root-children
+ * @threadSafe
  */
 public class UpdateParentPom extends AbstractProcedureMojo {
 
@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright 2013 Universidad Politécnica de Madrid
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package org.universAAL.support.unit.tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.model.Model;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.universAAL.support.directives.api.APICheck;
+import org.universAAL.support.directives.checks.CodificationCheck;
+import org.universAAL.support.directives.checks.DecoupleCheck;
+import org.universAAL.support.directives.checks.MainMethodCheck;
+
+import junit.framework.TestCase;
+
+/**
+ * Runs the same check instances over many projects at once, as a parallel
+ * reactor build does, and compares the outcome with a sequential run.
+ *
+ */
+public class ConcurrentChecksTest extends TestCase {
+
+	private static final int PROJECTS = 48;
+
+	private static final int THREADS = 8;
+
+	private File workDir;
+
+	private List<MavenProject> projects;
+
+	protected void setUp() throws Exception {
+		workDir = new File("target/concurrent-checks");
+		FileUtils.deleteDirectory(workDir);
+		projects = new ArrayList<MavenProject>();
+		for (int i = 0; i < PROJECTS; i++) {
+			projects.add(createProject(i));
+		}
+	}
+
+	protected void tearDown() throws Exception {
+		FileUtils.deleteDirectory(workDir);
+	}
+
+	private MavenProject createProject(int i) throws IOException {
+		File basedir = new File(workDir, "project" + i);
+		File pack = new File(basedir, "src/main/java/org/universAAL/test" + i);
+		pack.mkdirs();
+		String header = "package org.universAAL.test" + i + ";\n\n";
+		FileUtils.writeStringToFile(new File(pack, "Plain.java"), header + "public class Plain {\n}\n");
+		if (i % 3 == 0) {
+			FileUtils.writeStringToFile(new File(pack, "Launcher.java"), header
+					+ "public class Launcher {\n\tpublic static void main(String[] args) {\n\t}\n}\n");
+		}
+		if (i % 4 == 0) {
+			FileUtils.writeStringToFile(new File(pack, "Activator.java"), header
+					+ "import org.osgi.framework.BundleActivator;\n\npublic class Activator {\n}\n");
+		}
+		File pom = new File(basedir, "pom.xml");
+		FileUtils.writeStringToFile(pom, "<project/>\n");
+		Model model = new Model();
+		model.setGroupId("org.universAAL.test");
+		model.setArtifactId("project" + i);
+		model.setVersion("1.0.0");
+		MavenProject project = new MavenProject(model);
+		project.setFile(pom);
+		return project;
+	}
+
+	private static String runCheck(APICheck check, MavenProject project) throws Exception {
+		try {
+			check.check(project, new SystemStreamLog());
+			return "passed";
+		} catch (MojoFailureException e) {
+			return e.getMessage();
+		}
+	}
+
+	private void assertSameAsSequential(final APICheck check) throws Exception {
+		List<String> sequential = new ArrayList<String>();
+		for (MavenProject project : projects) {
+			sequential.add(runCheck(check, project));
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<String>> futures = new ArrayList<Future<String>>();
+			for (final MavenProject project : projects) {
+				futures.add(pool.submit(new Callable<String>() {
+
+					public String call() throws Exception {
+						return runCheck(check, project);
+					}
+				}));
+			}
+			for (int i = 0; i < PROJECTS; i++) {
+				assertEquals(projects.get(i).getArtifactId(), sequential.get(i), futures.get(i).get());
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	public void testMainMethodCheck() throws Exception {
+		assertSameAsSequential(new MainMethodCheck());
+	}
+
+	public void testDecoupleCheck() throws Exception {
+		assertSameAsSequential(new DecoupleCheck());
+	}
+
+	public void testCodificationCheck() throws Exception {
+		assertSameAsSequential(new CodificationCheck());
+	}
+
+	public void testExpectedFailures() throws Exception {
+		MainMethodCheck mmc = new MainMethodCheck();
+		DecoupleCheck dc = new DecoupleCheck();
+		for (int i = 0; i < PROJECTS; i++) {
+			assertEquals(i % 3 != 0, "passed".equals(runCheck(mmc, projects.get(i))));
+			assertEquals(i % 4 != 0, "passed".equals(runCheck(dc, projects.get(i))));
+		}
+	}
+}